@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.bench;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.piokot.ftp.BlockMode;
+import com.piokot.ftp.FileUpload;
+import com.piokot.ftp.api.FTPCommand;
+import com.piokot.ftp.mock.Conditions;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Session of small uploads and downloads in {@link BlockMode} and in
+ * stream mode, against in-memory server with simulated data connection
+ * setup latency.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ * @checkstyle DesignForExtensionCheck (500 lines)
+ * @checkstyle VisibilityModifierCheck (500 lines)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(
+    value = 1,
+    jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn"
+)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class BlockModeBenchmark {
+    /**
+     * Files transferred each way.
+     */
+    private static final int FILES = 20;
+    /**
+     * Simulated latency of PASV and PORT in milliseconds.
+     */
+    @Param({"0", "15"})
+    public long setup;
+    /**
+     * Use block mode.
+     */
+    @Param({"false", "true"})
+    public boolean blocks;
+    /**
+     * Running server.
+     */
+    private transient MockServer server;
+    /**
+     * Content of every file.
+     */
+    private transient byte[] payload;
+
+    /**
+     * Start server.
+     *
+     * @throws Exception If it fails.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.server = new MockServer(
+            new MockTree(),
+            new Conditions().latency("PASV", this.setup)
+                .latency("PORT", this.setup)
+        );
+        this.payload = new byte[1024];
+    }
+
+    /**
+     * Stop server.
+     *
+     * @throws Exception If it fails.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.server.close();
+    }
+
+    /**
+     * Upload files and download them back in a new session.
+     *
+     * @return Bytes downloaded.
+     */
+    @Benchmark
+    public long roundtrip() {
+        final List<FTPCommand> commands = new ArrayList<>(0);
+        if (this.blocks) {
+            commands.add(new BlockMode());
+        }
+        for (int idx = 0; idx < BlockModeBenchmark.FILES; ++idx) {
+            commands.add(
+                new FileUpload(
+                    String.format("/file-%d", idx),
+                    new ByteArrayInputStream(this.payload),
+                    new Result<Boolean>()
+                )
+            );
+        }
+        final CountingOutputStream read = new CountingOutputStream(
+            ByteStreams.nullOutputStream()
+        );
+        for (int idx = 0; idx < BlockModeBenchmark.FILES; ++idx) {
+            commands.add(
+                BlockModeBenchmark.fetch(String.format("/file-%d", idx), read)
+            );
+        }
+        this.server.ftp().onConnect(
+            commands.toArray(new FTPCommand[commands.size()])
+        );
+        return read.getCount();
+    }
+
+    /**
+     * Download of file completing the transfer, so the next one may start
+     * in stream mode too.
+     *
+     * @param name File name.
+     * @param out Where to write content.
+     * @return Command.
+     */
+    private static FTPCommand fetch(final String name,
+        final OutputStream out) {
+        return new FTPCommand() {
+            @Override
+            @SneakyThrows
+            public void execute(final FTPClient client) {
+                client.retrieveFile(name, out);
+            }
+        };
+    }
+}
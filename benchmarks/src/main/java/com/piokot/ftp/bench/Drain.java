@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.bench;
+
+import com.piokot.ftp.api.Callback;
+import java.io.InputStream;
+import lombok.SneakyThrows;
+
+/**
+ * Callback reading downloaded stream to the end and closing it.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Drain implements Callback<InputStream> {
+    /**
+     * Reusable read buffer.
+     */
+    private final transient byte[] buffer = new byte[1 << 16];
+    /**
+     * Bytes read by last call.
+     */
+    private transient long bytes;
+
+    @Override
+    @SneakyThrows
+    public void onReturn(final InputStream type) {
+        long total = 0L;
+        try {
+            int read = type.read(this.buffer);
+            while (read >= 0) {
+                total += read;
+                read = type.read(this.buffer);
+            }
+        } finally {
+            type.close();
+        }
+        this.bytes = total;
+    }
+
+    /**
+     * Number of bytes read by last call.
+     *
+     * @return Bytes read.
+     */
+    public long bytes() {
+        return this.bytes;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.bench;
+
+import com.piokot.ftp.FileDownload;
+import com.piokot.ftp.FileUpload;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link FileUpload} and {@link FileDownload} per file size.
+ *
+ * <p>Results are in operations per second, each operation being one FTP
+ * session transferring one file. Multiply by size for bytes per second.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ * @checkstyle DesignForExtensionCheck (500 lines)
+ * @checkstyle VisibilityModifierCheck (500 lines)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(
+    value = 1,
+    jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn"
+)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TransferBenchmark {
+    /**
+     * Size of transferred file in bytes.
+     */
+    @Param({"1024", "1048576", "16777216"})
+    public int size;
+    /**
+     * Served directory.
+     */
+    private transient Tree tree;
+    /**
+     * Running server.
+     */
+    private transient Embedded server;
+    /**
+     * Content uploaded.
+     */
+    private transient byte[] payload;
+
+    /**
+     * Start server with file to download.
+     *
+     * @throws Exception If it fails.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.tree = new Tree();
+        this.payload = this.tree.file("download.bin", this.size);
+        this.server = new Embedded(this.tree.root());
+    }
+
+    /**
+     * Stop server and delete served files.
+     *
+     * @throws Exception If it fails.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.server.stop();
+        this.tree.delete();
+    }
+
+    /**
+     * Upload a file in a new session.
+     *
+     * @return Upload result.
+     */
+    @Benchmark
+    public Boolean upload() {
+        final Result<Boolean> result = new Result<>();
+        this.server.ftp().onConnect(
+            new FileUpload(
+                "upload.bin", new ByteArrayInputStream(this.payload), result
+            )
+        );
+        return result.get();
+    }
+
+    /**
+     * Download a file in a new session, reading it to the end.
+     *
+     * @return Bytes downloaded.
+     */
+    @Benchmark
+    public long download() {
+        final Drain drain = new Drain();
+        this.server.ftp().onConnect(new FileDownload("download.bin", drain));
+        return drain.bytes();
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.bench;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+/**
+ * Synthetic local directory tree served by embedded FTP server.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Tree {
+    /**
+     * Root directory of the tree.
+     */
+    private final transient Path root;
+
+    /**
+     * Class constructor creating temporary root directory.
+     *
+     * @throws IOException If directory cannot be created.
+     */
+    public Tree() throws IOException {
+        this.root = Files.createTempDirectory("ftp-bench");
+    }
+
+    /**
+     * Root directory of the tree.
+     *
+     * @return Root directory.
+     */
+    public Path root() {
+        return this.root;
+    }
+
+    /**
+     * Create file with random content.
+     *
+     * @param name File name relative to root.
+     * @param size File size in bytes.
+     * @return Content written.
+     * @throws IOException If file cannot be written.
+     */
+    public byte[] file(final String name, final int size) throws IOException {
+        final byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        final Path file = this.root.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+        return content;
+    }
+
+    /**
+     * Create directory with given number of empty files.
+     *
+     * @param name Directory name relative to root.
+     * @param entries Number of files in directory.
+     * @throws IOException If files cannot be created.
+     */
+    public void flat(final String name, final int entries)
+        throws IOException {
+        final Path dir = Files.createDirectories(this.root.resolve(name));
+        for (int idx = 0; idx < entries; ++idx) {
+            Files.createFile(dir.resolve(String.format("file-%06d", idx)));
+        }
+    }
+
+    /**
+     * Create tree of directories with empty files.
+     *
+     * @param name Directory name relative to root.
+     * @param depth Number of directory levels below given one.
+     * @param fanout Number of subdirectories in each directory.
+     * @param files Number of files in each directory.
+     * @throws IOException If files cannot be created.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    public void deep(final String name, final int depth, final int fanout,
+        final int files) throws IOException {
+        this.flat(name, files);
+        if (depth > 0) {
+            for (int idx = 0; idx < fanout; ++idx) {
+                this.deep(
+                    String.format("%s/dir-%d", name, idx),
+                    depth - 1, fanout, files
+                );
+            }
+        }
+    }
+
+    /**
+     * Delete the tree with its root.
+     *
+     * @throws IOException If deletion fails.
+     */
+    public void delete() throws IOException {
+        Files.walkFileTree(
+            this.root,
+            new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(final Path file,
+                    final BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+                @Override
+                public FileVisitResult postVisitDirectory(final Path dir,
+                    final IOException exc) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            }
+        );
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.bench;
+
+import com.piokot.ftp.FileSearch;
+import com.piokot.ftp.api.Filter;
+import com.piokot.ftp.mock.Conditions;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.net.ftp.FTPFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Recursive {@link FileSearch} against in-memory server with simulated
+ * round-trip latency and bandwidth.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ * @checkstyle DesignForExtensionCheck (500 lines)
+ * @checkstyle VisibilityModifierCheck (500 lines)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(
+    value = 1,
+    jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn"
+)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class WanBenchmark {
+    /**
+     * Simulated latency of every command in milliseconds.
+     */
+    @Param({"0", "20", "80"})
+    public long latency;
+    /**
+     * Simulated bandwidth in bytes per second, zero for unlimited.
+     */
+    @Param({"0", "1000000"})
+    public long bandwidth;
+    /**
+     * Running server.
+     */
+    private transient MockServer server;
+
+    /**
+     * Start server with synthetic tree.
+     *
+     * @throws Exception If it fails.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.server = new MockServer(
+            new MockTree().generate("/tree", 3, 3, 20, 1024L),
+            new Conditions().latency(this.latency).bandwidth(this.bandwidth)
+        );
+    }
+
+    /**
+     * Stop server.
+     *
+     * @throws Exception If it fails.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.server.close();
+    }
+
+    /**
+     * Search the tree recursively in a new session.
+     *
+     * @return Files found.
+     */
+    @Benchmark
+    public Iterable<String> search() {
+        final Result<Iterable<String>> result = new Result<>();
+        this.server.ftp().onConnect(
+            new FileSearch(
+                "/tree",
+                new Filter<FTPFile>() {
+                    @Override
+                    public boolean valid(final FTPFile file) {
+                        return file.getName().startsWith("file-");
+                    }
+                },
+                true,
+                result
+            )
+        );
+        return result.get();
+    }
+}
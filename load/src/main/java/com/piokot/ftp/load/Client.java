@@ -0,0 +1,325 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.load;
+
+import com.piokot.ftp.DirList;
+import com.piokot.ftp.FTP;
+import com.piokot.ftp.FileDelete;
+import com.piokot.ftp.FileDownload;
+import com.piokot.ftp.FileUpload;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.FTPCommand;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * Single load test client running mixed workload until stopped.
+ *
+ * <p>Every operation runs in its own FTP session, so sessions not released
+ * by the wrapper show up as growing server connections and descriptors.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Client implements Runnable {
+    /**
+     * Name prefix of the client's files.
+     */
+    private final transient String prefix;
+    /**
+     * FTP server connection.
+     */
+    private final transient FTP ftp;
+    /**
+     * Directory the client works in.
+     */
+    private final transient String dir;
+    /**
+     * Uploaded content, printable so that ASCII transfers keep its size.
+     */
+    private final transient byte[] payload;
+    /**
+     * Maximum number of the client's files.
+     */
+    private final transient int files;
+    /**
+     * Cumulative weights of operations.
+     */
+    private final transient int[] mix;
+    /**
+     * Statistics recorded.
+     */
+    private final transient Stats stats;
+    /**
+     * Stop flag shared by clients.
+     */
+    private final transient AtomicBoolean stop;
+    /**
+     * Files uploaded and not deleted yet.
+     */
+    private final transient List<String> existing;
+    /**
+     * Random operation and file choice.
+     */
+    private final transient Random random;
+
+    /**
+     * Class constructor.
+     *
+     * @param id Client identifier.
+     * @param server Connection to FTP server.
+     * @param cfg Load test configuration.
+     * @param stats Statistics recorded.
+     * @param flag Stop flag shared by clients.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    public Client(final int id, final FTP server, final Config cfg,
+        final Stats stats, final AtomicBoolean flag) {
+        this.prefix = String.format("load-%d-", id);
+        this.ftp = server;
+        this.dir = cfg.text("dir", ".");
+        this.payload = new byte[(int) cfg.number("size", 1L << 16)];
+        this.files = (int) cfg.number("files", 10L);
+        final int[] weights = Operation.weights(
+            cfg.text("mix", "upload=3,download=5,list=1,delete=1")
+        );
+        this.mix = new int[weights.length];
+        int sum = 0;
+        for (int idx = 0; idx < weights.length; ++idx) {
+            sum += weights[idx];
+            this.mix[idx] = sum;
+        }
+        this.stats = stats;
+        this.stop = flag;
+        this.existing = new ArrayList<>(this.files);
+        this.random = new Random(id);
+        for (int idx = 0; idx < this.payload.length; ++idx) {
+            this.payload[idx] = (byte) (
+                'a' + this.random.nextInt('z' - 'a' + 1)
+            );
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!this.stop.get()) {
+            final Operation operation = this.next();
+            final long start = System.nanoTime();
+            try {
+                this.execute(operation);
+                this.stats.success(operation, System.nanoTime() - start);
+            // @checkstyle IllegalCatchCheck (1 line)
+            } catch (final Exception ex) {
+                this.stats.failure(operation);
+            }
+        }
+    }
+
+    /**
+     * Choose next operation by weight, uploading if no file to work on.
+     *
+     * @return Operation.
+     */
+    private Operation next() {
+        final int pick = this.random.nextInt(this.mix[this.mix.length - 1]);
+        Operation operation = Operation.UPLOAD;
+        for (final Operation oper : Operation.values()) {
+            if (pick < this.mix[oper.ordinal()]) {
+                operation = oper;
+                break;
+            }
+        }
+        if ((operation == Operation.DOWNLOAD || operation == Operation.DELETE)
+            && this.existing.isEmpty()) {
+            operation = Operation.UPLOAD;
+        }
+        return operation;
+    }
+
+    /**
+     * Execute operation in a new FTP session.
+     *
+     * @param operation Operation to execute.
+     * @throws IOException If operation fails.
+     */
+    private void execute(final Operation operation) throws IOException {
+        final Outcome outcome = new Outcome(this.payload.length);
+        final FTPCommand command;
+        if (operation == Operation.UPLOAD) {
+            final String name = String.format(
+                "%s/%s%d", this.dir, this.prefix,
+                this.random.nextInt(this.files)
+            );
+            command = new FileUpload(
+                name, new ByteArrayInputStream(this.payload), outcome.flag()
+            );
+            this.ftp.onConnect(command);
+            if (!this.existing.contains(name)) {
+                this.existing.add(name);
+            }
+        } else if (operation == Operation.DOWNLOAD) {
+            command = new FileDownload(this.any(), outcome.stream());
+            this.ftp.onConnect(command);
+        } else if (operation == Operation.DELETE) {
+            final String name = this.any();
+            command = new FileDelete(name, outcome.flag());
+            this.ftp.onConnect(command);
+            this.existing.remove(name);
+        } else {
+            this.ftp.onConnect(new DirList(this.dir, outcome.listing()));
+        }
+        outcome.verify();
+    }
+
+    /**
+     * Any of the client's existing files.
+     *
+     * @return File path.
+     */
+    private String any() {
+        return this.existing.get(this.random.nextInt(this.existing.size()));
+    }
+
+    /**
+     * Outcome of an operation checked after the session ends.
+     */
+    private static final class Outcome {
+        /**
+         * Expected download size.
+         */
+        private final transient long size;
+        /**
+         * Failure description, empty if succeeded.
+         */
+        private transient String failure = "no callback";
+
+        /**
+         * Class constructor.
+         *
+         * @param expected Expected download size.
+         */
+        Outcome(final long expected) {
+            this.size = expected;
+        }
+
+        /**
+         * Callback on boolean result.
+         *
+         * @return Callback.
+         */
+        public Callback<Boolean> flag() {
+            return new Callback<Boolean>() {
+                @Override
+                public void onReturn(final Boolean type) {
+                    Outcome.this.check(type, "command returned false");
+                }
+            };
+        }
+
+        /**
+         * Callback on directory listing.
+         *
+         * @return Callback.
+         */
+        public Callback<FTPFile[]> listing() {
+            return new Callback<FTPFile[]>() {
+                @Override
+                public void onReturn(final FTPFile[] type) {
+                    Outcome.this.check(type != null, "no listing");
+                }
+            };
+        }
+
+        /**
+         * Callback on download, reading the stream to the end and closing it.
+         *
+         * @return Callback.
+         */
+        public Callback<InputStream> stream() {
+            return new Callback<InputStream>() {
+                @Override
+                @SneakyThrows
+                public void onReturn(final InputStream type) {
+                    if (type == null) {
+                        Outcome.this.check(false, "no download stream");
+                    } else {
+                        final byte[] buf = new byte[1 << 16];
+                        long total = 0L;
+                        try {
+                            int read = type.read(buf);
+                            while (read >= 0) {
+                                total += read;
+                                read = type.read(buf);
+                            }
+                        } finally {
+                            type.close();
+                        }
+                        Outcome.this.check(
+                            total == Outcome.this.size, "short download"
+                        );
+                    }
+                }
+            };
+        }
+
+        /**
+         * Throw if the operation failed.
+         *
+         * @throws IOException If operation failed.
+         */
+        public void verify() throws IOException {
+            if (!this.failure.isEmpty()) {
+                throw new IOException(this.failure);
+            }
+        }
+
+        /**
+         * Record result of the check.
+         *
+         * @param success Is check passed.
+         * @param message Failure description.
+         */
+        private void check(final boolean success, final String message) {
+            if (success) {
+                this.failure = "";
+            } else {
+                this.failure = message;
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.load;
+
+import java.util.Properties;
+
+/**
+ * Load test configuration from {@code key=value} arguments and system
+ * properties, arguments taking precedence.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Config {
+    /**
+     * Configured values.
+     */
+    private final transient Properties props;
+
+    /**
+     * Class constructor.
+     *
+     * @param args Command line arguments in {@code key=value} form.
+     */
+    public Config(final String... args) {
+        this.props = new Properties(System.getProperties());
+        for (final String arg : args) {
+            final int idx = arg.indexOf('=');
+            if (idx < 0) {
+                throw new IllegalArgumentException(
+                    String.format("expected key=value, got '%s'", arg)
+                );
+            }
+            this.props.setProperty(
+                arg.substring(0, idx).trim(), arg.substring(idx + 1).trim()
+            );
+        }
+    }
+
+    /**
+     * Text value.
+     *
+     * @param key Key of the value.
+     * @param def Default if not configured.
+     * @return Value.
+     */
+    public String text(final String key, final String def) {
+        return this.props.getProperty(key, def);
+    }
+
+    /**
+     * Numeric value.
+     *
+     * @param key Key of the value.
+     * @param def Default if not configured.
+     * @return Value.
+     */
+    public long number(final String key, final long def) {
+        return Long.parseLong(this.text(key, Long.toString(def)));
+    }
+
+    /**
+     * Is the value configured.
+     *
+     * @param key Key of the value.
+     * @return True if configured.
+     */
+    public boolean has(final String key) {
+        return this.props.getProperty(key) != null;
+    }
+}
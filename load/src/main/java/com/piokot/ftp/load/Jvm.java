@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.load;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+
+/**
+ * Heap, garbage collection, thread and descriptor usage of the JVM.
+ *
+ * <p>Heap retained after the last collection, live threads and open file
+ * descriptors growing over a soak run point at leaked streams or sessions.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Jvm {
+    /**
+     * Bytes in megabyte.
+     */
+    private static final double MEGA = 1024.0 * 1024.0;
+    /**
+     * Collections counted at previous report.
+     */
+    private transient long collections;
+    /**
+     * Collection time at previous report in milliseconds.
+     */
+    private transient long paused;
+
+    /**
+     * Report JVM usage since previous report.
+     *
+     * @return Report line.
+     */
+    public String report() {
+        long count = 0L;
+        long time = 0L;
+        for (final GarbageCollectorMXBean bean
+            : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0L, bean.getCollectionCount());
+            time += Math.max(0L, bean.getCollectionTime());
+        }
+        long retained = 0L;
+        for (final MemoryPoolMXBean pool
+            : ManagementFactory.getMemoryPoolMXBeans()) {
+            final MemoryUsage usage = pool.getCollectionUsage();
+            if (pool.getType() == MemoryType.HEAP && usage != null) {
+                retained += usage.getUsed();
+            }
+        }
+        final String line = String.format(
+            "heap=%.1fMB retained=%.1fMB gc=%d/%dms threads=%d fds=%s",
+            ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+                .getUsed() / Jvm.MEGA,
+            retained / Jvm.MEGA,
+            count - this.collections, time - this.paused,
+            ManagementFactory.getThreadMXBean().getThreadCount(),
+            Jvm.descriptors()
+        );
+        this.collections = count;
+        this.paused = time;
+        return line;
+    }
+
+    /**
+     * Open file descriptors, if the platform reports them.
+     *
+     * @return Number of open descriptors or "n/a".
+     */
+    private static String descriptors() {
+        final OperatingSystemMXBean bean =
+            ManagementFactory.getOperatingSystemMXBean();
+        final String fds;
+        if (bean instanceof UnixOperatingSystemMXBean) {
+            fds = Long.toString(
+                ((UnixOperatingSystemMXBean) bean).getOpenFileDescriptorCount()
+            );
+        } else {
+            fds = "n/a";
+        }
+        return fds;
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.load;
+
+import com.google.common.base.Optional;
+import com.piokot.ftp.FTP;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Load and soak test running concurrent clients with mixed workload.
+ *
+ * <p>Configured with {@code key=value} arguments or system properties:
+ * <ul>
+ *  <li>{@code clients} - number of concurrent clients, 100 by default,</li>
+ *  <li>{@code duration} - run time in seconds, 60 by default,</li>
+ *  <li>{@code interval} - report interval in seconds, 10 by default,</li>
+ *  <li>{@code mix} - operation weights, by default
+ *  {@code upload=3,download=5,list=1,delete=1},</li>
+ *  <li>{@code size} - uploaded file size in bytes, 65536 by default,</li>
+ *  <li>{@code files} - maximum number of files per client, 10 by default,</li>
+ *  <li>{@code dir} - remote working directory, "." by default,</li>
+ *  <li>{@code host}, {@code port}, {@code user}, {@code password} - FTP
+ *  server to load; without host a local FtpServer is started serving
+ *  {@code home} directory.</li>
+ * </ul>
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class LoadTest {
+    /**
+     * Configuration.
+     */
+    private final transient Config cfg;
+
+    /**
+     * Class constructor.
+     *
+     * @param config Configuration.
+     */
+    public LoadTest(final Config config) {
+        this.cfg = config;
+    }
+
+    /**
+     * Run load test from command line.
+     *
+     * @param args Arguments in {@code key=value} form.
+     * @throws Exception If it fails.
+     */
+    public static void main(final String... args) throws Exception {
+        final long errors = new LoadTest(new Config(args)).run();
+        if (errors > 0L) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Run clients for configured duration, reporting periodically.
+     *
+     * @return Total number of failed operations.
+     * @throws Exception If it fails.
+     */
+    public long run() throws Exception {
+        final int clients = (int) this.cfg.number("clients", 100L);
+        final long interval = this.cfg.number("interval", 10L);
+        final Optional<Server> local;
+        if (this.cfg.has("host")) {
+            local = Optional.absent();
+        } else {
+            local = Optional.of(
+                new Server(
+                    Paths.get(
+                        this.cfg.text(
+                            "home",
+                            Files.createTempDirectory("ftp-load").toString()
+                        )
+                    ),
+                    this.cfg, clients * 2
+                )
+            );
+        }
+        final Stats stats = new Stats();
+        final Jvm jvm = new Jvm();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final ExecutorService pool = Executors.newFixedThreadPool(clients);
+        final ScheduledExecutorService reporter =
+            Executors.newSingleThreadScheduledExecutor();
+        final long start = System.nanoTime();
+        for (int idx = 0; idx < clients; ++idx) {
+            pool.submit(
+                new Client(idx, this.ftp(local), this.cfg, stats, stop)
+            );
+        }
+        reporter.scheduleAtFixedRate(
+            new Runnable() {
+                @Override
+                public void run() {
+                    LoadTest.print(
+                        String.format(
+                            "t=%ds %s server=%s%n%s",
+                            TimeUnit.NANOSECONDS.toSeconds(
+                                System.nanoTime() - start
+                            ),
+                            jvm.report(),
+                            LoadTest.connections(local),
+                            stats.interval(interval)
+                        )
+                    );
+                }
+            },
+            interval, interval, TimeUnit.SECONDS
+        );
+        TimeUnit.SECONDS.sleep(this.cfg.number("duration", 60L));
+        stop.set(true);
+        pool.shutdown();
+        pool.awaitTermination(1L, TimeUnit.MINUTES);
+        reporter.shutdown();
+        reporter.awaitTermination(1L, TimeUnit.MINUTES);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        stats.interval(interval);
+        LoadTest.print(
+            String.format(
+                "total %.0fs %s server=%s%n%s", seconds, jvm.report(),
+                LoadTest.connections(local), stats.total(seconds)
+            )
+        );
+        if (local.isPresent()) {
+            local.get().stop();
+        }
+        return stats.errors();
+    }
+
+    /**
+     * FTP connection of a single client.
+     *
+     * @param local Local server, if started.
+     * @return FTP connection.
+     */
+    private FTP ftp(final Optional<Server> local) {
+        final FTP ftp;
+        if (local.isPresent()) {
+            ftp = new FTP(
+                "localhost", local.get().port(),
+                this.cfg.text("user", "load"), this.cfg.text("password", "load")
+            );
+        } else {
+            ftp = new FTP(
+                this.cfg.text("host", "localhost"),
+                (int) this.cfg.number("port", 21L),
+                this.cfg.text("user", "anonymous"),
+                this.cfg.text("password", "")
+            );
+        }
+        return ftp;
+    }
+
+    /**
+     * Connections open on local server.
+     *
+     * @param local Local server, if started.
+     * @return Connections and logins or "n/a" for remote server.
+     */
+    private static String connections(final Optional<Server> local) {
+        final String conns;
+        if (local.isPresent()) {
+            conns = local.get().connections();
+        } else {
+            conns = "n/a";
+        }
+        return conns;
+    }
+
+    /**
+     * Print report.
+     *
+     * @param report Report text.
+     */
+    private static void print(final String report) {
+        System.out.print(report);
+        System.out.flush();
+    }
+}
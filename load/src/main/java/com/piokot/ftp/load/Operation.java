@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.load;
+
+import java.util.Locale;
+
+/**
+ * Operation of the mixed workload.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public enum Operation {
+    /**
+     * Upload of a client's file with {@link com.piokot.ftp.FileUpload}.
+     */
+    UPLOAD,
+    /**
+     * Download of a client's file with {@link com.piokot.ftp.FileDownload}.
+     */
+    DOWNLOAD,
+    /**
+     * Listing of the working directory with {@link com.piokot.ftp.DirList}.
+     */
+    LIST,
+    /**
+     * Deletion of a client's file with {@link com.piokot.ftp.FileDelete}.
+     */
+    DELETE;
+
+    /**
+     * Weights of operations in the mix.
+     *
+     * @param mix Mix like {@code upload=3,download=5,list=1,delete=1}.
+     * @return Weights indexed by operation ordinal.
+     */
+    public static int[] weights(final String mix) {
+        final int[] weights = new int[Operation.values().length];
+        for (final String part : mix.split(",")) {
+            final String[] pair = part.split("=");
+            final Operation operation = Operation.valueOf(
+                pair[0].trim().toUpperCase(Locale.ENGLISH)
+            );
+            weights[operation.ordinal()] = Integer.parseInt(pair[1].trim());
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.load;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpStatistics;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.impl.DefaultFtpServer;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+
+/**
+ * Local Apache FtpServer the load is generated against.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Server {
+    /**
+     * Port the server listens on.
+     */
+    private final transient int prt;
+    /**
+     * Running server.
+     */
+    private final transient DefaultFtpServer server;
+
+    /**
+     * Class constructor starting the server.
+     *
+     * @param home Home directory of the user.
+     * @param cfg Load test configuration with user and password.
+     * @param logins Maximum number of concurrent logins.
+     * @throws IOException If no free port found.
+     * @throws FtpException If server fails to start.
+     */
+    public Server(final Path home, final Config cfg, final int logins)
+        throws IOException, FtpException {
+        try (final ServerSocket socket = new ServerSocket(0)) {
+            this.prt = socket.getLocalPort();
+        }
+        final UserManager manager = new PropertiesUserManagerFactory()
+            .createUserManager();
+        final BaseUser user = new BaseUser();
+        user.setName(cfg.text("user", "load"));
+        user.setPassword(cfg.text("password", "load"));
+        user.setHomeDirectory(Files.createDirectories(home).toString());
+        user.setAuthorities(
+            Arrays.<Authority>asList(
+                new WritePermission(),
+                new ConcurrentLoginPermission(logins, logins)
+            )
+        );
+        manager.save(user);
+        final ConnectionConfigFactory conn = new ConnectionConfigFactory();
+        conn.setMaxLogins(logins);
+        conn.setMaxThreads(logins);
+        final ListenerFactory listener = new ListenerFactory();
+        listener.setPort(this.prt);
+        final FtpServerFactory factory = new FtpServerFactory();
+        factory.setUserManager(manager);
+        factory.setConnectionConfig(conn.createConnectionConfig());
+        factory.addListener("default", listener.createListener());
+        this.server = (DefaultFtpServer) factory.createServer();
+        this.server.start();
+    }
+
+    /**
+     * Port the server listens on.
+     *
+     * @return Port number.
+     */
+    public int port() {
+        return this.prt;
+    }
+
+    /**
+     * Connections currently open on the server.
+     *
+     * @return Open connections and logged in sessions.
+     */
+    public String connections() {
+        final FtpStatistics stats = this.server.getServerContext()
+            .getFtpStatistics();
+        return String.format(
+            "%d/%d",
+            stats.getCurrentConnectionNumber(), stats.getCurrentLoginNumber()
+        );
+    }
+
+    /**
+     * Stop the server.
+     */
+    public void stop() {
+        this.server.stop();
+    }
+}
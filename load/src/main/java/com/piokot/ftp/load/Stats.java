@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.load;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latencies and errors of operations, per reporting interval and in total.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Stats {
+    /**
+     * Significant decimal digits of recorded latencies.
+     */
+    private static final int DIGITS = 3;
+    /**
+     * Latency recorders per operation.
+     */
+    private final transient Recorder[] recorders;
+    /**
+     * Total latency histograms per operation.
+     */
+    private final transient Histogram[] totals;
+    /**
+     * Errors per operation within current interval.
+     */
+    private final transient AtomicLongArray errors;
+    /**
+     * Total errors per operation.
+     */
+    private final transient long[] failed;
+
+    /**
+     * Class constructor.
+     */
+    public Stats() {
+        final int ops = Operation.values().length;
+        this.recorders = new Recorder[ops];
+        this.totals = new Histogram[ops];
+        for (int idx = 0; idx < ops; ++idx) {
+            this.recorders[idx] = new Recorder(Stats.DIGITS);
+            this.totals[idx] = new Histogram(Stats.DIGITS);
+        }
+        this.errors = new AtomicLongArray(ops);
+        this.failed = new long[ops];
+    }
+
+    /**
+     * Record successful operation.
+     *
+     * @param operation Operation executed.
+     * @param nanos Latency in nanoseconds.
+     */
+    public void success(final Operation operation, final long nanos) {
+        this.recorders[operation.ordinal()].recordValue(nanos);
+    }
+
+    /**
+     * Record failed operation.
+     *
+     * @param operation Operation executed.
+     */
+    public void failure(final Operation operation) {
+        this.errors.incrementAndGet(operation.ordinal());
+    }
+
+    /**
+     * Report operations of the interval that just ended and reset it.
+     *
+     * @param seconds Length of the interval in seconds.
+     * @return Report lines, one per operation.
+     */
+    public synchronized String interval(final double seconds) {
+        final StringBuilder text = new StringBuilder(0);
+        for (final Operation operation : Operation.values()) {
+            final int idx = operation.ordinal();
+            final Histogram hist = this.recorders[idx].getIntervalHistogram();
+            final long errs = this.errors.getAndSet(idx, 0L);
+            this.totals[idx].add(hist);
+            this.failed[idx] += errs;
+            text.append(Stats.line(operation, hist, errs, seconds));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Report operations of the whole run.
+     *
+     * @param seconds Length of the run in seconds.
+     * @return Report lines, one per operation.
+     */
+    public synchronized String total(final double seconds) {
+        final StringBuilder text = new StringBuilder(0);
+        for (final Operation operation : Operation.values()) {
+            final int idx = operation.ordinal();
+            text.append(
+                Stats.line(
+                    operation, this.totals[idx], this.failed[idx], seconds
+                )
+            );
+        }
+        return text.toString();
+    }
+
+    /**
+     * Total number of errors of the whole run.
+     *
+     * @return Errors.
+     */
+    public synchronized long errors() {
+        long sum = 0L;
+        for (final long errs : this.failed) {
+            sum += errs;
+        }
+        return sum;
+    }
+
+    /**
+     * Report line of an operation.
+     *
+     * @param operation Operation reported.
+     * @param hist Latencies of successful executions.
+     * @param errs Number of failed executions.
+     * @param seconds Length of reported period in seconds.
+     * @return Report line.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    private static String line(final Operation operation, final Histogram hist,
+        final long errs, final double seconds) {
+        final long count = hist.getTotalCount();
+        final double rate;
+        if (count + errs == 0L) {
+            rate = 0.0;
+        } else {
+            rate = (double) errs / (count + errs);
+        }
+        return String.format(
+            new StringBuilder(0)
+                .append("  %-8s n=%-9d ops/s=%-9.1f p50=%-8.2f p99=%-8.2f")
+                .append(" p999=%-8.2f max=%-8.2f err=%d (%.2f%%)%n")
+                .toString(),
+            operation, count, count / seconds,
+            Stats.millis(hist.getValueAtPercentile(50.0)),
+            Stats.millis(hist.getValueAtPercentile(99.0)),
+            Stats.millis(hist.getValueAtPercentile(99.9)),
+            Stats.millis(hist.getMaxValue()),
+            errs, rate * 100.0
+        );
+    }
+
+    /**
+     * Nanoseconds in milliseconds.
+     *
+     * @param nanos Nanoseconds.
+     * @return Milliseconds.
+     */
+    private static double millis(final long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1L);
+    }
+}
@@ -0,0 +1,404 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPConnectionClosedException;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Adaptive limit of sessions open at once per host.
+ *
+ * <p>Learns how many sessions each server accepts with additive increase
+ * and multiplicative decrease. The limit grows by one per window of
+ * sessions opened while all allowed sessions were busy, stops growing when
+ * connect and login time exceeds twice the best seen, and halves whenever
+ * the server refuses a session with 421, or with 530 after the same
+ * credentials were accepted before. Refused sessions wait for a free slot
+ * and are retried.
+ *
+ * <p>One instance is meant to be shared by all {@link FTP} wrappers, so
+ * that parallel transfers and searches to a host respect the same limit.
+ * Learned limits are kept per host for the lifetime of the instance and,
+ * if a file is given, saved there and loaded on the next start.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Adaptive {
+    /**
+     * Attempts to open a session.
+     */
+    private static final int ATTEMPTS = 6;
+    /**
+     * Backoff after first refusal in milliseconds.
+     */
+    private static final long BACKOFF = 50L;
+    /**
+     * Limit of newly seen host.
+     */
+    private final transient int initial;
+    /**
+     * Upper bound of any limit.
+     */
+    private final transient int max;
+    /**
+     * File keeping learned limits, if any.
+     */
+    private final transient Optional<Path> file;
+    /**
+     * Limits per host and port.
+     */
+    private final transient ConcurrentMap<String, Adaptive.Limit> hosts;
+
+    /**
+     * Class constructor starting with 2 sessions per host, at most 64.
+     */
+    public Adaptive() {
+        this(2, 64);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param start Limit of newly seen host.
+     * @param bound Upper bound of any limit.
+     */
+    public Adaptive(final int start, final int bound) {
+        this(start, bound, Optional.<Path>absent());
+    }
+
+    /**
+     * Class constructor keeping learned limits in a file.
+     *
+     * @param start Limit of newly seen host.
+     * @param bound Upper bound of any limit.
+     * @param limits Properties file with limits, created if missing.
+     */
+    public Adaptive(final int start, final int bound, final Path limits) {
+        this(start, bound, Optional.of(limits));
+    }
+
+    /**
+     * Primary class constructor.
+     *
+     * @param start Limit of newly seen host.
+     * @param bound Upper bound of any limit.
+     * @param limits Properties file with limits, if any.
+     */
+    @SneakyThrows
+    private Adaptive(final int start, final int bound,
+        final Optional<Path> limits) {
+        this.initial = start;
+        this.max = bound;
+        this.file = limits;
+        this.hosts = new ConcurrentHashMap<>();
+        if (limits.isPresent() && Files.exists(limits.get())) {
+            final Properties saved = new Properties();
+            try (final Reader reader =
+                Files.newBufferedReader(limits.get(), Charsets.UTF_8)) {
+                saved.load(reader);
+            }
+            for (final String host : saved.stringPropertyNames()) {
+                this.hosts.put(
+                    host,
+                    new Adaptive.Limit(
+                        Math.min(
+                            bound,
+                            Math.max(
+                                1, Integer.parseInt(saved.getProperty(host))
+                            )
+                        )
+                    )
+                );
+            }
+        }
+    }
+
+    /**
+     * Current limit of sessions to host.
+     *
+     * @param host Hostname.
+     * @param port Port.
+     * @return Sessions allowed at once.
+     */
+    public int limit(final String host, final int port) {
+        return this.of(Adaptive.key(host, port)).allowed();
+    }
+
+    /**
+     * Connect and log in once the limit allows, retrying refused sessions.
+     * Every successful call must be followed by {@link #close(String, int)}.
+     *
+     * @param client Apache FTP client to connect.
+     * @param host Hostname.
+     * @param port Port.
+     * @param user User logging in.
+     * @param password User password.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    @SneakyThrows
+    void open(final FTPClient client, final String host, final int port,
+        final String user, final String password) {
+        final String key = Adaptive.key(host, port);
+        final Adaptive.Limit limit = this.of(key);
+        boolean opened = false;
+        int reply = 0;
+        for (int attempt = 0; !opened && attempt < Adaptive.ATTEMPTS;
+            ++attempt) {
+            if (attempt > 0) {
+                TimeUnit.MILLISECONDS.sleep(Adaptive.BACKOFF << attempt);
+            }
+            limit.acquire();
+            final long start = System.nanoTime();
+            try {
+                client.connect(host, port);
+                opened = client.login(user, password);
+                reply = client.getReplyCode();
+            } catch (final FTPConnectionClosedException ex) {
+                reply = FTPReply.SERVICE_NOT_AVAILABLE;
+            } finally {
+                if (opened) {
+                    limit.opened(System.nanoTime() - start);
+                } else {
+                    limit.release();
+                    if (client.isConnected()) {
+                        client.disconnect();
+                    }
+                }
+            }
+            if (!opened && !limit.refused(reply)) {
+                break;
+            }
+            if (limit.changed()) {
+                this.save();
+            }
+        }
+        if (!opened) {
+            throw new IllegalStateException(
+                String.format("session to %s refused with %d", key, reply)
+            );
+        }
+    }
+
+    /**
+     * Free the slot of a session opened by
+     * {@link #open(FTPClient, String, int, String, String)}.
+     *
+     * @param host Hostname.
+     * @param port Port.
+     */
+    void close(final String host, final int port) {
+        this.of(Adaptive.key(host, port)).release();
+    }
+
+    /**
+     * Limit of host, created if new.
+     *
+     * @param key Host and port.
+     * @return Limit.
+     */
+    private Adaptive.Limit of(final String key) {
+        Adaptive.Limit limit = this.hosts.get(key);
+        if (limit == null) {
+            this.hosts.putIfAbsent(key, new Adaptive.Limit(this.initial));
+            limit = this.hosts.get(key);
+        }
+        return limit;
+    }
+
+    /**
+     * Save learned limits, if kept in a file.
+     */
+    @SneakyThrows
+    private synchronized void save() {
+        if (this.file.isPresent()) {
+            final Properties saved = new Properties();
+            for (final Map.Entry<String, Adaptive.Limit> entry
+                : this.hosts.entrySet()) {
+                saved.setProperty(
+                    entry.getKey(), Integer.toString(entry.getValue().allowed())
+                );
+            }
+            final Path path = this.file.get().toAbsolutePath();
+            final Path temp = Files.createTempFile(
+                path.getParent(), path.getFileName().toString(), ".tmp"
+            );
+            try (final Writer writer =
+                Files.newBufferedWriter(temp, Charsets.UTF_8)) {
+                saved.store(writer, "FTP sessions allowed per host");
+            }
+            Files.move(
+                temp, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            );
+        }
+    }
+
+    /**
+     * Key of host.
+     *
+     * @param host Hostname.
+     * @param port Port.
+     * @return Host and port.
+     */
+    private static String key(final String host, final int port) {
+        return String.format("%s:%d", host, port);
+    }
+
+    /**
+     * Limit of sessions to one host.
+     */
+    private final class Limit {
+        /**
+         * Sessions allowed, fractional between increases.
+         */
+        private transient double window;
+        /**
+         * Sessions open or opening.
+         */
+        private transient int active;
+        /**
+         * Did the last acquired slot fill the window.
+         */
+        private transient boolean saturated;
+        /**
+         * Best connect and login time in nanoseconds, zero if unknown.
+         */
+        private transient long best;
+        /**
+         * Were the credentials accepted before.
+         */
+        private transient boolean trusted;
+        /**
+         * Whole sessions allowed when last asked if changed.
+         */
+        private transient int reported;
+
+        /**
+         * Class constructor.
+         *
+         * @param start Sessions allowed.
+         */
+        Limit(final int start) {
+            this.window = start;
+            this.reported = start;
+        }
+
+        /**
+         * Sessions allowed.
+         *
+         * @return Whole sessions, at least one.
+         */
+        public synchronized int allowed() {
+            return Math.max(1, (int) this.window);
+        }
+
+        /**
+         * Wait for a free slot and take it.
+         *
+         * @throws InterruptedException If interrupted while waiting.
+         */
+        public synchronized void acquire() throws InterruptedException {
+            while (this.active >= this.allowed()) {
+                this.wait();
+            }
+            ++this.active;
+            this.saturated = this.active >= this.allowed();
+        }
+
+        /**
+         * Record session opened, growing the window if it was full and
+         * connect time is not congested.
+         *
+         * @param nanos Connect and login time in nanoseconds.
+         */
+        public synchronized void opened(final long nanos) {
+            this.trusted = true;
+            if (this.best == 0L || nanos < this.best) {
+                this.best = nanos;
+            }
+            if (this.saturated && nanos <= 2L * this.best) {
+                this.window = Math.min(
+                    Adaptive.this.max, this.window + 1.0 / this.allowed()
+                );
+            }
+        }
+
+        /**
+         * Record session refused, halving the window on congestion.
+         *
+         * @param reply Reply code of refusal.
+         * @return True if the refusal means congestion, worth a retry.
+         */
+        public synchronized boolean refused(final int reply) {
+            final boolean congestion = reply == FTPReply.SERVICE_NOT_AVAILABLE
+                || reply == FTPReply.NOT_LOGGED_IN && this.trusted;
+            if (congestion) {
+                this.window = Math.max(1.0, this.window / 2.0);
+            }
+            return congestion;
+        }
+
+        /**
+         * Free a slot.
+         */
+        public synchronized void release() {
+            --this.active;
+            this.notifyAll();
+        }
+
+        /**
+         * Did whole sessions allowed change since last asked.
+         *
+         * @return True if changed.
+         */
+        public synchronized boolean changed() {
+            final int now = this.allowed();
+            final boolean changed = now != this.reported;
+            this.reported = now;
+            return changed;
+        }
+    }
+}
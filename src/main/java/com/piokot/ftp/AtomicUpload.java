@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.Callback;
+import java.io.InputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * FTP Command for uploading a file so that it appears complete or not at
+ * all.
+ *
+ * <p>Content is stored under a hidden temporary name in the destination
+ * directory and renamed with RNFR/RNTO once the transfer completes.
+ * Consumers listing the directory never see a partial file. Servers that
+ * refuse to rename over an existing file get it renamed aside first and
+ * deleted after the new one is in place, which leaves a short moment
+ * without the file but never a partial one; if the new file cannot be put
+ * in place, the old one is renamed back. On failure the temporary file is
+ * removed.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class AtomicUpload extends AbstractFTPCommand<Boolean> {
+    /**
+     * Remote destination for upload.
+     */
+    private final transient String dst;
+    /**
+     * Local resource to upload.
+     */
+    private final transient InputStream src;
+
+    /**
+     * Class constructor.
+     *
+     * @param remote Remote destination of the resource.
+     * @param local Local resource to upload.
+     * @param callback Callback after upload and rename.
+     */
+    public AtomicUpload(final String remote, final InputStream local,
+        final Callback<Boolean> callback) {
+        super(callback);
+        this.dst = remote;
+        this.src = local;
+    }
+
+    @Override
+    @SneakyThrows
+    public Boolean ftpCall(final FTPClient client) {
+        final String temp = AtomicUpload.temp(this.dst);
+        boolean done = client.storeFile(temp, this.src);
+        if (done) {
+            done = AtomicUpload.rename(client, temp, this.dst);
+        }
+        if (!done) {
+            client.deleteFile(temp);
+        }
+        return done;
+    }
+
+    /**
+     * Hidden temporary name next to destination.
+     *
+     * @param remote Remote destination.
+     * @return Temporary remote path in the same directory.
+     */
+    static String temp(final String remote) {
+        final int slash = remote.lastIndexOf('/');
+        return String.format(
+            "%s.%s.%x.part", remote.substring(0, slash + 1),
+            remote.substring(slash + 1),
+            ThreadLocalRandom.current().nextLong()
+        );
+    }
+
+    /**
+     * Rename temporary file to destination, replacing existing file.
+     *
+     * <p>If the server refuses to rename over the destination, the
+     * destination is first renamed aside, then replaced and deleted. Should
+     * the second rename fail too, it is renamed back, so the destination is
+     * never lost because of a refusal.
+     *
+     * @param client Apache FTP client.
+     * @param temp Temporary remote path.
+     * @param remote Remote destination.
+     * @return True if renamed.
+     */
+    @SneakyThrows
+    static boolean rename(final FTPClient client, final String temp,
+        final String remote) {
+        boolean renamed = client.rename(temp, remote);
+        if (!renamed) {
+            final String aside = AtomicUpload.temp(remote);
+            if (client.rename(remote, aside)) {
+                renamed = client.rename(temp, remote);
+                if (renamed) {
+                    client.deleteFile(aside);
+                } else {
+                    client.rename(aside, remote);
+                }
+            }
+        }
+        return renamed;
+    }
+}
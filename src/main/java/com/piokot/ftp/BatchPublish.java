@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.FTPCommand;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * Batch of files published at full parallel throughput.
+ *
+ * <p>All files are first uploaded in parallel sessions under hidden
+ * temporary names, as {@link AtomicUpload} does. Only when every upload
+ * succeeded are they renamed to their destinations, one after another
+ * over a single session, so that the batch appears within a few
+ * round-trips. If any upload fails, temporary files are deleted and
+ * nothing is published. If a rename fails, publishing stops there: the
+ * rest of temporary files are deleted and the failure names the files
+ * already published.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class BatchPublish {
+    /**
+     * FTP to open sessions with.
+     */
+    private final transient FTP ftp;
+    /**
+     * Number of upload sessions.
+     */
+    private final transient int lanes;
+
+    /**
+     * Class constructor.
+     *
+     * @param target FTP to open sessions with.
+     * @param sessions Number of upload sessions.
+     */
+    public BatchPublish(final FTP target, final int sessions) {
+        this.ftp = target;
+        this.lanes = sessions;
+    }
+
+    /**
+     * Upload and publish files.
+     *
+     * @param files Local resources by remote destination, in publish order.
+     * @throws IllegalStateException If any upload or rename fails.
+     */
+    public void publish(final Map<String, InputStream> files) {
+        final Map<String, String> temps = new LinkedHashMap<>(files.size());
+        final ConcurrentMap<String, Boolean> stored =
+            new ConcurrentHashMap<>(files.size());
+        final List<FTPCommand> uploads = new ArrayList<>(files.size());
+        for (final Map.Entry<String, InputStream> file : files.entrySet()) {
+            final String temp = AtomicUpload.temp(file.getKey());
+            temps.put(file.getKey(), temp);
+            uploads.add(
+                new FTPCommand() {
+                    @Override
+                    @SneakyThrows
+                    public void execute(final FTPClient client) {
+                        if (client.storeFile(temp, file.getValue())) {
+                            stored.put(temp, true);
+                        }
+                    }
+                }
+            );
+        }
+        try {
+            new FanOut(this.lanes, this.ftp).onConnect(
+                uploads.toArray(new FTPCommand[uploads.size()])
+            );
+        } finally {
+            if (stored.size() < files.size()) {
+                this.ftp.onConnect(new BatchPublish.Cleanup(stored.keySet()));
+            }
+        }
+        if (stored.size() < files.size()) {
+            throw new IllegalStateException(
+                String.format(
+                    "%d of %d uploads failed, nothing published",
+                    files.size() - stored.size(), files.size()
+                )
+            );
+        }
+        this.ftp.onConnect(new BatchPublish.Commit(temps));
+    }
+
+    /**
+     * Command deleting temporary files.
+     */
+    private static final class Cleanup implements FTPCommand {
+        /**
+         * Temporary remote paths.
+         */
+        private final transient Iterable<String> temps;
+
+        /**
+         * Class constructor.
+         *
+         * @param files Temporary remote paths.
+         */
+        Cleanup(final Iterable<String> files) {
+            this.temps = files;
+        }
+
+        @Override
+        @SneakyThrows
+        public void execute(final FTPClient client) {
+            for (final String temp : this.temps) {
+                client.deleteFile(temp);
+            }
+        }
+    }
+
+    /**
+     * Command renaming temporary files to destinations.
+     */
+    private static final class Commit implements FTPCommand {
+        /**
+         * Temporary remote paths by destination.
+         */
+        private final transient Map<String, String> temps;
+
+        /**
+         * Class constructor.
+         *
+         * @param files Temporary remote paths by destination.
+         */
+        Commit(final Map<String, String> files) {
+            this.temps = files;
+        }
+
+        @Override
+        @SneakyThrows
+        public void execute(final FTPClient client) {
+            final List<String> published = new ArrayList<>(this.temps.size());
+            final Iterator<Map.Entry<String, String>> files =
+                this.temps.entrySet().iterator();
+            while (files.hasNext()) {
+                final Map.Entry<String, String> file = files.next();
+                if (!AtomicUpload.rename(
+                    client, file.getValue(), file.getKey()
+                )) {
+                    client.deleteFile(file.getValue());
+                    while (files.hasNext()) {
+                        client.deleteFile(files.next().getValue());
+                    }
+                    throw new IllegalStateException(
+                        String.format(
+                            "cannot publish %s, published only %s",
+                            file.getKey(), published
+                        )
+                    );
+                }
+                published.add(file.getKey());
+            }
+        }
+    }
+}
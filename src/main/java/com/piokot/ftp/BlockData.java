@@ -0,0 +1,426 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Optional;
+import com.google.common.io.ByteStreams;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.io.FromNetASCIIInputStream;
+import org.apache.commons.net.io.ToNetASCIIOutputStream;
+
+/**
+ * Data connection of a session in block mode, kept open across transfers.
+ *
+ * <p>Each transfer is sent as blocks with a three byte header of
+ * descriptor and byte count, ending with a block marked EOF, so the
+ * connection need not be closed to end it. A retrieval not completed by
+ * the caller is completed before the next transfer. The first transfer
+ * opens it in the client's data connection mode, and later ones go over it
+ * without another PASV or PORT, connect and teardown. When the server
+ * closes it, reply 226 or a failure, the next transfer opens a new one.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+final class BlockData {
+    /**
+     * Descriptor bit of last block of transfer.
+     */
+    private static final int EOF = 64;
+    /**
+     * Descriptor bit of restart marker block.
+     */
+    private static final int MARKER = 16;
+    /**
+     * Largest block.
+     */
+    private static final int MAX = 65535;
+    /**
+     * Size of buffers of data connection.
+     */
+    private static final int BUFFER = 65536;
+    /**
+     * Reply closing data connection.
+     */
+    private static final int CLOSING = 226;
+    /**
+     * Client of the session.
+     */
+    private final transient FTPClient client;
+    /**
+     * Data connection, if open.
+     */
+    private transient Optional<Socket> socket;
+    /**
+     * Retrieval whose reply is not read yet.
+     */
+    private transient Optional<BlockData.Input> pending;
+
+    /**
+     * Class constructor.
+     *
+     * @param owner Client of the session, already in block mode.
+     */
+    BlockData(final FTPClient owner) {
+        this.client = owner;
+        this.socket = Optional.absent();
+        this.pending = Optional.absent();
+    }
+
+    /**
+     * Start retrieving file. The transfer must be completed with
+     * {@link #complete()}.
+     *
+     * @param remote Remote file.
+     * @param ascii Is ASCII file type set.
+     * @return Content, absent if retrieval was refused.
+     * @throws IOException If connection fails.
+     */
+    Optional<InputStream> retrieve(final String remote, final boolean ascii)
+        throws IOException {
+        this.settle();
+        final Optional<Socket> data = this.start("RETR", remote);
+        Optional<InputStream> content = Optional.absent();
+        if (data.isPresent()) {
+            final BlockData.Input input = new BlockData.Input(
+                new BufferedInputStream(
+                    data.get().getInputStream(), BlockData.BUFFER
+                )
+            );
+            this.pending = Optional.of(input);
+            if (ascii) {
+                content = Optional.<InputStream>of(
+                    new FromNetASCIIInputStream(input)
+                );
+            } else {
+                content = Optional.<InputStream>of(input);
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Store file.
+     *
+     * @param remote Remote file.
+     * @param local Content, not closed.
+     * @param ascii Is ASCII file type set.
+     * @return True if stored.
+     * @throws IOException If connection fails.
+     */
+    boolean store(final String remote, final InputStream local,
+        final boolean ascii) throws IOException {
+        this.settle();
+        final Optional<Socket> data = this.start("STOR", remote);
+        boolean stored = false;
+        if (data.isPresent()) {
+            try {
+                final BlockData.Output output = new BlockData.Output(
+                    new BufferedOutputStream(
+                        data.get().getOutputStream(), BlockData.BUFFER
+                    )
+                );
+                if (ascii) {
+                    final OutputStream converted = new ToNetASCIIOutputStream(
+                        new BufferedOutputStream(output, BlockData.BUFFER)
+                    );
+                    ByteStreams.copy(local, converted);
+                    converted.flush();
+                } else {
+                    ByteStreams.copy(local, output);
+                }
+                output.finish();
+            } catch (final IOException ex) {
+                this.close();
+                throw ex;
+            }
+            stored = this.reply();
+        }
+        return stored;
+    }
+
+    /**
+     * Is a retrieval waiting for completion.
+     *
+     * @return True if pending.
+     */
+    boolean waiting() {
+        return this.pending.isPresent();
+    }
+
+    /**
+     * Complete pending retrieval, reading the rest of its data.
+     *
+     * @return True if the transfer succeeded.
+     * @throws IOException If connection fails.
+     */
+    boolean complete() throws IOException {
+        final BlockData.Input input = this.pending.get();
+        this.pending = Optional.absent();
+        try {
+            input.close();
+        } catch (final IOException ex) {
+            this.close();
+        }
+        return this.reply();
+    }
+
+    /**
+     * Close data connection.
+     *
+     * @throws IOException If closing fails.
+     */
+    void close() throws IOException {
+        if (this.socket.isPresent()) {
+            final Socket open = this.socket.get();
+            this.socket = Optional.absent();
+            open.close();
+        }
+    }
+
+    /**
+     * Complete pending retrieval, if any.
+     *
+     * @throws IOException If connection fails.
+     */
+    private void settle() throws IOException {
+        if (this.pending.isPresent()) {
+            this.complete();
+        }
+    }
+
+    /**
+     * Send transfer command, over open data connection or a new one.
+     *
+     * @param command Transfer command.
+     * @param arg File.
+     * @return Data connection, absent if transfer was refused.
+     * @throws IOException If connection fails.
+     */
+    private Optional<Socket> start(final String command, final String arg)
+        throws IOException {
+        if (this.socket.isPresent() && this.socket.get().isClosed()) {
+            this.socket = Optional.absent();
+        }
+        Optional<Socket> started = Optional.absent();
+        if (this.socket.isPresent()) {
+            if (FTPReply.isPositivePreliminary(
+                this.client.sendCommand(command, arg)
+            )) {
+                started = this.socket;
+            }
+        } else {
+            final Optional<DataConnection.Pending> data =
+                DataConnection.connect(this.client);
+            if (data.isPresent()) {
+                this.socket = data.get().transfer(this.client, command, arg);
+                started = this.socket;
+            }
+        }
+        return started;
+    }
+
+    /**
+     * Read transfer reply, forgetting the connection if server closed it.
+     *
+     * @return True if transfer succeeded.
+     * @throws IOException If connection fails.
+     */
+    private boolean reply() throws IOException {
+        final int reply = this.client.getReply();
+        if (reply == BlockData.CLOSING
+            || !FTPReply.isPositiveCompletion(reply)) {
+            this.close();
+        }
+        return FTPReply.isPositiveCompletion(reply);
+    }
+
+    /**
+     * Content of one transfer, ending at EOF block.
+     */
+    private static final class Input extends InputStream {
+        /**
+         * Input of data connection.
+         */
+        private final transient InputStream origin;
+        /**
+         * Bytes left in current block.
+         */
+        private transient int left;
+        /**
+         * Is current block last.
+         */
+        private transient boolean last;
+
+        /**
+         * Class constructor.
+         *
+         * @param stream Input of data connection.
+         */
+        Input(final InputStream stream) {
+            super();
+            this.origin = stream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] one = new byte[1];
+            int value = this.read(one, 0, 1);
+            if (value > 0) {
+                value = one[0] & 0xff;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(final byte[] buf, final int off, final int len)
+            throws IOException {
+            this.next();
+            int read = -1;
+            if (this.left > 0) {
+                read = this.origin.read(buf, off, Math.min(len, this.left));
+                if (read < 0) {
+                    throw new IOException("data connection closed in block");
+                }
+                this.left -= read;
+            }
+            return read;
+        }
+
+        /**
+         * Read the rest of the transfer, leaving the connection open.
+         *
+         * @throws IOException If connection fails.
+         */
+        @Override
+        public void close() throws IOException {
+            this.next();
+            while (this.left > 0) {
+                ByteStreams.skipFully(this.origin, this.left);
+                this.left = 0;
+                this.next();
+            }
+        }
+
+        /**
+         * Read headers until a block with data or the end of transfer,
+         * skipping restart markers.
+         *
+         * @throws IOException If connection fails.
+         */
+        private void next() throws IOException {
+            while (this.left == 0 && !this.last) {
+                final int descriptor = this.origin.read();
+                final int high = this.origin.read();
+                final int low = this.origin.read();
+                if (low < 0) {
+                    throw new IOException("data connection closed in header");
+                }
+                this.left = high << 8 | low;
+                this.last = (descriptor & BlockData.EOF) != 0;
+                if ((descriptor & BlockData.MARKER) != 0) {
+                    ByteStreams.skipFully(this.origin, this.left);
+                    this.left = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Output of one transfer, ended with EOF block.
+     */
+    private static final class Output extends OutputStream {
+        /**
+         * Output of data connection.
+         */
+        private final transient OutputStream origin;
+
+        /**
+         * Class constructor.
+         *
+         * @param stream Output of data connection.
+         */
+        Output(final OutputStream stream) {
+            super();
+            this.origin = stream;
+        }
+
+        @Override
+        public void write(final int value) throws IOException {
+            this.write(new byte[] {(byte) value}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] buf, final int off, final int len)
+            throws IOException {
+            int done = 0;
+            while (done < len) {
+                final int size = Math.min(len - done, BlockData.MAX);
+                this.header(0, size);
+                this.origin.write(buf, off + done, size);
+                done += size;
+            }
+        }
+
+        /**
+         * End the transfer with empty EOF block.
+         *
+         * @throws IOException If connection fails.
+         */
+        public void finish() throws IOException {
+            this.header(BlockData.EOF, 0);
+            this.origin.flush();
+        }
+
+        /**
+         * Write block header.
+         *
+         * @param descriptor Descriptor bits.
+         * @param size Byte count.
+         * @throws IOException If connection fails.
+         */
+        private void header(final int descriptor, final int size)
+            throws IOException {
+            this.origin.write(
+                new byte[] {
+                    (byte) descriptor, (byte) (size >>> 8), (byte) size,
+                }
+            );
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.FTPCommand;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * FTP Command switching file transfers of the session to block mode.
+ *
+ * <p>Run before transfers, so that files retrieved and stored later in the
+ * session, like by {@link FileDownload} and {@link FileUpload}, go over
+ * one data connection kept open, without PASV, connect and teardown for
+ * each file. When the server refuses MODE B, transfers stay in stream
+ * mode, and the server is remembered so that later sessions run with the
+ * same instance do not ask again. The instance may be shared by sessions
+ * run at once.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class BlockMode implements FTPCommand {
+    /**
+     * Servers refusing block mode, by address and port.
+     */
+    private final transient Set<String> refused;
+
+    /**
+     * Class constructor.
+     */
+    public BlockMode() {
+        this.refused = Collections.newSetFromMap(
+            new ConcurrentHashMap<String, Boolean>()
+        );
+    }
+
+    @Override
+    @SneakyThrows
+    public void execute(final FTPClient client) {
+        if (client instanceof WatchedClient) {
+            final String server = String.format(
+                "%s:%d", client.getRemoteAddress().getHostAddress(),
+                client.getRemotePort()
+            );
+            if (!this.refused.contains(server)
+                && !((WatchedClient) client).blockMode()) {
+                this.refused.add(server);
+            }
+        }
+    }
+}
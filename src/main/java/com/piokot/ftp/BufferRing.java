@@ -0,0 +1,351 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ring of reusable buffers filled from a source by a producer thread and
+ * drained as an input stream by the network thread.
+ *
+ * <p>Time each side waits for the other is measured: the producer for a
+ * free buffer, the consumer for a filled one. A failure to read the
+ * source is thrown to the consumer after buffers filled before it. Bytes
+ * are counted as the consumer takes them, so a transfer failing midway
+ * reports what was actually sent.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+final class BufferRing extends InputStream implements Runnable {
+    /**
+     * Marker of source end.
+     */
+    private static final BufferRing.Chunk END = new BufferRing.Chunk(0);
+    /**
+     * Time to wait for producer on close, in milliseconds.
+     */
+    private static final long JOIN = 1000L;
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(BufferRing.class);
+    /**
+     * Source of bytes.
+     */
+    private final transient InputStream source;
+    /**
+     * Buffers free to fill.
+     */
+    private final transient BlockingQueue<BufferRing.Chunk> free;
+    /**
+     * Buffers filled, in order.
+     */
+    private final transient BlockingQueue<BufferRing.Chunk> filled;
+    /**
+     * Nanoseconds producer waited for free buffer.
+     */
+    private final transient AtomicLong producer;
+    /**
+     * Nanoseconds consumer waited for filled buffer.
+     */
+    private final transient AtomicLong consumer;
+    /**
+     * Bytes taken by consumer.
+     */
+    private final transient AtomicLong consumed;
+    /**
+     * Buffer being drained.
+     */
+    private transient BufferRing.Chunk current;
+    /**
+     * Position in buffer being drained.
+     */
+    private transient int pos;
+    /**
+     * Source failure.
+     */
+    private transient volatile IOException failure;
+    /**
+     * Producer thread, once started.
+     */
+    private transient volatile Thread thread;
+
+    /**
+     * Class constructor.
+     *
+     * @param input Source of bytes.
+     * @param depth Number of buffers.
+     * @param size Size of each buffer in bytes.
+     */
+    BufferRing(final InputStream input, final int depth, final int size) {
+        if (depth < 2 || size < 1) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "two or more buffers are required, not %d of %d bytes",
+                    depth, size
+                )
+            );
+        }
+        this.source = input;
+        this.free = new ArrayBlockingQueue<>(depth);
+        this.filled = new ArrayBlockingQueue<>(depth + 1);
+        for (int idx = 0; idx < depth; ++idx) {
+            this.free.add(new BufferRing.Chunk(size));
+        }
+        this.producer = new AtomicLong();
+        this.consumer = new AtomicLong();
+        this.consumed = new AtomicLong();
+    }
+
+    /**
+     * Start producer thread.
+     *
+     * @param name Thread name.
+     * @return This ring.
+     */
+    public BufferRing start(final String name) {
+        final Thread started = new Thread(this, name);
+        started.setDaemon(true);
+        this.thread = started;
+        started.start();
+        return this;
+    }
+
+    @Override
+    public void run() {
+        try {
+            boolean more = true;
+            while (more) {
+                final BufferRing.Chunk chunk = BufferRing.take(
+                    this.free, this.producer
+                );
+                more = chunk.fill(this.source);
+                if (chunk.length > 0) {
+                    this.filled.put(chunk);
+                }
+            }
+        } catch (final IOException ex) {
+            this.failure = ex;
+        } catch (final InterruptedException ex) {
+            this.failure = new IOException("upload producer interrupted", ex);
+        }
+        this.filled.add(BufferRing.END);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] one = new byte[1];
+        int result = -1;
+        if (this.read(one, 0, 1) > 0) {
+            result = one[0] & 0xFF;
+        }
+        return result;
+    }
+
+    @Override
+    public int read(final byte[] buf, final int off, final int len)
+        throws IOException {
+        int result = 0;
+        if (len > 0) {
+            result = this.next(buf, off, len);
+        }
+        return result;
+    }
+
+    /**
+     * Stop producer, if still running: interrupt it and close the source,
+     * to break a blocked read, then wait for it at most {@link #JOIN}
+     * milliseconds. A producer still stuck in a source ignoring both is
+     * left behind, as a daemon thread, and logged.
+     */
+    @Override
+    public void close() {
+        final Thread started = this.thread;
+        if (started != null) {
+            started.interrupt();
+            try {
+                this.source.close();
+            } catch (final IOException ex) {
+                BufferRing.LOG.debug("upload source close failed", ex);
+            }
+            try {
+                started.join(BufferRing.JOIN);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (started.isAlive()) {
+                BufferRing.LOG.warn(
+                    "producer {} still blocked in source after {} ms",
+                    started.getName(), BufferRing.JOIN
+                );
+            }
+        }
+    }
+
+    /**
+     * Nanoseconds producer waited for free buffers.
+     *
+     * @return Producer stall.
+     */
+    public long producerStall() {
+        return this.producer.get();
+    }
+
+    /**
+     * Nanoseconds consumer waited for filled buffers.
+     *
+     * @return Consumer stall.
+     */
+    public long consumerStall() {
+        return this.consumer.get();
+    }
+
+    /**
+     * Bytes taken by the consumer, that is handed to the network.
+     *
+     * @return Bytes consumed.
+     */
+    public long bytes() {
+        return this.consumed.get();
+    }
+
+    /**
+     * Read bytes from filled buffers.
+     *
+     * @param buf Destination.
+     * @param off Offset in destination.
+     * @param len Maximum bytes, positive.
+     * @return Bytes read, -1 at end.
+     * @throws IOException If source failed.
+     */
+    private int next(final byte[] buf, final int off, final int len)
+        throws IOException {
+        if (this.current != null && this.pos == this.current.length
+            && this.current != BufferRing.END) {
+            this.free.add(this.current);
+            this.current = null;
+        }
+        if (this.current == null) {
+            try {
+                this.current = BufferRing.take(this.filled, this.consumer);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("upload interrupted", ex);
+            }
+            this.pos = 0;
+        }
+        final int result;
+        if (this.current == BufferRing.END) {
+            if (this.failure != null) {
+                throw new IOException("upload source failed", this.failure);
+            }
+            result = -1;
+        } else {
+            result = Math.min(len, this.current.length - this.pos);
+            System.arraycopy(this.current.data, this.pos, buf, off, result);
+            this.pos += result;
+            this.consumed.addAndGet(result);
+        }
+        return result;
+    }
+
+    /**
+     * Take buffer, measuring wait if none is ready.
+     *
+     * @param queue Queue of buffers.
+     * @param stall Total wait in nanoseconds.
+     * @return Buffer.
+     * @throws InterruptedException If interrupted.
+     */
+    private static BufferRing.Chunk take(
+        final BlockingQueue<BufferRing.Chunk> queue, final AtomicLong stall)
+        throws InterruptedException {
+        BufferRing.Chunk chunk = queue.poll();
+        if (chunk == null) {
+            final long start = System.nanoTime();
+            chunk = queue.take();
+            stall.addAndGet(System.nanoTime() - start);
+        }
+        return chunk;
+    }
+
+    /**
+     * Reusable buffer.
+     */
+    private static final class Chunk {
+        /**
+         * Bytes.
+         */
+        private final transient byte[] data;
+        /**
+         * Bytes filled.
+         */
+        private transient int length;
+
+        /**
+         * Class constructor.
+         *
+         * @param size Buffer size.
+         */
+        Chunk(final int size) {
+            this.data = new byte[size];
+        }
+
+        /**
+         * Fill buffer from source.
+         *
+         * @param source Source of bytes.
+         * @return False if source ended.
+         * @throws IOException If source fails.
+         */
+        public boolean fill(final InputStream source) throws IOException {
+            this.length = 0;
+            int read = 0;
+            while (read >= 0 && this.length < this.data.length) {
+                read = source.read(
+                    this.data, this.length, this.data.length - this.length
+                );
+                if (read > 0) {
+                    this.length += read;
+                }
+            }
+            return read >= 0;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.piokot.ftp.api.FTPCommand;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Sizes and modification times of many remote paths at once.
+ *
+ * <p>Paths are grouped by parent directory. Directories with many
+ * requested files are listed once, with MLSD or LIST if the server
+ * refuses MLSD; other files are checked one by one with MLST, or SIZE and
+ * MDTM if the server refuses MLST. Any permanent refusal falls back for
+ * that directory or file; a refusal of the command itself, as unknown
+ * (500) or not implemented (502), also stops it being tried again, while
+ * a refused argument (501, 504) does not. All of it is spread
+ * over parallel sessions.
+ * Paths not found are missing from the result.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class BulkStat {
+    /**
+     * FTP to open sessions with.
+     */
+    private final transient FTP ftp;
+    /**
+     * Number of sessions.
+     */
+    private final transient int lanes;
+    /**
+     * Requested files in a directory from which it is listed.
+     */
+    private final transient int siblings;
+
+    /**
+     * Class constructor listing directories with 8 or more files requested.
+     *
+     * @param target FTP to open sessions with.
+     * @param sessions Number of sessions.
+     */
+    public BulkStat(final FTP target, final int sessions) {
+        this(target, sessions, 8);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param target FTP to open sessions with.
+     * @param sessions Number of sessions.
+     * @param listing Requested files in a directory from which it is listed.
+     */
+    public BulkStat(final FTP target, final int sessions,
+        final int listing) {
+        this.ftp = target;
+        this.lanes = sessions;
+        this.siblings = listing;
+    }
+
+    /**
+     * Stat remote paths.
+     *
+     * @param paths Remote file paths.
+     * @return Sizes and modification times of paths found.
+     */
+    public StatMap stat(final Iterable<String> paths) {
+        final Map<String, Map<String, String>> dirs = new LinkedHashMap<>();
+        for (final String path : paths) {
+            final int slash = path.lastIndexOf('/');
+            String parent = path.substring(0, Math.max(slash, 0));
+            if (slash == 0) {
+                parent = "/";
+            }
+            Map<String, String> names = dirs.get(parent);
+            if (names == null) {
+                names = new HashMap<>();
+                dirs.put(parent, names);
+            }
+            names.put(path.substring(slash + 1), path);
+        }
+        final ConcurrentMap<String, long[]> stats = new ConcurrentHashMap<>();
+        final AtomicBoolean mlsd = new AtomicBoolean(true);
+        final AtomicBoolean mlst = new AtomicBoolean(true);
+        final List<FTPCommand> commands = new ArrayList<>(dirs.size());
+        for (final Map.Entry<String, Map<String, String>> dir
+            : dirs.entrySet()) {
+            if (dir.getValue().size() >= this.siblings) {
+                commands.add(
+                    new BulkStat.Listing(
+                        dir.getKey(), dir.getValue(), stats, mlsd
+                    )
+                );
+            } else {
+                for (final String path : dir.getValue().values()) {
+                    commands.add(new BulkStat.Single(path, stats, mlst));
+                }
+            }
+        }
+        if (!commands.isEmpty()) {
+            new FanOut(this.lanes, this.ftp).onConnect(
+                commands.toArray(new FTPCommand[commands.size()])
+            );
+        }
+        return new StatMap(stats);
+    }
+
+    /**
+     * Does the reply refuse the command itself rather than its argument.
+     *
+     * @param reply Reply code.
+     * @return True if command is unknown or not implemented.
+     */
+    private static boolean unknown(final int reply) {
+        return reply == FTPReply.UNRECOGNIZED_COMMAND
+            || reply == FTPReply.COMMAND_NOT_IMPLEMENTED;
+    }
+
+    /**
+     * Command listing directory for requested files.
+     */
+    private static final class Listing implements FTPCommand {
+        /**
+         * Directory.
+         */
+        private final transient String dir;
+        /**
+         * Requested paths by name.
+         */
+        private final transient Map<String, String> wanted;
+        /**
+         * Results.
+         */
+        private final transient ConcurrentMap<String, long[]> stats;
+        /**
+         * Does server support MLSD, as far as known.
+         */
+        private final transient AtomicBoolean mlsd;
+
+        /**
+         * Class constructor.
+         *
+         * @param directory Directory.
+         * @param names Requested paths by name.
+         * @param results Results.
+         * @param machine Does server support MLSD, as far as known.
+         * @checkstyle ParameterNumberCheck (3 lines)
+         */
+        Listing(final String directory, final Map<String, String> names,
+            final ConcurrentMap<String, long[]> results,
+            final AtomicBoolean machine) {
+            this.dir = directory;
+            this.wanted = names;
+            this.stats = results;
+            this.mlsd = machine;
+        }
+
+        @Override
+        @SneakyThrows
+        public void execute(final FTPClient client) {
+            Optional<InputStream> stream = Optional.absent();
+            boolean plain = !this.mlsd.get();
+            if (!plain) {
+                stream = DataConnection.open(client, "MLSD", this.dir);
+                final int reply = client.getReplyCode();
+                plain = !stream.isPresent()
+                    && FTPReply.isNegativePermanent(reply);
+                if (plain && BulkStat.unknown(reply)) {
+                    this.mlsd.set(false);
+                }
+            }
+            if (stream.isPresent()) {
+                try (final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(stream.get(), Charsets.UTF_8)
+                )) {
+                    String line = reader.readLine();
+                    while (line != null) {
+                        final Facts facts = new Facts(line);
+                        final String path = this.wanted.get(facts.name());
+                        if (path != null) {
+                            this.stats.put(
+                                path, new long[] {facts.size(), facts.time()}
+                            );
+                        }
+                        line = reader.readLine();
+                    }
+                }
+                client.completePendingCommand();
+            } else if (plain) {
+                final String listed = Strings.emptyToNull(this.dir);
+                for (final FTPFile file : client.listFiles(listed)) {
+                    final String path = this.wanted.get(file.getName());
+                    if (path != null) {
+                        long time = -1L;
+                        if (file.getTimestamp() != null) {
+                            time = file.getTimestamp().getTimeInMillis();
+                        }
+                        this.stats.put(path, new long[] {file.getSize(), time});
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Command checking single file.
+     */
+    private static final class Single implements FTPCommand {
+        /**
+         * File path.
+         */
+        private final transient String path;
+        /**
+         * Results.
+         */
+        private final transient ConcurrentMap<String, long[]> stats;
+        /**
+         * Does server support MLST, as far as known.
+         */
+        private final transient AtomicBoolean mlst;
+
+        /**
+         * Class constructor.
+         *
+         * @param file File path.
+         * @param results Results.
+         * @param machine Does server support MLST, as far as known.
+         */
+        Single(final String file, final ConcurrentMap<String, long[]> results,
+            final AtomicBoolean machine) {
+            this.path = file;
+            this.stats = results;
+            this.mlst = machine;
+        }
+
+        @Override
+        public void execute(final FTPClient client) {
+            Optional<Facts> facts = Optional.absent();
+            boolean plain = !this.mlst.get();
+            if (!plain) {
+                facts = Facts.of(client, this.path, true, false);
+                final int reply = client.getReplyCode();
+                plain = !facts.isPresent()
+                    && FTPReply.isNegativePermanent(reply);
+                if (plain && BulkStat.unknown(reply)) {
+                    this.mlst.set(false);
+                }
+            }
+            if (plain) {
+                facts = Facts.of(client, this.path, false, true);
+            }
+            if (facts.isPresent()) {
+                this.stats.put(
+                    this.path,
+                    new long[] {facts.get().size(), facts.get().time()}
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Optional;
+import com.piokot.ftp.api.Callback;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * FTP Command for downloading a file through local {@link DownloadCache}.
+ *
+ * <p>Remote size and modification time are checked with a single MLST
+ * round-trip (SIZE and MDTM if MLST is not supported). Given
+ * {@link Capabilities}, commands the server does not announce are not
+ * tried. On a hit the file is not transferred; callback reads the cached
+ * local file from disk through a plain stream over its channel, opened
+ * before the entry can be evicted. If the remote file has no size or
+ * modification time, or is larger than the cache budget, it is streamed
+ * from the server as {@link FileDownload} does. A failed download leaves
+ * no temporary file behind.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class CachedDownload extends AbstractFTPCommand<InputStream> {
+    /**
+     * File to be downloaded.
+     */
+    private final transient String file;
+    /**
+     * Cache of downloaded files.
+     */
+    private final transient DownloadCache cache;
+    /**
+     * Server capabilities deciding which commands to try, if known.
+     */
+    private final transient Optional<Capabilities> caps;
+
+    /**
+     * Class constructor.
+     *
+     * @param remote Remote location of file to be downloaded.
+     * @param local Cache of downloaded files.
+     * @param callback Callback on file downloaded.
+     */
+    public CachedDownload(final String remote, final DownloadCache local,
+        final Callback<InputStream> callback) {
+        this(remote, local, Optional.<Capabilities>absent(), callback);
+    }
+
+    /**
+     * Class constructor skipping commands the server does not announce.
+     *
+     * @param remote Remote location of file to be downloaded.
+     * @param local Cache of downloaded files.
+     * @param capabilities Server capabilities.
+     * @param callback Callback on file downloaded.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    public CachedDownload(final String remote, final DownloadCache local,
+        final Capabilities capabilities,
+        final Callback<InputStream> callback) {
+        this(remote, local, Optional.of(capabilities), callback);
+    }
+
+    /**
+     * Primary class constructor.
+     *
+     * @param remote Remote location of file to be downloaded.
+     * @param local Cache of downloaded files.
+     * @param capabilities Server capabilities, if known.
+     * @param callback Callback on file downloaded.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    private CachedDownload(final String remote, final DownloadCache local,
+        final Optional<Capabilities> capabilities,
+        final Callback<InputStream> callback) {
+        super(callback);
+        this.file = remote;
+        this.cache = local;
+        this.caps = capabilities;
+    }
+
+    @Override
+    @SneakyThrows
+    public InputStream ftpCall(final FTPClient client) {
+        final Optional<Facts> facts = this.facts(client);
+        final InputStream stream;
+        if (facts.isPresent() && !facts.get().modified().isEmpty()
+            && this.cache.fits(facts.get().size())) {
+            final String key = String.format(
+                "%s:%d:%s", client.getRemoteAddress().getHostAddress(),
+                client.getRemotePort(), this.file
+            );
+            final String validator = String.format(
+                "%d/%s", facts.get().size(), facts.get().modified()
+            );
+            Optional<FileChannel> cached = this.cache.hit(key, validator);
+            if (!cached.isPresent()) {
+                cached = Optional.of(this.download(client, key, validator));
+            }
+            stream = Channels.newInputStream(cached.get());
+        } else {
+            stream = client.retrieveFileStream(this.file);
+        }
+        return stream;
+    }
+
+    /**
+     * Download file into the cache.
+     *
+     * @param client Apache FTP client.
+     * @param key Cache key.
+     * @param validator Remote size and modification time.
+     * @return Channel of cached file.
+     * @throws IOException If download or caching fails.
+     */
+    private FileChannel download(final FTPClient client, final String key,
+        final String validator) throws IOException {
+        final Path temp = this.cache.temp();
+        Optional<FileChannel> cached = Optional.absent();
+        try {
+            final boolean done;
+            try (final OutputStream out = Files.newOutputStream(temp)) {
+                done = client.retrieveFile(this.file, out);
+            }
+            if (!done) {
+                throw new IllegalStateException(
+                    String.format(
+                        "cannot download %s: %s",
+                        this.file, client.getReplyString()
+                    )
+                );
+            }
+            cached = Optional.of(this.cache.put(key, validator, temp));
+        } finally {
+            if (!cached.isPresent()) {
+                Files.deleteIfExists(temp);
+            }
+        }
+        return cached.get();
+    }
+
+    /**
+     * Remote size and modification time of the file.
+     *
+     * @param client Apache FTP client.
+     * @return Facts, absent if server gives none.
+     */
+    private Optional<Facts> facts(final FTPClient client) {
+        boolean mlst = true;
+        boolean sizes = true;
+        if (this.caps.isPresent()) {
+            final Features features = this.caps.get().of(client);
+            mlst = features.supports("MLST");
+            sizes = features.supports("SIZE") && features.supports("MDTM");
+        }
+        return Facts.of(client, this.file, mlst, sizes);
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Server {@link Features} discovered once per host and cached.
+ *
+ * <p>First session to a host sends FEAT and SYST; later sessions reuse the
+ * result until it expires, so commands can choose the fastest protocol
+ * path without an extra round-trip per connection. Cached features are
+ * optionally kept in a file and loaded on the next start.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Capabilities {
+    /**
+     * Time to live of discovered features in milliseconds.
+     */
+    private final transient long ttl;
+    /**
+     * File keeping discovered features, if any.
+     */
+    private final transient Optional<Path> file;
+    /**
+     * Discovered features by host and port.
+     */
+    private final transient ConcurrentMap<String, Capabilities.Entry> hosts;
+
+    /**
+     * Class constructor.
+     *
+     * @param time Time to live of discovered features.
+     * @param unit Unit of time.
+     */
+    public Capabilities(final long time, final TimeUnit unit) {
+        this(unit.toMillis(time), Optional.<Path>absent());
+    }
+
+    /**
+     * Class constructor keeping discovered features in a file.
+     *
+     * @param time Time to live of discovered features.
+     * @param unit Unit of time.
+     * @param features Properties file with features, created if missing.
+     */
+    public Capabilities(final long time, final TimeUnit unit,
+        final Path features) {
+        this(unit.toMillis(time), Optional.of(features));
+    }
+
+    /**
+     * Primary class constructor.
+     *
+     * @param millis Time to live of discovered features in milliseconds.
+     * @param features Properties file with features, if any.
+     */
+    @SneakyThrows
+    private Capabilities(final long millis, final Optional<Path> features) {
+        this.ttl = millis;
+        this.file = features;
+        this.hosts = new ConcurrentHashMap<>();
+        if (features.isPresent() && Files.exists(features.get())) {
+            final Properties saved = new Properties();
+            try (final Reader reader =
+                Files.newBufferedReader(features.get(), Charsets.UTF_8)) {
+                saved.load(reader);
+            }
+            for (final String name : saved.stringPropertyNames()) {
+                if (name.endsWith(".expires")) {
+                    final String key = name.substring(
+                        0, name.length() - ".expires".length()
+                    );
+                    this.hosts.put(
+                        key,
+                        new Capabilities.Entry(
+                            new Features(
+                                saved.getProperty(key + ".syst", ""),
+                                saved.getProperty(key + ".feat", "")
+                            ),
+                            saved.getProperty(key + ".syst", ""),
+                            saved.getProperty(key + ".feat", ""),
+                            Long.parseLong(saved.getProperty(name))
+                        )
+                    );
+                }
+            }
+        }
+    }
+
+    /**
+     * Features of the server the client is connected to, discovered if not
+     * cached or expired.
+     *
+     * @param client Connected and logged in Apache FTP client.
+     * @return Server features.
+     */
+    @SneakyThrows
+    public Features of(final FTPClient client) {
+        final String key = String.format(
+            "%s:%d", client.getRemoteAddress().getHostAddress(),
+            client.getRemotePort()
+        );
+        final long now = System.currentTimeMillis();
+        Capabilities.Entry entry = this.hosts.get(key);
+        if (entry == null || entry.expired(now)) {
+            String feat = "";
+            if (FTPReply.isPositiveCompletion(client.sendCommand("FEAT"))) {
+                feat = client.getReplyString();
+            }
+            String syst = "";
+            if (FTPReply.isPositiveCompletion(client.sendCommand("SYST"))) {
+                syst = client.getReplyString().substring(4).trim();
+            }
+            entry = new Capabilities.Entry(
+                new Features(syst, feat), syst, feat, now + this.ttl
+            );
+            this.hosts.put(key, entry);
+            this.save();
+        }
+        return entry.features();
+    }
+
+    /**
+     * Forget features of all hosts, for example after server upgrade.
+     */
+    public void clear() {
+        this.hosts.clear();
+        this.save();
+    }
+
+    /**
+     * Save discovered features, if kept in a file.
+     */
+    @SneakyThrows
+    private synchronized void save() {
+        if (this.file.isPresent()) {
+            final Properties saved = new Properties();
+            for (final Map.Entry<String, Capabilities.Entry> entry
+                : this.hosts.entrySet()) {
+                entry.getValue().store(entry.getKey(), saved);
+            }
+            final Path path = this.file.get().toAbsolutePath();
+            final Path temp = Files.createTempFile(
+                path.getParent(), path.getFileName().toString(), ".tmp"
+            );
+            try (final Writer writer =
+                Files.newBufferedWriter(temp, Charsets.UTF_8)) {
+                saved.store(writer, "FTP server features per host");
+            }
+            Files.move(
+                temp, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            );
+        }
+    }
+
+    /**
+     * Cached features of a host.
+     */
+    private static final class Entry {
+        /**
+         * Parsed features.
+         */
+        private final transient Features parsed;
+        /**
+         * SYST reply text.
+         */
+        private final transient String syst;
+        /**
+         * FEAT reply.
+         */
+        private final transient String feat;
+        /**
+         * Expiry time in milliseconds since epoch.
+         */
+        private final transient long expires;
+
+        /**
+         * Class constructor.
+         *
+         * @param features Parsed features.
+         * @param system SYST reply text.
+         * @param reply FEAT reply.
+         * @param expiry Expiry time in milliseconds since epoch.
+         * @checkstyle ParameterNumberCheck (3 lines)
+         */
+        Entry(final Features features, final String system,
+            final String reply, final long expiry) {
+            this.parsed = features;
+            this.syst = system;
+            this.feat = reply;
+            this.expires = expiry;
+        }
+
+        /**
+         * Parsed features.
+         *
+         * @return Features.
+         */
+        public Features features() {
+            return this.parsed;
+        }
+
+        /**
+         * Has entry expired.
+         *
+         * @param now Current time in milliseconds since epoch.
+         * @return True if expired.
+         */
+        public boolean expired(final long now) {
+            return now >= this.expires;
+        }
+
+        /**
+         * Store entry in properties.
+         *
+         * @param key Host and port.
+         * @param props Properties to store in.
+         */
+        public void store(final String key, final Properties props) {
+            props.setProperty(key + ".syst", this.syst);
+            props.setProperty(key + ".feat", this.feat);
+            props.setProperty(key + ".expires", Long.toString(this.expires));
+        }
+    }
+}
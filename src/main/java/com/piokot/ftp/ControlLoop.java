@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selector thread serving control connections of many idle sessions.
+ *
+ * <p>Sessions are attached to their selection keys. Tasks are queued and
+ * run by the loop after the next selection, so that keys cancelled before
+ * are deregistered by then. The loop also ticks every session about every
+ * {@link #TICK} milliseconds for keep-alive and timeouts. Sessions fail
+ * themselves on errors; should a task or a session still throw, the
+ * failure is logged and, for a session, its channel is closed, so that
+ * other sessions on the loop go on.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+final class ControlLoop implements Runnable, Closeable {
+    /**
+     * Tick period in milliseconds.
+     */
+    private static final long TICK = 100L;
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(ControlLoop.class);
+    /**
+     * Selector of control channels.
+     */
+    private final transient Selector selector;
+    /**
+     * Tasks to run on the loop.
+     */
+    private final transient Queue<Runnable> tasks;
+    /**
+     * Loop thread.
+     */
+    private final transient Thread thread;
+    /**
+     * Is the loop running.
+     */
+    private transient volatile boolean open;
+
+    /**
+     * Class constructor, starting the loop.
+     *
+     * @param name Thread name.
+     * @throws IOException If selector cannot be opened.
+     */
+    ControlLoop(final String name) throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.open = true;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Run task on the loop, after the next selection.
+     *
+     * @param task Task.
+     */
+    public void execute(final Runnable task) {
+        this.tasks.add(task);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Selector, to be used only by tasks on the loop.
+     *
+     * @return Selector.
+     */
+    public Selector selector() {
+        return this.selector;
+    }
+
+    @Override
+    public void run() {
+        long last = System.nanoTime();
+        while (this.open) {
+            this.select();
+            for (int left = this.tasks.size(); left > 0; --left) {
+                final Runnable task = this.tasks.poll();
+                try {
+                    task.run();
+                    // @checkstyle IllegalCatchCheck (1 line)
+                } catch (final RuntimeException ex) {
+                    ControlLoop.LOG.error("task {} failed", task, ex);
+                }
+            }
+            final Iterator<SelectionKey> keys =
+                this.selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                final SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isValid()) {
+                    try {
+                        ((IdleSession) key.attachment()).ready(key);
+                        // @checkstyle IllegalCatchCheck (1 line)
+                    } catch (final RuntimeException ex) {
+                        ControlLoop.drop(key, ex);
+                    }
+                }
+            }
+            final long now = System.nanoTime();
+            if (now - last >= TimeUnit.MILLISECONDS.toNanos(ControlLoop.TICK)) {
+                last = now;
+                for (final SelectionKey key : this.selector.keys()) {
+                    if (key.isValid()) {
+                        try {
+                            ((IdleSession) key.attachment()).tick(now);
+                            // @checkstyle IllegalCatchCheck (1 line)
+                        } catch (final RuntimeException ex) {
+                            ControlLoop.drop(key, ex);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.open = false;
+        this.selector.wakeup();
+        try {
+            this.thread.join();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        for (final SelectionKey key : this.selector.keys()) {
+            key.channel().close();
+        }
+        this.selector.close();
+    }
+
+    /**
+     * Close channel of session that threw on the loop.
+     *
+     * @param key Selection key of session.
+     * @param cause Exception thrown.
+     */
+    private static void drop(final SelectionKey key, final Exception cause) {
+        ControlLoop.LOG.error("session {} failed", key.attachment(), cause);
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (final IOException ex) {
+            ControlLoop.LOG.debug("channel close failed", ex);
+        }
+    }
+
+    /**
+     * Wait for ready channels, tasks or next tick.
+     */
+    @SneakyThrows
+    private void select() {
+        this.selector.select(ControlLoop.TICK);
+    }
+}
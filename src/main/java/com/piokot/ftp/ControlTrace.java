@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.Trace;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Trace collecting control channel timelines of FTP sessions.
+ *
+ * <p>Tracing is opt-in: pass the trace to {@link FTP} constructor. Without
+ * it no listener is registered on the FTP client at all.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class ControlTrace implements Trace {
+    /**
+     * Timelines of sessions traced.
+     */
+    private final transient List<Timeline> lines =
+        new CopyOnWriteArrayList<>();
+
+    @Override
+    public Trace.Session session(final String host) {
+        final Timeline line = new Timeline(host);
+        this.lines.add(line);
+        return line;
+    }
+
+    /**
+     * Timelines of all sessions traced so far.
+     *
+     * @return Timelines in order of session start.
+     */
+    public List<Timeline> timelines() {
+        return Collections.unmodifiableList(new ArrayList<>(this.lines));
+    }
+
+    /**
+     * Number of round-trips per control command verb.
+     *
+     * @return Round-trip counts keyed by verb, like PASV or CWD.
+     */
+    public Map<String, Long> counts() {
+        final Map<String, Long> counts = new TreeMap<>();
+        for (final Timeline line : this.lines) {
+            for (final RoundTrip trip : line.roundTrips()) {
+                ControlTrace.add(counts, trip.verb(), 1L);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Total round-trip latency per control command verb.
+     *
+     * @return Nanoseconds spent waiting for first replies, keyed by verb.
+     */
+    public Map<String, Long> latencies() {
+        final Map<String, Long> nanos = new TreeMap<>();
+        for (final Timeline line : this.lines) {
+            for (final RoundTrip trip : line.roundTrips()) {
+                ControlTrace.add(nanos, trip.verb(), trip.latency());
+            }
+        }
+        return nanos;
+    }
+
+    /**
+     * Number of round-trips per type of FTP command issuing them.
+     *
+     * @return Round-trip counts keyed by FTP command class name.
+     */
+    public Map<String, Long> origins() {
+        final Map<String, Long> counts = new TreeMap<>();
+        for (final Timeline line : this.lines) {
+            for (final RoundTrip trip : line.roundTrips()) {
+                if (trip.origin().isPresent()) {
+                    ControlTrace.add(
+                        counts,
+                        trip.origin().get().getClass().getName(),
+                        1L
+                    );
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Add value to aggregate under given key.
+     *
+     * @param aggregate Aggregated values.
+     * @param key Key of value.
+     * @param value Value to add.
+     */
+    private static void add(final Map<String, Long> aggregate,
+        final String key, final long value) {
+        final Long prev = aggregate.get(key);
+        if (prev == null) {
+            aggregate.put(key, value);
+        } else {
+            aggregate.put(key, prev + value);
+        }
+    }
+}
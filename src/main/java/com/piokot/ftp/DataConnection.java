@@ -0,0 +1,443 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.regex.Pattern;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Data connection for commands Apache FTP client 2.0 cannot send with data
+ * transfer itself, like MLSD, or whose raw output is wanted.
+ *
+ * <p>The connection is made the way the client makes its own: in local
+ * active mode the server connects to a socket announced with PORT, or EPRT
+ * over IPv6; otherwise the port is taken from PASV reply, or EPSV over
+ * IPv6, and the host from the control connection, which also works behind
+ * NAT. Connecting and accepting wait up to the client's default timeout,
+ * reads up to its data timeout, so the budgets of
+ * {@link FTP#onConnect(long, java.util.concurrent.TimeUnit,
+ * com.piokot.ftp.api.FTPCommand...)}
+ * bound these sockets too. After the returned stream is read and closed,
+ * the transfer must be completed with
+ * {@link FTPClient#completePendingCommand()}. Data of FTPS sessions is
+ * protected like that of the client's own transfers, and sessions in block
+ * mode are switched back to stream mode first.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+final class DataConnection {
+    /**
+     * Reply code of passive mode.
+     */
+    private static final int PASV = 227;
+    /**
+     * Reply code of extended passive mode.
+     */
+    private static final int EPSV = 229;
+    /**
+     * Utility class constructor.
+     */
+    private DataConnection() {
+    }
+
+    /**
+     * Send command over data connection.
+     *
+     * @param client Apache FTP client.
+     * @param command Command, like MLSD or LIST.
+     * @param arg Command argument, empty or null to send none.
+     * @return Stream of data connection, absent if command was refused.
+     */
+    @SneakyThrows
+    static Optional<InputStream> open(final FTPClient client,
+        final String command, final String arg) {
+        if (client instanceof WatchedClient) {
+            ((WatchedClient) client).streamMode();
+        }
+        Optional<InputStream> stream = Optional.absent();
+        final Optional<DataConnection.Pending> pending =
+            DataConnection.connect(client);
+        if (pending.isPresent()) {
+            final Optional<Socket> socket = pending.get().transfer(
+                client, command, Strings.emptyToNull(arg)
+            );
+            if (socket.isPresent()) {
+                final Socket data = socket.get();
+                stream = Optional.<InputStream>of(
+                    new FilterInputStream(data.getInputStream()) {
+                        @Override
+                        public void close() throws IOException {
+                            data.close();
+                        }
+                    }
+                );
+            }
+        }
+        return stream;
+    }
+
+    /**
+     * Prepare data connection in the client's data connection mode, before
+     * the transfer command is sent.
+     *
+     * @param client Apache FTP client.
+     * @return Pending connection, absent if the mode was refused.
+     * @throws IOException If connection fails.
+     */
+    static Optional<DataConnection.Pending> connect(final FTPClient client)
+        throws IOException {
+        final Optional<DataConnection.Pending> pending;
+        if (client.getDataConnectionMode()
+            == FTPClient.ACTIVE_LOCAL_DATA_CONNECTION_MODE) {
+            pending = DataConnection.listen(client);
+        } else {
+            pending = DataConnection.dial(client);
+        }
+        return pending;
+    }
+
+    /**
+     * Protect data socket of FTPS sessions, after the transfer is accepted.
+     * The socket is closed if the handshake fails.
+     *
+     * @param client Apache FTP client.
+     * @param socket Connected data socket.
+     * @return Socket to transfer over.
+     * @throws IOException If handshake fails.
+     */
+    private static Socket secure(final FTPClient client, final Socket socket)
+        throws IOException {
+        Socket data = socket;
+        if (client instanceof SecureClient) {
+            try {
+                data = ((SecureClient) client).protect(socket);
+            } catch (final IOException ex) {
+                socket.close();
+                throw ex;
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Read timeout of data sockets, which Apache FTP client 2.0 does not
+     * expose but {@link WatchedClient} remembers.
+     *
+     * @param client Apache FTP client.
+     * @return Timeout in milliseconds, zero for none.
+     */
+    private static int timeout(final FTPClient client) {
+        final int millis;
+        if (client instanceof WatchedClient) {
+            millis = ((WatchedClient) client).dataTimeout();
+        } else {
+            millis = client.getDefaultTimeout();
+        }
+        return millis;
+    }
+
+    /**
+     * Enter passive mode and connect data socket.
+     *
+     * @param client Apache FTP client.
+     * @return Connected socket, absent if passive mode was refused.
+     * @throws IOException If connection fails.
+     */
+    private static Optional<DataConnection.Pending> dial(
+        final FTPClient client) throws IOException {
+        int port = -1;
+        if (client.getRemoteAddress() instanceof Inet6Address) {
+            if (client.sendCommand("EPSV") == DataConnection.EPSV) {
+                port = DataConnection.extended(client.getReplyString());
+            }
+        } else if (client.sendCommand("PASV") == DataConnection.PASV) {
+            port = DataConnection.port(client.getReplyString());
+        }
+        Optional<DataConnection.Pending> pending = Optional.absent();
+        if (port >= 0) {
+            final Socket socket = new Socket();
+            try {
+                socket.setSoTimeout(DataConnection.timeout(client));
+                socket.connect(
+                    new InetSocketAddress(client.getRemoteAddress(), port),
+                    client.getDefaultTimeout()
+                );
+            } catch (final IOException ex) {
+                socket.close();
+                throw ex;
+            }
+            pending = Optional.of(new DataConnection.Pending(socket));
+        }
+        return pending;
+    }
+
+    /**
+     * Listen on local address of control connection and announce it.
+     *
+     * @param client Apache FTP client.
+     * @return Listening socket, absent if active mode was refused.
+     * @throws IOException If connection fails.
+     */
+    private static Optional<DataConnection.Pending> listen(
+        final FTPClient client) throws IOException {
+        final InetAddress local = client.getLocalAddress();
+        final ServerSocket server = new ServerSocket(0, 1, local);
+        final int port = server.getLocalPort();
+        final int reply;
+        try {
+            server.setSoTimeout(client.getDefaultTimeout());
+            reply = DataConnection.announce(client, local, port);
+        } catch (final IOException ex) {
+            server.close();
+            throw ex;
+        }
+        Optional<DataConnection.Pending> pending = Optional.absent();
+        if (FTPReply.isPositiveCompletion(reply)) {
+            pending = Optional.of(
+                new DataConnection.Pending(
+                    server, DataConnection.timeout(client)
+                )
+            );
+        } else {
+            server.close();
+        }
+        return pending;
+    }
+
+    /**
+     * Announce listening port with PORT, or EPRT over IPv6.
+     *
+     * @param client Apache FTP client.
+     * @param local Local address of control connection.
+     * @param port Listening port.
+     * @return Reply code.
+     * @throws IOException If connection fails.
+     */
+    private static int announce(final FTPClient client,
+        final InetAddress local, final int port) throws IOException {
+        final int reply;
+        if (local instanceof Inet6Address) {
+            final String host = local.getHostAddress();
+            final int scope = host.indexOf('%');
+            reply = client.sendCommand(
+                "EPRT",
+                String.format(
+                    "|2|%s|%d|",
+                    host.substring(0, scope < 0 ? host.length() : scope),
+                    port
+                )
+            );
+        } else {
+            reply = client.sendCommand(
+                "PORT",
+                String.format(
+                    "%s,%d,%d", local.getHostAddress().replace('.', ','),
+                    port >> 8, port & 0xff
+                )
+            );
+        }
+        return reply;
+    }
+
+    /**
+     * Port from PASV reply, like
+     * {@code 227 Entering Passive Mode (127,0,0,1,4,1)}.
+     *
+     * @param reply PASV reply.
+     * @return Port number.
+     */
+    private static int port(final String reply) {
+        final int open = reply.indexOf('(');
+        final int close = reply.indexOf(')', open);
+        final String[] parts;
+        if (open < 0 || close < 0) {
+            parts = reply.substring(4).trim().split(",");
+        } else {
+            parts = reply.substring(open + 1, close).split(",");
+        }
+        if (parts.length != 6) {
+            throw new IllegalStateException(
+                String.format("cannot parse PASV reply: %s", reply)
+            );
+        }
+        return Integer.parseInt(parts[4].trim()) << 8
+            | Integer.parseInt(parts[5].trim());
+    }
+
+    /**
+     * Port from EPSV reply, like
+     * {@code 229 Entering Extended Passive Mode (|||1025|)}.
+     *
+     * @param reply EPSV reply.
+     * @return Port number.
+     */
+    private static int extended(final String reply) {
+        final int open = reply.indexOf('(');
+        final int close = reply.indexOf(')', open);
+        if (open < 0 || close < open + 2) {
+            throw new IllegalStateException(
+                String.format("cannot parse EPSV reply: %s", reply)
+            );
+        }
+        final String inner = reply.substring(open + 1, close);
+        final String delim = inner.substring(0, 1);
+        final String[] parts = inner.split(Pattern.quote(delim), -1);
+        if (parts.length != 5) {
+            throw new IllegalStateException(
+                String.format("cannot parse EPSV reply: %s", reply)
+            );
+        }
+        return Integer.parseInt(parts[3].trim());
+    }
+
+    /**
+     * Data connection prepared before the transfer command: a socket
+     * already connected in passive mode, or one listening in active mode.
+     */
+    static final class Pending implements Closeable {
+        /**
+         * Socket connected to the server, in passive mode.
+         */
+        private final transient Optional<Socket> dialed;
+        /**
+         * Socket the server connects to, in active mode.
+         */
+        private final transient Optional<ServerSocket> server;
+        /**
+         * Read timeout of the accepted socket in milliseconds.
+         */
+        private final transient int timeout;
+
+        /**
+         * Class constructor for passive mode.
+         *
+         * @param socket Connected socket.
+         */
+        Pending(final Socket socket) {
+            this.dialed = Optional.of(socket);
+            this.server = Optional.absent();
+            this.timeout = 0;
+        }
+
+        /**
+         * Class constructor for active mode.
+         *
+         * @param listen Listening socket.
+         * @param millis Read timeout of the accepted socket.
+         */
+        Pending(final ServerSocket listen, final int millis) {
+            this.dialed = Optional.absent();
+            this.server = Optional.of(listen);
+            this.timeout = millis;
+        }
+
+        /**
+         * Send transfer command and take the data socket once it is
+         * accepted. The pending connection is closed if the command is
+         * refused or anything fails.
+         *
+         * @param client Apache FTP client.
+         * @param command Transfer command.
+         * @param arg Command argument, null to send none.
+         * @return Data socket, protected in FTPS sessions, absent if the
+         *  command was refused.
+         * @throws IOException If connection fails.
+         */
+        public Optional<Socket> transfer(final FTPClient client,
+            final String command, final String arg) throws IOException {
+            Optional<Socket> data = Optional.absent();
+            try {
+                if (FTPReply.isPositivePreliminary(
+                    client.sendCommand(command, arg)
+                )) {
+                    data = Optional.of(
+                        DataConnection.secure(client, this.accept())
+                    );
+                }
+            } finally {
+                if (!data.isPresent()) {
+                    this.close();
+                }
+            }
+            return data;
+        }
+
+        /**
+         * Data socket, once the transfer command was accepted.
+         *
+         * @return Connected socket.
+         * @throws IOException If the server does not connect.
+         */
+        private Socket accept() throws IOException {
+            final Socket socket;
+            if (this.dialed.isPresent()) {
+                socket = this.dialed.get();
+            } else {
+                try {
+                    socket = this.server.get().accept();
+                } finally {
+                    this.server.get().close();
+                }
+                try {
+                    socket.setSoTimeout(this.timeout);
+                } catch (final IOException ex) {
+                    socket.close();
+                    throw ex;
+                }
+            }
+            return socket;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.dialed.isPresent()) {
+                this.dialed.get().close();
+            }
+            if (this.server.isPresent()) {
+                this.server.get().close();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.FTPCommand;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * FTP command run within deadline.
+ *
+ * <p>When the deadline passes, data and control sockets are closed, which
+ * stops the transfer in progress without ABOR, and the command fails with
+ * {@link IllegalStateException}. The session cannot be used afterwards, so
+ * commands following in the same {@link FTP#onConnect(FTPCommand...)}
+ * fail as well.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Deadline implements FTPCommand {
+    /**
+     * Command to run.
+     */
+    private final transient FTPCommand origin;
+    /**
+     * Time allowed in nanoseconds.
+     */
+    private final transient long nanos;
+
+    /**
+     * Class constructor.
+     *
+     * @param command Command to run.
+     * @param time Time allowed.
+     * @param unit Unit of time.
+     */
+    public Deadline(final FTPCommand command, final long time,
+        final TimeUnit unit) {
+        this.origin = command;
+        this.nanos = unit.toNanos(time);
+    }
+
+    @Override
+    public void execute(final FTPClient client) {
+        final Watchdog dog = new Watchdog(client, this.nanos);
+        try {
+            this.origin.execute(client);
+        // @checkstyle IllegalCatchCheck (1 line)
+        } catch (final Exception ex) {
+            if (dog.fired()) {
+                throw dog.failure(this.origin.getClass().getSimpleName(), ex);
+            }
+            throw ex;
+        } finally {
+            dog.close();
+        }
+    }
+}
@@ -29,7 +29,11 @@
  */
 package com.piokot.ftp;
 
+import com.google.common.base.Optional;
 import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.Filter;
+import java.util.ArrayList;
+import java.util.List;
 import lombok.SneakyThrows;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
@@ -37,6 +41,11 @@ import org.apache.commons.net.ftp.FTPFile;
 /**
  * FTP command for listing directory contents.
  *
+ * <p>With a name filter the raw listing is scanned by {@link ListParser}
+ * and only entries with matching names are fully parsed, which saves most
+ * of the work on large directories. Listings in formats it does not know,
+ * like those of VMS, OS/400 or MVS, are listed again with Apache parsers.
+ *
  * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
  * @version $Id$
  * @since 1.0
@@ -46,6 +55,10 @@ public final class DirList extends AbstractFTPCommand<FTPFile[]> {
      * Listed Directory.
      */
     private final transient String dir;
+    /**
+     * Filter of entry names.
+     */
+    private final transient Optional<Filter<CharSequence>> names;
 
     /**
      * Class Constructor.
@@ -53,13 +66,75 @@ public final class DirList extends AbstractFTPCommand<FTPFile[]> {
      * @param callback Callback on list of files found.
      */
     public DirList(final String directory, final Callback<FTPFile[]> callback) {
+        this(directory, Optional.<Filter<CharSequence>>absent(), callback);
+    }
+
+    /**
+     * Class Constructor.
+     * @param directory Directory to be listed.
+     * @param filter Limiting entries listed to those with names filtered.
+     * @param callback Callback on list of files found.
+     */
+    public DirList(final String directory, final Filter<CharSequence> filter,
+        final Callback<FTPFile[]> callback) {
+        this(directory, Optional.of(filter), callback);
+    }
+
+    /**
+     * Class Constructor.
+     * @param directory Directory to be listed.
+     * @param filter Limiting entries listed to those with names filtered.
+     * @param callback Callback on list of files found.
+     */
+    private DirList(final String directory,
+        final Optional<Filter<CharSequence>> filter,
+        final Callback<FTPFile[]> callback) {
         super(callback);
         this.dir = directory;
+        this.names = filter;
     }
 
     @Override
     @SneakyThrows
     public FTPFile[] ftpCall(final FTPClient client) {
-        return client.listFiles(this.dir);
+        final FTPFile[] result;
+        if (this.names.isPresent()) {
+            result = this.filtered(client, this.names.get());
+        } else {
+            result = client.listFiles(this.dir);
+        }
+        return result;
+    }
+
+    /**
+     * List entries with names filtered.
+     *
+     * @param client Apache FTP client.
+     * @param filter Filter of entry names.
+     * @return Entries.
+     */
+    @SneakyThrows
+    private FTPFile[] filtered(final FTPClient client,
+        final Filter<CharSequence> filter) {
+        final List<FTPFile> found = new ArrayList<>(0);
+        final boolean raw = ListParser.list(
+            client, this.dir,
+            new ListParser.Lines() {
+                @Override
+                public void onLine(final ListParser.Line line) {
+                    if (filter.valid(line.name())) {
+                        found.addAll(line.entry().asSet());
+                    }
+                }
+            }
+        );
+        if (!raw) {
+            for (final FTPFile file : client.listFiles(this.dir)) {
+                if (filter.valid(file.getName())) {
+                    found.add(file);
+                }
+            }
+        }
+        return found.toArray(new FTPFile[found.size()]);
     }
 }
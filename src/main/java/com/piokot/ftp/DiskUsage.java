@@ -0,0 +1,324 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.FTPCommand;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * Disk usage of remote directory tree, walked over parallel sessions.
+ *
+ * <p>Every session takes directories from one shared queue, lists them
+ * with {@link ListParser} and queues subdirectories found, so the walk
+ * spreads over sessions however unbalanced the tree is. Files of a listing
+ * are folded into counters of their directory, and no entry is kept.
+ * Directories deeper than the cut-off are still walked, but counted into
+ * their ancestor at the cut-off depth. Links are not followed.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class DiskUsage {
+    /**
+     * Milliseconds an idle session waits for directories to list.
+     */
+    private static final long WAIT = 20L;
+    /**
+     * FTP to open sessions with.
+     */
+    private final transient FTP ftp;
+    /**
+     * Number of sessions.
+     */
+    private final transient int lanes;
+
+    /**
+     * Class constructor.
+     *
+     * @param target FTP to open sessions with.
+     * @param sessions Number of sessions.
+     */
+    public DiskUsage(final FTP target, final int sessions) {
+        if (sessions < 1) {
+            throw new IllegalArgumentException(
+                String.format("sessions must be positive: %d", sessions)
+            );
+        }
+        this.ftp = target;
+        this.lanes = sessions;
+    }
+
+    /**
+     * Measure whole tree.
+     *
+     * @param dir Directory to measure.
+     * @return Totals of every directory.
+     */
+    public Usage measure(final String dir) {
+        return this.measure(dir, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Measure tree, keeping totals of directories up to given depth.
+     *
+     * @param dir Directory to measure.
+     * @param depth Depth of deepest directories kept, 0 for root only.
+     * @return Totals of directories up to the depth.
+     */
+    public Usage measure(final String dir, final int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException(
+                String.format("depth must not be negative: %d", depth)
+            );
+        }
+        final DiskUsage.Walk walk = new DiskUsage.Walk(dir, depth);
+        final FTPCommand[] sessions = new FTPCommand[this.lanes];
+        Arrays.fill(sessions, walk);
+        new FanOut(this.lanes, this.ftp).onConnect(sessions);
+        return walk.usage.rollup();
+    }
+
+    /**
+     * Modification time of file parsed by Apache client.
+     *
+     * @param file File.
+     * @return Milliseconds since epoch, -1 if not known.
+     */
+    private static long time(final FTPFile file) {
+        long result = -1L;
+        if (file.getTimestamp() != null) {
+            result = file.getTimestamp().getTimeInMillis();
+        }
+        return result;
+    }
+
+    /**
+     * Directory to list.
+     */
+    private static final class Task {
+        /**
+         * Directory path.
+         */
+        private final transient String path;
+        /**
+         * Index of directory counting its files.
+         */
+        private final transient int node;
+        /**
+         * Depth below measured directory.
+         */
+        private final transient int depth;
+
+        /**
+         * Class constructor.
+         *
+         * @param dir Directory path.
+         * @param index Index of directory counting its files.
+         * @param level Depth below measured directory.
+         */
+        Task(final String dir, final int index, final int level) {
+            this.path = dir;
+            this.node = index;
+            this.depth = level;
+        }
+    }
+
+    /**
+     * Walk of the tree, run by every session until no directory is left.
+     */
+    private static final class Walk implements FTPCommand {
+        /**
+         * Totals.
+         */
+        private final transient Usage usage;
+        /**
+         * Directories to list.
+         */
+        private final transient BlockingQueue<DiskUsage.Task> queue;
+        /**
+         * Directories queued or being listed.
+         */
+        private final transient AtomicInteger pending;
+        /**
+         * Has any session failed.
+         */
+        private final transient AtomicBoolean failed;
+        /**
+         * Depth of deepest directories kept.
+         */
+        private final transient int cutoff;
+
+        /**
+         * Class constructor.
+         *
+         * @param root Directory to measure.
+         * @param depth Depth of deepest directories kept.
+         */
+        Walk(final String root, final int depth) {
+            this.usage = new Usage(root);
+            this.queue = new LinkedBlockingQueue<>();
+            this.pending = new AtomicInteger(1);
+            this.failed = new AtomicBoolean();
+            this.cutoff = depth;
+            this.queue.add(new DiskUsage.Task(root, 0, 0));
+        }
+
+        @Override
+        @SneakyThrows
+        public void execute(final FTPClient client) {
+            boolean done = false;
+            while (!done) {
+                final DiskUsage.Task task = this.queue.poll(
+                    DiskUsage.WAIT, TimeUnit.MILLISECONDS
+                );
+                if (task != null) {
+                    boolean listed = false;
+                    try {
+                        this.list(client, task);
+                        listed = true;
+                    } finally {
+                        if (!listed) {
+                            this.failed.set(true);
+                        }
+                        this.pending.decrementAndGet();
+                    }
+                }
+                done = this.pending.get() == 0 || this.failed.get();
+            }
+        }
+
+        /**
+         * List directory, fold its files and queue its subdirectories.
+         *
+         * @param client Apache FTP client.
+         * @param task Directory to list.
+         */
+        @SneakyThrows
+        private void list(final FTPClient client, final DiskUsage.Task task) {
+            final DiskUsage.Scan scan = new DiskUsage.Scan();
+            if (!ListParser.list(client, task.path, scan)) {
+                for (final FTPFile file : client.listFiles(task.path)) {
+                    if (file.isFile()) {
+                        scan.file(file.getSize(), DiskUsage.time(file));
+                    } else if (file.isDirectory()) {
+                        scan.directory(file.getName());
+                    }
+                }
+            }
+            this.usage.fold(task.node, scan.files, scan.bytes, scan.newest);
+            for (final String sub : scan.subdirs) {
+                int node = task.node;
+                if (task.depth < this.cutoff) {
+                    node = this.usage.add(task.node, sub);
+                }
+                this.pending.incrementAndGet();
+                this.queue.add(
+                    new DiskUsage.Task(
+                        Usage.child(task.path, sub), node, task.depth + 1
+                    )
+                );
+            }
+        }
+    }
+
+    /**
+     * Scan of single directory listing.
+     */
+    private static final class Scan implements ListParser.Lines {
+        /**
+         * Subdirectories found.
+         */
+        private final transient List<String> subdirs;
+        /**
+         * Files found.
+         */
+        private transient long files;
+        /**
+         * Size of files found.
+         */
+        private transient long bytes;
+        /**
+         * Newest modification time found, -1 if none.
+         */
+        private transient long newest;
+
+        /**
+         * Class constructor.
+         */
+        Scan() {
+            this.subdirs = new ArrayList<>(0);
+            this.newest = -1L;
+        }
+
+        @Override
+        public void onLine(final ListParser.Line line) {
+            final char type = line.type();
+            if (type == ListParser.FILE) {
+                this.file(line.size(), line.time());
+            } else if (type == ListParser.DIR) {
+                this.directory(line.name().toString());
+            }
+        }
+
+        /**
+         * Count file.
+         *
+         * @param size File size, negative if not known.
+         * @param time Modification time, -1 if not known.
+         */
+        public void file(final long size, final long time) {
+            ++this.files;
+            this.bytes += Math.max(0L, size);
+            this.newest = Math.max(this.newest, time);
+        }
+
+        /**
+         * Remember subdirectory.
+         *
+         * @param name Subdirectory name.
+         */
+        public void directory(final String name) {
+            if (!".".equals(name) && !"..".equals(name)) {
+                this.subdirs.add(name);
+            }
+        }
+    }
+}
@@ -0,0 +1,408 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.SneakyThrows;
+
+/**
+ * Local disk cache of downloaded files with byte budget.
+ *
+ * <p>Entries are keyed by host and remote path and validated by remote size
+ * and modification time. When cached bytes exceed the budget, least recently
+ * or least frequently used entries are evicted. The index lives in memory,
+ * so each cache keeps its files in a subdirectory of its own, holding a
+ * lock on a file there while the process runs. On start, subdirectories
+ * whose lock is free, left by processes that ended, are removed; files of
+ * caches still running, in this or another process sharing the
+ * directory, and any other files there are left alone.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class DownloadCache {
+    /**
+     * Suffix of cached files.
+     */
+    private static final String SUFFIX = ".cache";
+    /**
+     * Prefix of subdirectories of caches.
+     */
+    private static final String PREFIX = "cache-";
+    /**
+     * Name of lock file in subdirectory.
+     */
+    private static final String LOCK = "lock";
+    /**
+     * Locks held on subdirectories of caches of this process.
+     */
+    private static final Map<Path, FileLock> RUNNING = new HashMap<>(0);
+    /**
+     * Directory of cached files, own subdirectory of given one.
+     */
+    private final transient Path dir;
+    /**
+     * Maximum bytes cached.
+     */
+    private final transient long budget;
+    /**
+     * Eviction policy.
+     */
+    private final transient DownloadCache.Eviction policy;
+    /**
+     * Cached entries by key, in access order.
+     */
+    private final transient LinkedHashMap<String, DownloadCache.Entry> index;
+    /**
+     * Bytes cached.
+     */
+    private transient long used;
+
+    /**
+     * Class constructor.
+     *
+     * @param directory Directory of cached files, may be shared.
+     * @param bytes Maximum bytes cached.
+     * @param eviction Eviction policy.
+     */
+    @SneakyThrows
+    public DownloadCache(final Path directory, final long bytes,
+        final DownloadCache.Eviction eviction) {
+        this.dir = DownloadCache.own(Files.createDirectories(directory));
+        this.budget = bytes;
+        this.policy = eviction;
+        this.index = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Directory holding cached files of this cache.
+     *
+     * @return Own subdirectory of given directory.
+     */
+    public Path directory() {
+        return this.dir;
+    }
+
+    /**
+     * Cached file opened for reading if still valid, counting the hit. It
+     * is opened before another thread can evict or replace it, and stays
+     * readable if that happens later.
+     *
+     * @param key Host and remote path.
+     * @param validator Remote size and modification time.
+     * @return Channel of cached file, absent on miss.
+     * @throws IOException If file cannot be opened.
+     */
+    public synchronized Optional<FileChannel> hit(final String key,
+        final String validator) throws IOException {
+        final DownloadCache.Entry entry = this.index.get(key);
+        Optional<FileChannel> file = Optional.absent();
+        if (entry != null) {
+            if (entry.valid(validator)) {
+                file = Optional.of(
+                    FileChannel.open(this.file(key), StandardOpenOption.READ)
+                );
+            } else {
+                this.remove(key);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Can file of given size be cached at all.
+     *
+     * @param size File size in bytes.
+     * @return True if not larger than budget.
+     */
+    public boolean fits(final long size) {
+        return size <= this.budget;
+    }
+
+    /**
+     * Temporary file to download into before {@link #put}.
+     *
+     * @return New temporary file in cache directory.
+     * @throws IOException If file cannot be created.
+     */
+    public Path temp() throws IOException {
+        return Files.createTempFile(this.dir, "download", ".part");
+    }
+
+    /**
+     * Move downloaded file into cache, evicting other entries if needed.
+     *
+     * @param key Host and remote path.
+     * @param validator Remote size and modification time.
+     * @param downloaded Downloaded temporary file.
+     * @return Channel of cached file opened for reading, like by
+     *  {@link #hit}.
+     * @throws IOException If file cannot be moved.
+     */
+    public synchronized FileChannel put(final String key,
+        final String validator, final Path downloaded) throws IOException {
+        this.remove(key);
+        final Path file = this.file(key);
+        Files.move(downloaded, file, StandardCopyOption.REPLACE_EXISTING);
+        final long size = Files.size(file);
+        this.index.put(key, new DownloadCache.Entry(validator, size));
+        this.used += size;
+        this.evict(key);
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * Bytes currently cached.
+     *
+     * @return Bytes.
+     */
+    public synchronized long bytes() {
+        return this.used;
+    }
+
+    /**
+     * Evict entries until within budget, keeping the given one.
+     *
+     * @param keep Key of entry just added.
+     */
+    private void evict(final String keep) {
+        while (this.used > this.budget && this.index.size() > 1) {
+            String victim = "";
+            long least = Long.MAX_VALUE;
+            final Iterator<Map.Entry<String, DownloadCache.Entry>> iter =
+                this.index.entrySet().iterator();
+            while (iter.hasNext()) {
+                final Map.Entry<String, DownloadCache.Entry> entry =
+                    iter.next();
+                if (!entry.getKey().equals(keep)
+                    && entry.getValue().hits() < least) {
+                    victim = entry.getKey();
+                    least = entry.getValue().hits();
+                    if (this.policy == DownloadCache.Eviction.LRU) {
+                        break;
+                    }
+                }
+            }
+            this.remove(victim);
+        }
+    }
+
+    /**
+     * Remove entry and its file.
+     *
+     * @param key Key of entry.
+     */
+    @SneakyThrows
+    private void remove(final String key) {
+        final DownloadCache.Entry entry = this.index.remove(key);
+        if (entry != null) {
+            this.used -= entry.size();
+            Files.deleteIfExists(this.file(key));
+        }
+    }
+
+    /**
+     * Remove subdirectories of caches no longer running, then create and
+     * lock own one. Caches of this process are known without trying their
+     * locks, which would fail within the process.
+     *
+     * @param parent Directory shared by caches.
+     * @return Own subdirectory.
+     * @throws IOException If subdirectory cannot be created.
+     */
+    private static synchronized Path own(final Path parent)
+        throws IOException {
+        DownloadCache.clean(parent);
+        final Path subdir = Files.createTempDirectory(
+            parent, DownloadCache.PREFIX
+        ).toRealPath();
+        final FileChannel lock = FileChannel.open(
+            subdir.resolve(DownloadCache.LOCK),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE
+        );
+        DownloadCache.RUNNING.put(subdir, lock.lock());
+        lock.write(ByteBuffer.wrap(new byte[] {1}));
+        return subdir;
+    }
+
+    /**
+     * Remove subdirectories of caches no longer running. A lock file is
+     * written only after it is locked, so an empty one may belong to a
+     * cache just starting in another process and is skipped.
+     *
+     * @param parent Directory shared by caches.
+     * @throws IOException If directory cannot be read.
+     */
+    private static void clean(final Path parent) throws IOException {
+        try (final DirectoryStream<Path> subdirs = Files.newDirectoryStream(
+            parent, String.format("%s*", DownloadCache.PREFIX)
+        )) {
+            for (final Path subdir : subdirs) {
+                final Path file = subdir.resolve(DownloadCache.LOCK);
+                if (!DownloadCache.RUNNING.containsKey(subdir.toRealPath())
+                    && Files.isRegularFile(file)) {
+                    DownloadCache.reclaim(subdir, file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove subdirectory of cache if its lock is free and was taken.
+     *
+     * @param subdir Subdirectory of cache.
+     * @param file Its lock file.
+     * @throws IOException If files cannot be removed.
+     */
+    private static void reclaim(final Path subdir, final Path file)
+        throws IOException {
+        try (final FileChannel lock = FileChannel.open(
+            file, StandardOpenOption.WRITE
+        )) {
+            final FileLock free = lock.tryLock();
+            if (free != null && lock.size() > 0L) {
+                try (final DirectoryStream<Path> files =
+                    Files.newDirectoryStream(subdir)) {
+                    for (final Path stale : files) {
+                        if (!stale.equals(file)) {
+                            Files.delete(stale);
+                        }
+                    }
+                }
+                Files.delete(file);
+                Files.delete(subdir);
+            }
+        }
+    }
+
+    /**
+     * Cached file of entry.
+     *
+     * @param key Key of entry.
+     * @return File path.
+     */
+    private Path file(final String key) {
+        return this.dir.resolve(
+            Hashing.sha1().hashString(key, Charsets.UTF_8).toString()
+                .concat(DownloadCache.SUFFIX)
+        );
+    }
+
+    /**
+     * Policy choosing entries to evict.
+     */
+    public enum Eviction {
+        /**
+         * Evict least recently used entries first.
+         */
+        LRU,
+        /**
+         * Evict least frequently used entries first.
+         */
+        LFU
+    }
+
+    /**
+     * Cache entry.
+     */
+    private static final class Entry {
+        /**
+         * Remote size and modification time of cached content.
+         */
+        private final transient String valid;
+        /**
+         * Size of cached file.
+         */
+        private final transient long len;
+        /**
+         * Number of hits.
+         */
+        private transient long count;
+
+        /**
+         * Class constructor.
+         *
+         * @param validator Remote size and modification time.
+         * @param size Size of cached file.
+         */
+        Entry(final String validator, final long size) {
+            this.valid = validator;
+            this.len = size;
+        }
+
+        /**
+         * Is entry valid, counting the hit if so.
+         *
+         * @param validator Current remote size and modification time.
+         * @return True if valid.
+         */
+        public boolean valid(final String validator) {
+            final boolean valid = this.valid.equals(validator);
+            if (valid) {
+                ++this.count;
+            }
+            return valid;
+        }
+
+        /**
+         * Number of hits.
+         *
+         * @return Hits.
+         */
+        public long hits() {
+            return this.count;
+        }
+
+        /**
+         * Size of cached file.
+         *
+         * @return Bytes.
+         */
+        public long size() {
+            return this.len;
+        }
+    }
+}
@@ -29,18 +29,37 @@
  */
 package com.piokot.ftp;
 
+import com.google.common.base.Optional;
 import com.piokot.ftp.api.FTPCommand;
+import com.piokot.ftp.api.Trace;
+import java.util.concurrent.TimeUnit;
 import lombok.SneakyThrows;
 import org.apache.commons.net.ftp.FTPClient;
 
 /**
  * FTP class being a wrapper around non-OO Apache FTPClient class.
  *
+ * <p>Each {@link #onConnect(FTPCommand...)} call opens its own session, so
+ * the same instance may run sessions from several threads at once.
+ * Sessions to one host may be limited with an {@link Adaptive} limit
+ * shared by the wrappers. Connections time out after a minute without
+ * progress; sessions can also be given a total time budget. With
+ * {@link TlsSessions} sessions use explicit FTPS, resuming TLS sessions
+ * pooled by it. Options combine freely, each returning a new wrapper:
+ * <pre>
+ * new FTP(host, port, user, password).secured(tls).traced(trace)
+ *     .limited(adaptive);
+ * </pre>
+ *
  * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
  * @version $Id$
  * @since 1.0
  */
 public final class FTP {
+    /**
+     * Connect, socket and data timeout in milliseconds.
+     */
+    private static final int TIMEOUT = 60000;
     /**
      * Host to connect to.
      */
@@ -58,9 +77,18 @@ public final class FTP {
      */
     private final transient String pass;
     /**
-     * Apache FTP client wrapped.
+     * Tracer of control channel round-trips, if enabled.
      */
-    private final transient FTPClient client;
+    private final transient Optional<Trace> trace;
+    /**
+     * Adaptive limit of sessions, if enabled.
+     */
+    private final transient Optional<Adaptive> limit;
+    /**
+     * Pool of TLS sessions of explicit FTPS, if enabled.
+     */
+    private final transient Optional<TlsSessions> tls;
+
     /**
      * Class constructor.
      *
@@ -72,11 +100,74 @@ public final class FTP {
      */
     public FTP(final String host, final int port, final String user,
         final String password) {
+        this(
+            host, port, user, password, Optional.<Trace>absent(),
+            Optional.<Adaptive>absent(), Optional.<TlsSessions>absent()
+        );
+    }
+
+    /**
+     * Primary class constructor.
+     *
+     * @param host Hostname for FTP connection.
+     * @param port Port for FTP connection.
+     * @param user User logging to FTP.
+     * @param password User password for FTP connection.
+     * @param tracer Tracer of control channel round-trips, if any.
+     * @param sessions Adaptive limit of sessions, if any.
+     * @param secure Pool of TLS sessions of explicit FTPS, if any.
+     * @checkstyle ParameterNumberCheck (4 lines)
+     */
+    private FTP(final String host, final int port, final String user,
+        final String password, final Optional<Trace> tracer,
+        final Optional<Adaptive> sessions,
+        final Optional<TlsSessions> secure) {
         this.hst = host;
         this.prt = port;
         this.usr = user;
         this.pass = password;
-        this.client = new FTPClient();
+        this.trace = tracer;
+        this.limit = sessions;
+        this.tls = secure;
+    }
+
+    /**
+     * Wrapper tracing control channel round-trips of its sessions.
+     *
+     * @param tracer Tracer of control channel round-trips.
+     * @return New wrapper with other options kept.
+     */
+    public FTP traced(final Trace tracer) {
+        return new FTP(
+            this.hst, this.prt, this.usr, this.pass, Optional.of(tracer),
+            this.limit, this.tls
+        );
+    }
+
+    /**
+     * Wrapper with adaptive limit of sessions open at once.
+     *
+     * @param sessions Adaptive limit of sessions, shared by wrappers.
+     * @return New wrapper with other options kept.
+     */
+    public FTP limited(final Adaptive sessions) {
+        return new FTP(
+            this.hst, this.prt, this.usr, this.pass, this.trace,
+            Optional.of(sessions), this.tls
+        );
+    }
+
+    /**
+     * Wrapper of explicit FTPS, with data connections protected.
+     *
+     * @param secure Pool of TLS sessions, shared by wrappers.
+     * @return New wrapper with other options kept.
+     */
+    public FTP secured(final TlsSessions secure) {
+        return new FTP(
+            this.hst, this.prt, this.usr, this.pass, this.trace, this.limit,
+            Optional.of(secure)
+        );
     }
 
     /**
@@ -84,17 +175,143 @@ public final class FTP {
      *
      * @param commands FTP commands run during FTP connection.
      */
-    @SneakyThrows
     public void onConnect(final FTPCommand... commands) {
+        this.session(this.client(FTP.TIMEOUT), commands);
+    }
+
+    /**
+     * Main flow executed on FTP connection within time budget. When the
+     * budget is spent, data and control sockets are closed without ABOR and
+     * {@link IllegalStateException} thrown.
+     *
+     * @param time Time budget of the whole session, including login.
+     * @param unit Unit of time.
+     * @param commands FTP commands run during FTP connection.
+     */
+    public void onConnect(final long time, final TimeUnit unit,
+        final FTPCommand... commands) {
+        final FTPClient client = this.client(
+            (int) Math.max(1L, Math.min(FTP.TIMEOUT, unit.toMillis(time)))
+        );
+        final Watchdog dog = new Watchdog(client, unit.toNanos(time));
+        try {
+            this.session(client, commands);
+        // @checkstyle IllegalCatchCheck (1 line)
+        } catch (final Exception ex) {
+            if (dog.fired()) {
+                throw dog.failure(this, ex);
+            }
+            throw ex;
+        } finally {
+            dog.close();
+        }
+    }
+
+    /**
+     * Server of sessions, shared by wrappers of other users.
+     *
+     * @return Host and port.
+     */
+    String host() {
+        return String.format("%s:%d", this.hst, this.prt);
+    }
+
+    /**
+     * Run commands in a session, traced if enabled.
+     *
+     * @param client Apache FTP client of the session.
+     * @param commands FTP commands run during FTP connection.
+     */
+    private void session(final FTPClient client,
+        final FTPCommand... commands) {
+        if (this.trace.isPresent()) {
+            final Trace.Session session = this.trace.get().session(this.hst);
+            client.addProtocolCommandListener(session);
+            final FTPCommand[] traced = new FTPCommand[commands.length];
+            for (int idx = 0; idx < commands.length; ++idx) {
+                traced[idx] = new Traced(session, commands[idx]);
+            }
+            try {
+                this.run(client, traced);
+            } finally {
+                client.removeProtocolCommandListener(session);
+            }
+        } else {
+            this.run(client, commands);
+        }
+    }
+
+    /**
+     * Run commands within connected and logged in session, opened within
+     * adaptive limit if enabled.
+     *
+     * @param client Apache FTP client of the session.
+     * @param commands FTP commands run during FTP connection.
+     */
+    private void run(final FTPClient client, final FTPCommand... commands) {
+        if (this.limit.isPresent()) {
+            this.limit.get().open(
+                client, this.hst, this.prt, this.usr, this.pass
+            );
+            try {
+                this.execute(client, commands);
+            } finally {
+                this.limit.get().close(this.hst, this.prt);
+            }
+        } else {
+            this.execute(client, commands);
+        }
+    }
+
+    /**
+     * Log in unless already done and execute commands.
+     *
+     * @param client Apache FTP client of the session.
+     * @param commands FTP commands run during FTP connection.
+     */
+    @SneakyThrows
+    private void execute(final FTPClient client,
+        final FTPCommand... commands) {
         try {
-            this.client.connect(this.hst, this.prt);
-            this.client.login(this.usr, this.pass);
+            if (!client.isConnected()) {
+                client.connect(this.hst, this.prt);
+                client.login(this.usr, this.pass);
+            }
             for (final FTPCommand command : commands) {
-                command.execute(this.client);
+                command.execute(client);
             }
         } finally {
-            this.client.logout();
-            this.client.disconnect();
+            if (client.isConnected()) {
+                try {
+                    client.logout();
+                } finally {
+                    client.disconnect();
+                }
+            }
+        }
+    }
+
+    /**
+     * Apache FTP client with connect, socket and data timeouts.
+     *
+     * @param millis Timeout in milliseconds.
+     * @return New cancellable client, of explicit FTPS if enabled.
+     */
+    private FTPClient client(final int millis) {
+        final FTPClient client;
+        if (this.tls.isPresent()) {
+            client = new SecureClient(this.tls.get(), this.hst);
+        } else {
+            client = new WatchedClient();
         }
+        client.setConnectTimeout(millis);
+        client.setDefaultTimeout(millis);
+        client.setDataTimeout(millis);
+        return client;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%s:%d", this.usr, this.hst, this.prt);
     }
 }
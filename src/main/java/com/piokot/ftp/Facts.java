@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Optional;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Facts of remote file in MLST/MLSD format, like
+ * {@code type=file;size=1024;modify=20150101120000; name}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Facts {
+    /**
+     * Format of modification time, without fraction of second.
+     */
+    private static final String STAMP = "yyyyMMddHHmmss";
+    /**
+     * Facts line.
+     */
+    private final transient String line;
+
+    /**
+     * Class constructor.
+     *
+     * @param facts Facts line, optionally followed by space and path.
+     */
+    public Facts(final String facts) {
+        this.line = facts.trim();
+    }
+
+    /**
+     * Class constructor from SIZE and MDTM replies.
+     *
+     * @param size File size in bytes.
+     * @param modify Modification time as YYYYMMDDHHMMSS.
+     */
+    public Facts(final long size, final String modify) {
+        this(String.format("type=file;size=%d;modify=%s;", size, modify));
+    }
+
+    /**
+     * File size.
+     *
+     * @return Size in bytes, -1 if not given.
+     */
+    public long size() {
+        final String size = this.fact("size");
+        final long result;
+        if (size.isEmpty()) {
+            result = -1L;
+        } else {
+            result = Long.parseLong(size);
+        }
+        return result;
+    }
+
+    /**
+     * Modification time.
+     *
+     * @return Time as YYYYMMDDHHMMSS[.sss] in UTC, empty if not given.
+     */
+    public String modified() {
+        return this.fact("modify");
+    }
+
+    /**
+     * Modification time.
+     *
+     * @return Milliseconds since epoch, -1 if not given.
+     */
+    public long time() {
+        final String modify = this.modified();
+        long result = -1L;
+        if (modify.length() >= Facts.STAMP.length()) {
+            final SimpleDateFormat format = new SimpleDateFormat(
+                Facts.STAMP, Locale.ENGLISH
+            );
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            try {
+                result = format.parse(
+                    modify.substring(0, Facts.STAMP.length())
+                ).getTime();
+            } catch (final ParseException ex) {
+                result = -1L;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Is it a directory.
+     *
+     * @return True for directory types, including cdir and pdir.
+     */
+    public boolean directory() {
+        return this.fact("type").endsWith("dir");
+    }
+
+    /**
+     * Name or path following the facts.
+     *
+     * @return Name, empty if not given.
+     */
+    public String name() {
+        final int idx = this.line.indexOf("; ");
+        final String name;
+        if (idx < 0) {
+            name = "";
+        } else {
+            name = this.line.substring(idx + 2);
+        }
+        return name;
+    }
+
+    /**
+     * Value of a fact.
+     *
+     * @param fact Fact name, case insensitive.
+     * @return Value, empty if not given.
+     */
+    public String fact(final String fact) {
+        final int end = this.line.indexOf("; ");
+        final String facts;
+        if (end < 0) {
+            facts = this.line;
+        } else {
+            facts = this.line.substring(0, end + 1);
+        }
+        final String key = fact.toLowerCase(Locale.ENGLISH);
+        String value = "";
+        for (final String pair : facts.split(";")) {
+            final int idx = pair.indexOf('=');
+            if (idx > 0 && pair.substring(0, idx).toLowerCase(Locale.ENGLISH)
+                .equals(key)) {
+                value = pair.substring(idx + 1);
+                break;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Facts of remote file, with single MLST round-trip, or SIZE and MDTM
+     * if MLST is not supported.
+     *
+     * @param client Apache FTP client.
+     * @param path Remote file path.
+     * @param mlst Try MLST.
+     * @param sizes Try SIZE and MDTM.
+     * @return Facts, absent if server gives none.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    @SneakyThrows
+    static Optional<Facts> of(final FTPClient client, final String path,
+        final boolean mlst, final boolean sizes) {
+        Optional<Facts> facts = Optional.absent();
+        if (mlst && FTPReply.isPositiveCompletion(
+            client.sendCommand("MLST", path)
+        )) {
+            final String[] lines = client.getReplyString().split("\r?\n");
+            for (final String line : lines) {
+                if (line.startsWith(" ")) {
+                    facts = Optional.of(new Facts(line));
+                }
+            }
+        } else if (sizes && FTPReply.isPositiveCompletion(
+            client.sendCommand("SIZE", path)
+        )) {
+            final long size = Long.parseLong(
+                client.getReplyString().substring(4).trim()
+            );
+            if (FTPReply.isPositiveCompletion(
+                client.sendCommand("MDTM", path)
+            )) {
+                facts = Optional.of(
+                    new Facts(size, client.getReplyString().substring(4).trim())
+                );
+            }
+        }
+        return facts;
+    }
+}
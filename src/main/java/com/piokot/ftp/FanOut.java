@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.FTPCommand;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.SneakyThrows;
+
+/**
+ * Execution of the same FTP commands against many hosts concurrently.
+ *
+ * <p>Commands of each host are spread over up to given number of concurrent
+ * sessions to it. With more than one session per host commands must not
+ * depend on each other's order. Commands may be made for each host by
+ * {@link FanOut.Commands}, which gives them a callback failing the host
+ * when a command reports false, like a refused upload; the fan-out then
+ * fails naming the host. Commands may also be shared by all hosts and
+ * sessions, in which case they must be reusable and thread-safe, like
+ * {@link SharedUpload}, {@link DirList} or {@link FileDelete}, and so must
+ * be their callbacks, which cannot tell the hosts apart. Sessions run on
+ * threads shared by all fan-outs.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class FanOut {
+    /**
+     * Threads running sessions of all fan-outs.
+     */
+    private static final ExecutorService THREADS =
+        Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("ftp-fanout-%d").build()
+        );
+    /**
+     * Hosts to run commands against.
+     */
+    private final transient List<FTP> hosts;
+    /**
+     * Maximum concurrent sessions per host.
+     */
+    private final transient int lanes;
+
+    /**
+     * Class constructor.
+     *
+     * @param sessions Maximum concurrent sessions per host.
+     * @param targets Hosts to run commands against.
+     */
+    public FanOut(final int sessions, final FTP... targets) {
+        this(sessions, Arrays.asList(targets));
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param sessions Maximum concurrent sessions per host.
+     * @param targets Hosts to run commands against.
+     */
+    public FanOut(final int sessions, final Iterable<FTP> targets) {
+        if (sessions < 1) {
+            throw new IllegalArgumentException(
+                "at least one session per host is required"
+            );
+        }
+        this.lanes = sessions;
+        this.hosts = ImmutableList.copyOf(targets);
+    }
+
+    /**
+     * Run the same commands against all hosts, waiting for all to finish.
+     *
+     * @param commands FTP commands run on every host.
+     * @throws IllegalStateException If any host fails, with failures of
+     *  all hosts suppressed.
+     */
+    public void onConnect(final FTPCommand... commands) {
+        final FTPCommand[] shared = commands.clone();
+        this.onConnect(
+            new FanOut.Commands() {
+                @Override
+                public FTPCommand[] of(final FTP host,
+                    final Callback<Boolean> result) {
+                    return shared;
+                }
+            }
+        );
+    }
+
+    /**
+     * Run commands made for each host against it, waiting for all to
+     * finish.
+     *
+     * @param commands Commands of each host.
+     * @throws IllegalStateException If any host fails or any command
+     *  reports false to its result callback, with failures of all hosts
+     *  suppressed.
+     */
+    @SneakyThrows
+    public void onConnect(final FanOut.Commands commands) {
+        final Map<Future<?>, FTP> running = new LinkedHashMap<>(0);
+        final Map<FTP, AtomicInteger> refused = new LinkedHashMap<>(0);
+        try {
+            for (final FTP host : this.hosts) {
+                final AtomicInteger count = new AtomicInteger();
+                refused.put(host, count);
+                final FTPCommand[] all = commands.of(
+                    host, new FanOut.Refusals(count)
+                );
+                final int width = Math.max(
+                    1, Math.min(this.lanes, all.length)
+                );
+                for (final FTPCommand[] lane : FanOut.split(all, width)) {
+                    running.put(
+                        FanOut.THREADS.submit(
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    host.onConnect(lane);
+                                }
+                            }
+                        ),
+                        host
+                    );
+                }
+            }
+            final IllegalStateException failure = new IllegalStateException(
+                "FTP fan-out failed"
+            );
+            for (final Map.Entry<Future<?>, FTP> entry : running.entrySet()) {
+                try {
+                    entry.getKey().get();
+                } catch (final ExecutionException ex) {
+                    failure.addSuppressed(
+                        new IllegalStateException(
+                            String.format("failed on %s", entry.getValue()),
+                            ex.getCause()
+                        )
+                    );
+                }
+            }
+            for (final Map.Entry<FTP, AtomicInteger> entry
+                : refused.entrySet()) {
+                if (entry.getValue().get() > 0) {
+                    failure.addSuppressed(
+                        new IllegalStateException(
+                            String.format(
+                                "%d commands refused on %s",
+                                entry.getValue().get(), entry.getKey()
+                            )
+                        )
+                    );
+                }
+            }
+            if (failure.getSuppressed().length > 0) {
+                throw failure;
+            }
+        } finally {
+            for (final Future<?> future : running.keySet()) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Deal commands round-robin into lanes.
+     *
+     * @param commands Commands.
+     * @param width Number of lanes.
+     * @return Commands of each lane, in original order.
+     */
+    private static List<FTPCommand[]> split(final FTPCommand[] commands,
+        final int width) {
+        final List<List<FTPCommand>> lanes = new ArrayList<>(width);
+        for (int idx = 0; idx < width; ++idx) {
+            lanes.add(new ArrayList<FTPCommand>(commands.length / width + 1));
+        }
+        for (int idx = 0; idx < commands.length; ++idx) {
+            lanes.get(idx % width).add(commands[idx]);
+        }
+        final List<FTPCommand[]> result = new ArrayList<>(width);
+        for (final List<FTPCommand> lane : lanes) {
+            result.add(lane.toArray(new FTPCommand[lane.size()]));
+        }
+        return result;
+    }
+
+    /**
+     * Commands made for each host.
+     */
+    public interface Commands {
+        /**
+         * Commands run on host.
+         *
+         * @param host Host the commands run on.
+         * @param result Callback of boolean results of the commands, failing
+         *  the host on false.
+         * @return FTP commands.
+         */
+        FTPCommand[] of(FTP host, Callback<Boolean> result);
+    }
+
+    /**
+     * Callback counting false results of one host.
+     */
+    private static final class Refusals implements Callback<Boolean> {
+        /**
+         * False results.
+         */
+        private final transient AtomicInteger count;
+
+        /**
+         * Class constructor.
+         *
+         * @param counter False results.
+         */
+        Refusals(final AtomicInteger counter) {
+            this.count = counter;
+        }
+
+        @Override
+        public void onReturn(final Boolean type) {
+            if (!type) {
+                this.count.incrementAndGet();
+            }
+        }
+    }
+}
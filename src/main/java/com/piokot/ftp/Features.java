@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Features of FTP server as announced by FEAT and SYST replies.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Features {
+    /**
+     * System type, like UNIX Type: L8.
+     */
+    private final transient String sys;
+    /**
+     * Parameters by feature name.
+     */
+    private final transient Map<String, String> feats;
+
+    /**
+     * Class constructor.
+     *
+     * @param system SYST reply text without code, empty if unknown.
+     * @param feat Full FEAT reply, empty if not supported. Parameters of
+     *  features listed more than once, like AUTH TLS and AUTH SSL, are
+     *  joined with a space.
+     */
+    public Features(final String system, final String feat) {
+        this.sys = system;
+        final Map<String, String> map = new LinkedHashMap<>(0);
+        for (final String line : feat.split("\r?\n")) {
+            if (line.startsWith(" ")) {
+                final String trimmed = line.trim();
+                final int space = trimmed.indexOf(' ');
+                if (space < 0) {
+                    Features.merge(
+                        map, trimmed.toUpperCase(Locale.ENGLISH), ""
+                    );
+                } else {
+                    Features.merge(
+                        map,
+                        trimmed.substring(0, space).toUpperCase(Locale.ENGLISH),
+                        trimmed.substring(space + 1).trim()
+                    );
+                }
+            }
+        }
+        this.feats = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * System type.
+     *
+     * @return SYST reply text, empty if unknown.
+     */
+    public String system() {
+        return this.sys;
+    }
+
+    /**
+     * Names of features announced.
+     *
+     * @return Upper case names, like MLST or REST.
+     */
+    public Set<String> names() {
+        return this.feats.keySet();
+    }
+
+    /**
+     * Is feature announced.
+     *
+     * @param name Feature name, like MLST.
+     * @return True if announced.
+     */
+    public boolean supports(final String name) {
+        return this.feats.containsKey(name.toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Is feature announced with given parameter, like REST with STREAM.
+     *
+     * @param name Feature name.
+     * @param parameter Parameter, compared ignoring case.
+     * @return True if announced with the parameter.
+     */
+    public boolean supports(final String name, final String parameter) {
+        return this.parameters(name).toUpperCase(Locale.ENGLISH)
+            .contains(parameter.toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Parameters of feature.
+     *
+     * @param name Feature name.
+     * @return Parameters, like {@code type*;size*;}, empty if none.
+     */
+    public String parameters(final String name) {
+        final String params = this.feats.get(name.toUpperCase(Locale.ENGLISH));
+        final String result;
+        if (params == null) {
+            result = "";
+        } else {
+            result = params;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s", this.sys, this.feats);
+    }
+
+    /**
+     * Add parameters of feature, joining them to ones already listed.
+     *
+     * @param map Parameters by feature name.
+     * @param name Feature name.
+     * @param params Parameters.
+     */
+    private static void merge(final Map<String, String> map,
+        final String name, final String params) {
+        final String known = map.get(name);
+        if (known == null || known.isEmpty()) {
+            map.put(name, params);
+        } else if (!params.isEmpty()) {
+            map.put(name, String.format("%s %s", known, params));
+        }
+    }
+}
@@ -36,6 +36,9 @@ import org.apache.commons.net.ftp.FTPClient;
 /**
  * FTP Command for deleting a file.
  *
+ * <p>Many files are deleted faster in a {@link Pipelining} batch, which
+ * does not wait for each reply before sending the next command.
+ *
  * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
  * @version $Id$
  * @since 1.0
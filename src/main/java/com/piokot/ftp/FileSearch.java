@@ -29,11 +29,11 @@
  */
 package com.piokot.ftp;
 
-import com.google.common.base.Joiner;
 import com.piokot.ftp.api.Callback;
 import com.piokot.ftp.api.Filter;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.BitSet;
+import java.util.List;
 import lombok.SneakyThrows;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
@@ -41,11 +41,27 @@ import org.apache.commons.net.ftp.FTPFile;
 /**
  * FTP Command for searching (also recursively) files with given prefix.
  *
+ * <p>Files found are returned as compact {@link PathList}, building full
+ * paths only when iterated. Listings are scanned by {@link ListParser},
+ * so only files with names passing the prefilter are fully parsed;
+ * listings in formats it does not know are listed again with Apache
+ * parsers.
+ *
  * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
  * @version $Id$
  * @since 1.0
  */
 public final class FileSearch extends AbstractFTPCommand<Iterable<String>> {
+    /**
+     * Filter passing all names.
+     */
+    private static final Filter<CharSequence> ANY =
+        new Filter<CharSequence>() {
+            @Override
+            public boolean valid(final CharSequence type) {
+                return true;
+            }
+        };
     /**
      * Directory to start search from.
      */
@@ -58,6 +74,10 @@ public final class FileSearch extends AbstractFTPCommand<Iterable<String>> {
      * Is search recursive.
      */
     private final transient boolean recurs;
+    /**
+     * Filter of file names, checked before files are fully parsed.
+     */
+    private final transient Filter<CharSequence> names;
 
     /**
      * Class constructor.
@@ -69,45 +89,139 @@ public final class FileSearch extends AbstractFTPCommand<Iterable<String>> {
      * @checkstyle ParameterNumberCheck (6 lines)
      */
     public FileSearch(final String directory, final Filter<FTPFile> filter,
+        final boolean recursive, final Callback<Iterable<String>> callback) {
+        this(directory, FileSearch.ANY, filter, recursive, callback);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param directory Directory to start search from.
+     * @param prefilter Limiting files parsed to those with names filtered.
+     * @param filter Limiting files found to those filtered.
+     * @param recursive Is search recursive.
+     * @param callback Callback on files found.
+     * @checkstyle ParameterNumberCheck (7 lines)
+     */
+    public FileSearch(final String directory,
+        final Filter<CharSequence> prefilter, final Filter<FTPFile> filter,
         final boolean recursive, final Callback<Iterable<String>> callback) {
         super(callback);
         this.dir = directory;
+        this.names = prefilter;
         this.fltr = filter;
         this.recurs = recursive;
     }
 
     @Override
     public Iterable<String> ftpCall(final FTPClient client) {
-        return this.search(new ArrayList<String>(0), this.dir, client);
+        return this.search(new PathList(), this.dir, client);
     }
 
     /**
      * Recursive search in directory calling FTP client search.
      *
+     * <p>Files and subdirectories are visited in listing order, a
+     * subdirectory searched where it is listed, after its listing is read
+     * to the end.
+     *
      * @param result Partial results for recursion.
      * @param directory Directory to be searched in.
      * @param client Apache FTP client.
      * @return File names found.
      */
     @SneakyThrows
-    private Collection<String> search(
-        final Collection<String> result,
+    private PathList search(
+        final PathList result,
         final String directory,
         final FTPClient client
     ) {
-        final String sep = "/";
-        final FTPFile[] ftpFiles = client.listFiles(directory);
-        for (final FTPFile ftpFile : ftpFiles) {
-            if (ftpFile.isFile() && this.fltr.valid(ftpFile)) {
-                result.add(Joiner.on(sep).join(directory, ftpFile.getName()));
-            } else if (ftpFile.isDirectory() && this.recurs) {
+        final FileSearch.Scan scan = new FileSearch.Scan();
+        if (!ListParser.list(client, directory, scan)) {
+            for (final FTPFile ftpFile : client.listFiles(directory)) {
+                if (ftpFile.isFile() && this.names.valid(ftpFile.getName())) {
+                    scan.file(ftpFile);
+                } else if (ftpFile.isDirectory()) {
+                    scan.directory(ftpFile.getName());
+                }
+            }
+        }
+        int index = -1;
+        for (int pos = 0; pos < scan.entries.size(); ++pos) {
+            final String name = scan.entries.get(pos);
+            if (scan.subdirs.get(pos)) {
                 this.search(
                     result,
-                    Joiner.on(sep).join(directory, ftpFile.getName()),
+                    new StringBuilder(directory).append('/').append(name)
+                        .toString(),
                     client
                 );
+            } else {
+                if (index < 0) {
+                    index = result.directory(directory);
+                }
+                result.add(index, name);
             }
         }
         return result;
     }
+
+    /**
+     * Scan of single directory listing.
+     */
+    private final class Scan implements ListParser.Lines {
+        /**
+         * Names of files found and subdirectories, in listing order.
+         */
+        private final transient List<String> entries;
+        /**
+         * Positions of subdirectories among entries.
+         */
+        private final transient BitSet subdirs;
+
+        /**
+         * Class constructor.
+         */
+        Scan() {
+            this.entries = new ArrayList<>(0);
+            this.subdirs = new BitSet();
+        }
+
+        @Override
+        public void onLine(final ListParser.Line line) {
+            final char type = line.type();
+            if (type == ListParser.FILE
+                && FileSearch.this.names.valid(line.name())) {
+                for (final FTPFile file : line.entry().asSet()) {
+                    this.file(file);
+                }
+            } else if (type == ListParser.DIR) {
+                this.directory(line.name().toString());
+            }
+        }
+
+        /**
+         * Add file if filtered.
+         *
+         * @param file File listed.
+         */
+        public void file(final FTPFile file) {
+            if (file.isFile() && FileSearch.this.fltr.valid(file)) {
+                this.entries.add(file.getName());
+            }
+        }
+
+        /**
+         * Remember subdirectory if search is recursive.
+         *
+         * @param name Subdirectory name.
+         */
+        public void directory(final String name) {
+            if (FileSearch.this.recurs && !".".equals(name)
+                && !"..".equals(name)) {
+                this.subdirs.set(this.entries.size());
+                this.entries.add(name);
+            }
+        }
+    }
 }
@@ -0,0 +1,407 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.collect.ImmutableList;
+import com.piokot.ftp.api.Filter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Name filter matching any of many glob patterns in a single pass.
+ *
+ * <p>Patterns support {@code *}, {@code ?}, classes like {@code [a-z]} or
+ * {@code [!0-9]} and {@code \} escapes, and match whole names. All of them
+ * are compiled into one automaton whose deterministic states are built
+ * lazily from the characters met, so the cost per name does not grow with
+ * the number of patterns. States are shared by threads; past
+ * {@link #STATES} of them new ones are neither cached nor linked from
+ * cached ones, so names reaching them are matched by stepping through
+ * position sets, and each state keeps at most {@link #OTHER} transitions
+ * on non-ASCII chars. Memory stays bounded whatever the names matched.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Globs implements Filter<CharSequence> {
+    /**
+     * Maximum states cached.
+     */
+    private static final int STATES = 10000;
+    /**
+     * Characters with transitions kept in arrays.
+     */
+    private static final int ASCII = 128;
+    /**
+     * Maximum transitions on non-ASCII chars cached per state.
+     */
+    private static final int OTHER = 256;
+    /**
+     * Kind of position matching a literal char.
+     */
+    private static final byte LITERAL = 0;
+    /**
+     * Kind of position matching any char.
+     */
+    private static final byte ANY = 1;
+    /**
+     * Kind of position matching any sequence.
+     */
+    private static final byte STAR = 2;
+    /**
+     * Kind of position matching a char class.
+     */
+    private static final byte CLASS = 3;
+    /**
+     * Kind of position ending a pattern.
+     */
+    private static final byte END = 4;
+    /**
+     * Source patterns.
+     */
+    private final transient List<String> sources;
+    /**
+     * Kind of each position.
+     */
+    private final transient byte[] kinds;
+    /**
+     * Literal char of each position.
+     */
+    private final transient char[] chars;
+    /**
+     * Class of each position, with leading {@code !} if negated.
+     */
+    private final transient String[] classes;
+    /**
+     * States built so far, by positions.
+     */
+    private final transient ConcurrentMap<BitSet, Globs.State> states;
+    /**
+     * Initial state.
+     */
+    private final transient Globs.State start;
+
+    /**
+     * Class constructor.
+     *
+     * @param patterns Glob patterns.
+     */
+    public Globs(final String... patterns) {
+        this(Arrays.asList(patterns));
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param patterns Glob patterns.
+     */
+    public Globs(final Iterable<String> patterns) {
+        this.sources = ImmutableList.copyOf(patterns);
+        final List<Byte> kind = new ArrayList<>(0);
+        final StringBuilder literal = new StringBuilder(0);
+        final List<String> clazz = new ArrayList<>(0);
+        final BitSet initial = new BitSet();
+        for (final String pattern : this.sources) {
+            initial.set(kind.size());
+            Globs.compile(pattern, kind, literal, clazz);
+        }
+        this.kinds = new byte[kind.size()];
+        for (int idx = 0; idx < this.kinds.length; ++idx) {
+            this.kinds[idx] = kind.get(idx);
+        }
+        this.chars = literal.toString().toCharArray();
+        this.classes = clazz.toArray(new String[clazz.size()]);
+        this.states = new ConcurrentHashMap<>(0);
+        final BitSet closed = new BitSet();
+        for (int pos = initial.nextSetBit(0); pos >= 0;
+            pos = initial.nextSetBit(pos + 1)) {
+            this.add(closed, pos);
+        }
+        this.start = this.state(closed);
+    }
+
+    @Override
+    public boolean valid(final CharSequence type) {
+        Globs.State state = this.start;
+        final int length = type.length();
+        for (int idx = 0; idx < length && !state.dead(); ++idx) {
+            state = state.next(type.charAt(idx));
+        }
+        return state.accepting();
+    }
+
+    /**
+     * Source patterns.
+     *
+     * @return Patterns.
+     */
+    public List<String> patterns() {
+        return this.sources;
+    }
+
+    @Override
+    public String toString() {
+        return this.sources.toString();
+    }
+
+    /**
+     * Compile pattern into positions.
+     *
+     * @param pattern Glob pattern.
+     * @param kind Kinds of positions.
+     * @param literal Literal chars of positions.
+     * @param clazz Classes of positions.
+     */
+    private static void compile(final String pattern, final List<Byte> kind,
+        final StringBuilder literal, final List<String> clazz) {
+        int idx = 0;
+        while (idx < pattern.length()) {
+            final char chr = pattern.charAt(idx);
+            byte type = Globs.LITERAL;
+            char value = chr;
+            String body = null;
+            if (chr == '*') {
+                type = Globs.STAR;
+            } else if (chr == '?') {
+                type = Globs.ANY;
+            } else if (chr == '\\' && idx + 1 < pattern.length()) {
+                ++idx;
+                value = pattern.charAt(idx);
+            } else if (chr == '[') {
+                final int close = pattern.indexOf(']', idx + 2);
+                if (close > 0) {
+                    type = Globs.CLASS;
+                    body = pattern.substring(idx + 1, close);
+                    if (body.charAt(0) == '^') {
+                        body = new StringBuilder("!").append(body, 1,
+                            body.length()).toString();
+                    }
+                    idx = close;
+                }
+            }
+            kind.add(type);
+            literal.append(value);
+            clazz.add(body);
+            ++idx;
+        }
+        kind.add(Globs.END);
+        literal.append('\0');
+        clazz.add(null);
+    }
+
+    /**
+     * Does char class match char.
+     *
+     * @param body Class body, with leading {@code !} if negated.
+     * @param chr Char.
+     * @return True if matches.
+     */
+    private static boolean matches(final String body, final char chr) {
+        final boolean negated = body.charAt(0) == '!' && body.length() > 1;
+        int idx = 0;
+        if (negated) {
+            idx = 1;
+        }
+        boolean found = false;
+        while (idx < body.length() && !found) {
+            final char low = body.charAt(idx);
+            if (idx + 2 < body.length() && body.charAt(idx + 1) == '-') {
+                found = chr >= low && chr <= body.charAt(idx + 2);
+                idx += 3;
+            } else {
+                found = chr == low;
+                ++idx;
+            }
+        }
+        return found ^ negated;
+    }
+
+    /**
+     * Add position with positions reachable without input.
+     *
+     * @param set Positions.
+     * @param pos Position.
+     */
+    private void add(final BitSet set, final int pos) {
+        set.set(pos);
+        if (this.kinds[pos] == Globs.STAR) {
+            this.add(set, pos + 1);
+        }
+    }
+
+    /**
+     * State of positions, cached if possible.
+     *
+     * @param positions Positions, not changed afterwards.
+     * @return State.
+     */
+    private Globs.State state(final BitSet positions) {
+        Globs.State state = this.states.get(positions);
+        if (state == null) {
+            if (this.states.size() < Globs.STATES) {
+                state = new Globs.State(positions, true);
+                final Globs.State known =
+                    this.states.putIfAbsent(positions, state);
+                if (known != null) {
+                    state = known;
+                }
+            } else {
+                state = new Globs.State(positions, false);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Deterministic state, a set of pattern positions.
+     */
+    private final class State {
+        /**
+         * Positions.
+         */
+        private final transient BitSet positions;
+        /**
+         * Is any pattern ended.
+         */
+        private final transient boolean accept;
+        /**
+         * Is the state cached, so that transitions to it may be kept.
+         */
+        private final transient boolean cached;
+        /**
+         * Transitions on ASCII chars, none if not cached.
+         */
+        private final transient AtomicReferenceArray<Globs.State> ascii;
+        /**
+         * Transitions on other chars.
+         */
+        private final transient ConcurrentMap<Character, Globs.State> other;
+
+        /**
+         * Class constructor.
+         *
+         * @param set Positions.
+         * @param shared Is the state cached.
+         */
+        State(final BitSet set, final boolean shared) {
+            this.positions = set;
+            boolean end = false;
+            for (int pos = set.nextSetBit(0); pos >= 0 && !end;
+                pos = set.nextSetBit(pos + 1)) {
+                end = Globs.this.kinds[pos] == Globs.END;
+            }
+            this.accept = end;
+            this.cached = shared;
+            int size = 0;
+            if (shared) {
+                size = Globs.ASCII;
+            }
+            this.ascii = new AtomicReferenceArray<>(size);
+            this.other = new ConcurrentHashMap<>(0);
+        }
+
+        /**
+         * Is any pattern ended.
+         *
+         * @return True if name matched so far is accepted.
+         */
+        public boolean accepting() {
+            return this.accept;
+        }
+
+        /**
+         * Can no pattern match anymore.
+         *
+         * @return True if no positions left.
+         */
+        public boolean dead() {
+            return this.positions.isEmpty();
+        }
+
+        /**
+         * State after char.
+         *
+         * @param chr Char.
+         * @return Next state.
+         */
+        public Globs.State next(final char chr) {
+            Globs.State next;
+            if (!this.cached) {
+                next = this.step(chr);
+            } else if (chr < Globs.ASCII) {
+                next = this.ascii.get(chr);
+                if (next == null) {
+                    next = this.step(chr);
+                    if (next.cached) {
+                        this.ascii.set(chr, next);
+                    }
+                }
+            } else {
+                next = this.other.get(chr);
+                if (next == null) {
+                    next = this.step(chr);
+                    if (next.cached && this.other.size() < Globs.OTHER) {
+                        this.other.put(chr, next);
+                    }
+                }
+            }
+            return next;
+        }
+
+        /**
+         * Compute state after char.
+         *
+         * @param chr Char.
+         * @return Next state.
+         */
+        private Globs.State step(final char chr) {
+            final BitSet set = new BitSet();
+            for (int pos = this.positions.nextSetBit(0); pos >= 0;
+                pos = this.positions.nextSetBit(pos + 1)) {
+                final byte kind = Globs.this.kinds[pos];
+                if (kind == Globs.STAR) {
+                    Globs.this.add(set, pos);
+                } else if (kind == Globs.ANY
+                    || kind == Globs.LITERAL && Globs.this.chars[pos] == chr
+                    || kind == Globs.CLASS
+                    && Globs.matches(Globs.this.classes[pos], chr)) {
+                    Globs.this.add(set, pos + 1);
+                }
+            }
+            return Globs.this.state(set);
+        }
+    }
+}
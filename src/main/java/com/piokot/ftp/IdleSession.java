@@ -0,0 +1,640 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.SettableFuture;
+import com.piokot.ftp.api.FTPCommand;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * Logged in FTP session parked on a {@link Multiplexer} selector thread.
+ *
+ * <p>While parked, the control connection takes no thread: the selector
+ * logs in, keeps the session alive with NOOP and notices when the server
+ * drops it. Running commands borrows the connection to the calling thread
+ * as an Apache FTP client, with data connections opened on demand, and
+ * parks it again afterwards, back in the login directory and ASCII type.
+ * Borrowers of the same session wait for their turn. If a command fails,
+ * the session is closed, as its state is unknown.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class IdleSession {
+    /**
+     * Login, reply and socket timeout in milliseconds.
+     */
+    private static final int TIMEOUT = 60000;
+    /**
+     * State of connecting.
+     */
+    private static final int CONNECTING = 0;
+    /**
+     * State of waiting for greeting.
+     */
+    private static final int GREETING = 1;
+    /**
+     * State of waiting for USER reply.
+     */
+    private static final int USER = 2;
+    /**
+     * State of waiting for PASS reply.
+     */
+    private static final int PASS = 3;
+    /**
+     * State of waiting for PWD reply.
+     */
+    private static final int PWD = 4;
+    /**
+     * State of parked session.
+     */
+    private static final int IDLE = 5;
+    /**
+     * State of waiting for NOOP reply.
+     */
+    private static final int NOOP = 6;
+    /**
+     * State of session borrowed by a thread.
+     */
+    private static final int LENT = 7;
+    /**
+     * State of closed session.
+     */
+    private static final int CLOSED = 8;
+    /**
+     * Selector thread.
+     */
+    private final transient ControlLoop loop;
+    /**
+     * Server address.
+     */
+    private final transient InetSocketAddress address;
+    /**
+     * User name.
+     */
+    private final transient String usr;
+    /**
+     * Password.
+     */
+    private final transient String pass;
+    /**
+     * Keep-alive interval in nanoseconds.
+     */
+    private final transient long keepalive;
+    /**
+     * Threads waiting to borrow the connection.
+     */
+    private final transient Queue<SettableFuture<SocketChannel>> waiting;
+    /**
+     * Bytes read.
+     */
+    private final transient ByteBuffer input;
+    /**
+     * Line being read.
+     */
+    private final transient StringBuilder line;
+    /**
+     * Control channel.
+     */
+    private transient SocketChannel channel;
+    /**
+     * Selection key while parked.
+     */
+    private transient SelectionKey key;
+    /**
+     * Session state.
+     */
+    private transient volatile int state;
+    /**
+     * Code of multi-line reply being read, empty if none.
+     */
+    private transient String multi;
+    /**
+     * Login directory.
+     */
+    private transient String home;
+    /**
+     * Time of starting login in nanoseconds.
+     */
+    private transient long started;
+    /**
+     * Time of last reply or command in nanoseconds.
+     */
+    private transient long last;
+    /**
+     * Has the session ever logged in.
+     */
+    private transient volatile boolean logged;
+    /**
+     * Should the session be closed when given back.
+     */
+    private transient boolean closing;
+    /**
+     * Reason of closing.
+     */
+    private transient Exception failure;
+
+    /**
+     * Class constructor.
+     *
+     * @param selector Selector thread.
+     * @param server Server address.
+     * @param user User name.
+     * @param password Password.
+     * @param interval Keep-alive interval in nanoseconds.
+     * @checkstyle ParameterNumberCheck (4 lines)
+     */
+    IdleSession(final ControlLoop selector, final InetSocketAddress server,
+        final String user, final String password, final long interval) {
+        this.loop = selector;
+        this.address = server;
+        this.usr = user;
+        this.pass = password;
+        this.keepalive = interval;
+        this.waiting = new ArrayDeque<>(1);
+        this.input = ByteBuffer.allocate(512);
+        this.line = new StringBuilder(0);
+        this.multi = "";
+        this.home = "/";
+        this.state = IdleSession.CONNECTING;
+        this.submit(
+            new Runnable() {
+                @Override
+                public void run() {
+                    IdleSession.this.start();
+                }
+            }
+        );
+    }
+
+    /**
+     * Main flow executed on the session, like {@link FTP#onConnect}.
+     *
+     * @param commands FTP commands run on borrowed connection.
+     */
+    @SneakyThrows
+    public void onConnect(final FTPCommand... commands) {
+        final SettableFuture<SocketChannel> lent = SettableFuture.create();
+        this.submit(
+            new Runnable() {
+                @Override
+                public void run() {
+                    IdleSession.this.waiting.add(lent);
+                    IdleSession.this.lend();
+                }
+            }
+        );
+        final SocketChannel borrowed;
+        try {
+            borrowed = lent.get();
+        } catch (final ExecutionException ex) {
+            throw new IllegalStateException(
+                String.format("session %s is closed", this), ex.getCause()
+            );
+        }
+        boolean clean = false;
+        try {
+            borrowed.configureBlocking(true);
+            final WatchedClient client = new WatchedClient();
+            client.setDefaultTimeout(IdleSession.TIMEOUT);
+            client.setDataTimeout(IdleSession.TIMEOUT);
+            client.attach(borrowed.socket());
+            for (final FTPCommand command : commands) {
+                command.execute(client);
+            }
+            clean = client.changeWorkingDirectory(this.home)
+                && client.setFileType(FTPClient.ASCII_FILE_TYPE);
+        } finally {
+            this.restore(borrowed, clean);
+        }
+    }
+
+    /**
+     * Is the session open.
+     *
+     * @return True unless closed.
+     */
+    public boolean alive() {
+        return this.state != IdleSession.CLOSED;
+    }
+
+    /**
+     * Has the session logged in, even if closed since.
+     *
+     * @return True if login completed.
+     */
+    boolean logged() {
+        return this.logged;
+    }
+
+    /**
+     * Close the session, after it is given back if borrowed.
+     */
+    public void close() {
+        this.submit(
+            new Runnable() {
+                @Override
+                public void run() {
+                    IdleSession.this.quit();
+                }
+            }
+        );
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "%s@%s:%d", this.usr, this.address.getHostString(),
+            this.address.getPort()
+        );
+    }
+
+    /**
+     * Channel ready, called on the loop.
+     *
+     * @param ready Selection key.
+     */
+    void ready(final SelectionKey ready) {
+        try {
+            if (this.state == IdleSession.CONNECTING && ready.isConnectable()) {
+                this.channel.finishConnect();
+                ready.interestOps(SelectionKey.OP_READ);
+                this.state = IdleSession.GREETING;
+            } else if (ready.isReadable()) {
+                this.read();
+            }
+            // @checkstyle IllegalCatchCheck (1 line)
+        } catch (final IOException | RuntimeException ex) {
+            this.fail(ex);
+        }
+    }
+
+    /**
+     * Check timeouts and keep alive, called on the loop.
+     *
+     * @param now Current time in nanoseconds.
+     */
+    void tick(final long now) {
+        final long timeout = TimeUnit.MILLISECONDS.toNanos(IdleSession.TIMEOUT);
+        try {
+            if (this.state < IdleSession.IDLE && now - this.started > timeout) {
+                throw new IOException("login timed out");
+            }
+            if (this.state == IdleSession.NOOP && now - this.last > timeout) {
+                throw new IOException("keep-alive timed out");
+            }
+            if (this.state == IdleSession.IDLE
+                && now - this.last >= this.keepalive) {
+                this.send("NOOP");
+                this.state = IdleSession.NOOP;
+            }
+            // @checkstyle IllegalCatchCheck (1 line)
+        } catch (final IOException | RuntimeException ex) {
+            this.fail(ex);
+        }
+    }
+
+    /**
+     * Start connecting, on the loop.
+     */
+    private void start() {
+        this.started = System.nanoTime();
+        this.last = this.started;
+        try {
+            this.channel = SocketChannel.open();
+            this.channel.configureBlocking(false);
+            if (this.channel.connect(this.address)) {
+                this.key = this.channel.register(
+                    this.loop.selector(), SelectionKey.OP_READ, this
+                );
+                this.state = IdleSession.GREETING;
+            } else {
+                this.key = this.channel.register(
+                    this.loop.selector(), SelectionKey.OP_CONNECT, this
+                );
+            }
+        } catch (final IOException ex) {
+            this.fail(ex);
+        }
+    }
+
+    /**
+     * Read available bytes and handle complete lines.
+     *
+     * @throws IOException If connection fails.
+     */
+    private void read() throws IOException {
+        if (this.channel.read(this.input) < 0) {
+            throw new IOException("connection closed by server");
+        }
+        this.input.flip();
+        while (this.input.hasRemaining()) {
+            final char chr = (char) (this.input.get() & 0xFF);
+            if (chr == '\n') {
+                int end = this.line.length();
+                if (end > 0 && this.line.charAt(end - 1) == '\r') {
+                    --end;
+                }
+                this.line(this.line.substring(0, end));
+                this.line.setLength(0);
+            } else {
+                this.line.append(chr);
+            }
+        }
+        this.input.clear();
+    }
+
+    /**
+     * Handle line of reply.
+     *
+     * @param text Line.
+     * @throws IOException If reply is unexpected.
+     */
+    private void line(final String text) throws IOException {
+        if (this.multi.isEmpty()) {
+            if (text.length() > 3 && text.charAt(3) == '-') {
+                this.multi = text.substring(0, 3);
+            } else if (text.length() >= 3) {
+                this.reply(IdleSession.code(text), text);
+            }
+        } else if (text.length() > 3 && text.startsWith(this.multi)
+            && text.charAt(3) == ' ') {
+            this.multi = "";
+            this.reply(IdleSession.code(text), text);
+        }
+    }
+
+    /**
+     * Reply code at start of line.
+     *
+     * @param text Line of at least three chars.
+     * @return Reply code.
+     * @throws IOException If line does not start with three digits.
+     */
+    private static int code(final String text) throws IOException {
+        int code = 0;
+        for (int idx = 0; idx < 3; ++idx) {
+            final char chr = text.charAt(idx);
+            if (chr < '0' || chr > '9') {
+                throw new IOException(
+                    String.format("malformed reply: %s", text)
+                );
+            }
+            code = code * 10 + chr - '0';
+        }
+        return code;
+    }
+
+    /**
+     * Handle complete reply.
+     *
+     * @param code Reply code.
+     * @param text Last line of reply.
+     * @throws IOException If reply is unexpected.
+     * @checkstyle CyclomaticComplexityCheck (40 lines)
+     */
+    private void reply(final int code, final String text) throws IOException {
+        this.last = System.nanoTime();
+        final int before = this.state;
+        if (before == IdleSession.GREETING && code == 220) {
+            this.send(String.format("USER %s", this.usr));
+            this.state = IdleSession.USER;
+        } else if (before == IdleSession.USER && code == 331) {
+            this.send(String.format("PASS %s", this.pass));
+            this.state = IdleSession.PASS;
+        } else if ((before == IdleSession.USER || before == IdleSession.PASS)
+            && (code == 230 || code == 202)) {
+            this.send("PWD");
+            this.state = IdleSession.PWD;
+        } else if (before == IdleSession.PWD && code == 257) {
+            final int open = text.indexOf('"');
+            final int close = text.lastIndexOf('"');
+            if (open >= 0 && close > open) {
+                this.home = text.substring(open + 1, close);
+            }
+            this.idle();
+        } else if (before == IdleSession.NOOP && code < 400) {
+            this.idle();
+        } else if (code >= 400 || before != IdleSession.IDLE
+            && !(before == IdleSession.GREETING && code == 120)) {
+            throw new IOException(String.format("unexpected reply %s", text));
+        }
+    }
+
+    /**
+     * Park the session and lend it to a waiting thread, if any.
+     */
+    private void idle() {
+        this.logged = true;
+        this.state = IdleSession.IDLE;
+        this.lend();
+    }
+
+    /**
+     * Lend parked connection to first waiting thread.
+     */
+    private void lend() {
+        if (this.state == IdleSession.CLOSED) {
+            this.release();
+        }
+        if (this.state == IdleSession.IDLE && !this.waiting.isEmpty()) {
+            this.key.cancel();
+            this.state = IdleSession.LENT;
+            this.submit(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        IdleSession.this.handover();
+                    }
+                }
+            );
+        }
+    }
+
+    /**
+     * Hand deregistered connection to first waiting thread.
+     */
+    private void handover() {
+        if (this.state == IdleSession.LENT) {
+            final SettableFuture<SocketChannel> next = this.waiting.poll();
+            if (next == null || !next.set(this.channel)) {
+                this.park();
+            }
+        } else {
+            this.release();
+        }
+    }
+
+    /**
+     * Give borrowed connection back, from borrowing thread.
+     *
+     * @param borrowed Control channel.
+     * @param clean Is session state known.
+     */
+    private void restore(final SocketChannel borrowed, final boolean clean) {
+        boolean parked = clean;
+        if (clean) {
+            try {
+                borrowed.configureBlocking(false);
+            } catch (final IOException ex) {
+                parked = false;
+            }
+        }
+        final boolean back = parked;
+        this.submit(
+            new Runnable() {
+                @Override
+                public void run() {
+                    if (back && !IdleSession.this.closing) {
+                        IdleSession.this.park();
+                    } else if (back) {
+                        IdleSession.this.quit();
+                    } else {
+                        IdleSession.this.fail(
+                            new IOException("session broken while borrowed")
+                        );
+                    }
+                }
+            }
+        );
+    }
+
+    /**
+     * Register connection again and lend it to next thread if any.
+     */
+    private void park() {
+        try {
+            this.key = this.channel.register(
+                this.loop.selector(), SelectionKey.OP_READ, this
+            );
+            this.last = System.nanoTime();
+            this.idle();
+        } catch (final IOException ex) {
+            this.fail(ex);
+        }
+    }
+
+    /**
+     * Say goodbye and close, later if borrowed.
+     */
+    private void quit() {
+        if (this.state == IdleSession.LENT) {
+            this.closing = true;
+        } else if (this.state != IdleSession.CLOSED) {
+            final IOException closed = new IOException("session closed");
+            if (this.state == IdleSession.IDLE) {
+                try {
+                    this.send("QUIT");
+                } catch (final IOException ex) {
+                    closed.addSuppressed(ex);
+                }
+            }
+            this.fail(closed);
+        }
+    }
+
+    /**
+     * Run task on the loop, failing the session if it throws.
+     *
+     * @param task Task.
+     */
+    private void submit(final Runnable task) {
+        this.loop.execute(
+            new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                        // @checkstyle IllegalCatchCheck (1 line)
+                    } catch (final RuntimeException ex) {
+                        IdleSession.this.fail(ex);
+                    }
+                }
+            }
+        );
+    }
+
+    /**
+     * Send command.
+     *
+     * @param command Command line without line end.
+     * @throws IOException If connection fails.
+     */
+    private void send(final String command) throws IOException {
+        final ByteBuffer bytes = ByteBuffer.wrap(
+            String.format("%s\r\n", command).getBytes(Charsets.ISO_8859_1)
+        );
+        while (bytes.hasRemaining()) {
+            this.channel.write(bytes);
+        }
+        this.last = System.nanoTime();
+    }
+
+    /**
+     * Close the session for good.
+     *
+     * @param cause Reason.
+     */
+    private void fail(final Exception cause) {
+        this.state = IdleSession.CLOSED;
+        this.failure = cause;
+        if (this.channel != null) {
+            try {
+                this.channel.close();
+            } catch (final IOException ex) {
+                cause.addSuppressed(ex);
+            }
+        }
+        this.release();
+    }
+
+    /**
+     * Fail all waiting threads.
+     */
+    private void release() {
+        SettableFuture<SocketChannel> next = this.waiting.poll();
+        while (next != null) {
+            next.setException(this.failure);
+            next = this.waiting.poll();
+        }
+    }
+}
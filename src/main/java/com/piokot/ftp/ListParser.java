@@ -0,0 +1,704 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.piokot.ftp.api.Records;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPFileEntryParser;
+import org.apache.commons.net.ftp.parser.NTFTPEntryParser;
+import org.apache.commons.net.ftp.parser.UnixFTPEntryParser;
+
+/**
+ * Records receiver scanning lines of raw LIST output of UNIX and Windows
+ * servers without regular expressions.
+ *
+ * <p>Type and name of each line are found by walking its fields in the
+ * decoded char buffer, so receivers may filter on them before any
+ * allocation. Full {@link FTPFile} with parsed date is built by Apache
+ * parsers only when asked for. Blank lines and totals are skipped, and so
+ * are unknown lines after a recognized one. If the first other line is not
+ * recognized, the listing is of another format, like that of VMS, OS/400
+ * or MVS: reading stops and {@link #list(FTPClient, String, Lines)}
+ * reports it, so that callers fall back to
+ * {@link FTPClient#listFiles(String)} with its format detection.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+final class ListParser implements Records {
+    /**
+     * Type of regular file.
+     */
+    static final char FILE = '-';
+    /**
+     * Type of directory.
+     */
+    static final char DIR = 'd';
+    /**
+     * Type of symbolic link.
+     */
+    static final char LINK = 'l';
+    /**
+     * Type of other entries, like devices.
+     */
+    static final char OTHER = '?';
+    /**
+     * Lines decoded in one batch.
+     */
+    private static final int BATCH = 1000;
+    /**
+     * Month names, three letters each.
+     */
+    private static final String MONTHS = "janfebmaraprmayjunjulaugsepoctnovdec";
+    /**
+     * Receiver of lines.
+     */
+    private final transient ListParser.Lines sink;
+    /**
+     * Line reused for all records.
+     */
+    private final transient ListParser.Line line;
+    /**
+     * Has a line been recognized.
+     */
+    private transient boolean known;
+    /**
+     * Is the listing of unknown format.
+     */
+    private transient boolean foreign;
+
+    /**
+     * Class constructor.
+     *
+     * @param lines Receiver of lines.
+     */
+    ListParser(final ListParser.Lines lines) {
+        this.sink = lines;
+        this.line = new ListParser.Line();
+    }
+
+    @Override
+    public boolean onBatch(final Records.Batch batch) {
+        for (int idx = 0; idx < batch.size() && !this.foreign; ++idx) {
+            this.line.reset(batch.record(idx));
+            if (this.line.type() != 0) {
+                this.known = true;
+                this.sink.onLine(this.line);
+            } else if (!this.known && !this.line.summary()) {
+                this.foreign = true;
+            }
+        }
+        return !this.foreign;
+    }
+
+    /**
+     * Was the listing found to be of unknown format.
+     *
+     * @return True if reading stopped at an unknown first line.
+     */
+    boolean foreign() {
+        return this.foreign;
+    }
+
+    /**
+     * List directory with raw LIST over a data connection of its own.
+     *
+     * @param client Apache FTP client.
+     * @param dir Listed directory.
+     * @param lines Receiver of lines.
+     * @return True if listed, false if server refused data connection or
+     *  LIST, or the listing is of unknown format.
+     */
+    @SneakyThrows
+    static boolean list(final FTPClient client, final String dir,
+        final ListParser.Lines lines) {
+        final Optional<InputStream> stream = DataConnection.open(
+            client, "LIST", Strings.emptyToNull(dir)
+        );
+        boolean listed = stream.isPresent();
+        if (listed) {
+            final ListParser parser = new ListParser(lines);
+            try {
+                new RecordParser(
+                    Charset.forName(client.getControlEncoding()).newDecoder(),
+                    (byte) '\n', ListParser.BATCH, parser,
+                    false, Long.MAX_VALUE, new AtomicBoolean()
+                ).onReturn(stream.get());
+            } finally {
+                stream.get().close();
+            }
+            listed = !parser.foreign();
+            if (!client.completePendingCommand() && listed) {
+                throw new IllegalStateException(
+                    String.format(
+                        "listing of %s failed: %s",
+                        dir, client.getReplyString().trim()
+                    )
+                );
+            }
+        }
+        return listed;
+    }
+
+    /**
+     * Receiver of listing lines.
+     */
+    interface Lines {
+        /**
+         * Line scanned, valid only during the call.
+         *
+         * @param line Line.
+         */
+        void onLine(ListParser.Line line);
+    }
+
+    /**
+     * Line of listing, scanned on first question.
+     */
+    static final class Line {
+        /**
+         * Maximum fields looked at.
+         */
+        private static final int FIELDS = 10;
+        /**
+         * Field starts.
+         */
+        private final transient int[] starts;
+        /**
+         * Field ends.
+         */
+        private final transient int[] ends;
+        /**
+         * Parser of UNIX lines, created when needed.
+         */
+        private transient FTPFileEntryParser unix;
+        /**
+         * Parser of Windows lines, created when needed.
+         */
+        private transient FTPFileEntryParser windows;
+        /**
+         * Line text.
+         */
+        private transient CharSequence text;
+        /**
+         * Is the line scanned.
+         */
+        private transient boolean scanned;
+        /**
+         * Is it Windows line.
+         */
+        private transient boolean dos;
+        /**
+         * Entry type, zero if line is not recognized.
+         */
+        private transient char kind;
+        /**
+         * Name start.
+         */
+        private transient int from;
+        /**
+         * Name end.
+         */
+        private transient int until;
+        /**
+         * Size field, -1 if none.
+         */
+        private transient int bytes;
+        /**
+         * First date field, -1 if none.
+         */
+        private transient int date;
+        /**
+         * Calendar reused for dates.
+         */
+        private final transient Calendar calendar;
+
+        /**
+         * Class constructor.
+         */
+        Line() {
+            this.starts = new int[ListParser.Line.FIELDS];
+            this.ends = new int[ListParser.Line.FIELDS];
+            this.calendar = Calendar.getInstance();
+        }
+
+        /**
+         * Entry type, like {@link ListParser#FILE} or {@link ListParser#DIR}.
+         *
+         * @return Type, zero if line is not recognized.
+         */
+        char type() {
+            this.scan();
+            return this.kind;
+        }
+
+        /**
+         * Entry name, without link target.
+         *
+         * @return Name, valid only until next line.
+         */
+        CharSequence name() {
+            this.scan();
+            return this.text.subSequence(this.from, this.until);
+        }
+
+        /**
+         * Size of entry, read from its field alone.
+         *
+         * @return Bytes, -1 if not known.
+         */
+        long size() {
+            this.scan();
+            long result = -1L;
+            if (this.bytes >= 0) {
+                result = this.number(
+                    this.starts[this.bytes], this.ends[this.bytes]
+                );
+            }
+            return result;
+        }
+
+        /**
+         * Modification time of entry, read from date fields alone in
+         * default time zone, like {@link #entry()} does. Time without
+         * year is in the last twelve months.
+         *
+         * @return Milliseconds since epoch, -1 if not known.
+         */
+        long time() {
+            this.scan();
+            long result = -1L;
+            if (this.date >= 0) {
+                this.calendar.clear();
+                final boolean known;
+                if (this.dos) {
+                    known = this.dosTime();
+                } else {
+                    known = this.unixTime();
+                }
+                if (known) {
+                    result = this.calendar.getTimeInMillis();
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Fully parsed entry.
+         *
+         * @return Entry, absent if Apache parser refuses the line.
+         */
+        Optional<FTPFile> entry() {
+            this.scan();
+            final FTPFileEntryParser parser;
+            if (this.dos) {
+                if (this.windows == null) {
+                    this.windows = new NTFTPEntryParser();
+                }
+                parser = this.windows;
+            } else {
+                if (this.unix == null) {
+                    this.unix = new UnixFTPEntryParser();
+                }
+                parser = this.unix;
+            }
+            return Optional.fromNullable(
+                parser.parseFTPEntry(this.text.toString())
+            );
+        }
+
+        /**
+         * Is it a line any format may have besides entries, blank or like
+         * {@code total 4}.
+         *
+         * @return True if blank or total.
+         */
+        boolean summary() {
+            final int fields = this.fields();
+            return fields == 0 || fields == 2 && this.field(0, "total")
+                && this.digits(1);
+        }
+
+        /**
+         * Start with new line text.
+         *
+         * @param line Line text.
+         */
+        void reset(final CharSequence line) {
+            this.text = line;
+            this.scanned = false;
+        }
+
+        /**
+         * Find type and name of line.
+         */
+        private void scan() {
+            if (!this.scanned) {
+                this.scanned = true;
+                this.kind = 0;
+                this.bytes = -1;
+                this.date = -1;
+                final int fields = this.fields();
+                if (fields > 0) {
+                    final char first = this.text.charAt(0);
+                    this.dos = Character.isDigit(first);
+                    if (this.dos) {
+                        this.windows(fields);
+                    } else if ("-dlbcps".indexOf(first) >= 0) {
+                        this.unix(fields, first);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Scan Windows line, like
+         * {@code 01-15-20  10:30AM  <DIR>  name}.
+         *
+         * @param fields Fields found.
+         */
+        private void windows(final int fields) {
+            if (fields > 3) {
+                if (this.field(2, "<DIR>")) {
+                    this.kind = ListParser.DIR;
+                } else {
+                    this.kind = ListParser.FILE;
+                    this.bytes = 2;
+                }
+                this.date = 0;
+                this.name(3);
+            }
+        }
+
+        /**
+         * Scan UNIX line, like
+         * {@code drwxr-xr-x 2 ftp ftp 4096 Jan 05 2020 name}, with owner
+         * or group possibly missing.
+         *
+         * @param fields Fields found.
+         * @param first First char.
+         */
+        private void unix(final int fields, final char first) {
+            int month = 0;
+            for (int idx = 3; idx + 3 < fields && month == 0; ++idx) {
+                if (this.digits(idx - 1) && this.month(idx) >= 0
+                    && this.digits(idx + 1)) {
+                    month = idx;
+                }
+            }
+            if (month > 0) {
+                if (first == ListParser.FILE || first == ListParser.DIR
+                    || first == ListParser.LINK) {
+                    this.kind = first;
+                } else {
+                    this.kind = ListParser.OTHER;
+                }
+                this.bytes = month - 1;
+                this.date = month;
+                this.name(month + 3);
+                if (first == ListParser.LINK) {
+                    this.target();
+                }
+            }
+        }
+
+        /**
+         * Set calendar from UNIX date, like {@code Jan 05 2020} or
+         * {@code Jan 05 10:30}.
+         *
+         * @return True if date is valid.
+         */
+        private boolean unixTime() {
+            final int day = this.small(
+                this.starts[this.date + 1], this.ends[this.date + 1]
+            );
+            final int start = this.starts[this.date + 2];
+            final int end = this.ends[this.date + 2];
+            final int colon = this.colon(start, end);
+            boolean known = day > 0 && day <= 31;
+            if (colon < 0) {
+                final int year = this.small(start, end);
+                known &= end - start == 4 && year > 0;
+                this.calendar.set(year, this.month(this.date), day);
+            } else {
+                final int hour = this.small(start, colon);
+                final int minute = this.small(colon + 1, end);
+                known &= hour >= 0 && hour < 24 && minute >= 0
+                    && minute < 60;
+                final Calendar now = Calendar.getInstance();
+                this.calendar.set(
+                    now.get(Calendar.YEAR), this.month(this.date), day,
+                    hour, minute
+                );
+                if (this.calendar.after(now)) {
+                    this.calendar.add(Calendar.YEAR, -1);
+                }
+            }
+            return known;
+        }
+
+        /**
+         * Set calendar from Windows date, like {@code 01-15-20  10:30AM}
+         * or {@code 01-15-2020  22:30}.
+         *
+         * @return True if date is valid.
+         */
+        private boolean dosTime() {
+            final int start = this.starts[this.date];
+            final int end = this.ends[this.date];
+            final int clock = this.starts[this.date + 1];
+            int stop = this.ends[this.date + 1];
+            final int colon = this.colon(clock, stop);
+            int hour = -1;
+            boolean known = (end - start == 8 || end - start == 10)
+                && this.text.charAt(start + 2) == '-'
+                && this.text.charAt(start + 5) == '-' && colon > clock;
+            if (known && stop - colon == 5) {
+                final char noon = Character.toUpperCase(
+                    this.text.charAt(stop - 2)
+                );
+                stop -= 2;
+                hour = this.small(clock, colon);
+                known = hour > 0 && hour <= 12
+                    && (noon == 'A' || noon == 'P');
+                hour = hour % 12;
+                if (noon == 'P') {
+                    hour += 12;
+                }
+            } else if (known) {
+                hour = this.small(clock, colon);
+            }
+            if (known) {
+                final int month = this.small(start, start + 2);
+                final int day = this.small(start + 3, start + 5);
+                int year = this.small(start + 6, end);
+                final int minute = this.small(colon + 1, stop);
+                if (end - start == 8 && year >= 0) {
+                    year += ListParser.Line.century(year);
+                }
+                known = month > 0 && month <= 12 && day > 0 && day <= 31
+                    && year > 0 && hour >= 0 && hour < 24 && minute >= 0
+                    && minute < 60;
+                this.calendar.set(year, month - 1, day, hour, minute);
+            }
+            return known;
+        }
+
+        /**
+         * Century of two digit year, keeping it at most twenty years ahead
+         * of now.
+         *
+         * @param year Two digit year.
+         * @return Century in years, like 2000.
+         */
+        private static int century(final int year) {
+            final int now = Calendar.getInstance().get(Calendar.YEAR);
+            int result = now - now % 100;
+            if (result + year > now + 20) {
+                result -= 100;
+            }
+            return result;
+        }
+
+        /**
+         * Position of colon in text range.
+         *
+         * @param start Range start.
+         * @param end Range end.
+         * @return Position, -1 if none.
+         */
+        private int colon(final int start, final int end) {
+            int result = -1;
+            for (int idx = start; result < 0 && idx < end; ++idx) {
+                if (this.text.charAt(idx) == ':') {
+                    result = idx;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Short decimal number in text range, like a day or a year.
+         *
+         * @param start Range start.
+         * @param end Range end.
+         * @return Number, -1 if range is empty, longer than four digits or
+         *  not digits.
+         */
+        private int small(final int start, final int end) {
+            int result = -1;
+            if (end - start <= 4) {
+                result = (int) this.number(start, end);
+            }
+            return result;
+        }
+
+        /**
+         * Decimal number in text range.
+         *
+         * @param start Range start.
+         * @param end Range end.
+         * @return Number, -1 if range is empty, too long or not digits.
+         */
+        private long number(final int start, final int end) {
+            long result = -1L;
+            if (end > start && end - start < 19) {
+                result = 0L;
+                for (int idx = start; result >= 0 && idx < end; ++idx) {
+                    final char chr = this.text.charAt(idx);
+                    if (Character.isDigit(chr)) {
+                        result = result * 10 + chr - '0';
+                    } else {
+                        result = -1;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Set name to the rest of line from field.
+         *
+         * @param field Field index.
+         */
+        private void name(final int field) {
+            this.from = this.starts[field];
+            this.until = this.text.length();
+        }
+
+        /**
+         * Cut link target off name.
+         */
+        private void target() {
+            final int end = this.until;
+            for (int idx = this.from; idx + 4 <= end; ++idx) {
+                if (this.until == end && this.text.charAt(idx) == ' '
+                    && this.text.charAt(idx + 1) == '-'
+                    && this.text.charAt(idx + 2) == '>'
+                    && this.text.charAt(idx + 3) == ' ') {
+                    this.until = idx;
+                }
+            }
+        }
+
+        /**
+         * Find whitespace separated fields.
+         *
+         * @return Number of fields found, at most {@link #FIELDS}.
+         */
+        private int fields() {
+            final int length = this.text.length();
+            int count = 0;
+            int pos = 0;
+            while (count < ListParser.Line.FIELDS && pos < length) {
+                while (pos < length
+                    && Character.isWhitespace(this.text.charAt(pos))) {
+                    ++pos;
+                }
+                if (pos < length) {
+                    this.starts[count] = pos;
+                    while (pos < length
+                        && !Character.isWhitespace(this.text.charAt(pos))) {
+                        ++pos;
+                    }
+                    this.ends[count] = pos;
+                    ++count;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Is field all digits.
+         *
+         * @param field Field index.
+         * @return True if digits.
+         */
+        private boolean digits(final int field) {
+            boolean result = true;
+            for (int idx = this.starts[field]; idx < this.ends[field]; ++idx) {
+                result &= Character.isDigit(this.text.charAt(idx));
+            }
+            return result;
+        }
+
+        /**
+         * Which English month name, like {@code Jan}, is field, in any case.
+         *
+         * @param field Field index.
+         * @return Month from 0 for January, -1 if not month.
+         */
+        private int month(final int field) {
+            final int start = this.starts[field];
+            int result = -1;
+            if (this.ends[field] - start == 3) {
+                for (int pos = 0; result < 0
+                    && pos < ListParser.MONTHS.length(); pos += 3) {
+                    boolean same = true;
+                    for (int idx = 0; idx < 3; ++idx) {
+                        same &= Character.toLowerCase(
+                            this.text.charAt(start + idx)
+                        ) == ListParser.MONTHS.charAt(pos + idx);
+                    }
+                    if (same) {
+                        result = pos / 3;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Is field equal to text.
+         *
+         * @param field Field index.
+         * @param value Text.
+         * @return True if equal.
+         */
+        private boolean field(final int field, final String value) {
+            boolean result = this.ends[field] - this.starts[field]
+                == value.length();
+            for (int idx = 0; result && idx < value.length(); ++idx) {
+                result = this.text.charAt(this.starts[field] + idx)
+                    == value.charAt(idx);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,651 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.FTPCommand;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * Group of mirrored FTP servers with identical content.
+ *
+ * <p>Keeps rolling averages of connect time, time to first byte and
+ * download throughput of every mirror and sends each request to the mirror
+ * expected to be fastest. Mirrors failing several times in a row are ejected
+ * for a while. Downloads and listings are hedged: if the chosen mirror does
+ * not start the transfer within twice its usual time, the same request goes
+ * to the next mirror and the first to start wins, the other is aborted.
+ * Once a mirror has won, its result is final: if it fails later, say in
+ * the callback, the failure is thrown without trying other mirrors. The
+ * group owns threads running hedged requests until closed.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Mirrors implements Closeable {
+    /**
+     * Consecutive failures ejecting a mirror.
+     */
+    private static final int FAILURES = 3;
+    /**
+     * Time a mirror stays ejected in nanoseconds.
+     */
+    private static final long EJECTION = TimeUnit.SECONDS.toNanos(30L);
+    /**
+     * Mirrors of the group.
+     */
+    private final transient List<Mirrors.Mirror> group;
+    /**
+     * Minimal delay before hedging in nanoseconds.
+     */
+    private final transient long hedge;
+    /**
+     * Threads running requests.
+     */
+    private final transient ExecutorService threads;
+
+    /**
+     * Class constructor hedging after at least 100 milliseconds.
+     *
+     * @param mirrors Mirrored servers.
+     */
+    public Mirrors(final FTP... mirrors) {
+        this(TimeUnit.MILLISECONDS.toNanos(100L), mirrors);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param delay Minimal delay before hedging in nanoseconds.
+     * @param mirrors Mirrored servers.
+     */
+    public Mirrors(final long delay, final FTP... mirrors) {
+        final ImmutableList.Builder<Mirrors.Mirror> list =
+            ImmutableList.builder();
+        for (final FTP ftp : mirrors) {
+            list.add(new Mirrors.Mirror(ftp));
+        }
+        this.group = list.build();
+        this.hedge = delay;
+        this.threads = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("ftp-mirror-%d").build()
+        );
+    }
+
+    /**
+     * Run commands on the fastest healthy mirror.
+     *
+     * @param commands FTP commands run during FTP connection.
+     */
+    public void onConnect(final FTPCommand... commands) {
+        final Mirrors.Mirror mirror = this.ranking().get(0);
+        final long start = System.nanoTime();
+        final FTPCommand[] measured = new FTPCommand[commands.length + 1];
+        measured[0] = new FTPCommand() {
+            @Override
+            public void execute(final FTPClient client) {
+                mirror.connected(System.nanoTime() - start);
+            }
+        };
+        System.arraycopy(commands, 0, measured, 1, commands.length);
+        try {
+            mirror.ftp().onConnect(measured);
+            mirror.success();
+        // @checkstyle IllegalCatchCheck (1 line)
+        } catch (final RuntimeException ex) {
+            mirror.failure();
+            throw ex;
+        }
+    }
+
+    /**
+     * Download a file from the mirror starting the transfer first.
+     *
+     * @param remote Remote location of file to be downloaded.
+     * @param callback Callback on file downloaded, called once.
+     */
+    public void download(final String remote,
+        final Callback<InputStream> callback) {
+        this.hedged(
+            new Mirrors.Request() {
+                @Override
+                @SneakyThrows
+                public boolean run(final FTPClient client,
+                    final Mirrors.Mirror mirror, final Mirrors.Race race) {
+                    final long start = System.nanoTime();
+                    final InputStream stream =
+                        client.retrieveFileStream(remote);
+                    if (stream == null) {
+                        throw new IllegalStateException(
+                            String.format(
+                                "cannot download %s from %s: %s",
+                                remote, mirror.ftp(), client.getReplyString()
+                            )
+                        );
+                    }
+                    final long first = System.nanoTime();
+                    mirror.firstByte(first - start);
+                    final boolean win = race.claim();
+                    if (win) {
+                        final CountingInputStream counting =
+                            new CountingInputStream(stream);
+                        callback.onReturn(counting);
+                        mirror.transferred(
+                            counting.getCount(), System.nanoTime() - first
+                        );
+                    } else {
+                        stream.close();
+                        client.abort();
+                    }
+                    return win;
+                }
+            }
+        );
+    }
+
+    /**
+     * List a directory on the mirror answering first.
+     *
+     * @param directory Directory to be listed.
+     * @param callback Callback on list of files found, called once.
+     */
+    public void list(final String directory,
+        final Callback<FTPFile[]> callback) {
+        this.hedged(
+            new Mirrors.Request() {
+                @Override
+                @SneakyThrows
+                public boolean run(final FTPClient client,
+                    final Mirrors.Mirror mirror, final Mirrors.Race race) {
+                    final long start = System.nanoTime();
+                    final FTPFile[] files = client.listFiles(directory);
+                    mirror.firstByte(System.nanoTime() - start);
+                    final boolean win = race.claim();
+                    if (win) {
+                        callback.onReturn(files);
+                    }
+                    return win;
+                }
+            }
+        );
+    }
+
+    @Override
+    public void close() {
+        this.threads.shutdown();
+    }
+
+    /**
+     * Run request on the best mirror, hedging on the next one if it does
+     * not start in time and failing over to the next ones on errors
+     * before any has started.
+     *
+     * @param request Request to run.
+     */
+    @SneakyThrows
+    private void hedged(final Mirrors.Request request) {
+        final List<Mirrors.Mirror> ranking = this.ranking();
+        final Mirrors.Race race = new Mirrors.Race();
+        final CompletionService<Boolean> done =
+            new ExecutorCompletionService<>(this.threads, race.events);
+        final IllegalStateException failure = new IllegalStateException(
+            "all mirrors failed"
+        );
+        int next = 0;
+        int pending = 0;
+        while (!race.won.get() && (pending > 0 || next < ranking.size())) {
+            Future<Boolean> event = null;
+            if (pending == 0) {
+                done.submit(this.attempt(ranking.get(next), request, race));
+                ++next;
+                ++pending;
+            }
+            if (pending == 1 && next < ranking.size()) {
+                event = race.events.poll(
+                    Math.max(this.hedge, 2L * ranking.get(next - 1).expected()),
+                    TimeUnit.NANOSECONDS
+                );
+                if (event == null) {
+                    done.submit(
+                        this.attempt(ranking.get(next), request, race)
+                    );
+                    ++next;
+                    ++pending;
+                }
+            } else {
+                event = race.events.take();
+            }
+            if (event != null && event != Mirrors.Race.STARTED) {
+                --pending;
+                try {
+                    event.get();
+                } catch (final ExecutionException ex) {
+                    failure.addSuppressed(ex.getCause());
+                }
+            }
+        }
+        if (!race.won.get()) {
+            throw failure;
+        }
+        final Optional<Throwable> lost = Mirrors.finish(race, pending);
+        if (lost.isPresent()) {
+            throw lost.get();
+        }
+    }
+
+    /**
+     * Wait for the winner to finish, leaving losers to abort on their own.
+     *
+     * @param race Race of attempts.
+     * @param pending Attempts still running.
+     * @return Failure of the winner, absent if it succeeded.
+     * @throws InterruptedException If interrupted.
+     */
+    private static Optional<Throwable> finish(final Mirrors.Race race,
+        final int pending) throws InterruptedException {
+        Optional<Throwable> failure = Optional.absent();
+        boolean over = false;
+        for (int left = pending; !over && left > 0;) {
+            final Future<Boolean> event = race.events.take();
+            if (event != Mirrors.Race.STARTED) {
+                --left;
+                try {
+                    over = event.get();
+                } catch (final ExecutionException ex) {
+                    if (race.winner(ex.getCause())) {
+                        failure = Optional.of(ex.getCause());
+                        over = true;
+                    }
+                }
+            }
+        }
+        return failure;
+    }
+
+    /**
+     * Attempt of request on a mirror.
+     *
+     * @param mirror Mirror to run request on.
+     * @param request Request to run.
+     * @param race Race of attempts.
+     * @return Attempt returning true if it delivered the result.
+     */
+    private Callable<Boolean> attempt(final Mirrors.Mirror mirror,
+        final Mirrors.Request request, final Mirrors.Race race) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                final boolean[] mine = new boolean[1];
+                final long start = System.nanoTime();
+                final Mirrors.Race own = race.entry();
+                try {
+                    mirror.ftp().onConnect(
+                        new FTPCommand() {
+                            @Override
+                            public void execute(final FTPClient client) {
+                                mirror.connected(System.nanoTime() - start);
+                                mine[0] = request.run(client, mirror, own);
+                            }
+                        }
+                    );
+                    mirror.success();
+                // @checkstyle IllegalCatchCheck (1 line)
+                } catch (final RuntimeException ex) {
+                    mirror.failure();
+                    own.failed(ex);
+                    throw ex;
+                }
+                return mine[0];
+            }
+        };
+    }
+
+    /**
+     * Healthy mirrors from the fastest, ejected ones last.
+     *
+     * @return Ranking of mirrors.
+     */
+    private List<Mirrors.Mirror> ranking() {
+        final List<Mirrors.Mirror> ranking = new ArrayList<>(this.group);
+        final long now = System.nanoTime();
+        Collections.sort(
+            ranking,
+            new Comparator<Mirrors.Mirror>() {
+                @Override
+                public int compare(final Mirrors.Mirror first,
+                    final Mirrors.Mirror second) {
+                    int cmp = Boolean.compare(
+                        first.ejected(now), second.ejected(now)
+                    );
+                    if (cmp == 0) {
+                        cmp = Long.compare(first.expected(), second.expected());
+                    }
+                    return cmp;
+                }
+            }
+        );
+        return ranking;
+    }
+
+    /**
+     * Request run on a mirror.
+     */
+    private interface Request {
+        /**
+         * Run request within mirror's session.
+         *
+         * @param client Apache FTP client.
+         * @param mirror Mirror of the session.
+         * @param race Entry of the attempt in the race, claimed by the
+         *  attempt delivering result to callback.
+         * @return True if this attempt delivered the result.
+         */
+        boolean run(FTPClient client, Mirrors.Mirror mirror, Mirrors.Race race);
+    }
+
+    /**
+     * Race of attempts of one request, or entry of one attempt in it.
+     */
+    private static final class Race {
+        /**
+         * Event of an attempt starting the transfer and winning.
+         */
+        private static final Future<Boolean> STARTED =
+            Futures.immediateFuture(true);
+        /**
+         * Is there a winner.
+         */
+        private final transient AtomicBoolean won;
+        /**
+         * Failure of the winner, keyed by identity.
+         */
+        private final transient Set<Throwable> lost;
+        /**
+         * Attempts finished and winner started, in order of events.
+         */
+        private final transient BlockingQueue<Future<Boolean>> events;
+        /**
+         * Has this entry claimed the win.
+         */
+        private final transient AtomicBoolean mine;
+
+        /**
+         * Class constructor of a new race.
+         */
+        Race() {
+            this(
+                new AtomicBoolean(),
+                Collections.newSetFromMap(
+                    new ConcurrentHashMap<Throwable, Boolean>()
+                ),
+                new LinkedBlockingQueue<Future<Boolean>>()
+            );
+        }
+
+        /**
+         * Class constructor of an entry in the race.
+         *
+         * @param winner Is there a winner.
+         * @param failures Failure of the winner.
+         * @param queue Events.
+         */
+        private Race(final AtomicBoolean winner,
+            final Set<Throwable> failures,
+            final BlockingQueue<Future<Boolean>> queue) {
+            this.won = winner;
+            this.lost = failures;
+            this.events = queue;
+            this.mine = new AtomicBoolean();
+        }
+
+        /**
+         * Entry of an attempt.
+         *
+         * @return Entry sharing the race.
+         */
+        public Race entry() {
+            return new Mirrors.Race(this.won, this.lost, this.events);
+        }
+
+        /**
+         * Claim the win once the transfer has started.
+         *
+         * @return True if this attempt won.
+         */
+        public boolean claim() {
+            final boolean win = this.won.compareAndSet(false, true);
+            if (win) {
+                this.mine.set(true);
+                this.events.add(Mirrors.Race.STARTED);
+            }
+            return win;
+        }
+
+        /**
+         * Record failure of the attempt.
+         *
+         * @param cause Failure.
+         */
+        public void failed(final Throwable cause) {
+            if (this.mine.get()) {
+                this.lost.add(cause);
+            }
+        }
+
+        /**
+         * Is it the failure of the winner.
+         *
+         * @param cause Failure.
+         * @return True if the winner failed with it.
+         */
+        public boolean winner(final Throwable cause) {
+            return this.lost.contains(cause);
+        }
+    }
+
+    /**
+     * Mirror with its rolling statistics.
+     */
+    private static final class Mirror {
+        /**
+         * Weight of new sample in rolling averages.
+         */
+        private static final double WEIGHT = 0.2;
+        /**
+         * Nominal transfer size for expected time, one megabyte.
+         */
+        private static final double NOMINAL = 1024.0 * 1024.0;
+        /**
+         * Mirror connection.
+         */
+        private final transient FTP conn;
+        /**
+         * Average connect and login time in nanoseconds.
+         */
+        private transient double connect;
+        /**
+         * Average time to first byte in nanoseconds.
+         */
+        private transient double first;
+        /**
+         * Average throughput in bytes per nanosecond.
+         */
+        private transient double rate;
+        /**
+         * Consecutive failures.
+         */
+        private transient int failed;
+        /**
+         * Was the mirror ever ejected.
+         */
+        private transient boolean out;
+        /**
+         * Time the ejection ends in nanoseconds, valid once ejected.
+         */
+        private transient long until;
+
+        /**
+         * Class constructor.
+         *
+         * @param ftp Mirror connection.
+         */
+        Mirror(final FTP ftp) {
+            this.conn = ftp;
+        }
+
+        /**
+         * Mirror connection.
+         *
+         * @return FTP connection.
+         */
+        public FTP ftp() {
+            return this.conn;
+        }
+
+        /**
+         * Record connect and login time.
+         *
+         * @param nanos Nanoseconds.
+         */
+        public synchronized void connected(final long nanos) {
+            this.connect = Mirror.average(this.connect, nanos);
+        }
+
+        /**
+         * Record time to first byte.
+         *
+         * @param nanos Nanoseconds.
+         */
+        public synchronized void firstByte(final long nanos) {
+            this.first = Mirror.average(this.first, nanos);
+        }
+
+        /**
+         * Record transfer.
+         *
+         * @param bytes Bytes transferred.
+         * @param nanos Transfer time in nanoseconds.
+         */
+        public synchronized void transferred(final long bytes,
+            final long nanos) {
+            if (bytes > 0L && nanos > 0L) {
+                this.rate = Mirror.average(this.rate, (double) bytes / nanos);
+            }
+        }
+
+        /**
+         * Record success.
+         */
+        public synchronized void success() {
+            this.failed = 0;
+        }
+
+        /**
+         * Record failure, ejecting the mirror after several in a row.
+         */
+        public synchronized void failure() {
+            ++this.failed;
+            if (this.failed >= Mirrors.FAILURES) {
+                this.out = true;
+                this.until = System.nanoTime() + Mirrors.EJECTION;
+                this.failed = 0;
+            }
+        }
+
+        /**
+         * Is the mirror ejected.
+         *
+         * @param now Current time in nanoseconds.
+         * @return True if ejected.
+         */
+        public synchronized boolean ejected(final long now) {
+            return this.out && this.until - now > 0L;
+        }
+
+        /**
+         * Expected time of a nominal request; zero for unmeasured mirrors,
+         * so that they get tried.
+         *
+         * @return Nanoseconds.
+         */
+        public synchronized long expected() {
+            double time = this.connect + this.first;
+            if (this.rate > 0.0) {
+                time += Mirror.NOMINAL / this.rate;
+            }
+            return (long) time;
+        }
+
+        /**
+         * Rolling average with new sample.
+         *
+         * @param avg Current average, zero if none.
+         * @param sample New sample.
+         * @return New average.
+         */
+        private static double average(final double avg, final double sample) {
+            final double result;
+            if (avg == 0.0) {
+                result = sample;
+            } else {
+                result = avg + Mirror.WEIGHT * (sample - avg);
+            }
+            return result;
+        }
+    }
+}
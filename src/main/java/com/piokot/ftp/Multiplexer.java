@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.SneakyThrows;
+
+/**
+ * Control connections of many mostly idle sessions served by a few
+ * selector threads.
+ *
+ * <p>Each {@link IdleSession} is logged in and kept alive without a thread
+ * of its own; commands run on it borrow the connection to the calling
+ * thread for as long as they run. Sessions are spread round-robin over
+ * the selector threads. {@link Standby} keeps a number of them logged in
+ * and ready per host.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Multiplexer implements Closeable {
+    /**
+     * Selector threads.
+     */
+    private final transient ControlLoop[] loops;
+    /**
+     * Keep-alive interval in nanoseconds.
+     */
+    private final transient long keepalive;
+    /**
+     * Index of selector thread of next session.
+     */
+    private final transient AtomicInteger next;
+    /**
+     * Sessions opened.
+     */
+    private final transient Queue<IdleSession> opened;
+
+    /**
+     * Class constructor with one selector thread and NOOP every minute.
+     */
+    public Multiplexer() {
+        this(1, 1L, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param threads Number of selector threads.
+     * @param interval Idle time before NOOP is sent.
+     * @param unit Unit of interval.
+     */
+    @SneakyThrows
+    public Multiplexer(final int threads, final long interval,
+        final TimeUnit unit) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                "at least one selector thread is required"
+            );
+        }
+        this.loops = new ControlLoop[threads];
+        for (int idx = 0; idx < threads; ++idx) {
+            this.loops[idx] = new ControlLoop(
+                String.format("ftp-selector-%d", idx)
+            );
+        }
+        this.keepalive = unit.toNanos(interval);
+        this.next = new AtomicInteger();
+        this.opened = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Open session, logging in in the background.
+     *
+     * @param host FTP server host.
+     * @param port FTP server port.
+     * @param user User name.
+     * @param password Password.
+     * @return Session.
+     * @checkstyle ParameterNumberCheck (4 lines)
+     */
+    public IdleSession open(final String host, final int port,
+        final String user, final String password) {
+        final IdleSession session = new IdleSession(
+            this.loops[
+                Math.abs(this.next.getAndIncrement() % this.loops.length)
+            ],
+            new InetSocketAddress(host, port), user, password, this.keepalive
+        );
+        this.opened.add(session);
+        return session;
+    }
+
+    /**
+     * Number of sessions open, forgetting closed ones.
+     *
+     * @return Sessions not closed.
+     */
+    public int sessions() {
+        final Iterator<IdleSession> sessions = this.opened.iterator();
+        while (sessions.hasNext()) {
+            if (!sessions.next().alive()) {
+                sessions.remove();
+            }
+        }
+        return this.opened.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (final IdleSession session : this.opened) {
+            session.close();
+        }
+        for (final ControlLoop loop : this.loops) {
+            loop.close();
+        }
+    }
+}
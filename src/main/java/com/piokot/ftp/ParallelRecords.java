@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.piokot.ftp.api.FTPCommand;
+import com.piokot.ftp.api.Records;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Remote file streamed as batches of records over parallel sessions.
+ *
+ * <p>The file is split into byte ranges, one per session. Each session
+ * skips the partial record at the start of its range and reads past its
+ * end to finish the last record, so every record is delivered exactly
+ * once. Batches come from several threads at once, in file order only
+ * within a range, so the callback must be thread-safe. When it returns
+ * false, all sessions stop and abort their transfers.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class ParallelRecords {
+    /**
+     * FTP to open sessions with.
+     */
+    private final transient FTP ftp;
+    /**
+     * Number of sessions.
+     */
+    private final transient int lanes;
+
+    /**
+     * Class constructor.
+     *
+     * @param target FTP to open sessions with.
+     * @param sessions Number of sessions.
+     */
+    public ParallelRecords(final FTP target, final int sessions) {
+        if (sessions < 1) {
+            throw new IllegalArgumentException(
+                String.format("sessions must be positive: %d", sessions)
+            );
+        }
+        this.ftp = target;
+        this.lanes = sessions;
+    }
+
+    /**
+     * Stream UTF-8 lines in batches of 1000.
+     *
+     * @param remote Remote location of file to be streamed.
+     * @param records Thread-safe callback on batches of lines.
+     */
+    public void scan(final String remote, final Records records) {
+        this.scan(remote, Charsets.UTF_8, '\n', 1000, records);
+    }
+
+    /**
+     * Stream records.
+     *
+     * @param remote Remote location of file to be streamed.
+     * @param charset Charset of records.
+     * @param delimiter Record delimiter, a single byte in the charset.
+     * @param batch Records in full batch.
+     * @param records Thread-safe callback on batches of records.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    public void scan(final String remote, final Charset charset,
+        final char delimiter, final int batch, final Records records) {
+        final byte delim = RecordParser.delimiter(charset, delimiter);
+        final long size = this.size(remote);
+        final int chunks = (int) Math.max(1L, Math.min(this.lanes, size));
+        final AtomicBoolean stop = new AtomicBoolean();
+        final FTPCommand[] ranges = new FTPCommand[chunks];
+        for (int idx = 0; idx < chunks; ++idx) {
+            final long from = size * idx / chunks;
+            final long end = size * (idx + 1) / chunks;
+            final long start = Math.max(0L, from - 1L);
+            ranges[idx] = new RangeDownload(
+                remote, start, size - start,
+                new RecordParser(
+                    charset.newDecoder(), delim, batch, records,
+                    from > 0L, end - start, stop
+                )
+            );
+        }
+        new FanOut(chunks, this.ftp).onConnect(ranges);
+    }
+
+    /**
+     * Size of remote file.
+     *
+     * @param remote Remote location of file.
+     * @return Size in bytes.
+     */
+    private long size(final String remote) {
+        final long[] size = new long[1];
+        this.ftp.onConnect(
+            new FTPCommand() {
+                @Override
+                @SneakyThrows
+                public void execute(final FTPClient client) {
+                    client.setFileType(FTPClient.BINARY_FILE_TYPE);
+                    if (!FTPReply.isPositiveCompletion(
+                        client.sendCommand("SIZE", remote)
+                    )) {
+                        throw new IllegalStateException(
+                            String.format(
+                                "cannot get size of %s: %s",
+                                remote, client.getReplyString()
+                            )
+                        );
+                    }
+                    size[0] = Long.parseLong(
+                        client.getReplyString().substring(4).trim()
+                    );
+                }
+            }
+        );
+        return size[0];
+    }
+}
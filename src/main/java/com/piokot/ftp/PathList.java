@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact list of remote file paths, like results of {@link FileSearch}.
+ *
+ * <p>Each directory is stored once in a table; each file keeps only the
+ * index of its directory and its name, appended to one shared char array.
+ * Full paths are built only when read, so millions of results sharing a
+ * few directories take little more memory than their names.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class PathList implements Iterable<String> {
+    /**
+     * Path separator.
+     */
+    private static final char SEP = '/';
+    /**
+     * Table of directories.
+     */
+    private final transient List<String> dirs;
+    /**
+     * Directory index of each path.
+     */
+    private transient int[] owners;
+    /**
+     * End of each name in chars.
+     */
+    private transient int[] ends;
+    /**
+     * Characters of all names.
+     */
+    private transient char[] chars;
+    /**
+     * Number of paths.
+     */
+    private transient int count;
+
+    /**
+     * Class constructor of empty list.
+     */
+    public PathList() {
+        this.dirs = new ArrayList<>(0);
+        this.owners = new int[16];
+        this.ends = new int[16];
+        this.chars = new char[256];
+    }
+
+    /**
+     * Number of paths.
+     *
+     * @return Number of paths.
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Path at index, built on every call.
+     *
+     * @param index Index of path.
+     * @return Full path.
+     */
+    public String get(final int index) {
+        if (index < 0 || index >= this.count) {
+            throw new IndexOutOfBoundsException(
+                String.format("index %d of %d paths", index, this.count)
+            );
+        }
+        final String dir = this.dirs.get(this.owners[index]);
+        final int start = this.start(index);
+        return new StringBuilder(dir.length() + 1 + this.ends[index] - start)
+            .append(dir).append(PathList.SEP)
+            .append(this.chars, start, this.ends[index] - start)
+            .toString();
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            /**
+             * Index of next path.
+             */
+            private transient int next;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < PathList.this.count;
+            }
+
+            @Override
+            public String next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final String path = PathList.this.get(this.next);
+                ++this.next;
+                return path;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("read-only");
+            }
+        };
+    }
+
+    /**
+     * Add directory to the table.
+     *
+     * @param dir Directory path.
+     * @return Index of directory for {@link #add(int, String)}.
+     */
+    int directory(final String dir) {
+        this.dirs.add(dir);
+        return this.dirs.size() - 1;
+    }
+
+    /**
+     * Add path.
+     *
+     * @param dir Index of directory.
+     * @param name File name.
+     */
+    void add(final int dir, final String name) {
+        if (this.count == this.owners.length) {
+            this.owners = Arrays.copyOf(this.owners, this.count * 2);
+            this.ends = Arrays.copyOf(this.ends, this.count * 2);
+        }
+        final int start = this.start(this.count);
+        final int end = start + name.length();
+        if (end > this.chars.length) {
+            this.chars = Arrays.copyOf(
+                this.chars, Math.max(end, this.chars.length * 2)
+            );
+        }
+        name.getChars(0, name.length(), this.chars, start);
+        this.owners[this.count] = dir;
+        this.ends[this.count] = end;
+        ++this.count;
+    }
+
+    /**
+     * Start of name in chars.
+     *
+     * @param index Index of path.
+     * @return Offset of first char.
+     */
+    private int start(final int index) {
+        int start = 0;
+        if (index > 0) {
+            start = this.ends[index - 1];
+        }
+        return start;
+    }
+}
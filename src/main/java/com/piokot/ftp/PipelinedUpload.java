@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.Callback;
+import java.io.InputStream;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * FTP Command for uploading a file from slow or computed source, like an
+ * export, compression or encryption.
+ *
+ * <p>A producer thread fills a ring of reusable buffers from the source
+ * while the session sends filled ones, so producing and sending overlap.
+ * The client copies whole buffers during the upload. The report tells how
+ * long each side waited for the other. The source is closed when the
+ * upload ends.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class PipelinedUpload extends AbstractFTPCommand<UploadReport> {
+    /**
+     * Default number of buffers.
+     */
+    private static final int DEPTH = 4;
+    /**
+     * Default buffer size in bytes.
+     */
+    private static final int SIZE = 65536;
+    /**
+     * Remote destination for upload.
+     */
+    private final transient String dst;
+    /**
+     * Local source to upload.
+     */
+    private final transient InputStream src;
+    /**
+     * Number of buffers.
+     */
+    private final transient int depth;
+    /**
+     * Buffer size in bytes.
+     */
+    private final transient int size;
+
+    /**
+     * Class constructor with four buffers of 64 KB.
+     *
+     * @param remote Remote destination of the resource.
+     * @param local Local source to upload.
+     * @param callback Callback after upload execution.
+     */
+    public PipelinedUpload(final String remote, final InputStream local,
+        final Callback<UploadReport> callback) {
+        this(
+            remote, local, PipelinedUpload.DEPTH, PipelinedUpload.SIZE,
+            callback
+        );
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param remote Remote destination of the resource.
+     * @param local Local source to upload.
+     * @param buffers Number of buffers, at least two.
+     * @param bytes Size of each buffer in bytes.
+     * @param callback Callback after upload execution.
+     * @checkstyle ParameterNumberCheck (4 lines)
+     */
+    public PipelinedUpload(final String remote, final InputStream local,
+        final int buffers, final int bytes,
+        final Callback<UploadReport> callback) {
+        super(callback);
+        this.dst = remote;
+        this.src = local;
+        this.depth = buffers;
+        this.size = bytes;
+    }
+
+    @Override
+    @SneakyThrows
+    public UploadReport ftpCall(final FTPClient client) {
+        final BufferRing ring = new BufferRing(this.src, this.depth, this.size)
+            .start(String.format("ftp-upload-%s", this.dst));
+        final int buffer = client.getBufferSize();
+        client.setBufferSize(this.size);
+        final boolean stored;
+        try {
+            stored = client.storeFile(this.dst, ring);
+        } finally {
+            client.setBufferSize(buffer);
+            ring.close();
+        }
+        return new UploadReport(
+            stored, ring.bytes(), ring.producerStall(), ring.consumerStall()
+        );
+    }
+}
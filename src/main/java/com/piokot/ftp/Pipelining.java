@@ -0,0 +1,382 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.collect.ImmutableList;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.FTPCommand;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Batches of metadata commands sent ahead of their replies.
+ *
+ * <p>Commands without data connection, like deleting files, making
+ * directories and renaming, are written to the control connection up to
+ * the window size ahead of the replies read, so that a batch takes about
+ * one round trip per window rather than one per command. Replies are
+ * matched to commands in order. The first batch run on a server sends
+ * two NOOPs at once to check that the server answers both. If the second
+ * reply does not come in time, a PWD is sent and replies are read up to
+ * its own, so a late NOOP reply is taken as an answer rather than left to
+ * be matched to a later command. Servers which do not answer are
+ * remembered for ten minutes, and batches on them, as well as on clients
+ * not able to pipeline, run in lock-step, one command at a time. The
+ * instance may be shared by sessions run at once.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Pipelining {
+    /**
+     * Least time to wait for second NOOP reply in milliseconds.
+     */
+    private static final long PROBE = 1000L;
+    /**
+     * Time before server not answering is probed again in nanoseconds.
+     */
+    private static final long RECHECK = TimeUnit.MINUTES.toNanos(10L);
+    /**
+     * Commands sent ahead of replies at most.
+     */
+    private final transient int window;
+    /**
+     * Servers answering pipelined commands, by address and port.
+     */
+    private final transient Set<String> answering;
+    /**
+     * Time to probe again servers not answering pipelined commands, by
+     * address and port.
+     */
+    private final transient ConcurrentMap<String, Long> refused;
+
+    /**
+     * Class constructor with window of 32 commands.
+     */
+    public Pipelining() {
+        this(32);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param size Commands sent ahead of replies at most.
+     */
+    public Pipelining(final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException(
+                "window of at least one command is required"
+            );
+        }
+        this.window = size;
+        this.answering = Collections.newSetFromMap(
+            new ConcurrentHashMap<String, Boolean>(0)
+        );
+        this.refused = new ConcurrentHashMap<>(0);
+    }
+
+    /**
+     * FTP command running requests pipelined.
+     *
+     * @param requests Requests run in order.
+     * @return Command.
+     */
+    public FTPCommand batch(final Pipelining.Request... requests) {
+        return this.batch(Arrays.asList(requests));
+    }
+
+    /**
+     * FTP command running requests pipelined.
+     *
+     * @param requests Requests run in order.
+     * @return Command.
+     */
+    public FTPCommand batch(final Iterable<Pipelining.Request> requests) {
+        final List<Pipelining.Request> all = ImmutableList.copyOf(requests);
+        return new FTPCommand() {
+            @Override
+            @SneakyThrows
+            public void execute(final FTPClient client) {
+                Pipelining.this.run(client, all);
+            }
+        };
+    }
+
+    /**
+     * Request deleting file.
+     *
+     * @param path File path.
+     * @param callback Callback on result of deletion.
+     * @return Request.
+     */
+    public static Pipelining.Request delete(final String path,
+        final Callback<Boolean> callback) {
+        return new Pipelining.Request(
+            callback, new String[] {"DELE"}, new String[] {path}
+        );
+    }
+
+    /**
+     * Request making directory.
+     *
+     * @param path Directory path.
+     * @param callback Callback on result of making directory.
+     * @return Request.
+     */
+    public static Pipelining.Request mkdir(final String path,
+        final Callback<Boolean> callback) {
+        return new Pipelining.Request(
+            callback, new String[] {"MKD"}, new String[] {path}
+        );
+    }
+
+    /**
+     * Request renaming file or directory.
+     *
+     * @param from Current path.
+     * @param target New path.
+     * @param callback Callback on result of renaming.
+     * @return Request.
+     */
+    public static Pipelining.Request rename(final String from,
+        final String target, final Callback<Boolean> callback) {
+        return new Pipelining.Request(
+            callback, new String[] {"RNFR", "RNTO"},
+            new String[] {from, target}
+        );
+    }
+
+    /**
+     * Run requests, pipelined if possible.
+     *
+     * @param client Apache FTP client.
+     * @param requests Requests.
+     * @throws IOException If connection fails.
+     */
+    private void run(final FTPClient client,
+        final List<Pipelining.Request> requests) throws IOException {
+        if (client instanceof WatchedClient
+            && this.supported((WatchedClient) client)) {
+            this.pipelined((WatchedClient) client, requests);
+        } else {
+            for (final Pipelining.Request request : requests) {
+                request.lockStep(client);
+            }
+        }
+    }
+
+    /**
+     * Run requests with commands sent ahead of replies.
+     *
+     * @param client Apache FTP client.
+     * @param requests Requests.
+     * @throws IOException If connection fails.
+     */
+    private void pipelined(final WatchedClient client,
+        final List<Pipelining.Request> requests) throws IOException {
+        final List<String> lines = new ArrayList<>(requests.size());
+        final List<Pipelining.Request> owners =
+            new ArrayList<>(requests.size());
+        for (final Pipelining.Request request : requests) {
+            for (int idx = 0; idx < request.verbs.length; ++idx) {
+                lines.add(request.line(idx));
+                owners.add(request);
+            }
+        }
+        int sent = 0;
+        boolean success = true;
+        for (int read = 0; read < lines.size(); ++read) {
+            if (sent < lines.size() && sent - read <= this.window / 2) {
+                final int upto = Math.min(lines.size(), read + this.window);
+                client.pipeline(lines.subList(sent, upto));
+                sent = upto;
+            }
+            final int code = client.getReply();
+            final Pipelining.Request owner = owners.get(read);
+            final boolean last = read + 1 == lines.size()
+                || owners.get(read + 1) != owner;
+            success = success && Pipelining.accepted(code, last);
+            if (last) {
+                owner.callback.onReturn(success);
+                success = true;
+            }
+        }
+    }
+
+    /**
+     * Does the server answer pipelined commands, checked on first use and
+     * again when refusal expires.
+     *
+     * @param client Apache FTP client.
+     * @return True if commands may be pipelined.
+     * @throws IOException If connection fails.
+     */
+    private boolean supported(final WatchedClient client) throws IOException {
+        final String server = String.format(
+            "%s:%d", client.getRemoteAddress().getHostAddress(),
+            client.getRemotePort()
+        );
+        boolean answers = this.answering.contains(server);
+        final Long until = this.refused.get(server);
+        if (!answers
+            && (until == null || System.nanoTime() - until >= 0L)) {
+            answers = Pipelining.probe(client);
+            if (answers) {
+                this.answering.add(server);
+                this.refused.remove(server);
+            } else {
+                this.refused.put(
+                    server, System.nanoTime() + Pipelining.RECHECK
+                );
+            }
+        }
+        return answers;
+    }
+
+    /**
+     * Send two NOOPs at once and wait for both replies. If the second
+     * does not come in time, read replies up to the one to PWD, so none
+     * is left for later commands.
+     *
+     * @param client Apache FTP client.
+     * @return True if the server answered both.
+     * @throws IOException If connection fails.
+     */
+    private static boolean probe(final WatchedClient client)
+        throws IOException {
+        final long start = System.nanoTime();
+        client.pipeline(Arrays.asList("NOOP", "NOOP"));
+        final int noop = client.getReply();
+        final long trip = TimeUnit.NANOSECONDS.toMillis(
+            System.nanoTime() - start
+        );
+        final int timeout = client.getSoTimeout();
+        client.setSoTimeout((int) Math.max(Pipelining.PROBE, trip * 2L));
+        boolean answered = true;
+        try {
+            client.getReply();
+        } catch (final SocketTimeoutException ex) {
+            answered = false;
+        } finally {
+            client.setSoTimeout(timeout);
+        }
+        if (!answered) {
+            int code = client.sendCommand("PWD");
+            while (code == noop) {
+                answered = true;
+                code = client.getReply();
+            }
+        }
+        return answered;
+    }
+
+    /**
+     * Is reply to command of request successful.
+     *
+     * @param code Reply code.
+     * @param last Is it reply to last command of the request.
+     * @return True if successful.
+     */
+    private static boolean accepted(final int code, final boolean last) {
+        return FTPReply.isPositiveCompletion(code)
+            || !last && FTPReply.isPositiveIntermediate(code);
+    }
+
+    /**
+     * Metadata request of one or more commands, successful if all are.
+     */
+    public static final class Request {
+        /**
+         * Callback on result.
+         */
+        private final transient Callback<Boolean> callback;
+        /**
+         * Command verbs.
+         */
+        private final transient String[] verbs;
+        /**
+         * Command arguments.
+         */
+        private final transient String[] args;
+
+        /**
+         * Class constructor.
+         *
+         * @param call Callback on result.
+         * @param commands Command verbs.
+         * @param arguments Command arguments.
+         */
+        Request(final Callback<Boolean> call, final String[] commands,
+            final String[] arguments) {
+            this.callback = call;
+            this.verbs = commands;
+            this.args = arguments;
+        }
+
+        /**
+         * Command line.
+         *
+         * @param idx Index of command.
+         * @return Verb and argument.
+         */
+        String line(final int idx) {
+            return String.format("%s %s", this.verbs[idx], this.args[idx]);
+        }
+
+        /**
+         * Run commands one at a time, stopping at first failure.
+         *
+         * @param client Apache FTP client.
+         * @throws IOException If connection fails.
+         */
+        void lockStep(final FTPClient client) throws IOException {
+            boolean success = true;
+            for (int idx = 0; success && idx < this.verbs.length; ++idx) {
+                success = Pipelining.accepted(
+                    client.sendCommand(this.verbs[idx], this.args[idx]),
+                    idx + 1 == this.verbs.length
+                );
+            }
+            this.callback.onReturn(success);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.FTPCommand;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * FTP Command for downloading byte range of a file.
+ *
+ * <p>Transfer starts at the offset with REST and RETR in binary mode;
+ * callback reads at most the given number of bytes. If the file goes on
+ * beyond the range, or callback stops reading early, the transfer is
+ * aborted with ABOR instead of being read to the end, so that traffic is
+ * proportional to the range, not the file.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class RangeDownload implements FTPCommand {
+    /**
+     * File to be downloaded.
+     */
+    private final transient String file;
+    /**
+     * First byte of range.
+     */
+    private final transient long offset;
+    /**
+     * Bytes in range.
+     */
+    private final transient long length;
+    /**
+     * Callback on range downloaded.
+     */
+    private final transient Callback<InputStream> call;
+
+    /**
+     * Class constructor.
+     *
+     * @param remote Remote location of file to be downloaded.
+     * @param start First byte of range.
+     * @param bytes Bytes in range.
+     * @param callback Callback on stream of bytes in range.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    public RangeDownload(final String remote, final long start,
+        final long bytes, final Callback<InputStream> callback) {
+        this.file = remote;
+        this.offset = start;
+        this.length = bytes;
+        this.call = callback;
+    }
+
+    @Override
+    @SneakyThrows
+    public void execute(final FTPClient client) {
+        client.setFileType(FTPClient.BINARY_FILE_TYPE);
+        client.setRestartOffset(this.offset);
+        final InputStream stream = client.retrieveFileStream(this.file);
+        if (stream == null) {
+            throw new IllegalStateException(
+                String.format(
+                    "cannot download %s from %d: %s",
+                    this.file, this.offset, client.getReplyString()
+                )
+            );
+        }
+        final RangeDownload.Window window =
+            new RangeDownload.Window(stream, this.length);
+        try {
+            this.call.onReturn(window);
+        } finally {
+            final boolean ended = window.ended();
+            stream.close();
+            if (ended) {
+                client.completePendingCommand();
+            } else {
+                client.abort();
+                client.getReply();
+            }
+        }
+    }
+
+    /**
+     * Stream limited to the range, telling if the file ended within it.
+     */
+    private static final class Window extends FilterInputStream {
+        /**
+         * Bytes left in range.
+         */
+        private transient long left;
+        /**
+         * Did the file end.
+         */
+        private transient boolean end;
+
+        /**
+         * Class constructor.
+         *
+         * @param stream Data stream from range start.
+         * @param bytes Bytes in range.
+         */
+        Window(final InputStream stream, final long bytes) {
+            super(stream);
+            this.left = bytes;
+        }
+
+        /**
+         * Did the file end with the range. If the whole range was read,
+         * one more byte is read to find out.
+         *
+         * @return True if the whole rest of file was read.
+         * @throws IOException If data connection fails.
+         */
+        public boolean ended() throws IOException {
+            if (!this.end && this.left == 0L) {
+                this.end = this.in.read() < 0;
+            }
+            return this.end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] one = new byte[1];
+            int result = -1;
+            if (this.read(one, 0, 1) > 0) {
+                result = one[0] & 0xff;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(final byte[] buf, final int off, final int len)
+            throws IOException {
+            int result = -1;
+            if (this.left > 0L) {
+                result = super.read(
+                    buf, off, (int) Math.min(len, this.left)
+                );
+                if (result < 0) {
+                    this.end = true;
+                } else {
+                    this.left -= result;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(final long bytes) throws IOException {
+            final long skipped = super.skip(Math.min(bytes, this.left));
+            this.left -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), this.left);
+        }
+
+        @Override
+        public void close() {
+            this.left = 0L;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.Records;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.SneakyThrows;
+
+/**
+ * Callback parsing downloaded stream into batches of records.
+ *
+ * <p>Records are split on a single byte delimiter before decoding, so that
+ * byte positions stay exact; each record is decoded into a char buffer
+ * reused by all batches. With delimiter {@code '\n'} a trailing
+ * {@code '\r'} is dropped too. Parsing may be limited to a chunk of file:
+ * the partial record at its start is skipped and the record crossing its
+ * end is read to its delimiter.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+final class RecordParser implements Callback<InputStream> {
+    /**
+     * Initial size of byte buffer.
+     */
+    private static final int BUFFER = 65536;
+    /**
+     * Record delimiter.
+     */
+    private final transient byte delim;
+    /**
+     * Records in full batch.
+     */
+    private final transient int max;
+    /**
+     * Receiver of batches.
+     */
+    private final transient Records sink;
+    /**
+     * Is the stream started within a record to be skipped.
+     */
+    private final transient boolean skip;
+    /**
+     * Stream position at which no more records start.
+     */
+    private final transient long limit;
+    /**
+     * Set when any parser sharing it is told to stop.
+     */
+    private final transient AtomicBoolean stop;
+    /**
+     * Batch being filled.
+     */
+    private final transient RecordParser.Batch batch;
+
+    /**
+     * Class constructor.
+     *
+     * @param decoder Decoder of record bytes.
+     * @param delimiter Record delimiter byte.
+     * @param records Records in full batch.
+     * @param receiver Receiver of batches.
+     * @param within Is the stream started within a record to be skipped.
+     * @param end Stream position at which no more records start.
+     * @param stopped Set when any parser sharing it is told to stop.
+     * @checkstyle ParameterNumberCheck (4 lines)
+     */
+    RecordParser(final CharsetDecoder decoder, final byte delimiter,
+        final int records, final Records receiver, final boolean within,
+        final long end, final AtomicBoolean stopped) {
+        this.delim = delimiter;
+        this.max = records;
+        this.sink = receiver;
+        this.skip = within;
+        this.limit = end;
+        this.stop = stopped;
+        this.batch = new RecordParser.Batch(
+            decoder.onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE),
+            records
+        );
+    }
+
+    @Override
+    @SneakyThrows
+    public void onReturn(final InputStream stream) {
+        byte[] bytes = new byte[RecordParser.BUFFER];
+        ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+        boolean skipping = this.skip;
+        boolean done = false;
+        long base = 0L;
+        int from = 0;
+        int filled = 0;
+        while (!done) {
+            final int read = stream.read(bytes, filled, bytes.length - filled);
+            if (read < 0) {
+                if (from < filled && !skipping && base + from < this.limit) {
+                    this.batch.add(
+                        wrapped, from, this.end(bytes, from, filled)
+                    );
+                }
+                done = true;
+            } else {
+                final int scan = filled;
+                filled += read;
+                for (int idx = scan; idx < filled && !done; ++idx) {
+                    if (bytes[idx] == this.delim) {
+                        if (skipping) {
+                            skipping = false;
+                        } else if (base + from >= this.limit) {
+                            done = true;
+                        } else {
+                            this.batch.add(
+                                wrapped, from, this.end(bytes, from, idx)
+                            );
+                            if (this.batch.size() >= this.max) {
+                                done = !this.flush();
+                            }
+                        }
+                        from = idx + 1;
+                    }
+                }
+                System.arraycopy(bytes, from, bytes, 0, filled - from);
+                base += from;
+                filled -= from;
+                from = 0;
+                if (filled == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    wrapped = ByteBuffer.wrap(bytes);
+                }
+                done = done || this.stop.get();
+            }
+        }
+        if (this.batch.size() > 0 && !this.stop.get()) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Delimiter as single byte in charset.
+     *
+     * @param charset Charset of records.
+     * @param delimiter Delimiter character.
+     * @return Delimiter byte.
+     */
+    static byte delimiter(final Charset charset, final char delimiter) {
+        final byte[] encoded = String.valueOf(delimiter).getBytes(charset);
+        if (encoded.length != 1) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "delimiter %s is not a single byte in %s",
+                    delimiter, charset
+                )
+            );
+        }
+        return encoded[0];
+    }
+
+    /**
+     * Hand the batch to receiver and clear it.
+     *
+     * @return True if receiver wants more.
+     */
+    private boolean flush() {
+        final boolean more = this.sink.onBatch(this.batch);
+        this.batch.clear();
+        if (!more) {
+            this.stop.set(true);
+        }
+        return more && !this.stop.get();
+    }
+
+    /**
+     * End of record content, before carriage return of a line.
+     *
+     * @param bytes Buffer.
+     * @param from Record start.
+     * @param delimiter Record delimiter position.
+     * @return Record content end.
+     */
+    private int end(final byte[] bytes, final int from,
+        final int delimiter) {
+        int result = delimiter;
+        if (this.delim == '\n' && delimiter > from
+            && bytes[delimiter - 1] == '\r') {
+            result = delimiter - 1;
+        }
+        return result;
+    }
+
+    /**
+     * Batch of records decoded into reused char buffer.
+     */
+    private static final class Batch implements Records.Batch {
+        /**
+         * Decoder of record bytes.
+         */
+        private final transient CharsetDecoder decoder;
+        /**
+         * Record starts in char buffer.
+         */
+        private final transient int[] starts;
+        /**
+         * Record ends in char buffer.
+         */
+        private final transient int[] ends;
+        /**
+         * Decoded records.
+         */
+        private transient char[] chars;
+        /**
+         * Wrapper of char buffer.
+         */
+        private transient CharBuffer out;
+        /**
+         * Records in batch.
+         */
+        private transient int count;
+
+        /**
+         * Class constructor.
+         *
+         * @param dec Decoder of record bytes.
+         * @param records Records in full batch.
+         */
+        Batch(final CharsetDecoder dec, final int records) {
+            this.decoder = dec;
+            this.starts = new int[records];
+            this.ends = new int[records];
+            this.chars = new char[RecordParser.BUFFER];
+            this.out = CharBuffer.wrap(this.chars);
+        }
+
+        @Override
+        public int size() {
+            return this.count;
+        }
+
+        @Override
+        public CharSequence record(final int index) {
+            return CharBuffer.wrap(
+                this.chars, this.starts[index],
+                this.ends[index] - this.starts[index]
+            );
+        }
+
+        /**
+         * Decode record and add it.
+         *
+         * @param bytes Wrapper of byte buffer.
+         * @param from Record start.
+         * @param end Record end.
+         */
+        public void add(final ByteBuffer bytes, final int from,
+            final int end) {
+            final int start = this.out.position();
+            final int need = start + (int) Math.ceil(
+                (end - from) * (double) this.decoder.maxCharsPerByte()
+            );
+            if (need > this.chars.length) {
+                this.chars = Arrays.copyOf(
+                    this.chars, Math.max(need, this.chars.length * 2)
+                );
+                this.out = CharBuffer.wrap(this.chars);
+                this.out.position(start);
+            }
+            bytes.limit(end).position(from);
+            this.decoder.reset();
+            this.decoder.decode(bytes, this.out, true);
+            this.decoder.flush(this.out);
+            this.starts[this.count] = start;
+            this.ends[this.count] = this.out.position();
+            ++this.count;
+        }
+
+        /**
+         * Remove all records.
+         */
+        public void clear() {
+            this.count = 0;
+            this.out.clear();
+        }
+    }
+}
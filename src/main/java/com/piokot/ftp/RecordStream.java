@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.piokot.ftp.api.FTPCommand;
+import com.piokot.ftp.api.Records;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * FTP Command streaming remote file as batches of lines or records.
+ *
+ * <p>Records are parsed while the file downloads, decoded into a reused
+ * char buffer rather than a String per record. When the callback returns
+ * false, the transfer is aborted with ABOR. Delimiters inside quoted
+ * fields are not recognised; records are split on every delimiter.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class RecordStream implements FTPCommand {
+    /**
+     * File to be streamed.
+     */
+    private final transient String file;
+    /**
+     * Charset of records.
+     */
+    private final transient Charset charset;
+    /**
+     * Record delimiter byte.
+     */
+    private final transient byte delim;
+    /**
+     * Records in full batch.
+     */
+    private final transient int max;
+    /**
+     * Callback on batches.
+     */
+    private final transient Records sink;
+
+    /**
+     * Class constructor streaming UTF-8 lines in batches of 1000.
+     *
+     * @param remote Remote location of file to be streamed.
+     * @param records Callback on batches of lines.
+     */
+    public RecordStream(final String remote, final Records records) {
+        this(remote, Charsets.UTF_8, '\n', 1000, records);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param remote Remote location of file to be streamed.
+     * @param chars Charset of records.
+     * @param delimiter Record delimiter, a single byte in the charset.
+     * @param batch Records in full batch.
+     * @param records Callback on batches of records.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    public RecordStream(final String remote, final Charset chars,
+        final char delimiter, final int batch, final Records records) {
+        this.file = remote;
+        this.charset = chars;
+        this.delim = RecordParser.delimiter(chars, delimiter);
+        this.max = batch;
+        this.sink = records;
+    }
+
+    @Override
+    public void execute(final FTPClient client) {
+        new RangeDownload(
+            this.file, 0L, Long.MAX_VALUE,
+            new RecordParser(
+                this.charset.newDecoder(), this.delim, this.max, this.sink,
+                false, Long.MAX_VALUE, new AtomicBoolean()
+            )
+        ).execute(client);
+    }
+}
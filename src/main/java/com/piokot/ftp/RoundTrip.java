@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Optional;
+import com.piokot.ftp.api.FTPCommand;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single control channel round-trip, from command sent to reply received.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class RoundTrip {
+    /**
+     * Command verb, like PASV or RETR.
+     */
+    private final transient String cmd;
+    /**
+     * Command line sent, with secrets masked.
+     */
+    private final transient String line;
+    /**
+     * FTP command issuing the round-trip.
+     */
+    private final transient Optional<FTPCommand> orig;
+    /**
+     * Time of sending the command in nanoseconds.
+     */
+    private final transient long sent;
+    /**
+     * Time of receiving the first reply in nanoseconds.
+     */
+    private final transient long first;
+    /**
+     * Time of receiving the final reply in nanoseconds.
+     */
+    private final transient long last;
+    /**
+     * Code of the final reply.
+     */
+    private final transient int code;
+
+    /**
+     * Class constructor.
+     *
+     * @param verb Command verb.
+     * @param message Command line sent.
+     * @param origin FTP command issuing the round-trip.
+     * @param times Nanosecond times of command sent, first and final reply.
+     * @param reply Code of the final reply.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    public RoundTrip(final String verb, final String message,
+        final Optional<FTPCommand> origin, final long[] times,
+        final int reply) {
+        this.cmd = verb;
+        this.line = message;
+        this.orig = origin;
+        this.sent = times[0];
+        this.first = times[1];
+        this.last = times[2];
+        this.code = reply;
+    }
+
+    /**
+     * Command verb.
+     *
+     * @return Verb of the command, like PASV or RETR.
+     */
+    public String verb() {
+        return this.cmd;
+    }
+
+    /**
+     * FTP command issuing the round-trip.
+     *
+     * @return Originating command, absent for connection and login.
+     */
+    public Optional<FTPCommand> origin() {
+        return this.orig;
+    }
+
+    /**
+     * Time of sending the command.
+     *
+     * @return Value of {@link System#nanoTime()} when command was sent.
+     */
+    public long sent() {
+        return this.sent;
+    }
+
+    /**
+     * Round-trip time up to the first reply.
+     *
+     * @return Nanoseconds between command sent and first reply.
+     */
+    public long latency() {
+        return this.first - this.sent;
+    }
+
+    /**
+     * Time up to the final reply, including data transfer if any.
+     *
+     * @return Nanoseconds between command sent and final reply.
+     */
+    public long duration() {
+        return this.last - this.sent;
+    }
+
+    /**
+     * Code of the final reply.
+     *
+     * @return FTP reply code.
+     */
+    public int reply() {
+        return this.code;
+    }
+
+    /**
+     * Round-trip completed by another reply to the same command.
+     *
+     * @param time Time of receiving the reply in nanoseconds.
+     * @param reply Reply code.
+     * @return Round-trip ending with the reply.
+     */
+    public RoundTrip complete(final long time, final int reply) {
+        return new RoundTrip(
+            this.cmd, this.line, this.orig,
+            new long[] {this.sent, this.first, time}, reply
+        );
+    }
+
+    @Override
+    public String toString() {
+        final String name;
+        if (this.orig.isPresent()) {
+            name = this.orig.get().getClass().getSimpleName();
+        } else {
+            name = "-";
+        }
+        return String.format(
+            "%s -> %d in %d us (%d us total) [%s]",
+            this.line, this.code,
+            TimeUnit.NANOSECONDS.toMicros(this.latency()),
+            TimeUnit.NANOSECONDS.toMicros(this.duration()),
+            name
+        );
+    }
+}
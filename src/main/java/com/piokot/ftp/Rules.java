@@ -0,0 +1,477 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.Filter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * Filters of listed files, like for {@link FileSearch}, and their
+ * combinations.
+ *
+ * <p>Combinations check cheap filters first: size and time ranges, then
+ * names matched by {@link Globs}, then regular expressions, then any other
+ * filters. Nested combinations of the same kind are flattened and globs
+ * alternatives of {@link #any(Filter[])} are merged into one automaton,
+ * so thousands of include and exclude patterns cost a single pass over
+ * each name.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Rules {
+    /**
+     * Cost of range checks.
+     */
+    private static final int RANGE = 1;
+    /**
+     * Cost of globs.
+     */
+    private static final int GLOB = 2;
+    /**
+     * Cost of regular expression.
+     */
+    private static final int REGEX = 4;
+    /**
+     * Cost of unknown filter.
+     */
+    private static final int UNKNOWN = 8;
+
+    /**
+     * Utility class constructor.
+     */
+    private Rules() {
+    }
+
+    /**
+     * Files with names matching any of glob patterns.
+     *
+     * @param patterns Glob patterns, see {@link Globs}.
+     * @return Filter.
+     */
+    public static Filter<FTPFile> glob(final String... patterns) {
+        return Rules.glob(Arrays.asList(patterns));
+    }
+
+    /**
+     * Files with names matching any of glob patterns.
+     *
+     * @param patterns Glob patterns, see {@link Globs}.
+     * @return Filter.
+     */
+    public static Filter<FTPFile> glob(final Iterable<String> patterns) {
+        return new Rules.Named(new Globs(patterns), Rules.GLOB);
+    }
+
+    /**
+     * Files with names matching any of regular expressions.
+     *
+     * @param regexes Regular expressions matching whole names.
+     * @return Filter.
+     */
+    public static Filter<FTPFile> regex(final String... regexes) {
+        final StringBuilder alternatives = new StringBuilder(0);
+        for (final String regex : regexes) {
+            if (alternatives.length() > 0) {
+                alternatives.append('|');
+            }
+            alternatives.append("(?:").append(regex).append(')');
+        }
+        final Pattern pattern = Pattern.compile(alternatives.toString());
+        return new Rules.Named(
+            new Filter<CharSequence>() {
+                @Override
+                public boolean valid(final CharSequence type) {
+                    return pattern.matcher(type).matches();
+                }
+            },
+            Rules.REGEX
+        );
+    }
+
+    /**
+     * Files with names filtered.
+     *
+     * @param names Filter of names.
+     * @return Filter.
+     */
+    public static Filter<FTPFile> name(final Filter<CharSequence> names) {
+        final int cost;
+        if (names instanceof Globs) {
+            cost = Rules.GLOB;
+        } else {
+            cost = Rules.UNKNOWN;
+        }
+        return new Rules.Named(names, cost);
+    }
+
+    /**
+     * Files of size in range.
+     *
+     * @param min Minimum size in bytes, inclusive.
+     * @param max Maximum size in bytes, inclusive.
+     * @return Filter.
+     */
+    public static Filter<FTPFile> size(final long min, final long max) {
+        return new Rules.Range(min, max, false);
+    }
+
+    /**
+     * Files modified in time range; files of unknown time are refused.
+     *
+     * @param from Start in milliseconds since epoch, inclusive.
+     * @param until End in milliseconds since epoch, exclusive.
+     * @return Filter.
+     */
+    public static Filter<FTPFile> modified(final long from, final long until) {
+        return new Rules.Range(from, until - 1L, true);
+    }
+
+    /**
+     * Files passing all filters.
+     *
+     * @param filters Filters.
+     * @return Filter.
+     */
+    @SafeVarargs
+    public static Filter<FTPFile> all(final Filter<FTPFile>... filters) {
+        final List<Filter<FTPFile>> list = new ArrayList<>(filters.length);
+        for (final Filter<FTPFile> filter : filters) {
+            list.add(filter);
+        }
+        return new Rules.Combined(Rules.flat(list, true), true);
+    }
+
+    /**
+     * Files passing any of filters.
+     *
+     * @param filters Filters.
+     * @return Filter.
+     */
+    @SafeVarargs
+    public static Filter<FTPFile> any(final Filter<FTPFile>... filters) {
+        final List<Filter<FTPFile>> list = new ArrayList<>(filters.length);
+        for (final Filter<FTPFile> filter : filters) {
+            list.add(filter);
+        }
+        final List<Rules.Rule> rules = Rules.flat(list, false);
+        final List<String> globs = new ArrayList<>(0);
+        final List<Rules.Rule> rest = new ArrayList<>(rules.size());
+        for (final Rules.Rule rule : rules) {
+            if (rule instanceof Rules.Named
+                && ((Rules.Named) rule).names instanceof Globs) {
+                globs.addAll(((Globs) ((Rules.Named) rule).names).patterns());
+            } else {
+                rest.add(rule);
+            }
+        }
+        if (!globs.isEmpty()) {
+            rest.add(new Rules.Named(new Globs(globs), Rules.GLOB));
+        }
+        return new Rules.Combined(rest, false);
+    }
+
+    /**
+     * Files not passing filter.
+     *
+     * @param filter Filter.
+     * @return Filter.
+     */
+    public static Filter<FTPFile> not(final Filter<FTPFile> filter) {
+        return new Rules.Not(Rules.rule(filter));
+    }
+
+    /**
+     * Filter with cost.
+     *
+     * @param filter Filter.
+     * @return Rule, filter itself if it is one.
+     */
+    private static Rules.Rule rule(final Filter<FTPFile> filter) {
+        final Rules.Rule rule;
+        if (filter instanceof Rules.Rule) {
+            rule = (Rules.Rule) filter;
+        } else {
+            rule = new Rules.Unknown(filter);
+        }
+        return rule;
+    }
+
+    /**
+     * Rules of filters with nested combinations of same kind flattened,
+     * cheapest first.
+     *
+     * @param filters Filters, copied out of varargs array so that the
+     *  array itself is never passed on.
+     * @param conjunction Is it conjunction.
+     * @return Rules.
+     */
+    private static List<Rules.Rule> flat(
+        final List<Filter<FTPFile>> filters, final boolean conjunction) {
+        final List<Rules.Rule> rules = new ArrayList<>(filters.size());
+        for (final Filter<FTPFile> filter : filters) {
+            final Rules.Rule rule = Rules.rule(filter);
+            if (rule instanceof Rules.Combined
+                && ((Rules.Combined) rule).every == conjunction) {
+                rules.addAll(Arrays.asList(((Rules.Combined) rule).rules));
+            } else {
+                rules.add(rule);
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Filter knowing its cost.
+     */
+    private interface Rule extends Filter<FTPFile> {
+        /**
+         * Relative cost of check.
+         *
+         * @return Cost.
+         */
+        int cost();
+    }
+
+    /**
+     * Filter of names.
+     */
+    private static final class Named implements Rules.Rule {
+        /**
+         * Filter of names.
+         */
+        private final transient Filter<CharSequence> names;
+        /**
+         * Cost.
+         */
+        private final transient int price;
+
+        /**
+         * Class constructor.
+         *
+         * @param filter Filter of names.
+         * @param cost Cost.
+         */
+        Named(final Filter<CharSequence> filter, final int cost) {
+            this.names = filter;
+            this.price = cost;
+        }
+
+        @Override
+        public boolean valid(final FTPFile type) {
+            return this.names.valid(type.getName());
+        }
+
+        @Override
+        public int cost() {
+            return this.price;
+        }
+    }
+
+    /**
+     * Range of size or time.
+     */
+    private static final class Range implements Rules.Rule {
+        /**
+         * Minimum, inclusive.
+         */
+        private final transient long min;
+        /**
+         * Maximum, inclusive.
+         */
+        private final transient long max;
+        /**
+         * Is it time range.
+         */
+        private final transient boolean time;
+
+        /**
+         * Class constructor.
+         *
+         * @param low Minimum, inclusive.
+         * @param high Maximum, inclusive.
+         * @param modified Is it time range.
+         */
+        Range(final long low, final long high, final boolean modified) {
+            this.min = low;
+            this.max = high;
+            this.time = modified;
+        }
+
+        @Override
+        public boolean valid(final FTPFile type) {
+            boolean known = true;
+            final long value;
+            if (this.time) {
+                final Calendar stamp = type.getTimestamp();
+                known = stamp != null;
+                if (known) {
+                    value = stamp.getTimeInMillis();
+                } else {
+                    value = 0L;
+                }
+            } else {
+                value = type.getSize();
+            }
+            return known && value >= this.min && value <= this.max;
+        }
+
+        @Override
+        public int cost() {
+            return Rules.RANGE;
+        }
+    }
+
+    /**
+     * Conjunction or alternative of rules, cheapest checked first.
+     */
+    private static final class Combined implements Rules.Rule {
+        /**
+         * Rules, cheapest first.
+         */
+        private final transient Rules.Rule[] rules;
+        /**
+         * Is it conjunction.
+         */
+        private final transient boolean every;
+        /**
+         * Cost of all rules.
+         */
+        private final transient int price;
+
+        /**
+         * Class constructor.
+         *
+         * @param parts Rules.
+         * @param conjunction Is it conjunction.
+         */
+        Combined(final List<Rules.Rule> parts, final boolean conjunction) {
+            final List<Rules.Rule> sorted = new ArrayList<>(parts);
+            Collections.sort(
+                sorted,
+                new Comparator<Rules.Rule>() {
+                    @Override
+                    public int compare(final Rules.Rule left,
+                        final Rules.Rule right) {
+                        return Integer.compare(left.cost(), right.cost());
+                    }
+                }
+            );
+            this.rules = sorted.toArray(new Rules.Rule[sorted.size()]);
+            this.every = conjunction;
+            int sum = 0;
+            for (final Rules.Rule rule : this.rules) {
+                sum += rule.cost();
+            }
+            this.price = sum;
+        }
+
+        @Override
+        public boolean valid(final FTPFile type) {
+            boolean result = this.every;
+            for (int idx = 0; idx < this.rules.length
+                && result == this.every; ++idx) {
+                result = this.rules[idx].valid(type);
+            }
+            return result;
+        }
+
+        @Override
+        public int cost() {
+            return this.price;
+        }
+    }
+
+    /**
+     * Negation of rule.
+     */
+    private static final class Not implements Rules.Rule {
+        /**
+         * Negated rule.
+         */
+        private final transient Rules.Rule rule;
+
+        /**
+         * Class constructor.
+         *
+         * @param negated Negated rule.
+         */
+        Not(final Rules.Rule negated) {
+            this.rule = negated;
+        }
+
+        @Override
+        public boolean valid(final FTPFile type) {
+            return !this.rule.valid(type);
+        }
+
+        @Override
+        public int cost() {
+            return this.rule.cost();
+        }
+    }
+
+    /**
+     * Filter of unknown cost.
+     */
+    private static final class Unknown implements Rules.Rule {
+        /**
+         * Filter.
+         */
+        private final transient Filter<FTPFile> filter;
+
+        /**
+         * Class constructor.
+         *
+         * @param origin Filter.
+         */
+        Unknown(final Filter<FTPFile> origin) {
+            this.filter = origin;
+        }
+
+        @Override
+        public boolean valid(final FTPFile type) {
+            return this.filter.valid(type);
+        }
+
+        @Override
+        public int cost() {
+            return Rules.UNKNOWN;
+        }
+    }
+}
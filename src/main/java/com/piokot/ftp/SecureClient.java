@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSocket;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Apache FTP client securing connections with explicit FTPS.
+ *
+ * <p>After greeting the control connection is secured with AUTH TLS, and
+ * after login data connections are protected with PBSZ 0 and PROT P. All
+ * handshakes go through {@link TlsSessions}, so sessions are resumed, and
+ * data connections resume the session of the control connection. Apache
+ * FTPS client is not used, as it builds a new TLS context, with empty
+ * session cache, for every connection.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+final class SecureClient extends WatchedClient {
+    /**
+     * Reply code of accepted AUTH.
+     */
+    private static final int AUTH = 234;
+    /**
+     * Pool of TLS sessions.
+     */
+    private final transient TlsSessions tls;
+    /**
+     * Host name of the server, verified against its certificate.
+     */
+    private final transient String host;
+    /**
+     * Are data connections protected.
+     */
+    private transient boolean prot;
+
+    /**
+     * Class constructor.
+     *
+     * @param sessions Pool of TLS sessions.
+     * @param server Host name of the server, as given to connect.
+     */
+    SecureClient(final TlsSessions sessions, final String server) {
+        super();
+        this.tls = sessions;
+        this.host = server;
+    }
+
+    @Override
+    public boolean login(final String user, final String password)
+        throws IOException {
+        final boolean logged = super.login(user, password);
+        if (logged) {
+            if (!FTPReply.isPositiveCompletion(this.sendCommand("PBSZ", "0"))
+                || !FTPReply.isPositiveCompletion(
+                    this.sendCommand("PROT", "P")
+                )) {
+                throw new SSLException(
+                    String.format(
+                        "data protection refused: %s",
+                        this.getReplyString().trim()
+                    )
+                );
+            }
+            this.prot = true;
+        }
+        return logged;
+    }
+
+    /**
+     * Secure data socket opened outside of the client, like by
+     * {@link DataConnection}, after the transfer is accepted.
+     *
+     * @param socket Connected data socket.
+     * @return Protected socket, or the same if data is not protected.
+     * @throws IOException If handshake fails.
+     */
+    public Socket protect(final Socket socket) throws IOException {
+        Socket result = socket;
+        if (this.prot) {
+            result = this.tls.secure(
+                socket, ((SSLSocket) this._socket_).getSession()
+            );
+        }
+        return result;
+    }
+
+    @Override
+    // @checkstyle MethodNameCheck (1 line)
+    protected void _connectAction_() throws IOException {
+        super._connectAction_();
+        this.prot = false;
+        if (this.sendCommand("AUTH", "TLS") != SecureClient.AUTH) {
+            throw new SSLException(
+                String.format(
+                    "AUTH TLS refused: %s", this.getReplyString().trim()
+                )
+            );
+        }
+        this._socket_ = this.tls.secure(
+            this._socket_, this.host, this._socket_.getPort()
+        );
+        this._input_ = this._socket_.getInputStream();
+        this._output_ = this._socket_.getOutputStream();
+        this._controlInput_ = new BufferedReader(
+            new InputStreamReader(this._input_, this.getControlEncoding())
+        );
+        this._controlOutput_ = new BufferedWriter(
+            new OutputStreamWriter(this._output_, this.getControlEncoding())
+        );
+    }
+
+    @Override
+    // @checkstyle MethodNameCheck (1 line)
+    protected Socket _openDataConnection_(final int command, final String arg)
+        throws IOException {
+        final Socket socket = super._openDataConnection_(command, arg);
+        Socket result = socket;
+        if (socket != null) {
+            result = this.protect(socket);
+        }
+        return result;
+    }
+}
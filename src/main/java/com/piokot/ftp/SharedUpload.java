@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.Callback;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * FTP Command for uploading shared content, reusable across sessions.
+ *
+ * <p>Unlike {@link FileUpload}, which consumes its stream, the content is a
+ * read-only buffer, each execution reading its own view of it. The same
+ * command may thus upload one local payload to many hosts at once, reading
+ * the local file only once when it is memory-mapped.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class SharedUpload extends AbstractFTPCommand<Boolean> {
+    /**
+     * Remote destination for upload.
+     */
+    private final transient String dst;
+    /**
+     * Content to upload.
+     */
+    private final transient ByteBuffer src;
+
+    /**
+     * Class constructor mapping local file to memory.
+     *
+     * @param remote Remote destination of the resource.
+     * @param local Local file to upload.
+     * @param callback Callback after upload execution.
+     */
+    public SharedUpload(final String remote, final Path local,
+        final Callback<Boolean> callback) {
+        this(remote, SharedUpload.map(local), callback);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param remote Remote destination of the resource.
+     * @param content Content to upload, not modified by the command.
+     * @param callback Callback after upload execution.
+     */
+    public SharedUpload(final String remote, final ByteBuffer content,
+        final Callback<Boolean> callback) {
+        super(callback);
+        this.dst = remote;
+        this.src = content.asReadOnlyBuffer();
+    }
+
+    @Override
+    @SneakyThrows
+    public Boolean ftpCall(final FTPClient client) {
+        return client.storeFile(
+            this.dst, new SharedUpload.Stream(this.src.duplicate())
+        );
+    }
+
+    /**
+     * Map local file to memory.
+     *
+     * @param local Local file.
+     * @return Read-only mapped content.
+     */
+    @SneakyThrows
+    private static ByteBuffer map(final Path local) {
+        try (final FileChannel channel = FileChannel.open(
+            local, StandardOpenOption.READ
+        )) {
+            return channel.map(
+                FileChannel.MapMode.READ_ONLY, 0L, channel.size()
+            );
+        }
+    }
+
+    /**
+     * Stream reading buffer view.
+     */
+    private static final class Stream extends InputStream {
+        /**
+         * Buffer view read.
+         */
+        private final transient ByteBuffer buffer;
+
+        /**
+         * Class constructor.
+         *
+         * @param view Buffer view, consumed by reading.
+         */
+        Stream(final ByteBuffer view) {
+            super();
+            this.buffer = view;
+        }
+
+        @Override
+        public int read() {
+            final int value;
+            if (this.buffer.hasRemaining()) {
+                value = this.buffer.get() & 0xff;
+            } else {
+                value = -1;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(final byte[] buf, final int off, final int len) {
+            final int count;
+            if (this.buffer.hasRemaining()) {
+                count = Math.min(len, this.buffer.remaining());
+                this.buffer.get(buf, off, count);
+            } else {
+                count = -1;
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.piokot.ftp.api.FTPCommand;
+import java.io.Closeable;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warm standby sessions to one host, logged in ahead of the commands run
+ * on them.
+ *
+ * <p>Sessions are opened on a {@link Multiplexer} as soon as the standby
+ * is created, so connecting and logging in happen in the background at
+ * startup rather than in the first commands. The multiplexer keeps idle
+ * sessions alive with NOOP; sessions dropped by the server are noticed
+ * periodically and replaced, as are sessions borrowed, so at least the
+ * given number stays idle and ready. Sessions given back are kept idle
+ * up to twice that number and closed beyond it, so bursts of commands
+ * do not leave too many sessions open. Sessions closed before logging in
+ * count as failed opens; after each one, replacing sessions waits twice
+ * as many checks as before, up to 64 checks, so an
+ * unreachable or refusing server is not dialed on every check. Hosts
+ * needing standby sessions each get their own standby, sharing the
+ * multiplexer.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Standby implements Closeable {
+    /**
+     * Timer checking sessions of all standbys.
+     */
+    private static final ScheduledExecutorService TIMER =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("ftp-standby").build()
+        );
+    /**
+     * Maximum doublings of wait after failed opens.
+     */
+    private static final int DOUBLINGS = 6;
+    /**
+     * Multiplexer of sessions.
+     */
+    private final transient Multiplexer mux;
+    /**
+     * Number of idle sessions kept.
+     */
+    private final transient int warm;
+    /**
+     * Host.
+     */
+    private final transient String hst;
+    /**
+     * Port.
+     */
+    private final transient int prt;
+    /**
+     * User name.
+     */
+    private final transient String usr;
+    /**
+     * Password.
+     */
+    private final transient String pass;
+    /**
+     * Idle sessions, most recently used first.
+     */
+    private final transient Deque<IdleSession> idle;
+    /**
+     * Time between checks in nanoseconds.
+     */
+    private final transient long period;
+    /**
+     * Scheduled check of sessions.
+     */
+    private final transient ScheduledFuture<?> check;
+    /**
+     * Is the standby closed.
+     */
+    private transient volatile boolean closed;
+    /**
+     * Failed opens since last login.
+     */
+    private transient int failures;
+    /**
+     * Time in nanoseconds before which no sessions are opened by checks.
+     */
+    private transient long retry;
+
+    /**
+     * Class constructor checking sessions every second.
+     *
+     * @param sessions Multiplexer of sessions.
+     * @param count Number of idle sessions kept.
+     * @param host FTP server host.
+     * @param port FTP server port.
+     * @param user User name.
+     * @param password Password.
+     * @checkstyle ParameterNumberCheck (4 lines)
+     */
+    public Standby(final Multiplexer sessions, final int count,
+        final String host, final int port, final String user,
+        final String password) {
+        this(sessions, count, 1L, TimeUnit.SECONDS, host, port, user, password);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param sessions Multiplexer of sessions.
+     * @param count Number of idle sessions kept.
+     * @param interval Time between checks of dropped sessions.
+     * @param unit Unit of interval.
+     * @param host FTP server host.
+     * @param port FTP server port.
+     * @param user User name.
+     * @param password Password.
+     * @checkstyle ParameterNumberCheck (4 lines)
+     */
+    public Standby(final Multiplexer sessions, final int count,
+        final long interval, final TimeUnit unit, final String host,
+        final int port, final String user, final String password) {
+        if (count < 1) {
+            throw new IllegalArgumentException(
+                "at least one standby session is required"
+            );
+        }
+        this.mux = sessions;
+        this.warm = count;
+        this.hst = host;
+        this.prt = port;
+        this.usr = user;
+        this.pass = password;
+        this.idle = new ConcurrentLinkedDeque<>();
+        this.period = unit.toNanos(interval);
+        this.retry = System.nanoTime();
+        this.top();
+        this.check = Standby.TIMER.scheduleWithFixedDelay(
+            new Runnable() {
+                @Override
+                public void run() {
+                    Standby.this.top();
+                }
+            },
+            interval, interval, unit
+        );
+    }
+
+    /**
+     * Main flow executed on a standby session, like {@link FTP#onConnect}.
+     * A new session is opened only if none is idle.
+     *
+     * @param commands FTP commands run on the session.
+     */
+    public void onConnect(final FTPCommand... commands) {
+        if (this.closed) {
+            throw new IllegalStateException(
+                String.format("standby of %s is closed", this)
+            );
+        }
+        IdleSession session = this.idle.pollFirst();
+        while (session != null && !session.alive()) {
+            session = this.idle.pollFirst();
+        }
+        if (session == null) {
+            session = this.mux.open(this.hst, this.prt, this.usr, this.pass);
+        }
+        this.top();
+        try {
+            session.onConnect(commands);
+        } finally {
+            this.keep(session);
+        }
+    }
+
+    /**
+     * Number of idle sessions, including ones still logging in.
+     *
+     * @return Idle sessions not closed.
+     */
+    public int sessions() {
+        int open = 0;
+        for (final IdleSession session : this.idle) {
+            if (session.alive()) {
+                ++open;
+            }
+        }
+        return open;
+    }
+
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        this.check.cancel(false);
+        IdleSession session = this.idle.pollFirst();
+        while (session != null) {
+            session.close();
+            session = this.idle.pollFirst();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%s:%d", this.usr, this.hst, this.prt);
+    }
+
+    /**
+     * Forget dropped sessions and open new ones up to the number kept,
+     * unless waiting after failed opens.
+     */
+    private synchronized void top() {
+        final Iterator<IdleSession> sessions = this.idle.iterator();
+        boolean failed = false;
+        while (sessions.hasNext()) {
+            final IdleSession session = sessions.next();
+            if (session.logged()) {
+                this.failures = 0;
+            }
+            if (!session.alive()) {
+                failed |= !session.logged();
+                sessions.remove();
+            }
+        }
+        final long now = System.nanoTime();
+        if (failed) {
+            this.retry = now + (this.period << Math.min(
+                this.failures, Standby.DOUBLINGS
+            ));
+            ++this.failures;
+        }
+        for (int open = this.idle.size(); open < this.warm && !this.closed
+            && now - this.retry >= 0L; ++open) {
+            this.idle.addLast(
+                this.mux.open(this.hst, this.prt, this.usr, this.pass)
+            );
+        }
+    }
+
+    /**
+     * Keep session given back unless too many are idle, then close it.
+     *
+     * @param session Session.
+     */
+    private synchronized void keep(final IdleSession session) {
+        if (session.alive() && !this.closed
+            && this.idle.size() < this.warm * 2) {
+            this.idle.addFirst(session);
+        } else {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.collect.Iterators;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Sizes and modification times of remote files, stored compactly.
+ *
+ * <p>Paths are kept in one sorted array and looked up with binary search;
+ * sizes and times live in primitive arrays, so no object is held per file
+ * besides its path.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class StatMap implements Iterable<String> {
+    /**
+     * Sorted paths.
+     */
+    private final transient String[] paths;
+    /**
+     * Sizes in bytes by path index.
+     */
+    private final transient long[] sizes;
+    /**
+     * Modification times in milliseconds by path index.
+     */
+    private final transient long[] times;
+
+    /**
+     * Class constructor.
+     *
+     * @param stats Size and modification time pairs by path.
+     */
+    public StatMap(final Map<String, long[]> stats) {
+        this.paths = stats.keySet().toArray(new String[stats.size()]);
+        Arrays.sort(this.paths);
+        this.sizes = new long[this.paths.length];
+        this.times = new long[this.paths.length];
+        for (int idx = 0; idx < this.paths.length; ++idx) {
+            final long[] stat = stats.get(this.paths[idx]);
+            this.sizes[idx] = stat[0];
+            this.times[idx] = stat[1];
+        }
+    }
+
+    /**
+     * Number of files found.
+     *
+     * @return Number of paths.
+     */
+    public int count() {
+        return this.paths.length;
+    }
+
+    /**
+     * Was the file found.
+     *
+     * @param path Remote path as requested.
+     * @return True if found.
+     */
+    public boolean contains(final String path) {
+        return Arrays.binarySearch(this.paths, path) >= 0;
+    }
+
+    /**
+     * Size of file.
+     *
+     * @param path Remote path as requested.
+     * @return Size in bytes, -1 if not found or not known.
+     */
+    public long size(final String path) {
+        final int idx = Arrays.binarySearch(this.paths, path);
+        long size = -1L;
+        if (idx >= 0) {
+            size = this.sizes[idx];
+        }
+        return size;
+    }
+
+    /**
+     * Modification time of file.
+     *
+     * @param path Remote path as requested.
+     * @return Milliseconds since epoch, -1 if not found or not known.
+     */
+    public long modified(final String path) {
+        final int idx = Arrays.binarySearch(this.paths, path);
+        long time = -1L;
+        if (idx >= 0) {
+            time = this.times[idx];
+        }
+        return time;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return Iterators.forArray(this.paths);
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.io.CountingInputStream;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.FTPCommand;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * FTP Command following a growing remote file, like {@code tail -f}.
+ *
+ * <p>Polls SIZE on the same session and downloads only bytes appended
+ * since the last poll, with {@link RangeDownload}. If the file shrinks, as
+ * after log rotation, it is followed again from the start. Runs until
+ * {@link #stop()} is called or the thread is interrupted, in which case it
+ * returns normally with the interrupt flag still set. The offset advances
+ * by the bytes the callback actually read, so bytes it leaves unread, or
+ * that a truncated transfer did not bring, are delivered again by the next
+ * poll; the offset reached is kept, so that a new session may resume from
+ * it.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Tail implements FTPCommand {
+    /**
+     * File to be followed.
+     */
+    private final transient String file;
+    /**
+     * Time between polls in milliseconds.
+     */
+    private final transient long interval;
+    /**
+     * Callback on appended bytes.
+     */
+    private final transient Callback<InputStream> call;
+    /**
+     * Bytes of file already delivered.
+     */
+    private transient volatile long position;
+    /**
+     * Has stop been requested.
+     */
+    private transient volatile boolean stopped;
+
+    /**
+     * Class constructor.
+     *
+     * @param remote Remote location of file to be followed.
+     * @param start Bytes already delivered, zero to start from beginning.
+     * @param poll Time between polls in milliseconds.
+     * @param callback Callback on stream of appended bytes.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    public Tail(final String remote, final long start, final long poll,
+        final Callback<InputStream> callback) {
+        this.file = remote;
+        this.position = start;
+        this.interval = poll;
+        this.call = callback;
+    }
+
+    /**
+     * Bytes of file delivered so far.
+     *
+     * @return Offset of next byte to deliver.
+     */
+    public long offset() {
+        return this.position;
+    }
+
+    /**
+     * Stop following after current poll.
+     */
+    public void stop() {
+        this.stopped = true;
+    }
+
+    @Override
+    @SneakyThrows
+    public void execute(final FTPClient client) {
+        client.setFileType(FTPClient.BINARY_FILE_TYPE);
+        this.poll(client);
+        while (!this.stopped && !Thread.currentThread().isInterrupted()) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(this.interval);
+                this.poll(client);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Deliver bytes appended since the last poll, if any.
+     *
+     * @param client Apache FTP client.
+     */
+    @SneakyThrows
+    private void poll(final FTPClient client) {
+        if (!this.stopped && FTPReply.isPositiveCompletion(
+            client.sendCommand("SIZE", this.file)
+        )) {
+            final long size = Long.parseLong(
+                client.getReplyString().substring(4).trim()
+            );
+            if (size < this.position) {
+                this.position = 0L;
+            }
+            if (size > this.position) {
+                final Tail.Counted counted = new Tail.Counted(this.call);
+                try {
+                    new RangeDownload(
+                        this.file, this.position, size - this.position,
+                        counted
+                    ).execute(client);
+                } finally {
+                    this.position += counted.bytes();
+                }
+            }
+        }
+    }
+
+    /**
+     * Callback counting bytes it reads from the stream.
+     */
+    private static final class Counted implements Callback<InputStream> {
+        /**
+         * Callback on counted stream.
+         */
+        private final transient Callback<InputStream> origin;
+        /**
+         * Bytes read so far.
+         */
+        private transient long count;
+
+        /**
+         * Class constructor.
+         *
+         * @param callback Callback on counted stream.
+         */
+        Counted(final Callback<InputStream> callback) {
+            this.origin = callback;
+        }
+
+        @Override
+        public void onReturn(final InputStream type) {
+            final CountingInputStream stream = new CountingInputStream(type);
+            try {
+                this.origin.onReturn(stream);
+            } finally {
+                this.count = stream.getCount();
+            }
+        }
+
+        /**
+         * Bytes read by the callback.
+         *
+         * @return Number of bytes.
+         */
+        public long bytes() {
+            return this.count;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Optional;
+import com.piokot.ftp.api.FTPCommand;
+import com.piokot.ftp.api.Trace;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.net.ProtocolCommandEvent;
+
+/**
+ * Timeline of control channel round-trips within one FTP session.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Timeline implements Trace.Session {
+    /**
+     * Verb of round-trip opening the connection (server greeting).
+     */
+    private static final String CONNECT = "CONNECT";
+    /**
+     * Host of the session.
+     */
+    private final transient String hst;
+    /**
+     * Time of session start in nanoseconds.
+     */
+    private final transient long start;
+    /**
+     * Round-trips completed so far.
+     */
+    private final transient List<RoundTrip> trips;
+    /**
+     * FTP command being executed.
+     */
+    private transient Optional<FTPCommand> current;
+    /**
+     * Command waiting for reply.
+     */
+    private transient Optional<Timeline.Sent> pending;
+
+    /**
+     * Class constructor.
+     *
+     * @param host Host of the session.
+     */
+    public Timeline(final String host) {
+        this.hst = host;
+        this.start = System.nanoTime();
+        this.trips = new ArrayList<>(0);
+        this.current = Optional.absent();
+        this.pending = Optional.of(
+            new Timeline.Sent(Timeline.CONNECT, Timeline.CONNECT, this.start)
+        );
+    }
+
+    /**
+     * Host of the session.
+     *
+     * @return Host name.
+     */
+    public String host() {
+        return this.hst;
+    }
+
+    /**
+     * Round-trips of the session in order of sending.
+     *
+     * @return Round-trips.
+     */
+    public synchronized List<RoundTrip> roundTrips() {
+        return Collections.unmodifiableList(new ArrayList<>(this.trips));
+    }
+
+    @Override
+    public synchronized void begin(final FTPCommand command) {
+        this.current = Optional.of(command);
+    }
+
+    @Override
+    public synchronized void end() {
+        this.current = Optional.absent();
+    }
+
+    @Override
+    public synchronized void protocolCommandSent(
+        final ProtocolCommandEvent event) {
+        final String verb = event.getCommand().toUpperCase(Locale.ENGLISH);
+        final String line;
+        if ("PASS".equals(verb)) {
+            line = "PASS ****";
+        } else {
+            line = event.getMessage().trim();
+        }
+        this.pending = Optional.of(
+            new Timeline.Sent(verb, line, System.nanoTime())
+        );
+    }
+
+    @Override
+    public synchronized void protocolReplyReceived(
+        final ProtocolCommandEvent event) {
+        final long now = System.nanoTime();
+        if (this.pending.isPresent()) {
+            final Timeline.Sent command = this.pending.get();
+            this.trips.add(
+                new RoundTrip(
+                    command.verb, command.line, this.current,
+                    new long[] {command.time, now, now},
+                    event.getReplyCode()
+                )
+            );
+            this.pending = Optional.absent();
+        } else if (!this.trips.isEmpty()) {
+            final int last = this.trips.size() - 1;
+            this.trips.set(
+                last, this.trips.get(last).complete(now, event.getReplyCode())
+            );
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder text = new StringBuilder(0)
+            .append("session ").append(this.hst).append('\n');
+        for (final RoundTrip trip : this.trips) {
+            text.append(
+                String.format(
+                    "+%d us %s%n",
+                    TimeUnit.NANOSECONDS.toMicros(trip.sent() - this.start),
+                    trip
+                )
+            );
+        }
+        return text.toString();
+    }
+
+    /**
+     * Command sent and waiting for reply.
+     */
+    private static final class Sent {
+        /**
+         * Command verb.
+         */
+        private final transient String verb;
+        /**
+         * Command line.
+         */
+        private final transient String line;
+        /**
+         * Time of sending in nanoseconds.
+         */
+        private final transient long time;
+
+        /**
+         * Class constructor.
+         *
+         * @param command Command verb.
+         * @param text Command line.
+         * @param nanos Time of sending in nanoseconds.
+         */
+        Sent(final String command, final String text, final long nanos) {
+            this.verb = command;
+            this.line = text;
+            this.time = nanos;
+        }
+    }
+}
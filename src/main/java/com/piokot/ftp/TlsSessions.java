@@ -0,0 +1,307 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import lombok.SneakyThrows;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of TLS sessions for explicit FTPS, shared by wrappers of
+ * {@link FTP}.
+ *
+ * <p>All connections are secured with one TLS context, whose client session
+ * cache keeps up to given number of sessions for given time. A control
+ * connection to a server seen before resumes its session with an abbreviated
+ * handshake. Server certificates are verified against the host name given
+ * to {@link FTP}, as HTTPS clients do, and the name is also sent with SNI.
+ * Data connections resume the session of their control connection, which
+ * is also what servers requiring TLS session reuse expect. Default context
+ * is limited to TLS 1.2, whose sessions, unlike TLS 1.3 tickets, are reused
+ * by such servers and can be told resumed.
+ *
+ * <p>The session cache of the JDK is keyed by host and port, and data
+ * connections go to other ports than control ones, so the control session
+ * is put in the cache under the data connection key through the internals
+ * of the JDK implementation. Runtimes not allowing it, like those with
+ * strong encapsulation of JDK modules, do full handshakes on data
+ * connections, which servers requiring session reuse refuse; this is
+ * logged once and told by {@link #sharing()}. A control session no longer
+ * cached, like one a server refused to resume on an earlier data
+ * connection, only makes the data connections of its own control
+ * connection do full handshakes.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class TlsSessions {
+    /**
+     * Default number of sessions kept.
+     */
+    private static final int SESSIONS = 256;
+    /**
+     * Exception of runtimes refusing access to JDK internals.
+     */
+    private static final String HIDDEN =
+        "java.lang.reflect.InaccessibleObjectException";
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(TlsSessions.class);
+    /**
+     * TLS context.
+     */
+    private final transient SSLContext context;
+    /**
+     * Handshakes done.
+     */
+    private final transient AtomicLong total;
+    /**
+     * Handshakes resuming a session.
+     */
+    private final transient AtomicLong reused;
+    /**
+     * Can control sessions be put in the cache for data connections.
+     */
+    private final transient AtomicBoolean shared;
+
+    /**
+     * Class constructor trusting default certificate authorities, keeping
+     * sessions for an hour.
+     */
+    public TlsSessions() {
+        this((KeyStore) null);
+    }
+
+    /**
+     * Class constructor trusting certificates of key store, keeping sessions
+     * for an hour.
+     *
+     * @param trusted Key store of trusted certificates.
+     */
+    public TlsSessions(final KeyStore trusted) {
+        this(
+            TlsSessions.context(trusted), TlsSessions.SESSIONS, 1L,
+            TimeUnit.HOURS
+        );
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param tls Initialized TLS context, not shared with others.
+     * @param sessions Maximum number of sessions kept.
+     * @param lifetime Time sessions are kept for.
+     * @param unit Unit of lifetime.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    public TlsSessions(final SSLContext tls, final int sessions,
+        final long lifetime, final TimeUnit unit) {
+        this.context = tls;
+        this.context.getClientSessionContext().setSessionCacheSize(sessions);
+        this.context.getClientSessionContext().setSessionTimeout(
+            (int) unit.toSeconds(lifetime)
+        );
+        this.total = new AtomicLong();
+        this.reused = new AtomicLong();
+        this.shared = new AtomicBoolean(true);
+    }
+
+    /**
+     * Number of TLS handshakes done.
+     *
+     * @return Handshakes.
+     */
+    public long handshakes() {
+        return this.total.get();
+    }
+
+    /**
+     * Number of TLS handshakes resuming a pooled session.
+     *
+     * @return Abbreviated handshakes.
+     */
+    public long resumed() {
+        return this.reused.get();
+    }
+
+    /**
+     * Can data connections resume the session of their control connection
+     * on this runtime, as far as known.
+     *
+     * @return False once the session cache was found not to be exposed.
+     */
+    public boolean sharing() {
+        return this.shared.get();
+    }
+
+    /**
+     * Secure connected socket as TLS client.
+     *
+     * @param plain Connected socket.
+     * @param host Host name of the server, verified against its certificate
+     *  and keying pooled sessions.
+     * @param port Port of the server.
+     * @return Socket after handshake.
+     * @throws IOException If handshake or certificate verification fails.
+     */
+    SSLSocket secure(final Socket plain, final String host, final int port)
+        throws IOException {
+        final long start = System.currentTimeMillis();
+        final SSLSocket socket = (SSLSocket) this.context.getSocketFactory()
+            .createSocket(plain, host, port, true);
+        socket.setUseClientMode(true);
+        final SSLParameters params = socket.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+        socket.setSSLParameters(params);
+        socket.startHandshake();
+        this.total.incrementAndGet();
+        if (socket.getSession().getCreationTime() < start) {
+            this.reused.incrementAndGet();
+        }
+        return socket;
+    }
+
+    /**
+     * Secure connected data socket as TLS client, resuming session of its
+     * control connection.
+     *
+     * <p>The socket is verified against the host name of the control
+     * connection, whose session is put in the cache under the key of the
+     * data connection first, if the runtime allows it and the session is
+     * still cached.
+     *
+     * @param plain Connected data socket.
+     * @param control Session of control connection.
+     * @return Socket after handshake.
+     * @throws IOException If handshake fails.
+     */
+    SSLSocket secure(final Socket plain, final SSLSession control)
+        throws IOException {
+        final String host = control.getPeerHost();
+        if (this.shared.get()) {
+            try {
+                TlsSessions.offer(
+                    control,
+                    String.format("%s:%d", host, plain.getPort()).toLowerCase(
+                        Locale.ENGLISH
+                    )
+                );
+            } catch (final ReflectiveOperationException
+                | SecurityException ex) {
+                this.unshare(ex);
+            // @checkstyle IllegalCatchCheck (1 line)
+            } catch (final RuntimeException ex) {
+                if (!TlsSessions.HIDDEN.equals(ex.getClass().getName())) {
+                    throw ex;
+                }
+                this.unshare(ex);
+            }
+        }
+        return this.secure(plain, host, plain.getPort());
+    }
+
+    /**
+     * Stop putting control sessions in the cache for data connections.
+     *
+     * @param cause Failure to reach the cache.
+     */
+    private void unshare(final Exception cause) {
+        if (this.shared.compareAndSet(true, false)) {
+            TlsSessions.LOG.warn(
+                new StringBuilder(0)
+                    .append("TLS session cache is not exposed, ")
+                    .append("data connections do full handshakes")
+                    .toString(),
+                cause
+            );
+        }
+    }
+
+    /**
+     * New TLS context.
+     *
+     * @param trusted Key store of trusted certificates, null for default.
+     * @return Initialized context.
+     */
+    @SneakyThrows
+    private static SSLContext context(final KeyStore trusted) {
+        final TrustManagerFactory trust = TrustManagerFactory.getInstance(
+            TrustManagerFactory.getDefaultAlgorithm()
+        );
+        trust.init(trusted);
+        final SSLContext tls = SSLContext.getInstance("TLSv1.2");
+        tls.init(null, trust.getTrustManagers(), null);
+        return tls;
+    }
+
+    /**
+     * Put session in its client session cache under given key, unless it
+     * is no longer cached, like after the JDK invalidated it when a server
+     * did not resume it.
+     *
+     * @param session Session to offer.
+     * @param key Host and port of the peer, as the cache keys them.
+     * @throws ReflectiveOperationException If the cache is not exposed.
+     */
+    private static void offer(final SSLSession session, final String key)
+        throws ReflectiveOperationException {
+        final SSLSessionContext cache = session.getSessionContext();
+        if (cache == null || !session.isValid()) {
+            TlsSessions.LOG.debug(
+                "TLS session of {} is not cached, not resumed on {}",
+                session.getPeerHost(), key
+            );
+        } else {
+            final Field hosts = cache.getClass().getDeclaredField(
+                "sessionHostPortCache"
+            );
+            hosts.setAccessible(true);
+            hosts.getType().getMethod("put", Object.class, Object.class)
+                .invoke(hosts.get(cache), key, session);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.util.concurrent.AbstractFuture;
+import com.piokot.ftp.api.FTPCommand;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Queue of FTP sessions run by priority, within global and per-host limits.
+ *
+ * <p>Each submission runs its commands in one session of its own. Waiting
+ * sessions start by strict priority and, within a priority, round-robin
+ * over tenants, so a tenant queueing many transfers does not hold back
+ * others. Some sessions may be reserved for {@link Priority#HIGH}, so
+ * urgent transfers start at once even while bulk ones fill all the rest.
+ * Sessions to one server, by host and port, are limited separately.
+ *
+ * <p>Cancelling a waiting session drops it. Cancelling a running one with
+ * interruption interrupts its thread, which stops commands waiting or
+ * sleeping, but not ones blocked in socket reads or writes, as Java
+ * sockets ignore interrupts; those end with the socket timeout.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class TransferQueue implements Closeable {
+    /**
+     * Maximum sessions running.
+     */
+    private final transient int total;
+    /**
+     * Maximum sessions running to one server.
+     */
+    private final transient int each;
+    /**
+     * Sessions only high priority may use.
+     */
+    private final transient int reserved;
+    /**
+     * Threads running sessions.
+     */
+    private final transient ExecutorService threads;
+    /**
+     * Waiting sessions by priority and tenant, tenants in serving order.
+     */
+    private final transient Map<TransferQueue.Priority,
+        Map<String, Deque<TransferQueue.Job>>> waiting;
+    /**
+     * Sessions running by server.
+     */
+    private final transient Map<String, Integer> hosts;
+    /**
+     * Sessions running.
+     */
+    private transient int running;
+    /**
+     * Is the queue closed.
+     */
+    private transient boolean closed;
+
+    /**
+     * Class constructor.
+     *
+     * @param sessions Maximum sessions running.
+     * @param host Maximum sessions running to one server.
+     * @param urgent Sessions only high priority may use.
+     */
+    public TransferQueue(final int sessions, final int host,
+        final int urgent) {
+        if (sessions < 1 || host < 1 || urgent < 0 || urgent >= sessions) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "invalid limits: %d sessions, %d per host, %d reserved",
+                    sessions, host, urgent
+                )
+            );
+        }
+        this.total = sessions;
+        this.each = host;
+        this.reserved = urgent;
+        this.threads = Executors.newCachedThreadPool();
+        this.waiting = new EnumMap<>(TransferQueue.Priority.class);
+        for (final TransferQueue.Priority priority
+            : TransferQueue.Priority.values()) {
+            this.waiting.put(
+                priority, new LinkedHashMap<String, Deque<TransferQueue.Job>>()
+            );
+        }
+        this.hosts = new HashMap<>();
+    }
+
+    /**
+     * Queue session.
+     *
+     * @param ftp FTP to open the session with.
+     * @param priority Priority of the session.
+     * @param tenant Tenant sharing its turns with its other sessions.
+     * @param commands FTP commands run during the session.
+     * @return Future done when the session ends, failed if it fails.
+     * @checkstyle ParameterNumberCheck (4 lines)
+     */
+    public Future<Void> submit(final FTP ftp,
+        final TransferQueue.Priority priority, final String tenant,
+        final FTPCommand... commands) {
+        final TransferQueue.Job job = new TransferQueue.Job(ftp, commands);
+        synchronized (this) {
+            if (this.closed) {
+                throw new IllegalStateException("transfer queue is closed");
+            }
+            final Map<String, Deque<TransferQueue.Job>> tenants =
+                this.waiting.get(priority);
+            Deque<TransferQueue.Job> jobs = tenants.get(tenant);
+            if (jobs == null) {
+                jobs = new ArrayDeque<>();
+                tenants.put(tenant, jobs);
+            }
+            jobs.add(job);
+            this.dispatch();
+        }
+        return job.done;
+    }
+
+    /**
+     * Number of sessions waiting to start.
+     *
+     * @return Sessions queued.
+     */
+    public synchronized int queued() {
+        int queued = 0;
+        for (final Map<String, Deque<TransferQueue.Job>> tenants
+            : this.waiting.values()) {
+            for (final Deque<TransferQueue.Job> jobs : tenants.values()) {
+                queued += jobs.size();
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Number of sessions running.
+     *
+     * @return Sessions running.
+     */
+    public synchronized int running() {
+        return this.running;
+    }
+
+    /**
+     * Cancel waiting sessions and let running ones finish.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            for (final Map<String, Deque<TransferQueue.Job>> tenants
+                : this.waiting.values()) {
+                for (final Deque<TransferQueue.Job> jobs : tenants.values()) {
+                    for (final TransferQueue.Job job : jobs) {
+                        job.done.cancel(false);
+                    }
+                }
+                tenants.clear();
+            }
+        }
+        this.threads.shutdown();
+    }
+
+    /**
+     * Start waiting sessions while limits allow.
+     */
+    private void dispatch() {
+        boolean started = true;
+        while (started && !this.closed && this.running < this.total) {
+            started = false;
+            for (final TransferQueue.Priority priority
+                : TransferQueue.Priority.values()) {
+                if (!started && (priority == TransferQueue.Priority.HIGH
+                    || this.running < this.total - this.reserved)) {
+                    started = this.start(this.waiting.get(priority));
+                }
+            }
+        }
+    }
+
+    /**
+     * Start first session of first tenant with a free server, moving the
+     * tenant to the end of serving order. Cancelled sessions are dropped.
+     *
+     * @param tenants Waiting sessions by tenant.
+     * @return True if a session was started.
+     */
+    private boolean start(final Map<String, Deque<TransferQueue.Job>> tenants) {
+        String tenant = null;
+        TransferQueue.Job next = null;
+        final Iterator<Map.Entry<String, Deque<TransferQueue.Job>>> entries =
+            tenants.entrySet().iterator();
+        while (next == null && entries.hasNext()) {
+            final Map.Entry<String, Deque<TransferQueue.Job>> entry =
+                entries.next();
+            final Iterator<TransferQueue.Job> jobs =
+                entry.getValue().iterator();
+            while (next == null && jobs.hasNext()) {
+                final TransferQueue.Job job = jobs.next();
+                if (job.done.isCancelled()) {
+                    jobs.remove();
+                } else if (this.count(job.ftp.host()) < this.each) {
+                    jobs.remove();
+                    next = job;
+                    tenant = entry.getKey();
+                }
+            }
+            if (entry.getValue().isEmpty()) {
+                entries.remove();
+            }
+        }
+        if (next != null) {
+            final Deque<TransferQueue.Job> rest = tenants.remove(tenant);
+            if (rest != null) {
+                tenants.put(tenant, rest);
+            }
+            ++this.running;
+            this.hosts.put(next.ftp.host(), this.count(next.ftp.host()) + 1);
+            this.threads.execute(next);
+        }
+        return next != null;
+    }
+
+    /**
+     * Account for finished session and start waiting ones.
+     *
+     * @param job Finished session.
+     */
+    private synchronized void finished(final TransferQueue.Job job) {
+        --this.running;
+        final int left = this.count(job.ftp.host()) - 1;
+        if (left == 0) {
+            this.hosts.remove(job.ftp.host());
+        } else {
+            this.hosts.put(job.ftp.host(), left);
+        }
+        this.dispatch();
+    }
+
+    /**
+     * Sessions running to server.
+     *
+     * @param host Server.
+     * @return Sessions running.
+     */
+    private int count(final String host) {
+        final Integer count = this.hosts.get(host);
+        int result = 0;
+        if (count != null) {
+            result = count;
+        }
+        return result;
+    }
+
+    /**
+     * Priority of a session.
+     */
+    public enum Priority {
+        /**
+         * Urgent session, may use reserved sessions.
+         */
+        HIGH,
+        /**
+         * Regular session.
+         */
+        NORMAL,
+        /**
+         * Bulk session, run only when no other waits.
+         */
+        BULK
+    }
+
+    /**
+     * Future of queued session, interrupting it when cancelled while
+     * running.
+     */
+    private static final class Done extends AbstractFuture<Void> {
+        /**
+         * Thread running the session, null if not running.
+         */
+        private transient Thread worker;
+
+        @Override
+        public boolean set(final Void value) {
+            return super.set(value);
+        }
+
+        @Override
+        public boolean setException(final Throwable error) {
+            return super.setException(error);
+        }
+
+        /**
+         * Mark session running in current thread.
+         */
+        synchronized void start() {
+            this.worker = Thread.currentThread();
+        }
+
+        /**
+         * Mark session no longer running, so its thread is not interrupted
+         * after, and clear interrupt it may have got.
+         */
+        synchronized void stop() {
+            this.worker = null;
+            Thread.interrupted();
+        }
+
+        @Override
+        protected synchronized void interruptTask() {
+            if (this.worker != null) {
+                this.worker.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queued session.
+     */
+    private final class Job implements Runnable {
+        /**
+         * FTP to open the session with.
+         */
+        private final transient FTP ftp;
+        /**
+         * FTP commands run during the session.
+         */
+        private final transient FTPCommand[] commands;
+        /**
+         * Future done when the session ends.
+         */
+        private final transient TransferQueue.Done done;
+
+        /**
+         * Class constructor.
+         *
+         * @param target FTP to open the session with.
+         * @param run FTP commands run during the session.
+         */
+        Job(final FTP target, final FTPCommand... run) {
+            this.ftp = target;
+            this.commands = run.clone();
+            this.done = new TransferQueue.Done();
+        }
+
+        @Override
+        public void run() {
+            this.done.start();
+            try {
+                if (!this.done.isCancelled()) {
+                    this.ftp.onConnect(this.commands);
+                    this.done.set(null);
+                }
+            // @checkstyle IllegalCatchCheck (1 line)
+            } catch (final Throwable ex) {
+                this.done.setException(ex);
+            } finally {
+                this.done.stop();
+                TransferQueue.this.finished(this);
+            }
+        }
+    }
+}
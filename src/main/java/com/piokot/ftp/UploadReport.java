@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of pipelined upload, with time each side waited for the other.
+ *
+ * <p>Long producer stall means the network is the bottleneck; long network
+ * stall means the source is.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class UploadReport {
+    /**
+     * Is file stored.
+     */
+    private final transient boolean ok;
+    /**
+     * Bytes handed to the network.
+     */
+    private final transient long size;
+    /**
+     * Nanoseconds producer waited for free buffers.
+     */
+    private final transient long source;
+    /**
+     * Nanoseconds network waited for filled buffers.
+     */
+    private final transient long network;
+
+    /**
+     * Class constructor.
+     *
+     * @param stored Is file stored.
+     * @param bytes Bytes handed to the network.
+     * @param producer Nanoseconds producer waited for free buffers.
+     * @param consumer Nanoseconds network waited for filled buffers.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    public UploadReport(final boolean stored, final long bytes,
+        final long producer, final long consumer) {
+        this.ok = stored;
+        this.size = bytes;
+        this.source = producer;
+        this.network = consumer;
+    }
+
+    /**
+     * Is file stored.
+     *
+     * @return True if stored.
+     */
+    public boolean stored() {
+        return this.ok;
+    }
+
+    /**
+     * Bytes handed to the network, which on a failed upload may be fewer
+     * than were read from the source.
+     *
+     * @return Bytes.
+     */
+    public long bytes() {
+        return this.size;
+    }
+
+    /**
+     * Time producer waited for buffers to be sent.
+     *
+     * @param unit Unit of time.
+     * @return Producer stall.
+     */
+    public long producerStall(final TimeUnit unit) {
+        return unit.convert(this.source, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Time network waited for buffers to be filled.
+     *
+     * @param unit Unit of time.
+     * @return Network stall.
+     */
+    public long networkStall(final TimeUnit unit) {
+        return unit.convert(this.network, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "stored=%b bytes=%d producer stall=%d ms network stall=%d ms",
+            this.ok, this.size,
+            this.producerStall(TimeUnit.MILLISECONDS),
+            this.networkStall(TimeUnit.MILLISECONDS)
+        );
+    }
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import java.util.Arrays;
+
+/**
+ * Totals of remote directory tree, stored compactly.
+ *
+ * <p>Directories are numbered in order of discovery, the measured root
+ * being 0 and every directory numbered after its parent. Names, parents
+ * and totals live in arrays, so nothing is held per file. Totals of a
+ * directory cover its whole subtree, including directories deeper than
+ * the tree was cut off at.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Usage {
+    /**
+     * Initial capacity.
+     */
+    private static final int CAPACITY = 16;
+    /**
+     * Directory names, full path of the root.
+     */
+    private transient String[] names;
+    /**
+     * Parent indexes, -1 for the root.
+     */
+    private transient int[] parents;
+    /**
+     * File counts.
+     */
+    private transient long[] counts;
+    /**
+     * Sizes in bytes.
+     */
+    private transient long[] sizes;
+    /**
+     * Newest modification times in milliseconds.
+     */
+    private transient long[] times;
+    /**
+     * Number of directories.
+     */
+    private transient int dirs;
+
+    /**
+     * Class constructor with root directory only.
+     *
+     * @param root Path of measured directory.
+     */
+    Usage(final String root) {
+        this.names = new String[Usage.CAPACITY];
+        this.parents = new int[Usage.CAPACITY];
+        this.counts = new long[Usage.CAPACITY];
+        this.sizes = new long[Usage.CAPACITY];
+        this.times = new long[Usage.CAPACITY];
+        this.add(-1, root);
+    }
+
+    /**
+     * Number of directories in the tree.
+     *
+     * @return Directories.
+     */
+    public int size() {
+        return this.dirs;
+    }
+
+    /**
+     * Full path of directory.
+     *
+     * @param dir Directory index.
+     * @return Path.
+     */
+    public String path(final int dir) {
+        this.check(dir);
+        final String path;
+        if (this.parents[dir] < 0) {
+            path = this.names[dir];
+        } else {
+            path = Usage.child(this.path(this.parents[dir]), this.names[dir]);
+        }
+        return path;
+    }
+
+    /**
+     * Parent of directory.
+     *
+     * @param dir Directory index.
+     * @return Parent index, -1 for the root.
+     */
+    public int parent(final int dir) {
+        this.check(dir);
+        return this.parents[dir];
+    }
+
+    /**
+     * Number of files in directory subtree.
+     *
+     * @param dir Directory index.
+     * @return Files.
+     */
+    public long files(final int dir) {
+        this.check(dir);
+        return this.counts[dir];
+    }
+
+    /**
+     * Size of files in directory subtree.
+     *
+     * @param dir Directory index.
+     * @return Bytes.
+     */
+    public long bytes(final int dir) {
+        this.check(dir);
+        return this.sizes[dir];
+    }
+
+    /**
+     * Modification time of newest file in directory subtree.
+     *
+     * @param dir Directory index.
+     * @return Milliseconds since epoch, -1 if there are no files or times
+     *  are not known.
+     */
+    public long newest(final int dir) {
+        this.check(dir);
+        return this.times[dir];
+    }
+
+    /**
+     * Path of child entry.
+     *
+     * @param dir Parent directory path, empty for working directory.
+     * @param name Entry name.
+     * @return Path, relative if parent is empty.
+     */
+    static String child(final String dir, final String name) {
+        final StringBuilder path = new StringBuilder(
+            dir.length() + name.length() + 1
+        ).append(dir);
+        if (path.length() > 0 && path.charAt(path.length() - 1) != '/') {
+            path.append('/');
+        }
+        return path.append(name).toString();
+    }
+
+    /**
+     * Add directory.
+     *
+     * @param parent Parent index.
+     * @param name Directory name.
+     * @return Index of directory.
+     */
+    synchronized int add(final int parent, final String name) {
+        if (this.dirs == this.names.length) {
+            final int grown = this.dirs * 2;
+            this.names = Arrays.copyOf(this.names, grown);
+            this.parents = Arrays.copyOf(this.parents, grown);
+            this.counts = Arrays.copyOf(this.counts, grown);
+            this.sizes = Arrays.copyOf(this.sizes, grown);
+            this.times = Arrays.copyOf(this.times, grown);
+        }
+        final int dir = this.dirs;
+        this.names[dir] = name;
+        this.parents[dir] = parent;
+        this.times[dir] = -1L;
+        ++this.dirs;
+        return dir;
+    }
+
+    /**
+     * Fold totals of one listing into directory.
+     *
+     * @param dir Directory index.
+     * @param files Files listed.
+     * @param bytes Size of files listed.
+     * @param newest Newest modification time listed, -1 if none.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    synchronized void fold(final int dir, final long files, final long bytes,
+        final long newest) {
+        this.counts[dir] += files;
+        this.sizes[dir] += bytes;
+        this.times[dir] = Math.max(this.times[dir], newest);
+    }
+
+    /**
+     * Add totals of every directory to its parent, once all are folded.
+     *
+     * @return This tree.
+     */
+    synchronized Usage rollup() {
+        for (int dir = this.dirs - 1; dir > 0; --dir) {
+            final int parent = this.parents[dir];
+            this.counts[parent] += this.counts[dir];
+            this.sizes[parent] += this.sizes[dir];
+            this.times[parent] = Math.max(this.times[parent], this.times[dir]);
+        }
+        return this;
+    }
+
+    /**
+     * Check directory index.
+     *
+     * @param dir Directory index.
+     */
+    private void check(final int dir) {
+        if (dir < 0 || dir >= this.dirs) {
+            throw new IndexOutOfBoundsException(
+                String.format("no directory %d of %d", dir, this.dirs)
+            );
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.net.ftp.FTPClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timer cancelling FTP session when its deadline passes.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+final class Watchdog {
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(Watchdog.class);
+    /**
+     * Timer shared by all watchdogs.
+     */
+    private static final ScheduledExecutorService TIMER =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("ftp-watchdog").build()
+        );
+    /**
+     * Time allowed in nanoseconds.
+     */
+    private final transient long nanos;
+    /**
+     * Has the deadline passed.
+     */
+    private transient boolean expired;
+    /**
+     * Has the guarded work finished.
+     */
+    private transient boolean finished;
+    /**
+     * Scheduled cancellation.
+     */
+    private final transient ScheduledFuture<?> timer;
+
+    /**
+     * Class constructor starting the timer.
+     *
+     * @param client Apache FTP client to cancel.
+     * @param time Time allowed in nanoseconds.
+     */
+    Watchdog(final FTPClient client, final long time) {
+        this.nanos = time;
+        this.timer = Watchdog.TIMER.schedule(
+            new Runnable() {
+                @Override
+                public void run() {
+                    Watchdog.this.expire(client);
+                }
+            },
+            time, TimeUnit.NANOSECONDS
+        );
+    }
+
+    /**
+     * Stop the timer, or wait for cancellation to finish if already fired,
+     * so that the session is not used while being closed.
+     */
+    public synchronized void close() {
+        this.timer.cancel(false);
+        this.finished = true;
+    }
+
+    /**
+     * Has the deadline passed and the session been cancelled.
+     *
+     * @return True if cancelled.
+     */
+    public synchronized boolean fired() {
+        return this.expired;
+    }
+
+    /**
+     * Failure reporting passed deadline.
+     *
+     * @param what What was guarded, for the message.
+     * @param cause Exception thrown after cancellation.
+     * @return Exception to throw.
+     */
+    public IllegalStateException failure(final Object what,
+        final Exception cause) {
+        return new IllegalStateException(
+            String.format(
+                "%s exceeded deadline of %d ms", what,
+                TimeUnit.NANOSECONDS.toMillis(this.nanos)
+            ),
+            cause
+        );
+    }
+
+    /**
+     * Cancel the session unless the guarded work has finished.
+     *
+     * @param client Apache FTP client.
+     */
+    private synchronized void expire(final FTPClient client) {
+        if (!this.finished) {
+            this.expired = true;
+            Watchdog.cancel(client);
+        }
+    }
+
+    /**
+     * Cancel the session of client.
+     *
+     * @param client Apache FTP client.
+     */
+    private static void cancel(final FTPClient client) {
+        if (client instanceof WatchedClient) {
+            ((WatchedClient) client).cancel();
+        } else {
+            try {
+                client.disconnect();
+            } catch (final IOException ex) {
+                Watchdog.LOG.debug("disconnect of expired session failed", ex);
+            }
+        }
+    }
+}
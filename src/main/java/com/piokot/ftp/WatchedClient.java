@@ -0,0 +1,464 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Apache FTP client which can be cancelled from another thread.
+ *
+ * <p>Remembers the data connection of the current transfer, so that
+ * cancelling can close the data socket and then the control socket,
+ * failing whatever call the session is blocked in. No ABOR is sent, as
+ * the worker may be reading the control connection at the same time. Can
+ * also be attached to a control connection already logged in, like one
+ * parked by {@link Multiplexer}.
+ *
+ * <p>Once switched to block mode, files are retrieved and stored over one
+ * {@link BlockData} connection kept open between transfers. Other data
+ * commands, and transfers restarting at an offset, switch the session
+ * back to stream mode for their time; the next transfer returns to block
+ * mode, or stays in stream mode if the server refuses it.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+class WatchedClient extends FTPClient {
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(WatchedClient.class);
+    /**
+     * Data connection of the last transfer, if any.
+     */
+    private transient volatile Optional<Socket> data = Optional.absent();
+    /**
+     * Data connection of block mode, while it is set.
+     */
+    private transient volatile Optional<BlockData> blocks =
+        Optional.absent();
+    /**
+     * Are transfers wanted in block mode.
+     */
+    private transient boolean blocked;
+    /**
+     * Is ASCII file type set.
+     */
+    private transient boolean ascii = true;
+    /**
+     * Data connection timeout in milliseconds, zero for none.
+     */
+    private transient int timeout;
+
+    /**
+     * Cancel the session by closing its sockets.
+     *
+     * <p>Called from the watchdog thread, so it never talks to the server:
+     * the worker blocked on the control or data connection sees the closed
+     * socket fail and unwinds on its own thread.
+     */
+    public void cancel() {
+        final Optional<Socket> socket = this.data;
+        if (socket.isPresent()) {
+            WatchedClient.close(socket.get());
+        }
+        final Optional<BlockData> block = this.blocks;
+        if (block.isPresent()) {
+            try {
+                block.get().close();
+            } catch (final IOException ex) {
+                WatchedClient.LOG.debug("block data close failed", ex);
+            }
+        }
+        if (this._socket_ != null) {
+            WatchedClient.close(this._socket_);
+        }
+    }
+
+    /**
+     * Attach to connected and logged in control socket instead of
+     * connecting.
+     *
+     * @param socket Control socket in blocking mode.
+     * @throws IOException If attaching fails.
+     */
+    public void attach(final Socket socket) throws IOException {
+        this._socket_ = new WatchedClient.Attached(socket);
+        this._connectAction_();
+    }
+
+    /**
+     * Data connection timeout, which the parent client keeps to itself.
+     *
+     * @return Timeout in milliseconds, zero for none.
+     */
+    public int dataTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Switch file transfers of the session to block mode.
+     *
+     * @return True if the server accepted block mode.
+     * @throws IOException If connection fails.
+     */
+    public boolean blockMode() throws IOException {
+        this.blocked = this.modeB();
+        return this.blocked;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return super.isConnected() && !this._socket_.isClosed();
+    }
+
+    @Override
+    public int sendCommand(final String command, final String args)
+        throws IOException {
+        this.settle();
+        return super.sendCommand(command, args);
+    }
+
+    @Override
+    public void setDataTimeout(final int millis) {
+        super.setDataTimeout(millis);
+        this.timeout = millis;
+    }
+
+    @Override
+    public boolean setFileType(final int type) throws IOException {
+        final boolean set = super.setFileType(type);
+        if (set) {
+            this.ascii = type == FTPClient.ASCII_FILE_TYPE;
+        }
+        return set;
+    }
+
+    @Override
+    public boolean setFileType(final int type, final int format)
+        throws IOException {
+        final boolean set = super.setFileType(type, format);
+        if (set) {
+            this.ascii = type == FTPClient.ASCII_FILE_TYPE;
+        }
+        return set;
+    }
+
+    @Override
+    public InputStream retrieveFileStream(final String remote)
+        throws IOException {
+        final InputStream stream;
+        if (this.blocks()) {
+            stream = this.blocks.get().retrieve(remote, this.ascii).orNull();
+        } else {
+            stream = super.retrieveFileStream(remote);
+        }
+        return stream;
+    }
+
+    @Override
+    public boolean retrieveFile(final String remote, final OutputStream local)
+        throws IOException {
+        boolean retrieved = false;
+        if (this.blocks()) {
+            final Optional<InputStream> stream =
+                this.blocks.get().retrieve(remote, this.ascii);
+            if (stream.isPresent()) {
+                try (final InputStream input = stream.get()) {
+                    ByteStreams.copy(input, local);
+                }
+                retrieved = this.blocks.get().complete();
+            }
+        } else {
+            retrieved = super.retrieveFile(remote, local);
+        }
+        return retrieved;
+    }
+
+    @Override
+    public boolean storeFile(final String remote, final InputStream local)
+        throws IOException {
+        final boolean stored;
+        if (this.blocks()) {
+            stored = this.blocks.get().store(remote, local, this.ascii);
+        } else {
+            stored = super.storeFile(remote, local);
+        }
+        return stored;
+    }
+
+    @Override
+    public boolean completePendingCommand() throws IOException {
+        final Optional<BlockData> block = this.blocks;
+        final boolean complete;
+        if (block.isPresent() && block.get().waiting()) {
+            complete = block.get().complete();
+        } else {
+            complete = super.completePendingCommand();
+        }
+        return complete;
+    }
+
+    @Override
+    public void disconnect() throws IOException {
+        try {
+            final Optional<BlockData> block = this.blocks;
+            this.blocks = Optional.absent();
+            if (block.isPresent()) {
+                block.get().close();
+            }
+        } finally {
+            this.blocked = false;
+            this.ascii = true;
+            super.disconnect();
+        }
+    }
+
+    /**
+     * Switch the session back to stream mode, if in block mode.
+     *
+     * @throws IOException If connection fails.
+     */
+    void streamMode() throws IOException {
+        final Optional<BlockData> block = this.blocks;
+        if (block.isPresent()) {
+            if (block.get().waiting()) {
+                block.get().complete();
+            }
+            this.blocks = Optional.absent();
+            block.get().close();
+            this.sendCommand("MODE", "S");
+        }
+    }
+
+    /**
+     * Send commands without waiting for replies, which are to be read
+     * in the same order with {@link #getReply()}.
+     *
+     * @param commands Command lines without line ends.
+     * @throws IOException If connection fails.
+     */
+    void pipeline(final Iterable<String> commands) throws IOException {
+        this.settle();
+        for (final String command : commands) {
+            final String line = String.format("%s\r\n", command);
+            this._controlOutput_.write(line);
+            if (this._commandSupport_.getListenerCount() > 0) {
+                this._commandSupport_.fireCommandSent(
+                    command.split(" ", 2)[0], line
+                );
+            }
+        }
+        this._controlOutput_.flush();
+    }
+
+    @Override
+    // @checkstyle MethodNameCheck (1 line)
+    protected Socket _openDataConnection_(final int command, final String arg)
+        throws IOException {
+        this.streamMode();
+        final Socket socket = super._openDataConnection_(command, arg);
+        this.data = Optional.fromNullable(socket);
+        return socket;
+    }
+
+    /**
+     * Should the next transfer go in block mode, switching to it again
+     * if needed.
+     *
+     * @return True if block mode is set.
+     * @throws IOException If connection fails.
+     */
+    private boolean blocks() throws IOException {
+        final boolean whole = this.getRestartOffset() == 0L;
+        if (this.blocked && whole) {
+            this.blocked = this.modeB();
+        }
+        return this.blocked && whole && this.blocks.isPresent();
+    }
+
+    /**
+     * Complete block mode retrieval left pending, if any, before next
+     * command.
+     *
+     * @throws IOException If connection fails.
+     */
+    private void settle() throws IOException {
+        final Optional<BlockData> block = this.blocks;
+        if (block.isPresent() && block.get().waiting()) {
+            block.get().complete();
+        }
+    }
+
+    /**
+     * Set block mode unless already set.
+     *
+     * @return True if block mode is set.
+     * @throws IOException If connection fails.
+     */
+    private boolean modeB() throws IOException {
+        if (!this.blocks.isPresent() && FTPReply.isPositiveCompletion(
+            this.sendCommand("MODE", "B")
+        )) {
+            this.blocks = Optional.of(new BlockData(this));
+        }
+        return this.blocks.isPresent();
+    }
+
+    /**
+     * Close socket ignoring errors.
+     *
+     * @param socket Socket to close.
+     */
+    private static void close(final Socket socket) {
+        try {
+            socket.close();
+        } catch (final IOException ex) {
+            WatchedClient.LOG.debug("socket close failed", ex);
+        }
+    }
+
+    /**
+     * Control socket already connected, replaying a greeting to the client.
+     */
+    private static final class Attached extends Socket {
+        /**
+         * Greeting replayed.
+         */
+        private static final byte[] GREETING =
+            "220 Attached.\r\n".getBytes(Charsets.US_ASCII);
+        /**
+         * Connected socket.
+         */
+        private final transient Socket origin;
+        /**
+         * Input with greeting, created on first use.
+         */
+        private transient InputStream input;
+
+        /**
+         * Class constructor.
+         *
+         * @param socket Connected socket.
+         */
+        Attached(final Socket socket) {
+            super();
+            this.origin = socket;
+        }
+
+        @Override
+        public synchronized InputStream getInputStream() throws IOException {
+            if (this.input == null) {
+                this.input = new SequenceInputStream(
+                    new ByteArrayInputStream(WatchedClient.Attached.GREETING),
+                    this.origin.getInputStream()
+                );
+            }
+            return this.input;
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return this.origin.getOutputStream();
+        }
+
+        @Override
+        public void setSoTimeout(final int timeout) throws SocketException {
+            this.origin.setSoTimeout(timeout);
+        }
+
+        @Override
+        public int getSoTimeout() throws SocketException {
+            return this.origin.getSoTimeout();
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return this.origin.getInetAddress();
+        }
+
+        @Override
+        public int getPort() {
+            return this.origin.getPort();
+        }
+
+        @Override
+        public InetAddress getLocalAddress() {
+            return this.origin.getLocalAddress();
+        }
+
+        @Override
+        public int getLocalPort() {
+            return this.origin.getLocalPort();
+        }
+
+        @Override
+        public SocketAddress getRemoteSocketAddress() {
+            return this.origin.getRemoteSocketAddress();
+        }
+
+        @Override
+        public SocketAddress getLocalSocketAddress() {
+            return this.origin.getLocalSocketAddress();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return this.origin.isConnected();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return this.origin.isClosed();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.origin.close();
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.mock;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Network and server conditions simulated by {@link MockServer}.
+ *
+ * <p>Immutable; each method returns new conditions with one more property
+ * set. Failures are drawn from a seeded random generator per session, so
+ * that runs are reproducible.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Conditions {
+    /**
+     * Key of latency applied to commands without own latency.
+     */
+    private static final String ANY = "*";
+    /**
+     * Latency before reply in milliseconds per command verb.
+     */
+    private final transient Map<String, Long> delays;
+    /**
+     * Data channel bandwidth in bytes per second, zero for unlimited.
+     */
+    private final transient long rate;
+    /**
+     * Failure probability and reply code per command verb.
+     */
+    private final transient Map<String, double[]> failures;
+    /**
+     * Command verbs the server does not support.
+     */
+    private final transient Set<String> unknown;
+    /**
+     * Seed of random failures.
+     */
+    private final transient long rnd;
+    /**
+     * Maximum sessions open at once, zero for unlimited.
+     */
+    private final transient int logins;
+    /**
+     * Round-trip time of control connection in milliseconds.
+     */
+    private final transient long rtt;
+    /**
+     * Are commands sent before the reply to previous one discarded.
+     */
+    private final transient boolean serial;
+
+    /**
+     * Class constructor of ideal conditions.
+     */
+    public Conditions() {
+        this(
+            ImmutableMap.<String, Long>of(), 0L,
+            ImmutableMap.<String, double[]>of(), ImmutableSet.<String>of(),
+            0L, 0, 0L, false
+        );
+    }
+
+    /**
+     * Primary constructor.
+     *
+     * @param latency Latency per command verb.
+     * @param bandwidth Bandwidth in bytes per second.
+     * @param fails Failure probability and code per command verb.
+     * @param unsupported Command verbs not supported.
+     * @param seed Seed of random failures.
+     * @param sessions Maximum sessions open at once, zero for unlimited.
+     * @param trip Round-trip time of control connection in milliseconds.
+     * @param lockstep Are commands sent ahead of replies discarded.
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    private Conditions(final Map<String, Long> latency, final long bandwidth,
+        final Map<String, double[]> fails, final Set<String> unsupported,
+        final long seed, final int sessions, final long trip,
+        final boolean lockstep) {
+        this.delays = latency;
+        this.rate = bandwidth;
+        this.failures = fails;
+        this.unknown = unsupported;
+        this.rnd = seed;
+        this.logins = sessions;
+        this.rtt = trip;
+        this.serial = lockstep;
+    }
+
+    /**
+     * Conditions with latency of every command, like round-trip time.
+     *
+     * @param millis Latency in milliseconds.
+     * @return New conditions.
+     */
+    public Conditions latency(final long millis) {
+        return this.latency(Conditions.ANY, millis);
+    }
+
+    /**
+     * Conditions with latency of given command; "CONNECT" delays greeting.
+     *
+     * @param verb Command verb, like LIST.
+     * @param millis Latency in milliseconds.
+     * @return New conditions.
+     */
+    public Conditions latency(final String verb, final long millis) {
+        return new Conditions(
+            Conditions.with(this.delays, Conditions.key(verb), millis),
+            this.rate, this.failures, this.unknown, this.rnd, this.logins,
+            this.rtt, this.serial
+        );
+    }
+
+    /**
+     * Conditions with limited data channel bandwidth.
+     *
+     * @param bytes Bytes per second per data connection.
+     * @return New conditions.
+     */
+    public Conditions bandwidth(final long bytes) {
+        return new Conditions(
+            this.delays, bytes, this.failures, this.unknown, this.rnd,
+            this.logins, this.rtt, this.serial
+        );
+    }
+
+    /**
+     * Conditions with random failures of given command.
+     *
+     * @param verb Command verb, like RETR.
+     * @param probability Probability of failure, from 0 to 1.
+     * @param code Reply code of failure, like 421 or 451.
+     * @return New conditions.
+     */
+    public Conditions failure(final String verb, final double probability,
+        final int code) {
+        return new Conditions(
+            this.delays, this.rate,
+            Conditions.with(
+                this.failures, Conditions.key(verb),
+                new double[] {probability, code}
+            ),
+            this.unknown, this.rnd, this.logins, this.rtt, this.serial
+        );
+    }
+
+    /**
+     * Conditions of server not supporting given command.
+     *
+     * @param verb Command verb, like MLSD.
+     * @return New conditions.
+     */
+    public Conditions unsupported(final String verb) {
+        return new Conditions(
+            this.delays, this.rate, this.failures,
+            ImmutableSet.<String>builder().addAll(this.unknown)
+                .add(Conditions.key(verb)).build(),
+            this.rnd, this.logins, this.rtt, this.serial
+        );
+    }
+
+    /**
+     * Conditions with given seed of random failures.
+     *
+     * @param seed Seed.
+     * @return New conditions.
+     */
+    public Conditions seed(final long seed) {
+        return new Conditions(
+            this.delays, this.rate, this.failures, this.unknown, seed,
+            this.logins, this.rtt, this.serial
+        );
+    }
+
+    /**
+     * Conditions of server limiting sessions open at once; sessions over
+     * the limit are greeted with 421 and closed.
+     *
+     * @param max Maximum sessions open at once.
+     * @return New conditions.
+     */
+    public Conditions sessions(final int max) {
+        return new Conditions(
+            this.delays, this.rate, this.failures, this.unknown, this.rnd, max,
+            this.rtt, this.serial
+        );
+    }
+
+    /**
+     * Conditions with round-trip time of control connection. Unlike
+     * latency, it delays replies on their way back without holding up
+     * commands sent meanwhile.
+     *
+     * @param millis Round-trip time in milliseconds.
+     * @return New conditions.
+     */
+    public Conditions roundTrip(final long millis) {
+        return new Conditions(
+            this.delays, this.rate, this.failures, this.unknown, this.rnd,
+            this.logins, millis, this.serial
+        );
+    }
+
+    /**
+     * Conditions of server discarding commands sent before the reply to
+     * the previous one, so that it does not support pipelining.
+     *
+     * @return New conditions.
+     */
+    public Conditions lockStep() {
+        return new Conditions(
+            this.delays, this.rate, this.failures, this.unknown, this.rnd,
+            this.logins, this.rtt, true
+        );
+    }
+
+    /**
+     * Latency of command.
+     *
+     * @param verb Command verb.
+     * @return Latency in milliseconds.
+     */
+    long latencyOf(final String verb) {
+        Long millis = this.delays.get(verb);
+        if (millis == null) {
+            millis = this.delays.get(Conditions.ANY);
+        }
+        if (millis == null) {
+            millis = 0L;
+        }
+        return millis;
+    }
+
+    /**
+     * Data channel bandwidth.
+     *
+     * @return Bytes per second, zero for unlimited.
+     */
+    long bandwidth() {
+        return this.rate;
+    }
+
+    /**
+     * Failure drawn for command.
+     *
+     * @param verb Command verb.
+     * @param random Random generator of the session.
+     * @return Reply code of failure, absent if command succeeds.
+     */
+    Optional<Integer> failureOf(final String verb, final Random random) {
+        final double[] fail = this.failures.get(verb);
+        Optional<Integer> code = Optional.absent();
+        if (fail != null && random.nextDouble() < fail[0]) {
+            code = Optional.of((int) fail[1]);
+        }
+        return code;
+    }
+
+    /**
+     * Is command supported.
+     *
+     * @param verb Command verb.
+     * @return True if supported.
+     */
+    boolean supports(final String verb) {
+        return !this.unknown.contains(verb);
+    }
+
+    /**
+     * Are sessions over limit.
+     *
+     * @param open Sessions open now, including the new one.
+     * @return True if the new session must be rejected.
+     */
+    boolean overloaded(final int open) {
+        return this.logins > 0 && open > this.logins;
+    }
+
+    /**
+     * Round-trip time of control connection.
+     *
+     * @return Milliseconds, zero for none.
+     */
+    long roundTrip() {
+        return this.rtt;
+    }
+
+    /**
+     * Are commands sent ahead of replies served.
+     *
+     * @return True if server supports pipelining.
+     */
+    boolean pipelines() {
+        return !this.serial;
+    }
+
+    /**
+     * Random generator of session.
+     *
+     * @param session Sequence number of session.
+     * @return Random generator.
+     */
+    Random random(final long session) {
+        return new Random(this.rnd + session);
+    }
+
+    /**
+     * Map with one more value.
+     *
+     * @param map Map.
+     * @param key Key.
+     * @param value Value.
+     * @param <T> Type of value.
+     * @return New map.
+     */
+    private static <T> Map<String, T> with(final Map<String, T> map,
+        final String key, final T value) {
+        final ImmutableMap.Builder<String, T> builder = ImmutableMap.builder();
+        for (final Map.Entry<String, T> entry : map.entrySet()) {
+            if (!entry.getKey().equals(key)) {
+                builder.put(entry);
+            }
+        }
+        return builder.put(key, value).build();
+    }
+
+    /**
+     * Normalized command verb.
+     *
+     * @param verb Command verb.
+     * @return Verb in upper case.
+     */
+    private static String key(final String verb) {
+        return verb.toUpperCase(Locale.ENGLISH);
+    }
+}
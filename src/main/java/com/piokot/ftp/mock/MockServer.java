@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.mock;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.piokot.ftp.FTP;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FTP server stand-in serving {@link MockTree} on loopback interface.
+ *
+ * <p>Simulates latency, bandwidth and failures given by {@link Conditions},
+ * which makes performance tests reproducible without real FTP server.
+ * Any user and password is accepted.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class MockServer implements Closeable {
+    /**
+     * Served file system.
+     */
+    private final transient MockTree tree;
+    /**
+     * Simulated conditions.
+     */
+    private final transient Conditions cond;
+    /**
+     * Listening socket.
+     */
+    private final transient ServerSocket socket;
+    /**
+     * Threads serving sessions.
+     */
+    private final transient ExecutorService threads;
+    /**
+     * Control connections open.
+     */
+    private final transient Set<Socket> open;
+    /**
+     * Number of commands received per verb.
+     */
+    private final transient ConcurrentMap<String, AtomicLong> counts;
+    /**
+     * Number of sessions started.
+     */
+    private final transient AtomicLong started;
+    /**
+     * Number of data connections opened.
+     */
+    private final transient AtomicLong data;
+
+    /**
+     * Class constructor with ideal conditions.
+     *
+     * @param files Served file system.
+     * @throws IOException If server socket cannot be opened.
+     */
+    public MockServer(final MockTree files) throws IOException {
+        this(files, new Conditions());
+    }
+
+    /**
+     * Class constructor starting the server.
+     *
+     * @param files Served file system.
+     * @param conditions Simulated conditions.
+     * @throws IOException If server socket cannot be opened.
+     */
+    public MockServer(final MockTree files, final Conditions conditions)
+        throws IOException {
+        this.tree = files;
+        this.cond = conditions;
+        this.socket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        this.threads = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("mock-ftp-%d").build()
+        );
+        this.open = Collections.newSetFromMap(
+            new ConcurrentHashMap<Socket, Boolean>()
+        );
+        this.counts = new ConcurrentHashMap<>();
+        this.started = new AtomicLong();
+        this.data = new AtomicLong();
+        this.threads.submit(
+            new Runnable() {
+                @Override
+                public void run() {
+                    MockServer.this.accept();
+                }
+            }
+        );
+    }
+
+    /**
+     * Port the server listens on.
+     *
+     * @return Port number.
+     */
+    public int port() {
+        return this.socket.getLocalPort();
+    }
+
+    /**
+     * FTP wrapper connecting to the server.
+     *
+     * @return FTP wrapper.
+     */
+    public FTP ftp() {
+        return new FTP(
+            this.socket.getInetAddress().getHostAddress(), this.port(),
+            "mock", "mock"
+        );
+    }
+
+    /**
+     * Number of commands received so far per verb.
+     *
+     * @return Command counts keyed by verb.
+     */
+    public Map<String, Long> commands() {
+        final Map<String, Long> result = new TreeMap<>();
+        for (final Map.Entry<String, AtomicLong> entry
+            : this.counts.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    /**
+     * Number of data connections opened so far, in any mode.
+     *
+     * @return Data connections.
+     */
+    public long connections() {
+        return this.data.get();
+    }
+
+    /**
+     * Number of control connections open now.
+     *
+     * @return Open sessions.
+     */
+    public int sessions() {
+        return this.open.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.socket.close();
+        for (final Socket conn : this.open) {
+            conn.close();
+        }
+        this.threads.shutdownNow();
+    }
+
+    /**
+     * Count received command.
+     *
+     * @param verb Command verb.
+     */
+    void count(final String verb) {
+        AtomicLong count = this.counts.get(verb);
+        if (count == null) {
+            this.counts.putIfAbsent(verb, new AtomicLong());
+            count = this.counts.get(verb);
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Count opened data connection.
+     */
+    void connected() {
+        this.data.incrementAndGet();
+    }
+
+    /**
+     * Accept control connections until closed.
+     */
+    private void accept() {
+        while (!this.socket.isClosed()) {
+            try {
+                final Socket conn = this.socket.accept();
+                this.open.add(conn);
+                this.threads.submit(
+                    new MockSession(
+                        conn, this.tree, this.cond, this,
+                        this.started.getAndIncrement()
+                    )
+                );
+            } catch (final IOException ex) {
+                if (!this.socket.isClosed()) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget closed control connection.
+     *
+     * @param conn Control connection.
+     */
+    void closed(final Socket conn) {
+        this.open.remove(conn);
+    }
+}
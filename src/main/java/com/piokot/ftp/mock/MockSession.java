@@ -0,0 +1,1206 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.mock;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.io.ByteStreams;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Control connection of {@link MockServer}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ * @checkstyle CyclomaticComplexity (500 lines)
+ * @checkstyle MultipleStringLiterals (500 lines)
+ */
+final class MockSession implements Runnable {
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        LoggerFactory.getLogger(MockSession.class);
+    /**
+     * Timeout of data connection setup in milliseconds.
+     */
+    private static final int TIMEOUT = 10000;
+    /**
+     * Size of data transfer chunks.
+     */
+    private static final int CHUNK = 8192;
+    /**
+     * Reply on missing file or directory.
+     */
+    private static final String MISSING = "No such file or directory.";
+    /**
+     * Control connection.
+     */
+    private final transient Socket socket;
+    /**
+     * Served file system.
+     */
+    private final transient MockTree tree;
+    /**
+     * Simulated conditions.
+     */
+    private final transient Conditions cond;
+    /**
+     * Server of the session.
+     */
+    private final transient MockServer server;
+    /**
+     * Sequence number of the session.
+     */
+    private final transient long number;
+    /**
+     * Current working directory.
+     */
+    private transient String cwd = "/";
+    /**
+     * Is ASCII type set.
+     */
+    private transient boolean ascii = true;
+    /**
+     * Restart offset of next transfer.
+     */
+    private transient long restart;
+    /**
+     * Path given by RNFR.
+     */
+    private transient Optional<String> rename = Optional.absent();
+    /**
+     * Passive mode listening socket.
+     */
+    private transient Optional<ServerSocket> passive = Optional.absent();
+    /**
+     * Active mode client address.
+     */
+    private transient Optional<InetSocketAddress> active = Optional.absent();
+    /**
+     * Is block mode set.
+     */
+    private transient boolean block;
+    /**
+     * Data connection kept open between transfers in block mode.
+     */
+    private transient Optional<Socket> kept = Optional.absent();
+    /**
+     * Control channel writer.
+     */
+    private transient Writer out;
+
+    /**
+     * Class constructor.
+     *
+     * @param conn Control connection.
+     * @param files Served file system.
+     * @param conditions Simulated conditions.
+     * @param owner Server of the session.
+     * @param seq Sequence number of the session.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    MockSession(final Socket conn, final MockTree files,
+        final Conditions conditions, final MockServer owner, final long seq) {
+        this.socket = conn;
+        this.tree = files;
+        this.cond = conditions;
+        this.server = owner;
+        this.number = seq;
+    }
+
+    @Override
+    @SneakyThrows
+    public void run() {
+        try {
+            final BufferedReader in = new BufferedReader(
+                new InputStreamReader(
+                    this.socket.getInputStream(), Charsets.UTF_8
+                )
+            );
+            OutputStream replies = this.socket.getOutputStream();
+            if (this.cond.roundTrip() > 0L) {
+                replies = new MockSession.Delayed(
+                    replies, this.cond.roundTrip()
+                );
+            }
+            this.out = new OutputStreamWriter(replies, Charsets.UTF_8);
+            MockSession.sleep(this.cond.latencyOf("CONNECT"));
+            String line = null;
+            if (this.cond.overloaded(this.server.sessions())) {
+                this.reply(421, "Too many connections.");
+            } else {
+                this.reply(220, "Mock FTP server ready.");
+                line = in.readLine();
+            }
+            final Random random = this.cond.random(this.number);
+            boolean quit = false;
+            while (line != null && !quit) {
+                while (!this.cond.pipelines() && in.ready()) {
+                    in.read();
+                }
+                final int space = line.indexOf(' ');
+                final String verb;
+                final String arg;
+                if (space < 0) {
+                    verb = line.trim().toUpperCase(Locale.ENGLISH);
+                    arg = "";
+                } else {
+                    verb = line.substring(0, space).toUpperCase(Locale.ENGLISH);
+                    arg = line.substring(space + 1).trim();
+                }
+                this.server.count(verb);
+                MockSession.sleep(this.cond.latencyOf(verb));
+                final Optional<Integer> failure =
+                    this.cond.failureOf(verb, random);
+                if (!this.cond.supports(verb)) {
+                    this.reply(502, "Command not implemented.");
+                } else if (failure.isPresent()) {
+                    this.reply(failure.get(), "Simulated failure.");
+                } else {
+                    quit = this.execute(verb, arg);
+                }
+                line = in.readLine();
+            }
+        } catch (final IOException ex) {
+            if (!this.socket.isClosed()) {
+                throw ex;
+            }
+        } finally {
+            if (this.out != null) {
+                this.out.close();
+            }
+            this.socket.close();
+            this.server.closed(this.socket);
+        }
+    }
+
+    /**
+     * Execute command.
+     *
+     * @param verb Command verb.
+     * @param arg Command argument.
+     * @return True if session should end.
+     * @throws IOException If connection fails.
+     * @checkstyle ExecutableStatementCountCheck (200 lines)
+     * @checkstyle JavaNCSSCheck (200 lines)
+     */
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    private boolean execute(final String verb, final String arg)
+        throws IOException {
+        final String path = MockTree.resolve(this.cwd, arg);
+        boolean quit = false;
+        switch (verb) {
+            case "USER":
+                this.reply(331, "Password required.");
+                break;
+            case "PASS":
+                this.reply(230, "Logged in.");
+                break;
+            case "QUIT":
+                this.reply(221, "Goodbye.");
+                quit = true;
+                break;
+            case "NOOP":
+            case "STRU":
+            case "ALLO":
+                this.reply(200, "OK.");
+                break;
+            case "SYST":
+                this.reply(215, "UNIX Type: L8");
+                break;
+            case "FEAT":
+                this.features();
+                break;
+            case "TYPE":
+                this.ascii = arg.toUpperCase(Locale.ENGLISH).startsWith("A");
+                this.reply(200, "Type set.");
+                break;
+            case "MODE":
+                this.mode(arg);
+                break;
+            case "PWD":
+                this.reply(257, String.format("\"%s\" is cwd.", this.cwd));
+                break;
+            case "CWD":
+                this.cwd(path);
+                break;
+            case "CDUP":
+                this.cwd(MockTree.resolve(this.cwd, ".."));
+                break;
+            case "PORT":
+                this.port(arg);
+                break;
+            case "PASV":
+                this.pasv();
+                break;
+            case "REST":
+                this.restart = Long.parseLong(arg);
+                this.reply(350, "Restarting.");
+                break;
+            case "RETR":
+                this.retr(path);
+                break;
+            case "STOR":
+                this.stor(path, false);
+                break;
+            case "APPE":
+                this.stor(path, true);
+                break;
+            case "LIST":
+            case "NLST":
+            case "MLSD":
+                this.list(verb, arg);
+                break;
+            case "MLST":
+                this.mlst(path);
+                break;
+            case "SIZE":
+                this.size(path);
+                break;
+            case "MDTM":
+                this.mdtm(path);
+                break;
+            case "DELE":
+                this.done(this.tree.delete(path), 250);
+                break;
+            case "MKD":
+                this.done(this.tree.mkdir(path), 257);
+                break;
+            case "RMD":
+                this.done(this.tree.rmdir(path), 250);
+                break;
+            case "RNFR":
+                this.rnfr(path);
+                break;
+            case "RNTO":
+                this.rnto(path);
+                break;
+            case "ABOR":
+                this.reply(226, "Abort successful.");
+                break;
+            default:
+                this.reply(502, "Command not implemented.");
+                break;
+        }
+        return quit;
+    }
+
+    /**
+     * Reply to FEAT with supported extensions.
+     *
+     * @throws IOException If connection fails.
+     */
+    private void features() throws IOException {
+        final StringBuilder text = new StringBuilder("211-Features:\r\n");
+        final String[] feats = {"SIZE", "MDTM", "MLST", "REST"};
+        for (final String feat : feats) {
+            if (this.cond.supports(feat)) {
+                text.append(' ').append(feat);
+                if ("MLST".equals(feat)) {
+                    text.append(" type*;size*;modify*;");
+                } else if ("REST".equals(feat)) {
+                    text.append(" STREAM");
+                }
+                text.append("\r\n");
+            }
+        }
+        text.append(" UTF8\r\n211 End\r\n");
+        this.out.write(text.toString());
+        this.out.flush();
+    }
+
+    /**
+     * Set transfer mode, stream or block.
+     *
+     * @param arg Mode code.
+     * @throws IOException If connection fails.
+     */
+    private void mode(final String arg) throws IOException {
+        if ("S".equalsIgnoreCase(arg) || "B".equalsIgnoreCase(arg)) {
+            this.closeKept();
+            this.block = "B".equalsIgnoreCase(arg);
+            this.reply(
+                200,
+                String.format(
+                    "Mode set to %s.", arg.toUpperCase(Locale.ENGLISH)
+                )
+            );
+        } else {
+            this.reply(504, "Mode not supported.");
+        }
+    }
+
+    /**
+     * Change working directory.
+     *
+     * @param path Absolute directory path.
+     * @throws IOException If connection fails.
+     */
+    private void cwd(final String path) throws IOException {
+        final Optional<MockTree.Entry> entry = this.tree.entry(path);
+        if (entry.isPresent() && entry.get().directory()) {
+            this.cwd = path;
+            this.reply(250, "Directory changed.");
+        } else {
+            this.reply(550, MockSession.MISSING);
+        }
+    }
+
+    /**
+     * Enter active mode.
+     *
+     * @param arg Client address as h1,h2,h3,h4,p1,p2.
+     * @throws IOException If connection fails.
+     */
+    private void port(final String arg) throws IOException {
+        final String[] parts = arg.split(",");
+        this.closePassive();
+        this.closeKept();
+        this.active = Optional.of(
+            new InetSocketAddress(
+                InetAddress.getByName(
+                    String.format(
+                        "%s.%s.%s.%s", parts[0], parts[1], parts[2], parts[3]
+                    )
+                ),
+                Integer.parseInt(parts[4]) * 256 + Integer.parseInt(parts[5])
+            )
+        );
+        this.reply(200, "PORT command successful.");
+    }
+
+    /**
+     * Enter passive mode.
+     *
+     * @throws IOException If connection fails.
+     */
+    private void pasv() throws IOException {
+        this.closePassive();
+        this.closeKept();
+        this.active = Optional.absent();
+        final ServerSocket listen = new ServerSocket(
+            0, 1, this.socket.getLocalAddress()
+        );
+        listen.setSoTimeout(MockSession.TIMEOUT);
+        this.passive = Optional.of(listen);
+        final int port = listen.getLocalPort();
+        this.reply(
+            227,
+            String.format(
+                "Entering Passive Mode (%s,%d,%d).",
+                this.socket.getLocalAddress().getHostAddress()
+                    .replace('.', ','),
+                port / 256, port % 256
+            )
+        );
+    }
+
+    /**
+     * Send file.
+     *
+     * @param path Absolute file path.
+     * @throws IOException If connection fails.
+     */
+    private void retr(final String path) throws IOException {
+        final Optional<MockTree.Entry> entry = this.tree.entry(path);
+        final long offset = this.restart;
+        this.restart = 0L;
+        if (entry.isPresent() && !entry.get().directory()) {
+            this.transferred(
+                this.transfer(
+                    new MockSession.Transfer() {
+                        @Override
+                        public void run(final Socket data) throws IOException {
+                            OutputStream dst = MockSession.this.output(data);
+                            if (MockSession.this.ascii) {
+                                dst = new NetAscii(dst);
+                            }
+                            try (final InputStream src =
+                                entry.get().read(offset)) {
+                                MockSession.this.copy(src, dst);
+                            } finally {
+                                dst.close();
+                            }
+                        }
+                    }
+                )
+            );
+        } else {
+            this.reply(550, MockSession.MISSING);
+        }
+    }
+
+    /**
+     * Receive file.
+     *
+     * @param path Absolute file path.
+     * @param append Append to existing content.
+     * @throws IOException If connection fails.
+     */
+    private void stor(final String path, final boolean append)
+        throws IOException {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final Optional<MockTree.Entry> existing = this.tree.entry(path);
+        final long offset = this.restart;
+        this.restart = 0L;
+        if (existing.isPresent() && !existing.get().directory()) {
+            final long keep;
+            if (append) {
+                keep = existing.get().size();
+            } else {
+                keep = offset;
+            }
+            ByteStreams.copy(
+                ByteStreams.limit(existing.get().read(0L), keep), content
+            );
+        }
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        final boolean sent = this.transfer(
+            new MockSession.Transfer() {
+                @Override
+                public void run(final Socket data) throws IOException {
+                    MockSession.this.copy(
+                        MockSession.this.input(data), received
+                    );
+                }
+            }
+        );
+        byte[] bytes = received.toByteArray();
+        if (this.ascii) {
+            bytes = new String(bytes, Charsets.ISO_8859_1)
+                .replace("\r\n", "\n").getBytes(Charsets.ISO_8859_1);
+        }
+        content.write(bytes);
+        if (sent && !this.tree.store(path, content.toByteArray())) {
+            this.reply(553, "Cannot store file.");
+        } else {
+            this.transferred(sent);
+        }
+    }
+
+    /**
+     * Send directory listing.
+     *
+     * @param verb LIST, NLST or MLSD.
+     * @param arg Listed path, possibly preceded by options.
+     * @throws IOException If connection fails.
+     */
+    private void list(final String verb, final String arg) throws IOException {
+        String path = arg;
+        while (path.startsWith("-")) {
+            final int space = path.indexOf(' ');
+            if (space < 0) {
+                path = "";
+            } else {
+                path = path.substring(space + 1).trim();
+            }
+        }
+        final String full = MockTree.resolve(this.cwd, path);
+        final Optional<MockTree.Entry> entry = this.tree.entry(full);
+        final Optional<Collection<MockTree.Entry>> entries;
+        if (entry.isPresent() && !entry.get().directory()) {
+            entries = Optional.<Collection<MockTree.Entry>>of(
+                Collections.singletonList(entry.get())
+            );
+        } else {
+            entries = this.tree.list(full);
+        }
+        if (entries.isPresent()) {
+            this.transferred(
+                this.transfer(
+                    new MockSession.Transfer() {
+                        @Override
+                        public void run(final Socket data) throws IOException {
+                            MockSession.list(
+                                verb, entries.get(),
+                                new OutputStreamWriter(
+                                    MockSession.this.output(data),
+                                    Charsets.UTF_8
+                                )
+                            );
+                        }
+                    }
+                )
+            );
+        } else {
+            this.reply(550, MockSession.MISSING);
+        }
+    }
+
+    /**
+     * Reply with facts of single entry.
+     *
+     * @param path Absolute path.
+     * @throws IOException If connection fails.
+     */
+    private void mlst(final String path) throws IOException {
+        final Optional<MockTree.Entry> entry = this.tree.entry(path);
+        if (entry.isPresent()) {
+            this.out.write(
+                String.format(
+                    "250-Listing %s\r\n %s%s\r\n250 End\r\n",
+                    path, MockSession.facts(entry.get()), path
+                )
+            );
+            this.out.flush();
+        } else {
+            this.reply(550, MockSession.MISSING);
+        }
+    }
+
+    /**
+     * Reply with file size.
+     *
+     * @param path Absolute path.
+     * @throws IOException If connection fails.
+     */
+    private void size(final String path) throws IOException {
+        final Optional<MockTree.Entry> entry = this.tree.entry(path);
+        if (entry.isPresent() && !entry.get().directory()) {
+            this.reply(213, Long.toString(entry.get().size()));
+        } else {
+            this.reply(550, MockSession.MISSING);
+        }
+    }
+
+    /**
+     * Reply with file modification time.
+     *
+     * @param path Absolute path.
+     * @throws IOException If connection fails.
+     */
+    private void mdtm(final String path) throws IOException {
+        final Optional<MockTree.Entry> entry = this.tree.entry(path);
+        if (entry.isPresent() && !entry.get().directory()) {
+            this.reply(213, MockSession.timeval(entry.get().modified()));
+        } else {
+            this.reply(550, MockSession.MISSING);
+        }
+    }
+
+    /**
+     * Remember rename source.
+     *
+     * @param path Absolute path.
+     * @throws IOException If connection fails.
+     */
+    private void rnfr(final String path) throws IOException {
+        if (this.tree.entry(path).isPresent()) {
+            this.rename = Optional.of(path);
+            this.reply(350, "Ready for RNTO.");
+        } else {
+            this.reply(550, MockSession.MISSING);
+        }
+    }
+
+    /**
+     * Rename remembered source.
+     *
+     * @param path Absolute target path.
+     * @throws IOException If connection fails.
+     */
+    private void rnto(final String path) throws IOException {
+        if (this.rename.isPresent()) {
+            this.done(this.tree.rename(this.rename.get(), path), 250);
+            this.rename = Optional.absent();
+        } else {
+            this.reply(503, "Bad sequence of commands.");
+        }
+    }
+
+    /**
+     * Reply to data transfer.
+     *
+     * @param complete Was transfer complete.
+     * @throws IOException If connection fails.
+     */
+    private void transferred(final boolean complete) throws IOException {
+        if (complete && this.kept.isPresent()) {
+            this.reply(250, "Transfer complete, data connection kept.");
+        } else if (complete) {
+            this.reply(226, "Transfer complete.");
+        } else {
+            this.reply(426, "Connection closed; transfer aborted.");
+        }
+    }
+
+    /**
+     * Reply to file action.
+     *
+     * @param success Was action successful.
+     * @param code Reply code on success.
+     * @throws IOException If connection fails.
+     */
+    private void done(final boolean success, final int code)
+        throws IOException {
+        if (success) {
+            this.reply(code, "Requested file action okay.");
+        } else {
+            this.reply(550, "Requested action not taken.");
+        }
+    }
+
+    /**
+     * Open data connection in current mode.
+     *
+     * @return Data connection.
+     * @throws IOException If connection fails.
+     */
+    private Socket data() throws IOException {
+        final Socket data;
+        if (this.passive.isPresent()) {
+            data = this.passive.get().accept();
+            this.closePassive();
+        } else if (this.active.isPresent()) {
+            data = new Socket();
+            data.connect(this.active.get(), MockSession.TIMEOUT);
+        } else {
+            throw new IOException("no data connection mode set");
+        }
+        this.server.connected();
+        return data;
+    }
+
+    /**
+     * Run transfer over data connection, kept open after successful
+     * transfers in block mode.
+     *
+     * @param body Transfer.
+     * @return True if transfer was complete.
+     * @throws IOException If control connection fails.
+     */
+    private boolean transfer(final MockSession.Transfer body)
+        throws IOException {
+        boolean sent = true;
+        Optional<Socket> data = Optional.absent();
+        try {
+            data = Optional.of(this.open());
+            body.run(data.get());
+        } catch (final IOException ex) {
+            sent = false;
+        }
+        if (data.isPresent() && !(this.block && sent)) {
+            data.get().close();
+            this.kept = Optional.absent();
+        }
+        return sent;
+    }
+
+    /**
+     * Reply to transfer command and open data connection, or take the one
+     * kept open.
+     *
+     * @return Data connection.
+     * @throws IOException If connection fails.
+     */
+    private Socket open() throws IOException {
+        final Socket data;
+        if (this.kept.isPresent() && !this.kept.get().isClosed()) {
+            this.reply(125, "Data connection already open; transfer starting.");
+            data = this.kept.get();
+        } else {
+            this.reply(150, "Opening data connection.");
+            data = this.data();
+            if (this.block) {
+                this.kept = Optional.of(data);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Output of data connection in current mode, ending the transfer when
+     * closed.
+     *
+     * @param data Data connection.
+     * @return Output.
+     * @throws IOException If connection fails.
+     */
+    private OutputStream output(final Socket data) throws IOException {
+        OutputStream output = new BufferedOutputStream(
+            data.getOutputStream(), MockSession.CHUNK
+        );
+        if (this.block) {
+            output = new BufferedOutputStream(
+                new MockSession.Blocks(
+                    new BufferedOutputStream(
+                        data.getOutputStream(), MockSession.CHUNK
+                    )
+                ),
+                MockSession.CHUNK
+            );
+        }
+        return output;
+    }
+
+    /**
+     * Input of data connection in current mode, ending with the transfer.
+     *
+     * @param data Data connection.
+     * @return Input.
+     * @throws IOException If connection fails.
+     */
+    private InputStream input(final Socket data) throws IOException {
+        InputStream input = data.getInputStream();
+        if (this.block) {
+            input = new MockSession.Unblocks(input);
+        }
+        return input;
+    }
+
+    /**
+     * Close data connection kept open in block mode.
+     *
+     * @throws IOException If closing fails.
+     */
+    private void closeKept() throws IOException {
+        if (this.kept.isPresent()) {
+            this.kept.get().close();
+            this.kept = Optional.absent();
+        }
+    }
+
+    /**
+     * Close passive mode listening socket.
+     *
+     * @throws IOException If closing fails.
+     */
+    private void closePassive() throws IOException {
+        if (this.passive.isPresent()) {
+            this.passive.get().close();
+            this.passive = Optional.absent();
+        }
+    }
+
+    /**
+     * Copy data at simulated bandwidth.
+     *
+     * @param src Source.
+     * @param dst Destination.
+     * @throws IOException If copying fails.
+     */
+    private void copy(final InputStream src, final OutputStream dst)
+        throws IOException {
+        final long rate = this.cond.bandwidth();
+        final byte[] buf = new byte[MockSession.CHUNK];
+        final long start = System.nanoTime();
+        long total = 0L;
+        int read = src.read(buf);
+        while (read >= 0) {
+            dst.write(buf, 0, read);
+            total += read;
+            if (rate > 0L) {
+                final long due = start
+                    + TimeUnit.SECONDS.toNanos(total) / rate;
+                MockSession.sleep(
+                    TimeUnit.NANOSECONDS.toMillis(due - System.nanoTime())
+                );
+            }
+            read = src.read(buf);
+        }
+        dst.flush();
+    }
+
+    /**
+     * Send single line reply.
+     *
+     * @param code Reply code.
+     * @param text Reply text.
+     * @throws IOException If connection fails.
+     */
+    private void reply(final int code, final String text) throws IOException {
+        this.out.write(String.format("%d %s\r\n", code, text));
+        this.out.flush();
+    }
+
+    /**
+     * Write directory listing.
+     *
+     * @param verb LIST, NLST or MLSD.
+     * @param entries Listed entries.
+     * @param writer Writer of data connection, closed when done.
+     * @throws IOException If connection fails.
+     */
+    private static void list(final String verb,
+        final Collection<MockTree.Entry> entries, final Writer writer)
+        throws IOException {
+        try {
+            for (final MockTree.Entry item : entries) {
+                if ("NLST".equals(verb)) {
+                    writer.write(item.name());
+                } else if ("MLSD".equals(verb)) {
+                    writer.write(MockSession.facts(item));
+                    writer.write(item.name());
+                } else {
+                    writer.write(MockSession.unix(item));
+                }
+                writer.write("\r\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Entry in UNIX "ls -l" format.
+     *
+     * @param entry Entry.
+     * @return Listing line.
+     */
+    private static String unix(final MockTree.Entry entry) {
+        final SimpleDateFormat fmt = new SimpleDateFormat(
+            "MMM dd yyyy", Locale.ENGLISH
+        );
+        final String perms;
+        if (entry.directory()) {
+            perms = "drwxr-xr-x";
+        } else {
+            perms = "-rw-r--r--";
+        }
+        return String.format(
+            "%s 1 ftp ftp %d %s %s", perms, entry.size(),
+            fmt.format(new Date(entry.modified())), entry.name()
+        );
+    }
+
+    /**
+     * Facts of entry in MLST format.
+     *
+     * @param entry Entry.
+     * @return Facts followed by space.
+     */
+    private static String facts(final MockTree.Entry entry) {
+        final String type;
+        if (entry.directory()) {
+            type = "dir";
+        } else {
+            type = "file";
+        }
+        return String.format(
+            "type=%s;size=%d;modify=%s; ", type, entry.size(),
+            MockSession.timeval(entry.modified())
+        );
+    }
+
+    /**
+     * Time in MDTM format.
+     *
+     * @param millis Milliseconds since epoch.
+     * @return Time as YYYYMMDDHHMMSS in UTC.
+     */
+    private static String timeval(final long millis) {
+        final SimpleDateFormat fmt = new SimpleDateFormat(
+            "yyyyMMddHHmmss", Locale.ENGLISH
+        );
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return fmt.format(new Date(millis));
+    }
+
+    /**
+     * Sleep for simulated latency.
+     *
+     * @param millis Milliseconds to sleep, nothing if not positive.
+     */
+    @SneakyThrows
+    private static void sleep(final long millis) {
+        if (millis > 0L) {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        }
+    }
+
+    /**
+     * Output stream converting line feeds to network ASCII.
+     */
+    private static final class NetAscii extends FilterOutputStream {
+        /**
+         * Was last byte a carriage return.
+         */
+        private transient boolean carriage;
+
+        /**
+         * Class constructor.
+         *
+         * @param stream Wrapped stream.
+         */
+        NetAscii(final OutputStream stream) {
+            super(stream);
+        }
+
+        @Override
+        public void write(final int value) throws IOException {
+            if (value == '\n' && !this.carriage) {
+                this.out.write('\r');
+            }
+            this.carriage = value == '\r';
+            this.out.write(value);
+        }
+    }
+
+    /**
+     * Output of replies delivered a round-trip time after they are
+     * flushed, in order.
+     */
+    private static final class Delayed extends FilterOutputStream {
+        /**
+         * Thread delivering replies.
+         */
+        private final transient ScheduledExecutorService wire;
+        /**
+         * Round-trip time in milliseconds.
+         */
+        private final transient long rtt;
+        /**
+         * Bytes written since last flush.
+         */
+        private final transient ByteArrayOutputStream pending;
+
+        /**
+         * Class constructor.
+         *
+         * @param stream Wrapped stream.
+         * @param millis Round-trip time in milliseconds.
+         */
+        Delayed(final OutputStream stream, final long millis) {
+            super(stream);
+            this.wire = Executors.newSingleThreadScheduledExecutor();
+            this.rtt = millis;
+            this.pending = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public void write(final int value) {
+            this.pending.write(value);
+        }
+
+        @Override
+        public void write(final byte[] buf, final int off, final int len) {
+            this.pending.write(buf, off, len);
+        }
+
+        @Override
+        public void flush() {
+            final byte[] bytes = this.pending.toByteArray();
+            this.pending.reset();
+            this.wire.schedule(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Delayed.this.out.write(bytes);
+                            Delayed.this.out.flush();
+                        } catch (final IOException ex) {
+                            MockSession.LOG.debug(
+                                "delayed reply not delivered", ex
+                            );
+                        }
+                    }
+                },
+                this.rtt, TimeUnit.MILLISECONDS
+            );
+        }
+
+        @Override
+        @SneakyThrows
+        public void close() {
+            this.flush();
+            this.wire.shutdown();
+            this.wire.awaitTermination(
+                MockSession.TIMEOUT, TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    /**
+     * Transfer over data connection.
+     */
+    private interface Transfer {
+        /**
+         * Run transfer.
+         *
+         * @param data Data connection.
+         * @throws IOException If transfer fails.
+         */
+        void run(Socket data) throws IOException;
+    }
+
+    /**
+     * Block mode output, ending the transfer with EOF block when closed
+     * and leaving the connection open.
+     */
+    private static final class Blocks extends FilterOutputStream {
+        /**
+         * Descriptor of last block of transfer.
+         */
+        private static final int EOF = 64;
+        /**
+         * Largest block.
+         */
+        private static final int MAX = 65535;
+
+        /**
+         * Class constructor.
+         *
+         * @param stream Output of data connection.
+         */
+        Blocks(final OutputStream stream) {
+            super(stream);
+        }
+
+        @Override
+        public void write(final int value) throws IOException {
+            this.write(new byte[] {(byte) value}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] buf, final int off, final int len)
+            throws IOException {
+            int done = 0;
+            while (done < len) {
+                final int size = Math.min(len - done, MockSession.Blocks.MAX);
+                this.header(0, size);
+                this.out.write(buf, off + done, size);
+                done += size;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.header(MockSession.Blocks.EOF, 0);
+            this.out.flush();
+        }
+
+        /**
+         * Write block header.
+         *
+         * @param descriptor Descriptor code.
+         * @param size Byte count.
+         * @throws IOException If writing fails.
+         */
+        private void header(final int descriptor, final int size)
+            throws IOException {
+            this.out.write(
+                new byte[] {
+                    (byte) descriptor, (byte) (size >>> 8), (byte) size,
+                }
+            );
+        }
+    }
+
+    /**
+     * Block mode input, ending at EOF block and leaving the connection open.
+     */
+    private static final class Unblocks extends InputStream {
+        /**
+         * Input of data connection.
+         */
+        private final transient InputStream origin;
+        /**
+         * Bytes left in current block.
+         */
+        private transient int left;
+        /**
+         * Is current block last.
+         */
+        private transient boolean last;
+
+        /**
+         * Class constructor.
+         *
+         * @param stream Input of data connection.
+         */
+        Unblocks(final InputStream stream) {
+            super();
+            this.origin = stream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] one = new byte[1];
+            int value = this.read(one, 0, 1);
+            if (value > 0) {
+                value = one[0] & 0xff;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(final byte[] buf, final int off, final int len)
+            throws IOException {
+            while (this.left == 0 && !this.last) {
+                final int descriptor = this.origin.read();
+                final int high = this.origin.read();
+                final int low = this.origin.read();
+                if (low < 0) {
+                    throw new IOException("data connection closed in block");
+                }
+                this.left = high << 8 | low;
+                this.last = (descriptor & MockSession.Blocks.EOF) != 0;
+            }
+            int read = -1;
+            if (this.left > 0) {
+                read = this.origin.read(buf, off, Math.min(len, this.left));
+                if (read < 0) {
+                    throw new IOException("data connection closed in block");
+                }
+                this.left -= read;
+            }
+            return read;
+        }
+    }
+}
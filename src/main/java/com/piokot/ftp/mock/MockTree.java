@@ -0,0 +1,592 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.mock;
+
+import com.google.common.base.Optional;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory file system served by {@link MockServer}.
+ *
+ * <p>Files are either given explicit content or only a size, in which case
+ * deterministic content is generated on read, so that huge trees and files
+ * take no memory.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class MockTree {
+    /**
+     * Path separator.
+     */
+    private static final String SEP = "/";
+    /**
+     * Directories by absolute path, with entries by name.
+     */
+    private final transient ConcurrentMap<String,
+        ConcurrentSkipListMap<String, MockTree.Entry>> dirs;
+
+    /**
+     * Class constructor with empty root directory.
+     */
+    public MockTree() {
+        this.dirs = new ConcurrentHashMap<>();
+        this.dirs.put(MockTree.SEP, new ConcurrentSkipListMap<String, Entry>());
+    }
+
+    /**
+     * Add file with given content, creating parent directories.
+     *
+     * @param path Absolute file path.
+     * @param content File content.
+     * @return This tree.
+     */
+    public MockTree file(final String path, final byte[] content) {
+        this.put(path, new MockTree.Entry(content.clone()));
+        return this;
+    }
+
+    /**
+     * Add file of given size with generated content.
+     *
+     * @param path Absolute file path.
+     * @param size File size in bytes.
+     * @return This tree.
+     */
+    public MockTree file(final String path, final long size) {
+        this.put(path, new MockTree.Entry(size));
+        return this;
+    }
+
+    /**
+     * Add directory, creating parent directories.
+     *
+     * @param path Absolute directory path.
+     * @return This tree.
+     */
+    public MockTree dir(final String path) {
+        this.mkdirs(MockTree.normal(path));
+        return this;
+    }
+
+    /**
+     * Add synthetic tree of directories and files.
+     *
+     * @param root Absolute path of the tree root.
+     * @param depth Number of directory levels below root.
+     * @param fanout Number of subdirectories in each directory.
+     * @param files Number of files in each directory.
+     * @param size Size of each file in bytes.
+     * @return This tree.
+     * @checkstyle ParameterNumberCheck (3 lines)
+     */
+    public MockTree generate(final String root, final int depth,
+        final int fanout, final int files, final long size) {
+        final String dir = MockTree.normal(root);
+        this.mkdirs(dir);
+        for (int idx = 0; idx < files; ++idx) {
+            this.file(MockTree.child(dir, String.format("file-%d", idx)), size);
+        }
+        if (depth > 0) {
+            for (int idx = 0; idx < fanout; ++idx) {
+                this.generate(
+                    MockTree.child(dir, String.format("dir-%d", idx)),
+                    depth - 1, fanout, files, size
+                );
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Entry at given path.
+     *
+     * @param path Absolute path.
+     * @return Entry if exists.
+     */
+    Optional<MockTree.Entry> entry(final String path) {
+        final String norm = MockTree.normal(path);
+        Optional<MockTree.Entry> entry = Optional.absent();
+        if (MockTree.SEP.equals(norm)) {
+            entry = Optional.of(new MockTree.Entry());
+        } else {
+            final ConcurrentSkipListMap<String, MockTree.Entry> parent =
+                this.dirs.get(MockTree.parent(norm));
+            if (parent != null) {
+                entry = Optional.fromNullable(parent.get(MockTree.name(norm)));
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Entries of directory by name.
+     *
+     * @param path Absolute directory path.
+     * @return Entries in name order, absent if no such directory.
+     */
+    Optional<Collection<MockTree.Entry>> list(final String path) {
+        final ConcurrentSkipListMap<String, MockTree.Entry> dir =
+            this.dirs.get(MockTree.normal(path));
+        final Optional<Collection<MockTree.Entry>> list;
+        if (dir == null) {
+            list = Optional.absent();
+        } else {
+            list = Optional.<Collection<MockTree.Entry>>of(
+                new ArrayList<>(dir.values())
+            );
+        }
+        return list;
+    }
+
+    /**
+     * Store file content.
+     *
+     * @param path Absolute file path.
+     * @param content New content.
+     * @return True if stored, false if parent directory does not exist.
+     */
+    boolean store(final String path, final byte[] content) {
+        final String norm = MockTree.normal(path);
+        final ConcurrentSkipListMap<String, MockTree.Entry> parent =
+            this.dirs.get(MockTree.parent(norm));
+        final boolean stored = parent != null && !this.dirs.containsKey(norm);
+        if (stored) {
+            parent.put(
+                MockTree.name(norm),
+                new MockTree.Entry(content).named(MockTree.name(norm))
+            );
+        }
+        return stored;
+    }
+
+    /**
+     * Delete file.
+     *
+     * @param path Absolute file path.
+     * @return True if deleted.
+     */
+    boolean delete(final String path) {
+        final String norm = MockTree.normal(path);
+        final ConcurrentSkipListMap<String, MockTree.Entry> parent =
+            this.dirs.get(MockTree.parent(norm));
+        boolean deleted = false;
+        if (parent != null) {
+            final MockTree.Entry entry = parent.get(MockTree.name(norm));
+            deleted = entry != null && !entry.directory()
+                && parent.remove(MockTree.name(norm), entry);
+        }
+        return deleted;
+    }
+
+    /**
+     * Make single directory.
+     *
+     * @param path Absolute directory path.
+     * @return True if created.
+     */
+    boolean mkdir(final String path) {
+        final String norm = MockTree.normal(path);
+        final ConcurrentSkipListMap<String, MockTree.Entry> parent =
+            this.dirs.get(MockTree.parent(norm));
+        final boolean made = parent != null
+            && parent.putIfAbsent(
+                MockTree.name(norm),
+                new MockTree.Entry().named(MockTree.name(norm))
+            ) == null;
+        if (made) {
+            this.dirs.put(
+                norm, new ConcurrentSkipListMap<String, MockTree.Entry>()
+            );
+        }
+        return made;
+    }
+
+    /**
+     * Remove empty directory.
+     *
+     * @param path Absolute directory path.
+     * @return True if removed.
+     */
+    boolean rmdir(final String path) {
+        final String norm = MockTree.normal(path);
+        final ConcurrentSkipListMap<String, MockTree.Entry> dir =
+            this.dirs.get(norm);
+        final boolean removed = dir != null && dir.isEmpty()
+            && !MockTree.SEP.equals(norm) && this.dirs.remove(norm, dir);
+        if (removed) {
+            this.dirs.get(MockTree.parent(norm)).remove(MockTree.name(norm));
+        }
+        return removed;
+    }
+
+    /**
+     * Rename file.
+     *
+     * @param from Absolute path of existing file.
+     * @param dest Absolute new path.
+     * @return True if renamed.
+     */
+    boolean rename(final String from, final String dest) {
+        final String src = MockTree.normal(from);
+        final String dst = MockTree.normal(dest);
+        final ConcurrentSkipListMap<String, MockTree.Entry> source =
+            this.dirs.get(MockTree.parent(src));
+        final ConcurrentSkipListMap<String, MockTree.Entry> target =
+            this.dirs.get(MockTree.parent(dst));
+        boolean renamed = false;
+        if (source != null && target != null) {
+            final MockTree.Entry entry = source.get(MockTree.name(src));
+            renamed = entry != null && !entry.directory()
+                && !this.dirs.containsKey(dst)
+                && source.remove(MockTree.name(src), entry);
+            if (renamed) {
+                target.put(MockTree.name(dst), entry.named(MockTree.name(dst)));
+            }
+        }
+        return renamed;
+    }
+
+    /**
+     * Normalize path, resolving "." and ".." elements.
+     *
+     * @param path Absolute path.
+     * @return Normalized absolute path.
+     */
+    static String normal(final String path) {
+        final List<String> parts = new ArrayList<>(0);
+        for (final String part : path.split(MockTree.SEP)) {
+            if ("..".equals(part)) {
+                if (!parts.isEmpty()) {
+                    parts.remove(parts.size() - 1);
+                }
+            } else if (!part.isEmpty() && !".".equals(part)) {
+                parts.add(part);
+            }
+        }
+        final StringBuilder norm = new StringBuilder(path.length());
+        for (final String part : parts) {
+            norm.append(MockTree.SEP).append(part);
+        }
+        if (parts.isEmpty()) {
+            norm.append(MockTree.SEP);
+        }
+        return norm.toString();
+    }
+
+    /**
+     * Path resolved against directory.
+     *
+     * @param dir Absolute directory path.
+     * @param path Absolute or relative path.
+     * @return Normalized absolute path.
+     */
+    static String resolve(final String dir, final String path) {
+        final String full;
+        if (path.startsWith(MockTree.SEP)) {
+            full = path;
+        } else {
+            full = MockTree.child(dir, path);
+        }
+        return MockTree.normal(full);
+    }
+
+    /**
+     * Put entry, creating parent directories.
+     *
+     * @param path Absolute path.
+     * @param entry Entry.
+     */
+    private void put(final String path, final MockTree.Entry entry) {
+        final String norm = MockTree.normal(path);
+        final String parent = MockTree.parent(norm);
+        this.mkdirs(parent);
+        this.dirs.get(parent).put(
+            MockTree.name(norm), entry.named(MockTree.name(norm))
+        );
+    }
+
+    /**
+     * Make directory with its parents.
+     *
+     * @param norm Normalized absolute directory path.
+     */
+    private void mkdirs(final String norm) {
+        if (!this.dirs.containsKey(norm)) {
+            this.mkdirs(MockTree.parent(norm));
+            this.mkdir(norm);
+        }
+    }
+
+    /**
+     * Child path of directory.
+     *
+     * @param dir Directory path.
+     * @param name Child name.
+     * @return Child path.
+     */
+    private static String child(final String dir, final String name) {
+        final String path;
+        if (dir.endsWith(MockTree.SEP)) {
+            path = dir + name;
+        } else {
+            path = dir + MockTree.SEP + name;
+        }
+        return path;
+    }
+
+    /**
+     * Parent of normalized path.
+     *
+     * @param norm Normalized absolute path.
+     * @return Parent path.
+     */
+    private static String parent(final String norm) {
+        final int idx = norm.lastIndexOf(MockTree.SEP);
+        final String parent;
+        if (idx <= 0) {
+            parent = MockTree.SEP;
+        } else {
+            parent = norm.substring(0, idx);
+        }
+        return parent;
+    }
+
+    /**
+     * Name of normalized path.
+     *
+     * @param norm Normalized absolute path.
+     * @return Last path element.
+     */
+    private static String name(final String norm) {
+        return norm.substring(norm.lastIndexOf(MockTree.SEP) + 1);
+    }
+
+    /**
+     * File or directory entry.
+     */
+    static final class Entry {
+        /**
+         * Entry name.
+         */
+        private final transient String nam;
+        /**
+         * Is it a directory.
+         */
+        private final transient boolean folder;
+        /**
+         * Size in bytes.
+         */
+        private final transient long len;
+        /**
+         * Content, absent if generated.
+         */
+        private final transient Optional<byte[]> content;
+        /**
+         * Modification time in milliseconds.
+         */
+        private final transient long mtime;
+
+        /**
+         * Directory entry constructor.
+         */
+        Entry() {
+            this("", true, 0L, Optional.<byte[]>absent());
+        }
+
+        /**
+         * File with content constructor.
+         *
+         * @param data Content.
+         */
+        Entry(final byte[] data) {
+            this("", false, data.length, Optional.of(data));
+        }
+
+        /**
+         * File with generated content constructor.
+         *
+         * @param size Size in bytes.
+         */
+        Entry(final long size) {
+            this("", false, size, Optional.<byte[]>absent());
+        }
+
+        /**
+         * Primary constructor.
+         *
+         * @param name Entry name.
+         * @param dir Is it a directory.
+         * @param size Size in bytes.
+         * @param data Content, absent if generated.
+         * @checkstyle ParameterNumberCheck (3 lines)
+         */
+        private Entry(final String name, final boolean dir, final long size,
+            final Optional<byte[]> data) {
+            this.nam = name;
+            this.folder = dir;
+            this.len = size;
+            this.content = data;
+            this.mtime = System.currentTimeMillis();
+        }
+
+        /**
+         * Entry name.
+         *
+         * @return Name.
+         */
+        public String name() {
+            return this.nam;
+        }
+
+        /**
+         * Is it a directory.
+         *
+         * @return True if directory.
+         */
+        public boolean directory() {
+            return this.folder;
+        }
+
+        /**
+         * File size.
+         *
+         * @return Size in bytes.
+         */
+        public long size() {
+            return this.len;
+        }
+
+        /**
+         * Modification time.
+         *
+         * @return Milliseconds since epoch.
+         */
+        public long modified() {
+            return this.mtime;
+        }
+
+        /**
+         * File content from given offset.
+         *
+         * @param offset Offset to start reading at.
+         * @return Content stream.
+         */
+        public InputStream read(final long offset) {
+            final InputStream stream;
+            final long start = Math.min(offset, this.len);
+            if (this.content.isPresent()) {
+                stream = new ByteArrayInputStream(
+                    this.content.get(), (int) start, (int) (this.len - start)
+                );
+            } else {
+                stream = new MockTree.Generated(start, this.len);
+            }
+            return stream;
+        }
+
+        /**
+         * Same entry with another name.
+         *
+         * @param name New name.
+         * @return Entry.
+         */
+        Entry named(final String name) {
+            return new MockTree.Entry(
+                name, this.folder, this.len, this.content
+            );
+        }
+    }
+
+    /**
+     * Deterministic generated content.
+     */
+    private static final class Generated extends InputStream {
+        /**
+         * Modulus of generated byte values.
+         */
+        private static final int MOD = 251;
+        /**
+         * Current position.
+         */
+        private transient long pos;
+        /**
+         * End position.
+         */
+        private final transient long end;
+
+        /**
+         * Class constructor.
+         *
+         * @param start Start position.
+         * @param size Total size.
+         */
+        Generated(final long start, final long size) {
+            super();
+            this.pos = start;
+            this.end = size;
+        }
+
+        @Override
+        public int read() {
+            final int value;
+            if (this.pos < this.end) {
+                value = (int) (this.pos % Generated.MOD);
+                ++this.pos;
+            } else {
+                value = -1;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(final byte[] buf, final int off, final int len) {
+            final int count;
+            if (this.pos >= this.end) {
+                count = -1;
+            } else {
+                count = (int) Math.min(len, this.end - this.pos);
+                for (int idx = 0; idx < count; ++idx) {
+                    buf[off + idx] = (byte) (this.pos % Generated.MOD);
+                    ++this.pos;
+                }
+            }
+            return count;
+        }
+    }
+}
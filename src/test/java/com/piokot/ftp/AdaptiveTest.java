@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.FTPCommand;
+import com.piokot.ftp.mock.Conditions;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Adaptive}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class AdaptiveTest {
+    /**
+     * Can learn connection limit of server and keep it. The limit is only
+     * checked to be below start, as sessions opened after refusals may
+     * raise it again by a varying amount.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void learnsConnectionLimit() throws Exception {
+        final Path limits = Files.createTempFile("limits", ".properties");
+        Files.delete(limits);
+        final String host = InetAddress.getLoopbackAddress().getHostAddress();
+        final AtomicInteger done = new AtomicInteger();
+        final FTPCommand noop = new FTPCommand() {
+            @Override
+            @SneakyThrows
+            public void execute(final FTPClient client) {
+                Assert.assertTrue("Not logged in", client.sendNoOp());
+                done.incrementAndGet();
+            }
+        };
+        try (final MockServer server = new MockServer(
+            new MockTree(),
+            new Conditions().sessions(3).latency("NOOP", 20L)
+        )) {
+            final Adaptive adaptive = new Adaptive(8, 64, limits);
+            final FTPCommand[] commands = new FTPCommand[32];
+            for (int idx = 0; idx < commands.length; ++idx) {
+                commands[idx] = noop;
+            }
+            new FanOut(
+                8,
+                new FTP(host, server.port(), "mock", "mock").limited(adaptive)
+            ).onConnect(commands);
+            Assert.assertEquals("Commands run", 32, done.get());
+            final int learned = adaptive.limit(host, server.port());
+            Assert.assertTrue(
+                String.format("Limit not lowered: %d", learned), learned < 8
+            );
+            Assert.assertEquals(
+                "Limit not kept", learned,
+                new Adaptive(8, 64, limits).limit(host, server.port())
+            );
+        } finally {
+            Files.deleteIfExists(limits);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.FTPCommand;
+import com.piokot.ftp.mock.Conditions;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link AtomicUpload} and {@link BatchPublish}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class AtomicUploadTest {
+    /**
+     * Can upload file through temporary name.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void uploadsThroughTemporaryName() throws Exception {
+        final List<Boolean> results = new CopyOnWriteArrayList<>();
+        try (final MockServer server = new MockServer(
+            new MockTree().file("/dir/file", AtomicUploadTest.bytes("old"))
+        )) {
+            server.ftp().onConnect(
+                new AtomicUpload(
+                    "/dir/file", AtomicUploadTest.stream("new"),
+                    new Callback<Boolean>() {
+                        @Override
+                        public void onReturn(final Boolean type) {
+                            results.add(type);
+                        }
+                    }
+                )
+            );
+            Assert.assertEquals("Result", Arrays.asList(true), results);
+            Assert.assertEquals(
+                "Files", Arrays.asList("file"),
+                AtomicUploadTest.names(server.ftp())
+            );
+            Assert.assertEquals(
+                "Not renamed", Long.valueOf(1L), server.commands().get("RNTO")
+            );
+        }
+    }
+
+    /**
+     * Can keep existing destination when rename is refused.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void keepsDestinationOnRefusedRename() throws Exception {
+        final List<Boolean> results = new CopyOnWriteArrayList<>();
+        try (final MockServer server = new MockServer(
+            new MockTree().file("/dir/file", AtomicUploadTest.bytes("old")),
+            new Conditions().failure("RNTO", 1.0, 553)
+        )) {
+            server.ftp().onConnect(
+                new AtomicUpload(
+                    "/dir/file", AtomicUploadTest.stream("new"),
+                    new Callback<Boolean>() {
+                        @Override
+                        public void onReturn(final Boolean type) {
+                            results.add(type);
+                        }
+                    }
+                )
+            );
+            Assert.assertEquals("Result", Arrays.asList(false), results);
+            Assert.assertEquals(
+                "Files", Arrays.asList("file"),
+                AtomicUploadTest.names(server.ftp())
+            );
+            Assert.assertEquals(
+                "Deleted", Long.valueOf(1L), server.commands().get("DELE")
+            );
+        }
+    }
+
+    /**
+     * Can publish batch uploaded in parallel.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void publishesBatch() throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree().dir("/dir")
+        )) {
+            new BatchPublish(server.ftp(), 3).publish(
+                ImmutableMap.of(
+                    "/dir/a", AtomicUploadTest.stream("a"),
+                    "/dir/b", AtomicUploadTest.stream("b"),
+                    "/dir/c", AtomicUploadTest.stream("c"),
+                    "/dir/d", AtomicUploadTest.stream("d")
+                )
+            );
+            Assert.assertEquals(
+                "Files", Arrays.asList("a", "b", "c", "d"),
+                AtomicUploadTest.names(server.ftp())
+            );
+            Assert.assertEquals(
+                "Upload sessions", Long.valueOf(3L + 2L),
+                server.commands().get("USER")
+            );
+        }
+    }
+
+    /**
+     * Can publish nothing when an upload fails.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void publishesNothingOnFailure() throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree().dir("/dir"),
+            new Conditions().failure("STOR", 0.5, 451).seed(0L)
+        )) {
+            try {
+                new BatchPublish(server.ftp(), 2).publish(
+                    ImmutableMap.of(
+                        "/dir/a", AtomicUploadTest.stream("a"),
+                        "/dir/b", AtomicUploadTest.stream("b"),
+                        "/dir/c", AtomicUploadTest.stream("c"),
+                        "/dir/d", AtomicUploadTest.stream("d")
+                    )
+                );
+                Assert.fail("Failure not reported");
+            } catch (final IllegalStateException ex) {
+                Assert.assertTrue(
+                    "Wrong failure", ex.getMessage().contains("failed")
+                );
+            }
+            Assert.assertEquals(
+                "Files left", Arrays.<String>asList(),
+                AtomicUploadTest.names(server.ftp())
+            );
+        }
+    }
+
+    /**
+     * Can stop publishing at first refused rename.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void stopsAtFirstRefusedRename() throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree().dir("/dir"),
+            new Conditions().failure("RNTO", 1.0, 553)
+        )) {
+            try {
+                new BatchPublish(server.ftp(), 2).publish(
+                    ImmutableMap.of(
+                        "/dir/a", AtomicUploadTest.stream("a"),
+                        "/dir/b", AtomicUploadTest.stream("b")
+                    )
+                );
+                Assert.fail("Failure not reported");
+            } catch (final IllegalStateException ex) {
+                Assert.assertEquals(
+                    "Wrong failure",
+                    "cannot publish /dir/a, published only []",
+                    ex.getMessage()
+                );
+            }
+            Assert.assertEquals(
+                "Files left", Arrays.<String>asList(),
+                AtomicUploadTest.names(server.ftp())
+            );
+            Assert.assertEquals(
+                "Renames", Long.valueOf(1L), server.commands().get("RNTO")
+            );
+        }
+    }
+
+    /**
+     * Names in remote directory /dir.
+     *
+     * @param ftp FTP to list with.
+     * @return Sorted names.
+     */
+    private static List<String> names(final FTP ftp) {
+        final List<String> names = new CopyOnWriteArrayList<>();
+        ftp.onConnect(
+            new FTPCommand() {
+                @Override
+                @SneakyThrows
+                public void execute(final FTPClient client) {
+                    for (final String name : client.listNames("/dir")) {
+                        names.add(name.substring(name.lastIndexOf('/') + 1));
+                    }
+                }
+            }
+        );
+        final String[] sorted = names.toArray(new String[names.size()]);
+        Arrays.sort(sorted);
+        return Arrays.asList(sorted);
+    }
+
+    /**
+     * Stream of text.
+     *
+     * @param text Text.
+     * @return Stream.
+     */
+    private static InputStream stream(final String text) {
+        return new ByteArrayInputStream(AtomicUploadTest.bytes(text));
+    }
+
+    /**
+     * UTF-8 bytes of text.
+     *
+     * @param text Text.
+     * @return Bytes.
+     */
+    private static byte[] bytes(final String text) {
+        return text.getBytes(Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,318 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.FTPCommand;
+import com.piokot.ftp.mock.Conditions;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link BlockMode}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class BlockModeTest {
+    /**
+     * Files transferred.
+     */
+    private static final int FILES = 20;
+
+    /**
+     * Can upload and download files over one data connection.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void keepsDataConnectionOpen() throws Exception {
+        try (final MockServer server = new MockServer(new MockTree())) {
+            final List<FTPCommand> commands = new ArrayList<>(0);
+            commands.add(new BlockMode());
+            commands.addAll(BlockModeTest.uploads());
+            final Map<String, String> read = new ConcurrentHashMap<>();
+            for (int idx = 0; idx < BlockModeTest.FILES; ++idx) {
+                commands.add(BlockModeTest.download(idx, read));
+            }
+            server.ftp().onConnect(
+                commands.toArray(new FTPCommand[commands.size()])
+            );
+            BlockModeTest.assertRead(read);
+            Assert.assertEquals(
+                "Data connections", Long.valueOf(1L),
+                server.commands().get("PORT")
+            );
+        }
+    }
+
+    /**
+     * Can switch to stream mode for listings and back.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void listsInStreamMode() throws Exception {
+        try (final MockServer server = new MockServer(new MockTree())) {
+            final List<String> names = new ArrayList<>(0);
+            final Map<String, String> read = new ConcurrentHashMap<>();
+            server.ftp().onConnect(
+                new BlockMode(),
+                BlockModeTest.upload(0),
+                new DirList(
+                    "/",
+                    new Callback<FTPFile[]>() {
+                        @Override
+                        public void onReturn(final FTPFile[] type) {
+                            for (final FTPFile file : type) {
+                                names.add(file.getName());
+                            }
+                        }
+                    }
+                ),
+                BlockModeTest.download(0, read)
+            );
+            Assert.assertEquals("[file-0]", names.toString());
+            Assert.assertEquals(BlockModeTest.content(0), read.get("file-0"));
+            Assert.assertEquals(
+                "Mode changes", Long.valueOf(3L), server.commands().get("MODE")
+            );
+        }
+    }
+
+    /**
+     * Can fall back to stream mode and remember refusing server.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void fallsBackToStreamMode() throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree(), new Conditions().unsupported("MODE")
+        )) {
+            final BlockMode mode = new BlockMode();
+            final List<FTPCommand> uploads = BlockModeTest.uploads();
+            uploads.add(0, mode);
+            server.ftp().onConnect(
+                uploads.toArray(new FTPCommand[uploads.size()])
+            );
+            final Map<String, String> read = new ConcurrentHashMap<>();
+            final List<FTPCommand> downloads = new ArrayList<>(0);
+            downloads.add(mode);
+            for (int idx = 0; idx < BlockModeTest.FILES; ++idx) {
+                downloads.add(BlockModeTest.fetch(idx, read));
+            }
+            server.ftp().onConnect(
+                downloads.toArray(new FTPCommand[downloads.size()])
+            );
+            BlockModeTest.assertRead(read);
+            Assert.assertEquals(
+                "Mode asked", Long.valueOf(1L), server.commands().get("MODE")
+            );
+            Assert.assertEquals(
+                "Data connections", Long.valueOf(BlockModeTest.FILES * 2L),
+                server.commands().get("PORT")
+            );
+        }
+    }
+
+    /**
+     * Can transfer many small files over one data connection, where stream
+     * mode opens one per file. How much time it saves is measured by
+     * benchmarks.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void opensFewerConnectionsThanStreamMode() throws Exception {
+        Assert.assertEquals(
+            "Stream mode", BlockModeTest.FILES * 2L,
+            BlockModeTest.roundtrip(false)
+        );
+        Assert.assertEquals("Block mode", 1L, BlockModeTest.roundtrip(true));
+    }
+
+    /**
+     * Upload and download files in one session.
+     *
+     * @param blocks Use block mode.
+     * @return Data connections opened, checked against PORT commands.
+     * @throws Exception If it fails.
+     */
+    private static long roundtrip(final boolean blocks) throws Exception {
+        try (final MockServer server = new MockServer(new MockTree())) {
+            final List<FTPCommand> commands = new ArrayList<>(0);
+            if (blocks) {
+                commands.add(new BlockMode());
+            }
+            commands.addAll(BlockModeTest.uploads());
+            final Map<String, String> read = new ConcurrentHashMap<>();
+            for (int idx = 0; idx < BlockModeTest.FILES; ++idx) {
+                commands.add(BlockModeTest.fetch(idx, read));
+            }
+            server.ftp().onConnect(
+                commands.toArray(new FTPCommand[commands.size()])
+            );
+            BlockModeTest.assertRead(read);
+            Assert.assertEquals(
+                "PORT commands", Long.valueOf(server.connections()),
+                server.commands().get("PORT")
+            );
+            return server.connections();
+        }
+    }
+
+    /**
+     * Assert content of all files read.
+     *
+     * @param read Content by file name.
+     */
+    private static void assertRead(final Map<String, String> read) {
+        Assert.assertEquals("Files read", BlockModeTest.FILES, read.size());
+        for (int idx = 0; idx < BlockModeTest.FILES; ++idx) {
+            Assert.assertEquals(
+                BlockModeTest.content(idx),
+                read.get(String.format("file-%d", idx))
+            );
+        }
+    }
+
+    /**
+     * Upload of every file.
+     *
+     * @return Commands.
+     */
+    private static List<FTPCommand> uploads() {
+        final List<FTPCommand> uploads = new ArrayList<>(BlockModeTest.FILES);
+        for (int idx = 0; idx < BlockModeTest.FILES; ++idx) {
+            uploads.add(BlockModeTest.upload(idx));
+        }
+        return uploads;
+    }
+
+    /**
+     * Upload of file.
+     *
+     * @param idx File number.
+     * @return Command.
+     */
+    private static FTPCommand upload(final int idx) {
+        return new FileUpload(
+            String.format("/file-%d", idx),
+            new ByteArrayInputStream(
+                BlockModeTest.content(idx).getBytes(Charsets.UTF_8)
+            ),
+            new Callback<Boolean>() {
+                @Override
+                public void onReturn(final Boolean type) {
+                    Assert.assertTrue("Not uploaded", type);
+                }
+            }
+        );
+    }
+
+    /**
+     * Download of file with stream left to the session to complete.
+     *
+     * @param idx File number.
+     * @param read Content by file name.
+     * @return Command.
+     */
+    private static FTPCommand download(final int idx,
+        final Map<String, String> read) {
+        return new FileDownload(
+            String.format("/file-%d", idx),
+            new Callback<InputStream>() {
+                @Override
+                @SneakyThrows
+                public void onReturn(final InputStream type) {
+                    try (final InputStream input = type) {
+                        read.put(
+                            String.format("file-%d", idx),
+                            new String(
+                                ByteStreams.toByteArray(input), Charsets.UTF_8
+                            )
+                        );
+                    }
+                }
+            }
+        );
+    }
+
+    /**
+     * Download of file completing the transfer.
+     *
+     * @param idx File number.
+     * @param read Content by file name.
+     * @return Command.
+     */
+    private static FTPCommand fetch(final int idx,
+        final Map<String, String> read) {
+        return new FTPCommand() {
+            @Override
+            @SneakyThrows
+            public void execute(final FTPClient client) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                Assert.assertTrue(
+                    client.retrieveFile(String.format("/file-%d", idx), out)
+                );
+                read.put(
+                    String.format("file-%d", idx),
+                    new String(out.toByteArray(), Charsets.UTF_8)
+                );
+            }
+        };
+    }
+
+    /**
+     * Content of file.
+     *
+     * @param idx File number.
+     * @return Content.
+     */
+    private static String content(final int idx) {
+        return String.format("content of file %d\nsecond line\n", idx);
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.mock.Conditions;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link BulkStat}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class BulkStatTest {
+    /**
+     * Files in listed directory.
+     */
+    private static final int FILES = 20;
+
+    /**
+     * Can stat paths with listings and single file checks.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void statsManyPaths() throws Exception {
+        try (final MockServer server = new MockServer(BulkStatTest.tree())) {
+            final StatMap stats = new BulkStat(server.ftp(), 3)
+                .stat(BulkStatTest.paths());
+            BulkStatTest.assertStats(stats);
+            Assert.assertEquals(
+                "Listings", Long.valueOf(1L), server.commands().get("MLSD")
+            );
+            Assert.assertEquals(
+                "Single checks", Long.valueOf(4L), server.commands().get("MLST")
+            );
+        }
+    }
+
+    /**
+     * Can stat paths on server without MLSD and MLST.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void statsWithoutMachineListings() throws Exception {
+        try (final MockServer server = new MockServer(
+            BulkStatTest.tree(),
+            new Conditions().unsupported("MLSD").unsupported("MLST")
+        )) {
+            final StatMap stats = new BulkStat(server.ftp(), 2)
+                .stat(BulkStatTest.paths());
+            BulkStatTest.assertStats(stats);
+            Assert.assertEquals(
+                "Listings", Long.valueOf(1L), server.commands().get("LIST")
+            );
+        }
+    }
+
+    /**
+     * Can fall back to LIST and SIZE when MLSD and MLST are refused.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void fallsBackOnPermanentRefusal() throws Exception {
+        try (final MockServer server = new MockServer(
+            BulkStatTest.tree(),
+            new Conditions().failure("MLSD", 1.0, 550)
+                .failure("MLST", 1.0, 550)
+        )) {
+            final StatMap stats = new BulkStat(server.ftp(), 2)
+                .stat(BulkStatTest.paths());
+            BulkStatTest.assertStats(stats);
+            Assert.assertEquals(
+                "Listings", Long.valueOf(1L), server.commands().get("LIST")
+            );
+        }
+    }
+
+    /**
+     * BulkStat keeps trying MLST for other files after one refused its
+     * argument.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void keepsMachineListingAfterArgumentRefusal() throws Exception {
+        try (final MockServer server = new MockServer(
+            BulkStatTest.tree(),
+            new Conditions().failure("MLST", 1.0, 501)
+        )) {
+            BulkStatTest.assertStats(
+                new BulkStat(server.ftp(), 2).stat(BulkStatTest.paths())
+            );
+            Assert.assertEquals(
+                "Machine listings", Long.valueOf(4L),
+                server.commands().get("MLST")
+            );
+        }
+    }
+
+    /**
+     * Assert stats of requested paths.
+     *
+     * @param stats Stats.
+     */
+    private static void assertStats(final StatMap stats) {
+        Assert.assertEquals("Found", BulkStatTest.FILES + 2, stats.count());
+        Assert.assertEquals("Size", 5L, stats.size("/big/file-5"));
+        Assert.assertEquals("Single size", 2L, stats.size("/small/b"));
+        Assert.assertTrue("Time", stats.modified("/small/a") > 0L);
+        Assert.assertTrue("Listed time", stats.modified("/big/file-7") > 0L);
+        Assert.assertFalse("Missing", stats.contains("/small/none"));
+        Assert.assertEquals("Missing size", -1L, stats.size("/none/x"));
+    }
+
+    /**
+     * Remote tree.
+     *
+     * @return Tree.
+     */
+    private static MockTree tree() {
+        final MockTree tree = new MockTree();
+        for (int idx = 0; idx < BulkStatTest.FILES; ++idx) {
+            tree.file(String.format("/big/file-%d", idx), idx);
+        }
+        return tree.file("/big/other", 1L).file("/small/a", 1L)
+            .file("/small/b", 2L);
+    }
+
+    /**
+     * Requested paths.
+     *
+     * @return Paths.
+     */
+    private static List<String> paths() {
+        final List<String> paths = new ArrayList<>(BulkStatTest.FILES + 4);
+        for (int idx = 0; idx < BulkStatTest.FILES; ++idx) {
+            paths.add(String.format("/big/file-%d", idx));
+        }
+        paths.add("/small/a");
+        paths.add("/small/b");
+        paths.add("/small/none");
+        paths.add("/none/x");
+        return paths;
+    }
+}
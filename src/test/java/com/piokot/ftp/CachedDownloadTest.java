@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.mock.Conditions;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import lombok.SneakyThrows;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CachedDownload}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class CachedDownloadTest {
+    /**
+     * Remote file.
+     */
+    private static final String FILE = "/ref.txt";
+
+    /**
+     * Can serve unchanged file from cache and refetch changed one.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void servesUnchangedFileFromCache() throws Exception {
+        final MockTree tree = new MockTree()
+            .file(FILE, "first".getBytes(Charsets.UTF_8));
+        final DownloadCache cache = new DownloadCache(
+            Files.createTempDirectory("cache"), 1024L,
+            DownloadCache.Eviction.LRU
+        );
+        try (final MockServer server = new MockServer(tree)) {
+            final Content first = new Content();
+            server.ftp().onConnect(
+                new CachedDownload(FILE, cache, first),
+                new CachedDownload(FILE, cache, first)
+            );
+            Assert.assertEquals("Cached content", "first", first.text());
+            Assert.assertEquals(
+                "Downloaded more than once",
+                Long.valueOf(1L), server.commands().get("RETR")
+            );
+            tree.file(FILE, "changed".getBytes(Charsets.UTF_8));
+            final Content second = new Content();
+            server.ftp().onConnect(new CachedDownload(FILE, cache, second));
+            Assert.assertEquals("Changed content", "changed", second.text());
+            Assert.assertEquals(
+                "Changed file not downloaded",
+                Long.valueOf(2L), server.commands().get("RETR")
+            );
+        }
+    }
+
+    /**
+     * Can evict least recently used files over budget.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void evictsFilesOverBudget() throws Exception {
+        final DownloadCache cache = new DownloadCache(
+            Files.createTempDirectory("cache"), 10L,
+            DownloadCache.Eviction.LRU
+        );
+        try (final MockServer server = new MockServer(
+            new MockTree().file("/a", 6L).file("/b", 6L)
+        )) {
+            server.ftp().onConnect(
+                new CachedDownload("/a", cache, new Content()),
+                new CachedDownload("/b", cache, new Content())
+            );
+        }
+        Assert.assertEquals("Bytes over budget", 6L, cache.bytes());
+    }
+
+    /**
+     * Can leave no temporary file when download fails.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void removesFailedDownload() throws Exception {
+        final Path dir = Files.createTempDirectory("cache");
+        final DownloadCache cache = new DownloadCache(
+            dir, 1024L, DownloadCache.Eviction.LRU
+        );
+        try (final MockServer server = new MockServer(
+            new MockTree().file(FILE, 6L),
+            new Conditions().failure("RETR", 1.0, 451)
+        )) {
+            server.ftp().onConnect(
+                new CachedDownload(FILE, cache, new Content())
+            );
+            Assert.fail("Failed download not reported");
+        } catch (final IllegalStateException ex) {
+            try (final DirectoryStream<Path> files =
+                Files.newDirectoryStream(cache.directory(), "*.part")) {
+                Assert.assertFalse(
+                    "Temporary file left", files.iterator().hasNext()
+                );
+            }
+        }
+    }
+
+    /**
+     * Can share directory with other caches and files, removing only
+     * caches of ended processes.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void sharesDirectory() throws Exception {
+        final Path dir = Files.createTempDirectory("cache");
+        final Path foreign = Files.write(
+            dir.resolve("foreign.cache"), new byte[] {1}
+        );
+        final Path ended = Files.createDirectory(dir.resolve("cache-ended"));
+        Files.write(ended.resolve("lock"), new byte[] {1});
+        Files.write(ended.resolve("stale.cache"), new byte[] {1});
+        final DownloadCache first = new DownloadCache(
+            dir, 1024L, DownloadCache.Eviction.LRU
+        );
+        final Path cached = first.temp();
+        first.put("key", "1", cached).close();
+        final DownloadCache second = new DownloadCache(
+            dir, 1024L, DownloadCache.Eviction.LRU
+        );
+        Assert.assertNotEquals(first.directory(), second.directory());
+        try (final FileChannel kept = first.hit("key", "1").get()) {
+            Assert.assertTrue("Running cache emptied", kept.isOpen());
+        }
+        Assert.assertTrue("Foreign file removed", Files.exists(foreign));
+        Assert.assertFalse("Ended cache kept", Files.exists(ended));
+    }
+
+    /**
+     * Callback reading content as text.
+     */
+    private static final class Content implements Callback<InputStream> {
+        /**
+         * Last content read.
+         */
+        private transient String last = "";
+
+        @Override
+        @SneakyThrows
+        public void onReturn(final InputStream type) {
+            try {
+                this.last = new String(
+                    ByteStreams.toByteArray(type), Charsets.UTF_8
+                );
+            } finally {
+                type.close();
+            }
+        }
+
+        /**
+         * Last content read.
+         *
+         * @return Text.
+         */
+        public String text() {
+            return this.last;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.FTPCommand;
+import com.piokot.ftp.mock.Conditions;
+import com.piokot.ftp.mock.MockCallback;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Capabilities}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class CapabilitiesTest {
+    /**
+     * Can discover features once per host and keep them in a file.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void discoversFeaturesOncePerHost() throws Exception {
+        final Path file = Files.createTempFile("features", ".properties");
+        Files.delete(file);
+        try (final MockServer server = new MockServer(
+            new MockTree(), new Conditions().unsupported("MLST")
+        )) {
+            final AtomicReference<Features> found = new AtomicReference<>();
+            final FTPCommand discover = new Discover(
+                new Capabilities(1L, TimeUnit.HOURS, file), found
+            );
+            server.ftp().onConnect(discover);
+            server.ftp().onConnect(discover);
+            Assert.assertEquals(
+                "FEAT not cached", Long.valueOf(1L),
+                server.commands().get("FEAT")
+            );
+            Assert.assertTrue("SIZE", found.get().supports("SIZE"));
+            Assert.assertTrue("REST", found.get().supports("REST", "stream"));
+            Assert.assertFalse("MLST", found.get().supports("MLST"));
+            server.ftp().onConnect(
+                new Discover(new Capabilities(1L, TimeUnit.HOURS, file), found)
+            );
+            Assert.assertEquals(
+                "FEAT not kept in file", Long.valueOf(1L),
+                server.commands().get("FEAT")
+            );
+            Assert.assertFalse("SYST", found.get().system().isEmpty());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Can skip commands the server does not announce.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void skipsUnannouncedCommands() throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree().file("/file", 10L),
+            new Conditions().unsupported("MLST")
+        )) {
+            final Capabilities caps = new Capabilities(1L, TimeUnit.HOURS);
+            final DownloadCache cache = new DownloadCache(
+                Files.createTempDirectory("cache"), 100L,
+                DownloadCache.Eviction.LRU
+            );
+            for (int idx = 0; idx < 2; ++idx) {
+                server.ftp().onConnect(
+                    new CachedDownload(
+                        "/file", cache, caps, new MockCallback<InputStream>()
+                    )
+                );
+            }
+            Assert.assertNull(
+                "MLST tried", server.commands().get("MLST")
+            );
+            Assert.assertEquals(
+                "SIZE not used", Long.valueOf(2L),
+                server.commands().get("SIZE")
+            );
+        }
+    }
+
+    /**
+     * Can merge parameters of features listed more than once.
+     */
+    @Test
+    public void mergesRepeatedFeatures() {
+        final Features features = new Features(
+            "UNIX Type: L8",
+            new StringBuilder(0)
+                .append("211-Features:\r\n")
+                .append(" AUTH SSL\r\n")
+                .append(" AUTH TLS\r\n")
+                .append(" SITE CHMOD\r\n")
+                .append(" SITE UTIME\r\n")
+                .append(" PBSZ\r\n")
+                .append(" PBSZ\r\n")
+                .append("211 End\r\n")
+                .toString()
+        );
+        Assert.assertTrue("AUTH SSL", features.supports("AUTH", "ssl"));
+        Assert.assertTrue("AUTH TLS", features.supports("AUTH", "tls"));
+        Assert.assertEquals("CHMOD UTIME", features.parameters("SITE"));
+        Assert.assertTrue("PBSZ", features.supports("PBSZ"));
+    }
+
+    /**
+     * Command keeping features discovered.
+     */
+    private static final class Discover implements FTPCommand {
+        /**
+         * Capabilities.
+         */
+        private final transient Capabilities caps;
+        /**
+         * Features found.
+         */
+        private final transient AtomicReference<Features> found;
+
+        /**
+         * Class constructor.
+         *
+         * @param capabilities Capabilities.
+         * @param features Features found.
+         */
+        Discover(final Capabilities capabilities,
+            final AtomicReference<Features> features) {
+            this.caps = capabilities;
+            this.found = features;
+        }
+
+        @Override
+        public void execute(final FTPClient client) {
+            this.found.set(this.caps.of(client));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.io.ByteStreams;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.mock.Conditions;
+import com.piokot.ftp.mock.MockCallback;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Deadline}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class DeadlineTest {
+    /**
+     * Time allowed in milliseconds.
+     */
+    private static final long ALLOWED = 300L;
+    /**
+     * Time within which cancelled call must return in milliseconds.
+     */
+    private static final long BOUND = 3000L;
+
+    /**
+     * Can cancel download stalled before transfer starts.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void cancelsStalledDownload() throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree().file("/file", 10L),
+            new Conditions().latency("RETR", 10000L)
+        )) {
+            DeadlineTest.assertCancelled(
+                server.ftp(),
+                new Deadline(
+                    new FileDownload("/file", new Drain()),
+                    DeadlineTest.ALLOWED, TimeUnit.MILLISECONDS
+                )
+            );
+        }
+    }
+
+    /**
+     * Can abort slow transfer in progress.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void abortsSlowTransfer() throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree().file("/file", 1024L * 1024L),
+            new Conditions().bandwidth(4096L)
+        )) {
+            DeadlineTest.assertCancelled(
+                server.ftp(),
+                new Deadline(
+                    new FileDownload("/file", new Drain()),
+                    DeadlineTest.ALLOWED, TimeUnit.MILLISECONDS
+                )
+            );
+        }
+    }
+
+    /**
+     * Can bound whole session with time budget.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void boundsSessionWithBudget() throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree().dir("/dir"),
+            new Conditions().latency("LIST", 10000L)
+        )) {
+            final long start = System.nanoTime();
+            try {
+                server.ftp().onConnect(
+                    DeadlineTest.ALLOWED, TimeUnit.MILLISECONDS,
+                    new DirList("/dir", new MockCallback<FTPFile[]>())
+                );
+                Assert.fail("Budget not enforced");
+            } catch (final IllegalStateException ex) {
+                Assert.assertTrue(
+                    "Wrong failure", ex.getMessage().contains("deadline")
+                );
+            }
+            Assert.assertTrue(
+                "Not cancelled in time",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                    < DeadlineTest.BOUND
+            );
+        }
+    }
+
+    /**
+     * Assert that command gets cancelled in time.
+     *
+     * @param ftp FTP to run command on.
+     * @param command Command with deadline.
+     */
+    private static void assertCancelled(final FTP ftp,
+        final Deadline command) {
+        final long start = System.nanoTime();
+        try {
+            ftp.onConnect(command);
+            Assert.fail("Deadline not enforced");
+        } catch (final IllegalStateException ex) {
+            Assert.assertTrue(
+                "Wrong failure", ex.getMessage().contains("FileDownload")
+            );
+        }
+        Assert.assertTrue(
+            "Not cancelled in time",
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                < DeadlineTest.BOUND
+        );
+    }
+
+    /**
+     * Callback reading whole stream.
+     */
+    private static final class Drain implements Callback<InputStream> {
+        @Override
+        @SneakyThrows
+        public void onReturn(final InputStream type) {
+            ByteStreams.copy(type, ByteStreams.nullOutputStream());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link DiskUsage}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class DiskUsageTest {
+    /**
+     * Files in each directory.
+     */
+    private static final int FILES = 3;
+    /**
+     * Size of each file.
+     */
+    private static final long SIZE = 10L;
+
+    /**
+     * Can measure whole tree over parallel sessions.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void measuresWholeTree() throws Exception {
+        try (final MockServer server = new MockServer(DiskUsageTest.tree())) {
+            final Usage usage = new DiskUsage(server.ftp(), 3)
+                .measure("/data");
+            Assert.assertEquals("Directories", 15, usage.size());
+            Assert.assertEquals("Root", "/data", usage.path(0));
+            Assert.assertEquals("Files", 45L, usage.files(0));
+            Assert.assertEquals("Bytes", 450L, usage.bytes(0));
+            Assert.assertTrue("Newest", usage.newest(0) > 0L);
+            final int leaf = DiskUsageTest.find(
+                usage, "/data/dir-1/dir-0/dir-1"
+            );
+            Assert.assertEquals("Leaf files", 3L, usage.files(leaf));
+            Assert.assertEquals(
+                "Leaf parent", "/data/dir-1/dir-0",
+                usage.path(usage.parent(leaf))
+            );
+            Assert.assertEquals(
+                "Listings", Long.valueOf(15L), server.commands().get("LIST")
+            );
+        }
+    }
+
+    /**
+     * Can fold directories deeper than cut-off into their ancestors.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void cutsOffDeepDirectories() throws Exception {
+        try (final MockServer server = new MockServer(DiskUsageTest.tree())) {
+            final Usage usage = new DiskUsage(server.ftp(), 2)
+                .measure("/data", 1);
+            Assert.assertEquals("Directories", 3, usage.size());
+            Assert.assertEquals("Files", 45L, usage.files(0));
+            final int sub = DiskUsageTest.find(usage, "/data/dir-0");
+            Assert.assertEquals("Subtree files", 21L, usage.files(sub));
+            Assert.assertEquals("Subtree bytes", 210L, usage.bytes(sub));
+            Assert.assertEquals("Parent", 0, usage.parent(sub));
+        }
+    }
+
+    /**
+     * Can measure root directory of server.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void measuresServerRoot() throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree().file("/a", 5L).file("/b/c", 7L)
+        )) {
+            final Usage usage = new DiskUsage(server.ftp(), 2).measure("/");
+            Assert.assertEquals("Directories", 2, usage.size());
+            Assert.assertEquals("Sub path", "/b", usage.path(1));
+            Assert.assertEquals("Bytes", 12L, usage.bytes(0));
+            Assert.assertEquals("Sub bytes", 7L, usage.bytes(1));
+        }
+    }
+
+    /**
+     * Can measure working directory with relative paths.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void measuresWorkingDirectory() throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree().file("/a", 5L).file("/b/c", 7L)
+        )) {
+            final Usage usage = new DiskUsage(server.ftp(), 2).measure("");
+            Assert.assertEquals("Directories", 2, usage.size());
+            Assert.assertEquals("Sub path", "b", usage.path(1));
+            Assert.assertEquals("Sub bytes", 7L, usage.bytes(1));
+        }
+    }
+
+    /**
+     * Index of directory with path.
+     *
+     * @param usage Totals.
+     * @param path Directory path.
+     * @return Index.
+     */
+    private static int find(final Usage usage, final String path) {
+        int found = -1;
+        for (int idx = 0; idx < usage.size(); ++idx) {
+            if (path.equals(usage.path(idx))) {
+                found = idx;
+            }
+        }
+        Assert.assertTrue(String.format("%s not found", path), found >= 0);
+        return found;
+    }
+
+    /**
+     * Remote tree of 15 directories, three levels below root.
+     *
+     * @return Tree.
+     */
+    private static MockTree tree() {
+        return new MockTree().generate(
+            "/data", 3, 2, DiskUsageTest.FILES, DiskUsageTest.SIZE
+        );
+    }
+}
@@ -188,6 +188,27 @@ public final class FTPIntegrationTest {
         Assert.assertTrue("Called Callback", call.called());
     }
 
+    /**
+     * Can trace control channel round-trips of FTP commands.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void traceControlChannelRoundTrips() throws Exception {
+        final ControlTrace trace = new ControlTrace();
+        new FTP(HOST, PORT, NAME, PASS).traced(trace).onConnect(
+            new DirList(".", new PassCall<FTPFile[]>())
+        );
+        Assert.assertEquals("Sessions traced", 1, trace.timelines().size());
+        Assert.assertEquals(
+            "LIST round-trips", Long.valueOf(1L), trace.counts().get("LIST")
+        );
+        Assert.assertTrue(
+            "DirList round-trips",
+            trace.origins().get(DirList.class.getName()) > 0L
+        );
+    }
+
     /**
      * Callback informing about its execution.
      *
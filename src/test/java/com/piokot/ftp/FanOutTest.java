@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.FTPCommand;
+import com.piokot.ftp.mock.Conditions;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link FanOut}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class FanOutTest {
+    /**
+     * Can upload shared content to all hosts.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void uploadsSharedContentToAllHosts() throws Exception {
+        final ByteBuffer content = ByteBuffer.wrap(
+            "shared".getBytes(Charsets.UTF_8)
+        );
+        final AtomicInteger uploaded = new AtomicInteger();
+        final Callback<Boolean> count = new Callback<Boolean>() {
+            @Override
+            public void onReturn(final Boolean type) {
+                if (type) {
+                    uploaded.incrementAndGet();
+                }
+            }
+        };
+        try (final MockServer first = new MockServer(new MockTree());
+            final MockServer second = new MockServer(new MockTree())) {
+            new FanOut(2, first.ftp(), second.ftp()).onConnect(
+                new SharedUpload("/a", content, count),
+                new SharedUpload("/b", content, count),
+                new SharedUpload("/c", content, count)
+            );
+            Assert.assertEquals("Files uploaded", 6, uploaded.get());
+            Assert.assertEquals(
+                "Sessions to host", Long.valueOf(2L),
+                first.commands().get("USER")
+            );
+            Assert.assertEquals(
+                "Uploads to host", Long.valueOf(3L),
+                second.commands().get("STOR")
+            );
+        }
+    }
+
+    /**
+     * Can fail fan-out naming host refusing upload.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void failsOnRefusedUpload() throws Exception {
+        try (final MockServer good = new MockServer(new MockTree());
+            final MockServer bad = new MockServer(
+                new MockTree(), new Conditions().failure("STOR", 1.0, 553)
+            )) {
+            final FTP refusing = bad.ftp();
+            try {
+                new FanOut(2, good.ftp(), refusing).onConnect(
+                    new FanOut.Commands() {
+                        @Override
+                        public FTPCommand[] of(final FTP host,
+                            final Callback<Boolean> result) {
+                            return new FTPCommand[] {
+                                new FileUpload(
+                                    "/a",
+                                    new ByteArrayInputStream(new byte[1]),
+                                    result
+                                ),
+                            };
+                        }
+                    }
+                );
+                Assert.fail("Refused upload not reported");
+            } catch (final IllegalStateException ex) {
+                Assert.assertEquals(1, ex.getSuppressed().length);
+                Assert.assertEquals(
+                    String.format("1 commands refused on %s", refusing),
+                    ex.getSuppressed()[0].getMessage()
+                );
+            }
+            Assert.assertEquals(
+                "Uploads to good host", Long.valueOf(1L),
+                good.commands().get("STOR")
+            );
+        }
+    }
+}
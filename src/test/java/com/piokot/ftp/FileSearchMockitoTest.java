@@ -84,6 +84,8 @@ public final class FileSearchMockitoTest {
     @Before
     @SneakyThrows
     public void setUp() {
+        Mockito.when(this.client.getDataConnectionMode())
+            .thenReturn(FTPClient.PASSIVE_LOCAL_DATA_CONNECTION_MODE);
         Mockito.when(this.client.listFiles(Matchers.matches(DIR_OUT)))
             .thenAnswer(
                 new Answer<FTPFile[]>() {
@@ -164,6 +166,43 @@ public final class FileSearchMockitoTest {
         );
     }
 
+    /**
+     * Can find files and files of subdirectories in listing order.
+     */
+    @Test
+    @SneakyThrows
+    public void findingFilesInListingOrder() {
+        Mockito.when(this.client.listFiles(Matchers.matches(DIR_OUT)))
+            .thenAnswer(
+                new Answer<FTPFile[]>() {
+                    @Override
+                    public FTPFile[] answer(final InvocationOnMock inv) {
+                        final FTPFile first = new FTPFile();
+                        first.setName("pre-first");
+                        first.setType(FTPFile.FILE_TYPE);
+                        final FTPFile dir = new FTPFile();
+                        dir.setName("dir1");
+                        dir.setType(FTPFile.DIRECTORY_TYPE);
+                        final FTPFile last = new FTPFile();
+                        last.setName("pre-last");
+                        last.setType(FTPFile.FILE_TYPE);
+                        return new FTPFile[]{first, dir, last};
+                    }
+                }
+            );
+        final Iterable<String> findings = new FileSearch(
+            DIR_OUT,
+            new Prefix(PREFIX),
+            true,
+            new MockCallback<Iterable<String>>()
+        ).ftpCall(this.client);
+        Assert.assertEquals(
+            "not in listing order",
+            ImmutableList.of("dir/pre-first", FOUND_LOC, "dir/pre-last"),
+            ImmutableList.copyOf(findings)
+        );
+    }
+
     /**
      * Filter on FTPFile that accepts file names with given prefix.
      */
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Globs}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class GlobsTest {
+    /**
+     * Can match names with wildcards, classes and escapes.
+     */
+    @Test
+    public void matchesPatterns() {
+        final Globs globs = new Globs(
+            "*.txt", "data-??.csv", "[a-c]*[!0-9]", "\\*star", "ab*cd*ef"
+        );
+        Assert.assertTrue(globs.valid("notes.txt"));
+        Assert.assertTrue(globs.valid(".txt"));
+        Assert.assertTrue(globs.valid("data-01.csv"));
+        Assert.assertFalse(globs.valid("data-1.csv"));
+        Assert.assertTrue(globs.valid("beta"));
+        Assert.assertFalse(globs.valid("beta1"));
+        Assert.assertFalse(globs.valid("delta"));
+        Assert.assertTrue(globs.valid("*star"));
+        Assert.assertFalse(globs.valid("xstar"));
+        Assert.assertTrue(globs.valid("abXcdYcdZef"));
+        Assert.assertFalse(globs.valid("abcde9"));
+        Assert.assertTrue(globs.valid("żółw.txt"));
+        Assert.assertFalse(new Globs().valid("any"));
+    }
+
+    /**
+     * Can match many patterns at once.
+     */
+    @Test
+    public void matchesThousandsOfPatterns() {
+        final int count = 5000;
+        final List<String> patterns = new ArrayList<>(count);
+        for (int idx = 0; idx < count; ++idx) {
+            patterns.add(String.format("log-%d-*.gz", idx));
+        }
+        final Globs globs = new Globs(patterns);
+        for (int idx = 0; idx < count; idx += 7) {
+            Assert.assertTrue(
+                globs.valid(String.format("log-%d-2015.gz", idx))
+            );
+            Assert.assertFalse(
+                globs.valid(String.format("log-%d-2015.zip", idx))
+            );
+        }
+        Assert.assertFalse(globs.valid("log-5000-2015.gz"));
+    }
+
+    /**
+     * Can match correctly past the cap of cached states.
+     */
+    @Test
+    public void matchesPastStateCap() {
+        final int count = 20000;
+        final List<String> patterns = new ArrayList<>(count);
+        for (int idx = 0; idx < count; ++idx) {
+            patterns.add(String.format("n%d-*", idx));
+        }
+        patterns.add("ü?");
+        final Globs globs = new Globs(patterns);
+        for (int idx = 0; idx < count; ++idx) {
+            Assert.assertTrue(globs.valid(String.format("n%d-a", idx)));
+            Assert.assertFalse(globs.valid(String.format("n%da", idx)));
+            Assert.assertTrue(
+                globs.valid(String.format("ü%c", (char) (0x100 + idx)))
+            );
+        }
+    }
+}
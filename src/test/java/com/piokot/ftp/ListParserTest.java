@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Iterables;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.Filter;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ListParser}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class ListParserTest {
+    /**
+     * Can scan UNIX and Windows listing lines.
+     */
+    @Test
+    public void scansListingLines() {
+        final List<String> lines = new ArrayList<>(0);
+        final List<FTPFile> entries = new ArrayList<>(0);
+        new RecordParser(
+            Charsets.UTF_8.newDecoder(), (byte) '\n', 2,
+            new ListParser(
+                new ListParser.Lines() {
+                    @Override
+                    public void onLine(final ListParser.Line line) {
+                        lines.add(
+                            String.format("%s %s", line.type(), line.name())
+                        );
+                        if (line.name().toString().startsWith("a")) {
+                            entries.addAll(line.entry().asSet());
+                        }
+                    }
+                }
+            ),
+            false, Long.MAX_VALUE, new AtomicBoolean()
+        ).onReturn(
+            new ByteArrayInputStream(
+                Joiner.on("\r\n").join(
+                    "total 4",
+                    "drwxr-xr-x 2 ftp ftp 4096 Jan 05 2020 sub dir",
+                    "-rw-r--r-- 1 ftp 12 Mar  7 10:30 a file.txt",
+                    "lrwxrwxrwx 1 ftp ftp 7 Mar 07 10:30 link -> target",
+                    "crw-rw-rw- 1 root root 1, 3 Mar 07 10:30 null",
+                    "01-15-20  10:30AM       <DIR>          win dir",
+                    "01-15-20  10:30AM            1234 a.txt"
+                ).getBytes(Charsets.UTF_8)
+            )
+        );
+        Assert.assertEquals(
+            "[d sub dir, - a file.txt, l link, ? null, d win dir, - a.txt]",
+            lines.toString()
+        );
+        Assert.assertEquals("Entries", 2, entries.size());
+        Assert.assertEquals("UNIX size", 12L, entries.get(0).getSize());
+        Assert.assertEquals("Windows size", 1234L, entries.get(1).getSize());
+        Assert.assertEquals("a.txt", entries.get(1).getName());
+    }
+
+    /**
+     * Can find month among numeric owner and group.
+     */
+    @Test
+    public void scansNumericOwners() {
+        Assert.assertEquals(
+            "[- both.txt, - owner.txt, - group.txt, d dir]",
+            ListParserTest.scan(
+                "-rw-r--r-- 1 1000 1000 12 Mar 07 10:30 both.txt",
+                "-rw-r--r-- 1 1000 ftp 12 Mar 07 10:30 owner.txt",
+                "-rw-r--r-- 1 ftp 100 12 MAR 07 2020 group.txt",
+                "drwxr-xr-x 2 0 0 4096 jan 05 2020 dir"
+            ).toString()
+        );
+    }
+
+    /**
+     * Can read size and time of files like full parse does.
+     */
+    @Test
+    public void readsSizeAndTime() {
+        final List<String> fields = new ArrayList<>(0);
+        final List<String> parsed = new ArrayList<>(0);
+        new RecordParser(
+            Charsets.UTF_8.newDecoder(), (byte) '\n', 2,
+            new ListParser(
+                new ListParser.Lines() {
+                    @Override
+                    public void onLine(final ListParser.Line line) {
+                        fields.add(
+                            String.format("%d %d", line.size(), line.time())
+                        );
+                        for (final FTPFile file : line.entry().asSet()) {
+                            parsed.add(
+                                String.format(
+                                    "%d %d", file.getSize(),
+                                    file.getTimestamp().getTimeInMillis()
+                                )
+                            );
+                        }
+                    }
+                }
+            ),
+            false, Long.MAX_VALUE, new AtomicBoolean()
+        ).onReturn(
+            new ByteArrayInputStream(
+                Joiner.on("\r\n").join(
+                    "-rw-r--r-- 1 ftp ftp 8589934592 Jan 05 2020 big",
+                    "-rw-r--r-- 1 ftp 12 Mar  7 10:30 recent",
+                    "-rw-r--r-- 1 ftp ftp 3 Dec 31 23:59 old",
+                    "01-15-20  10:30AM            1234 morning",
+                    "01-15-20  12:05PM               5 noon",
+                    "01-15-20  12:05AM               5 midnight",
+                    "12-31-99  11:59PM               0 century"
+                ).getBytes(Charsets.UTF_8)
+            )
+        );
+        Assert.assertEquals("Entries", 7, parsed.size());
+        Assert.assertEquals(parsed, fields);
+    }
+
+    /**
+     * Can stop at first line of unknown listing format.
+     */
+    @Test
+    public void stopsOnForeignFormat() {
+        final List<String> lines = new ArrayList<>(0);
+        final ListParser parser = new ListParser(
+            new ListParser.Lines() {
+                @Override
+                public void onLine(final ListParser.Line line) {
+                    lines.add(line.name().toString());
+                }
+            }
+        );
+        new RecordParser(
+            Charsets.UTF_8.newDecoder(), (byte) '\n', 2, parser,
+            false, Long.MAX_VALUE, new AtomicBoolean()
+        ).onReturn(
+            new ByteArrayInputStream(
+                Joiner.on("\r\n").join(
+                    "",
+                    "Directory DISK$USER:[FTP]",
+                    "",
+                    "FILE.TXT;1  2/8  5-JAN-2020 10:30 [FTP] (RWED,RWED,,)"
+                ).getBytes(Charsets.UTF_8)
+            )
+        );
+        Assert.assertTrue("Not foreign", parser.foreign());
+        Assert.assertEquals("Lines", 0, lines.size());
+    }
+
+    /**
+     * Can list and search only files with names filtered.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void listsFilteredNames() throws Exception {
+        final MockTree tree = new MockTree();
+        for (int idx = 0; idx < 100; ++idx) {
+            tree.file(String.format("/big/skip-%d", idx), 1L);
+        }
+        tree.file("/big/keep-1", 2L).file("/big/sub/keep-2", 3L)
+            .file("/big/sub/skip", 1L);
+        final Filter<CharSequence> keep = new Filter<CharSequence>() {
+            @Override
+            public boolean valid(final CharSequence type) {
+                return type.toString().startsWith("keep");
+            }
+        };
+        final AtomicReference<FTPFile[]> listed = new AtomicReference<>();
+        final AtomicReference<Iterable<String>> found =
+            new AtomicReference<>();
+        try (final MockServer server = new MockServer(tree)) {
+            server.ftp().onConnect(
+                new DirList(
+                    "/big", keep,
+                    new Callback<FTPFile[]>() {
+                        @Override
+                        public void onReturn(final FTPFile[] type) {
+                            listed.set(type);
+                        }
+                    }
+                ),
+                new FileSearch(
+                    "/big", keep,
+                    new Filter<FTPFile>() {
+                        @Override
+                        public boolean valid(final FTPFile type) {
+                            return type.getSize() > 1L;
+                        }
+                    },
+                    true,
+                    new Callback<Iterable<String>>() {
+                        @Override
+                        public void onReturn(final Iterable<String> type) {
+                            found.set(type);
+                        }
+                    }
+                )
+            );
+        }
+        Assert.assertEquals("Listed", 1, listed.get().length);
+        Assert.assertEquals("keep-1", listed.get()[0].getName());
+        Assert.assertEquals(2L, listed.get()[0].getSize());
+        Assert.assertEquals(
+            "[/big/keep-1, /big/sub/keep-2]",
+            Iterables.toString(found.get())
+        );
+    }
+
+    /**
+     * Types and names of scanned listing lines.
+     *
+     * @param listing Listing lines.
+     * @return Type and name of each entry.
+     */
+    private static List<String> scan(final String... listing) {
+        final List<String> lines = new ArrayList<>(0);
+        new RecordParser(
+            Charsets.UTF_8.newDecoder(), (byte) '\n', 2,
+            new ListParser(
+                new ListParser.Lines() {
+                    @Override
+                    public void onLine(final ListParser.Line line) {
+                        lines.add(
+                            String.format("%s %s", line.type(), line.name())
+                        );
+                    }
+                }
+            ),
+            false, Long.MAX_VALUE, new AtomicBoolean()
+        ).onReturn(
+            new ByteArrayInputStream(
+                Joiner.on("\r\n").join(listing).getBytes(Charsets.UTF_8)
+            )
+        );
+        return lines;
+    }
+}
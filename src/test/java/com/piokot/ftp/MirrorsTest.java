@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.mock.Conditions;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.io.InputStream;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.SneakyThrows;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Mirrors}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class MirrorsTest {
+    /**
+     * Can hedge slow download on the next mirror.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void hedgesSlowDownload() throws Exception {
+        final byte[] content = "mirrored".getBytes(Charsets.UTF_8);
+        final Collector downloads = new Collector();
+        try (final MockServer slow = new MockServer(
+            new MockTree().file("/file", content),
+            new Conditions().latency("RETR", 2000L)
+        );
+            final MockServer fast = new MockServer(
+                new MockTree().file("/file", content)
+            );
+            final Mirrors mirrors = new Mirrors(slow.ftp(), fast.ftp())) {
+            mirrors.download("/file", downloads);
+            Assert.assertEquals("Downloads", 1, downloads.size());
+            Assert.assertEquals(
+                "Content", "mirrored", downloads.get(0)
+            );
+            Assert.assertEquals(
+                "Hedged request", Long.valueOf(1L), fast.commands().get("RETR")
+            );
+        }
+    }
+
+    /**
+     * Can fail over and eject failing mirror.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void ejectsFailingMirror() throws Exception {
+        final byte[] content = "mirrored".getBytes(Charsets.UTF_8);
+        final Collector downloads = new Collector();
+        try (final MockServer broken = new MockServer(
+            new MockTree().file("/file", content),
+            new Conditions().failure("RETR", 1.0, 550)
+        );
+            final MockServer good = new MockServer(
+                new MockTree().file("/file", content)
+            );
+            final Mirrors mirrors = new Mirrors(broken.ftp(), good.ftp())) {
+            for (int idx = 0; idx < 5; ++idx) {
+                mirrors.download("/file", downloads);
+            }
+            Assert.assertEquals("Downloads", 5, downloads.size());
+            Assert.assertEquals(
+                "Broken mirror not ejected",
+                Long.valueOf(3L), broken.commands().get("RETR")
+            );
+        }
+    }
+
+    /**
+     * Can fail without trying other mirrors when the winner fails after
+     * the transfer started.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void keepsFailureOfWinner() throws Exception {
+        final byte[] content = "mirrored".getBytes(Charsets.UTF_8);
+        try (final MockServer first = new MockServer(
+            new MockTree().file("/file", content)
+        );
+            final MockServer second = new MockServer(
+                new MockTree().file("/file", content)
+            );
+            final Mirrors mirrors = new Mirrors(first.ftp(), second.ftp())) {
+            boolean failed = false;
+            try {
+                mirrors.download(
+                    "/file",
+                    new Callback<InputStream>() {
+                        @Override
+                        public void onReturn(final InputStream type) {
+                            throw new IllegalArgumentException("rejected");
+                        }
+                    }
+                );
+            } catch (final IllegalArgumentException ex) {
+                failed = true;
+            }
+            Assert.assertTrue("Failure of callback not thrown", failed);
+            Assert.assertNull(
+                "Other mirror tried", second.commands().get("RETR")
+            );
+        }
+    }
+
+    /**
+     * Callback collecting downloaded content.
+     */
+    private static final class Collector
+        extends CopyOnWriteArrayList<String> implements Callback<InputStream> {
+        /**
+         * Serialization marker.
+         */
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        @SneakyThrows
+        public void onReturn(final InputStream type) {
+            this.add(new String(ByteStreams.toByteArray(type), Charsets.UTF_8));
+        }
+    }
+}
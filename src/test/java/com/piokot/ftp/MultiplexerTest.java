@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.FTPCommand;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Multiplexer}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class MultiplexerTest {
+    /**
+     * Sessions opened.
+     */
+    private static final int SESSIONS = 40;
+
+    /**
+     * Can keep many sessions on one thread and run commands on them.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void multiplexesIdleSessions() throws Exception {
+        final String host = InetAddress.getLoopbackAddress().getHostAddress();
+        final AtomicInteger listed = new AtomicInteger();
+        try (final MockServer server = new MockServer(
+            new MockTree().file("/dir/a", 1L).file("/dir/b", 2L)
+        );
+            final Multiplexer mux = new Multiplexer(
+                1, 50L, TimeUnit.MILLISECONDS
+            )) {
+            final List<IdleSession> sessions = new ArrayList<>(0);
+            for (int idx = 0; idx < MultiplexerTest.SESSIONS; ++idx) {
+                sessions.add(mux.open(host, server.port(), "mock", "mock"));
+            }
+            final FTPCommand list = new DirList(
+                "/dir",
+                new Callback<FTPFile[]>() {
+                    @Override
+                    public void onReturn(final FTPFile[] type) {
+                        listed.addAndGet(type.length);
+                    }
+                }
+            );
+            for (final IdleSession session : sessions) {
+                session.onConnect(
+                    list,
+                    new FTPCommand() {
+                        @Override
+                        @SneakyThrows
+                        public void execute(final FTPClient client) {
+                            client.changeWorkingDirectory("/dir");
+                        }
+                    }
+                );
+            }
+            sessions.get(0).onConnect(
+                new FTPCommand() {
+                    @Override
+                    @SneakyThrows
+                    public void execute(final FTPClient client) {
+                        Assert.assertEquals(
+                            "Not back home", "/", client.printWorkingDirectory()
+                        );
+                    }
+                }
+            );
+            Assert.assertEquals(MultiplexerTest.SESSIONS * 2, listed.get());
+            Assert.assertEquals(MultiplexerTest.SESSIONS, server.sessions());
+            Assert.assertEquals(MultiplexerTest.SESSIONS, mux.sessions());
+            TimeUnit.MILLISECONDS.sleep(400L);
+            Assert.assertTrue(
+                "No keep-alive",
+                server.commands().get("NOOP") >= MultiplexerTest.SESSIONS
+            );
+            Assert.assertEquals(
+                "Logins", Long.valueOf(MultiplexerTest.SESSIONS),
+                server.commands().get("PASS")
+            );
+        }
+    }
+
+    /**
+     * Can fail commands on session refused by server.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void failsOnClosedSession() throws Exception {
+        final String host = InetAddress.getLoopbackAddress().getHostAddress();
+        try (final Multiplexer mux = new Multiplexer()) {
+            final IdleSession session;
+            final MockServer server = new MockServer(new MockTree());
+            try {
+                session = mux.open(host, server.port(), "mock", "mock");
+            } finally {
+                server.close();
+            }
+            session.onConnect();
+        }
+    }
+
+    /**
+     * Can fail only the session receiving a malformed reply.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void failsOnlySessionWithMalformedReply() throws Exception {
+        final String host = InetAddress.getLoopbackAddress().getHostAddress();
+        try (final ServerSocket broken = new ServerSocket(
+            0, 1, InetAddress.getLoopbackAddress()
+        );
+            final MockServer server = new MockServer(new MockTree());
+            final Multiplexer mux = new Multiplexer(
+                1, 1L, TimeUnit.MINUTES
+            )) {
+            final IdleSession bad = mux.open(
+                host, broken.getLocalPort(), "mock", "mock"
+            );
+            try (final Socket peer = broken.accept()) {
+                peer.getOutputStream().write(
+                    "2x0 malformed\r\n".getBytes(Charsets.US_ASCII)
+                );
+                try {
+                    bad.onConnect();
+                    Assert.fail("Malformed reply accepted");
+                } catch (final IllegalStateException ex) {
+                    Assert.assertTrue(
+                        "Wrong failure",
+                        ex.getCause().getMessage().contains("malformed")
+                    );
+                }
+            }
+            final IdleSession good = mux.open(
+                host, server.port(), "mock", "mock"
+            );
+            final AtomicInteger runs = new AtomicInteger();
+            good.onConnect(
+                new FTPCommand() {
+                    @Override
+                    public void execute(final FTPClient client) {
+                        runs.incrementAndGet();
+                    }
+                }
+            );
+            Assert.assertEquals("Loop stopped", 1, runs.get());
+        }
+    }
+}
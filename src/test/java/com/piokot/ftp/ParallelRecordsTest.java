@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.piokot.ftp.api.Records;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ParallelRecords}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class ParallelRecordsTest {
+    /**
+     * Can deliver every line exactly once over parallel sessions.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void deliversEveryLineOnce() throws Exception {
+        final int count = 5000;
+        final StringBuilder text = new StringBuilder();
+        final List<String> expected = new ArrayList<>(count);
+        for (int idx = 0; idx < count; ++idx) {
+            final String line = String.format("line-%d", idx);
+            expected.add(line);
+            text.append(line).append('\n');
+        }
+        final List<String> lines = new CopyOnWriteArrayList<>();
+        try (final MockServer server = new MockServer(
+            new MockTree().file(
+                "/data", text.toString().getBytes(Charsets.UTF_8)
+            )
+        )) {
+            new ParallelRecords(server.ftp(), 7).scan(
+                "/data",
+                new Records() {
+                    @Override
+                    public boolean onBatch(final Records.Batch batch) {
+                        for (int idx = 0; idx < batch.size(); ++idx) {
+                            lines.add(batch.record(idx).toString());
+                        }
+                        return true;
+                    }
+                }
+            );
+            Assert.assertEquals(
+                "Sessions", Long.valueOf(7L), server.commands().get("RETR")
+            );
+        }
+        final Object[] sorted = lines.toArray();
+        final Object[] all = expected.toArray();
+        Arrays.sort(sorted);
+        Arrays.sort(all);
+        Assert.assertArrayEquals("Lines", all, sorted);
+    }
+}
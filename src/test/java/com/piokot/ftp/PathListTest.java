@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PathList}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class PathListTest {
+    /**
+     * Can build paths of many files sharing directories.
+     */
+    @Test
+    public void buildsPathsOnDemand() {
+        final PathList paths = new PathList();
+        final int first = paths.directory("dir");
+        final int second = paths.directory("dir/sub");
+        final int files = 1000;
+        for (int idx = 0; idx < files; ++idx) {
+            paths.add(first, String.format("file-%d", idx));
+        }
+        paths.add(second, "x");
+        paths.add(first, "");
+        Assert.assertEquals(files + 2, paths.size());
+        Assert.assertEquals("dir/file-0", paths.get(0));
+        Assert.assertEquals("dir/file-999", paths.get(files - 1));
+        Assert.assertEquals("dir/sub/x", paths.get(files));
+        Assert.assertEquals("dir/", paths.get(files + 1));
+        Assert.assertEquals(
+            "dir/file-998",
+            Iterables.get(paths, files - 2)
+        );
+        Assert.assertTrue(
+            Iterables.elementsEqual(
+                new PathList(), ImmutableList.<String>of()
+            )
+        );
+    }
+
+    /**
+     * Can refuse index outside of list.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void refusesIndexOutside() {
+        new PathList().get(0);
+    }
+}
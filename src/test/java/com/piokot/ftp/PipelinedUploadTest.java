@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.SneakyThrows;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PipelinedUpload}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class PipelinedUploadTest {
+    /**
+     * Bytes uploaded.
+     */
+    private static final int SIZE = 1 << 19;
+
+    /**
+     * Can upload slow source and report network waiting for it.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void uploadsSlowSource() throws Exception {
+        final AtomicReference<UploadReport> report = new AtomicReference<>();
+        final AtomicReference<byte[]> stored = new AtomicReference<>();
+        try (final MockServer server = new MockServer(
+            new MockTree().dir("/dir")
+        )) {
+            server.ftp().onConnect(
+                new PipelinedUpload(
+                    "/dir/export", new PipelinedUploadTest.Slow(-1), 3, 8192,
+                    new Callback<UploadReport>() {
+                        @Override
+                        public void onReturn(final UploadReport type) {
+                            report.set(type);
+                        }
+                    }
+                ),
+                new RangeDownload(
+                    "/dir/export", 0L, Long.MAX_VALUE,
+                    new Callback<InputStream>() {
+                        @Override
+                        @SneakyThrows
+                        public void onReturn(final InputStream type) {
+                            stored.set(ByteStreams.toByteArray(type));
+                        }
+                    }
+                )
+            );
+        }
+        Assert.assertTrue("Not stored", report.get().stored());
+        Assert.assertEquals(PipelinedUploadTest.SIZE, report.get().bytes());
+        Assert.assertTrue(
+            report.toString(),
+            report.get().networkStall(TimeUnit.MILLISECONDS) > 0L
+        );
+        final byte[] expected = ByteStreams.toByteArray(
+            new PipelinedUploadTest.Slow(-1)
+        );
+        Assert.assertTrue("Content", Arrays.equals(expected, stored.get()));
+    }
+
+    /**
+     * Can fail upload when source fails.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test(expected = IOException.class)
+    public void failsWithSource() throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree().dir("/dir")
+        )) {
+            server.ftp().onConnect(
+                new PipelinedUpload(
+                    "/dir/export", new PipelinedUploadTest.Slow(100000), 2,
+                    4096,
+                    new Callback<UploadReport>() {
+                        @Override
+                        public void onReturn(final UploadReport type) {
+                            Assert.fail("Upload of failed source reported");
+                        }
+                    }
+                )
+            );
+        }
+    }
+
+    /**
+     * Can count bytes taken by consumer and close source stuck in read.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void closesStuckSource() throws Exception {
+        final PipelinedUploadTest.Stuck source =
+            new PipelinedUploadTest.Stuck();
+        final BufferRing ring = new BufferRing(source, 2, 1).start("stuck");
+        Assert.assertEquals("Read", 7, ring.read());
+        ring.close();
+        Assert.assertEquals("Source not closed", 0L, source.closed.getCount());
+        Assert.assertEquals("Bytes", 1L, ring.bytes());
+    }
+
+    /**
+     * Source producing bytes slowly, failing at given position.
+     */
+    private static final class Slow extends InputStream {
+        /**
+         * Position of failure, negative if none.
+         */
+        private final transient int fail;
+        /**
+         * Bytes produced.
+         */
+        private transient int pos;
+
+        /**
+         * Class constructor.
+         *
+         * @param failure Position of failure, negative if none.
+         */
+        Slow(final int failure) {
+            super();
+            this.fail = failure;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] one = new byte[1];
+            int result = -1;
+            if (this.read(one, 0, 1) > 0) {
+                result = one[0] & 0xFF;
+            }
+            return result;
+        }
+
+        @Override
+        @SneakyThrows
+        public int read(final byte[] buf, final int off, final int len)
+            throws IOException {
+            if (this.fail >= 0 && this.pos >= this.fail) {
+                throw new IOException("export failed");
+            }
+            int result = Math.min(
+                Math.min(len, 4096), PipelinedUploadTest.SIZE - this.pos
+            );
+            if (result <= 0) {
+                result = -1;
+            } else {
+                TimeUnit.MICROSECONDS.sleep(500L);
+                for (int idx = 0; idx < result; ++idx) {
+                    buf[off + idx] = (byte) ((this.pos + idx) * 31);
+                }
+                this.pos += result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Source giving one byte, then blocked until closed, ignoring
+     * interrupts.
+     */
+    private static final class Stuck extends InputStream {
+        /**
+         * Released on close.
+         */
+        private final transient CountDownLatch closed = new CountDownLatch(1);
+        /**
+         * Was the byte given.
+         */
+        private transient boolean given;
+
+        @Override
+        public int read() throws IOException {
+            final int result = 7;
+            if (this.given) {
+                Uninterruptibles.awaitUninterruptibly(this.closed);
+                throw new IOException("source closed");
+            }
+            this.given = true;
+            return result;
+        }
+
+        @Override
+        public void close() {
+            this.closed.countDown();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.FTPCommand;
+import com.piokot.ftp.mock.Conditions;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Pipelining}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class PipeliningTest {
+    /**
+     * Files in batch.
+     */
+    private static final int FILES = 100;
+
+    /**
+     * Can delete files in pipelined batch.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void deletesInBatch() throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree().generate("/", 0, 0, PipeliningTest.FILES, 1L)
+        )) {
+            final Map<String, Boolean> results = new ConcurrentHashMap<>();
+            final List<Pipelining.Request> requests =
+                PipeliningTest.deletes(results);
+            requests.add(
+                Pipelining.delete(
+                    "/missing", PipeliningTest.result("missing", results)
+                )
+            );
+            server.ftp().onConnect(new Pipelining(8).batch(requests));
+            Assert.assertEquals(PipeliningTest.FILES + 1, results.size());
+            Assert.assertFalse(results.remove("missing"));
+            Assert.assertFalse(results.containsValue(false));
+            PipeliningTest.assertNames(server);
+        }
+    }
+
+    /**
+     * Can make directories and rename in pipelined batch.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void renamesInBatch() throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree().file("/a", 1L)
+        )) {
+            final Map<String, Boolean> results = new ConcurrentHashMap<>();
+            server.ftp().onConnect(
+                new Pipelining().batch(
+                    Pipelining.mkdir(
+                        "/dir", PipeliningTest.result("mkdir", results)
+                    ),
+                    Pipelining.rename(
+                        "/a", "/dir/b", PipeliningTest.result("a", results)
+                    ),
+                    Pipelining.rename(
+                        "/a", "/dir/c", PipeliningTest.result("again", results)
+                    ),
+                    Pipelining.mkdir(
+                        "/dir", PipeliningTest.result("twice", results)
+                    )
+                )
+            );
+            Assert.assertTrue(results.get("mkdir"));
+            Assert.assertTrue(results.get("a"));
+            Assert.assertFalse(results.get("again"));
+            Assert.assertFalse(results.get("twice"));
+            PipeliningTest.assertNames(server, "b");
+        }
+    }
+
+    /**
+     * Can fall back to lock-step and remember server not answering
+     * pipelined commands.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void fallsBackToLockStep() throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree().generate("/", 0, 0, PipeliningTest.FILES, 1L),
+            new Conditions().lockStep()
+        )) {
+            final Map<String, Boolean> results = new ConcurrentHashMap<>();
+            final List<Pipelining.Request> requests =
+                PipeliningTest.deletes(results);
+            final Pipelining pipelining = new Pipelining();
+            server.ftp().onConnect(
+                pipelining.batch(requests.subList(0, PipeliningTest.FILES / 2))
+            );
+            server.ftp().onConnect(
+                pipelining.batch(
+                    requests.subList(
+                        PipeliningTest.FILES / 2, PipeliningTest.FILES
+                    )
+                )
+            );
+            Assert.assertEquals(PipeliningTest.FILES, results.size());
+            Assert.assertFalse(results.containsValue(false));
+            Assert.assertEquals(
+                "Probes", Long.valueOf(1L), server.commands().get("NOOP")
+            );
+            PipeliningTest.assertNames(server);
+        }
+    }
+
+    /**
+     * Can delete files faster than in lock-step when round trips are long.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void beatsLockStep() throws Exception {
+        final long pipelined = PipeliningTest.deleteAll(new Conditions());
+        final long lockstep = PipeliningTest.deleteAll(
+            new Conditions().lockStep()
+        );
+        Assert.assertTrue(
+            String.format(
+                "pipelined %d ms, lock-step %d ms", pipelined, lockstep
+            ),
+            pipelined * 4L < lockstep
+        );
+    }
+
+    /**
+     * Delete all files with 20 ms round-trip time.
+     *
+     * @param conditions Conditions of server.
+     * @return Milliseconds taken.
+     * @throws Exception If it fails.
+     */
+    private static long deleteAll(final Conditions conditions)
+        throws Exception {
+        try (final MockServer server = new MockServer(
+            new MockTree().generate("/", 0, 0, PipeliningTest.FILES, 1L),
+            conditions.roundTrip(20L)
+        )) {
+            final Map<String, Boolean> results = new ConcurrentHashMap<>();
+            final FTPCommand batch = new Pipelining().batch(
+                PipeliningTest.deletes(results)
+            );
+            final long start = System.nanoTime();
+            server.ftp().onConnect(batch);
+            final long took = (System.nanoTime() - start) / 1000000L;
+            Assert.assertFalse(results.containsValue(false));
+            Assert.assertEquals(PipeliningTest.FILES, results.size());
+            return took;
+        }
+    }
+
+    /**
+     * Requests deleting every file.
+     *
+     * @param results Results by file name.
+     * @return Requests.
+     */
+    private static List<Pipelining.Request> deletes(
+        final Map<String, Boolean> results) {
+        final List<Pipelining.Request> requests =
+            new ArrayList<>(PipeliningTest.FILES);
+        for (int idx = 0; idx < PipeliningTest.FILES; ++idx) {
+            final String name = String.format("file-%d", idx);
+            requests.add(
+                Pipelining.delete(
+                    String.format("/%s", name),
+                    PipeliningTest.result(name, results)
+                )
+            );
+        }
+        return requests;
+    }
+
+    /**
+     * Callback saving result.
+     *
+     * @param name Name of result.
+     * @param results Results by name.
+     * @return Callback.
+     */
+    private static Callback<Boolean> result(final String name,
+        final Map<String, Boolean> results) {
+        return new Callback<Boolean>() {
+            @Override
+            public void onReturn(final Boolean type) {
+                results.put(name, type);
+            }
+        };
+    }
+
+    /**
+     * Assert names of files left in the tree.
+     *
+     * @param server Server.
+     * @param names Names of files expected.
+     */
+    private static void assertNames(final MockServer server,
+        final String... names) {
+        server.ftp().onConnect(
+            new FTPCommand() {
+                @Override
+                @SneakyThrows
+                public void execute(final FTPClient client) {
+                    final List<String> left = new ArrayList<>(0);
+                    final String[] found = client.listNames("/dir");
+                    if (found != null) {
+                        left.addAll(Arrays.asList(found));
+                    }
+                    left.addAll(Arrays.asList(client.listNames("/")));
+                    left.remove("dir");
+                    Assert.assertEquals(Arrays.asList(names), left);
+                }
+            }
+        );
+    }
+}
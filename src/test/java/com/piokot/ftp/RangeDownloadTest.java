@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.io.ByteStreams;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.SneakyThrows;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RangeDownload}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class RangeDownloadTest {
+    /**
+     * Remote file.
+     */
+    private static final String FILE = "/file";
+    /**
+     * Modulus of generated content.
+     */
+    private static final int MOD = 251;
+
+    /**
+     * Can download ranges within one session, aborting only when needed.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void downloadsRanges() throws Exception {
+        final long size = 100000L;
+        final List<byte[]> ranges = new CopyOnWriteArrayList<>();
+        final Callback<InputStream> keep = new Callback<InputStream>() {
+            @Override
+            @SneakyThrows
+            public void onReturn(final InputStream type) {
+                ranges.add(ByteStreams.toByteArray(type));
+            }
+        };
+        try (final MockServer server = new MockServer(
+            new MockTree().file(RangeDownloadTest.FILE, size)
+        )) {
+            server.ftp().onConnect(
+                new RangeDownload(RangeDownloadTest.FILE, 1000L, 100L, keep),
+                new RangeDownload(
+                    RangeDownloadTest.FILE, size - 10L, 100L, keep
+                ),
+                new RangeDownload(RangeDownloadTest.FILE, 5L, 5L, keep)
+            );
+            Assert.assertEquals("Ranges", 3, ranges.size());
+            RangeDownloadTest.assertRange(ranges.get(0), 1000L, 100);
+            RangeDownloadTest.assertRange(ranges.get(1), size - 10L, 10);
+            RangeDownloadTest.assertRange(ranges.get(2), 5L, 5);
+            Assert.assertEquals(
+                "Aborts", Long.valueOf(2L), server.commands().get("ABOR")
+            );
+        }
+    }
+
+    /**
+     * Assert range content.
+     *
+     * @param range Downloaded range.
+     * @param offset Offset of range.
+     * @param length Expected length.
+     */
+    private static void assertRange(final byte[] range, final long offset,
+        final int length) {
+        Assert.assertEquals("Range length", length, range.length);
+        for (int idx = 0; idx < length; ++idx) {
+            Assert.assertEquals(
+                "Range content",
+                (byte) ((offset + idx) % RangeDownloadTest.MOD), range[idx]
+            );
+        }
+    }
+}
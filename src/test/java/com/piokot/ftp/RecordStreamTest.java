@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.piokot.ftp.api.Records;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RecordStream}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class RecordStreamTest {
+    /**
+     * Can stream lines of remote file in batches.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void streamsLinesInBatches() throws Exception {
+        final List<String> lines = new CopyOnWriteArrayList<>();
+        final List<Integer> batches = new CopyOnWriteArrayList<>();
+        try (final MockServer server = new MockServer(
+            new MockTree().file(
+                "/data.csv",
+                "a,b\nc,d\r\n\nżółw,e\nlast".getBytes(Charsets.UTF_8)
+            )
+        )) {
+            server.ftp().onConnect(
+                new RecordStream(
+                    "/data.csv", Charsets.UTF_8, '\n', 2,
+                    new Records() {
+                        @Override
+                        public boolean onBatch(final Records.Batch batch) {
+                            batches.add(batch.size());
+                            for (int idx = 0; idx < batch.size(); ++idx) {
+                                lines.add(batch.record(idx).toString());
+                            }
+                            return true;
+                        }
+                    }
+                )
+            );
+            Assert.assertArrayEquals(
+                "Lines",
+                new String[] {"a,b", "c,d", "", "żółw,e", "last"},
+                lines.toArray()
+            );
+            Assert.assertArrayEquals(
+                "Batches", new Integer[] {2, 2, 1}, batches.toArray()
+            );
+            Assert.assertNull("Aborted", server.commands().get("ABOR"));
+        }
+    }
+
+    /**
+     * Can stop streaming early.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void stopsEarly() throws Exception {
+        final StringBuilder text = new StringBuilder();
+        for (int idx = 0; idx < 100000; ++idx) {
+            text.append("record-").append(idx).append(';');
+        }
+        final List<String> records = new CopyOnWriteArrayList<>();
+        try (final MockServer server = new MockServer(
+            new MockTree().file(
+                "/data", text.toString().getBytes(Charsets.UTF_8)
+            )
+        )) {
+            server.ftp().onConnect(
+                new RecordStream(
+                    "/data", Charsets.UTF_8, ';', 10,
+                    new Records() {
+                        @Override
+                        public boolean onBatch(final Records.Batch batch) {
+                            records.add(batch.record(0).toString());
+                            return false;
+                        }
+                    }
+                )
+            );
+            Assert.assertEquals("Batches", 1, records.size());
+            Assert.assertEquals("Record", "record-0", records.get(0));
+            Assert.assertEquals(
+                "Not aborted", Long.valueOf(1L), server.commands().get("ABOR")
+            );
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.Filter;
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Rules}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class RulesTest {
+    /**
+     * Can combine include and exclude rules.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void combinesRules() {
+        final Filter<FTPFile> rules = Rules.all(
+            Rules.any(Rules.glob("*.csv"), Rules.glob("*.txt")),
+            Rules.not(Rules.any(Rules.glob("tmp*"), Rules.regex("\\d+\\..*"))),
+            Rules.size(1L, 100L),
+            Rules.modified(1000L, 2000L)
+        );
+        Assert.assertTrue(rules.valid(RulesTest.file("a.csv", 10L, 1000L)));
+        Assert.assertTrue(rules.valid(RulesTest.file("b.txt", 100L, 1999L)));
+        Assert.assertFalse(rules.valid(RulesTest.file("a.log", 10L, 1000L)));
+        Assert.assertFalse(rules.valid(RulesTest.file("tmp.csv", 1L, 1000L)));
+        Assert.assertFalse(rules.valid(RulesTest.file("12.csv", 1L, 1000L)));
+        Assert.assertFalse(rules.valid(RulesTest.file("a.csv", 0L, 1000L)));
+        Assert.assertFalse(rules.valid(RulesTest.file("a.csv", 1L, 2000L)));
+        final FTPFile undated = RulesTest.file("a.csv", 1L, 0L);
+        undated.setTimestamp(null);
+        Assert.assertFalse(rules.valid(undated));
+    }
+
+    /**
+     * Can check cheap rules before costly ones.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void checksCheapRulesFirst() {
+        final AtomicInteger calls = new AtomicInteger();
+        final Filter<FTPFile> rules = Rules.all(
+            new Filter<FTPFile>() {
+                @Override
+                public boolean valid(final FTPFile type) {
+                    calls.incrementAndGet();
+                    return true;
+                }
+            },
+            Rules.glob("*.csv"),
+            Rules.size(0L, 1L)
+        );
+        Assert.assertFalse(rules.valid(RulesTest.file("a.csv", 5L, 0L)));
+        Assert.assertFalse(rules.valid(RulesTest.file("a.txt", 0L, 0L)));
+        Assert.assertEquals("Costly filter called", 0, calls.get());
+        Assert.assertTrue(rules.valid(RulesTest.file("a.csv", 0L, 0L)));
+        Assert.assertEquals(1, calls.get());
+    }
+
+    /**
+     * Listed file.
+     *
+     * @param name Name.
+     * @param size Size.
+     * @param time Modification time.
+     * @return File.
+     */
+    private static FTPFile file(final String name, final long size,
+        final long time) {
+        final FTPFile file = new FTPFile();
+        file.setName(name);
+        file.setSize(size);
+        final Calendar stamp = Calendar.getInstance();
+        stamp.setTimeInMillis(time);
+        file.setTimestamp(stamp);
+        return file;
+    }
+}
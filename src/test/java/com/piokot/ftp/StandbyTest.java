@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.FTPCommand;
+import com.piokot.ftp.mock.Conditions;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Standby}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class StandbyTest {
+    /**
+     * Standby sessions kept.
+     */
+    private static final int WARM = 4;
+    /**
+     * Simulated login latency in milliseconds.
+     */
+    private static final long LOGIN = 300L;
+
+    /**
+     * Can run commands without waiting for login.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void runsOnWarmSessions() throws Exception {
+        final String host = InetAddress.getLoopbackAddress().getHostAddress();
+        try (final MockServer server = new MockServer(
+            new MockTree().file("/a", 1L),
+            new Conditions().latency("PASS", StandbyTest.LOGIN)
+        );
+            final Multiplexer mux = new Multiplexer();
+            final Standby standby = new Standby(
+                mux, StandbyTest.WARM, host, server.port(), "mock", "mock"
+            )) {
+            StandbyTest.await(server, StandbyTest.WARM);
+            for (int idx = 0; idx < StandbyTest.WARM * 3; ++idx) {
+                final long start = System.nanoTime();
+                standby.onConnect(
+                    new FTPCommand() {
+                        @Override
+                        @SneakyThrows
+                        public void execute(final FTPClient client) {
+                            Assert.assertEquals(
+                                "a", client.listNames("/")[0]
+                            );
+                        }
+                    }
+                );
+                Assert.assertTrue(
+                    "Waited for login",
+                    System.nanoTime() - start
+                        < TimeUnit.MILLISECONDS.toNanos(StandbyTest.LOGIN)
+                );
+            }
+            Assert.assertEquals(
+                "Logins", Long.valueOf(StandbyTest.WARM + 1L),
+                server.commands().get("PASS")
+            );
+            Assert.assertEquals(StandbyTest.WARM + 1, standby.sessions());
+        }
+    }
+
+    /**
+     * Can replace sessions dropped by server.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void replacesDroppedSessions() throws Exception {
+        final String host = InetAddress.getLoopbackAddress().getHostAddress();
+        try (final MockServer server = new MockServer(
+            new MockTree(), new Conditions().failure("NOOP", 1.0, 421)
+        );
+            final Multiplexer mux = new Multiplexer(
+                1, 50L, TimeUnit.MILLISECONDS
+            );
+            final Standby standby = new Standby(
+                mux, StandbyTest.WARM, 20L, TimeUnit.MILLISECONDS,
+                host, server.port(), "mock", "mock"
+            )) {
+            StandbyTest.await(server, StandbyTest.WARM * 3);
+            final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+            while (standby.sessions() < StandbyTest.WARM
+                && System.nanoTime() < end) {
+                TimeUnit.MILLISECONDS.sleep(1L);
+            }
+            Assert.assertEquals(StandbyTest.WARM, standby.sessions());
+        }
+    }
+
+    /**
+     * Can back off from server refusing logins.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void backsOffFailedOpens() throws Exception {
+        final String host = InetAddress.getLoopbackAddress().getHostAddress();
+        try (final MockServer server = new MockServer(
+            new MockTree(), new Conditions().failure("PASS", 1.0, 530)
+        );
+            final Multiplexer mux = new Multiplexer();
+            final Standby standby = new Standby(
+                mux, 1, 10L, TimeUnit.MILLISECONDS,
+                host, server.port(), "mock", "mock"
+            )) {
+            TimeUnit.SECONDS.sleep(1L);
+            final long logins = StandbyTest.logins(server);
+            Assert.assertTrue(
+                String.format("%d logins, %d sessions", logins,
+                    standby.sessions()),
+                logins > 1L && logins < 12L
+            );
+        }
+    }
+
+    /**
+     * Wait for logins.
+     *
+     * @param server Server.
+     * @param logins Number of logins.
+     * @throws InterruptedException If interrupted.
+     */
+    private static void await(final MockServer server, final int logins)
+        throws InterruptedException {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (StandbyTest.logins(server) < logins
+            && System.nanoTime() < end) {
+            TimeUnit.MILLISECONDS.sleep(10L);
+        }
+        TimeUnit.MILLISECONDS.sleep(StandbyTest.LOGIN * 2);
+        Assert.assertTrue("No logins", StandbyTest.logins(server) >= logins);
+    }
+
+    /**
+     * Number of logins seen by server.
+     *
+     * @param server Server.
+     * @return Logins.
+     */
+    private static long logins(final MockServer server) {
+        final Long count = server.commands().get("PASS");
+        long logins = 0L;
+        if (count != null) {
+            logins = count;
+        }
+        return logins;
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link Tail}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class TailTest {
+    /**
+     * Can stream only appended bytes of growing file.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void followsGrowingFile() throws Exception {
+        final StringBuffer received = new StringBuffer();
+        final Tail tail = new Tail(
+            "/log", 0L, 20L,
+            new Callback<InputStream>() {
+                @Override
+                @SneakyThrows
+                public void onReturn(final InputStream type) {
+                    received.append(
+                        new String(
+                            ByteStreams.toByteArray(type), Charsets.UTF_8
+                        )
+                    );
+                }
+            }
+        );
+        final MockTree tree = new MockTree()
+            .file("/log", TailTest.bytes("a\n"));
+        final ExecutorService thread = Executors.newSingleThreadExecutor();
+        try (final MockServer server = new MockServer(tree)) {
+            final Future<?> done = thread.submit(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        server.ftp().onConnect(tail);
+                    }
+                }
+            );
+            TailTest.await(received, "a\n");
+            tree.file("/log", TailTest.bytes("a\nb\n"));
+            TailTest.await(received, "a\nb\n");
+            tree.file("/log", TailTest.bytes("a\nb\nc\n"));
+            TailTest.await(received, "a\nb\nc\n");
+            tail.stop();
+            done.get(1L, TimeUnit.MINUTES);
+            Assert.assertEquals("Offset", 6L, tail.offset());
+            Assert.assertEquals(
+                "Transfers", Long.valueOf(3L),
+                server.commands().get("RETR")
+            );
+        } finally {
+            thread.shutdownNow();
+        }
+    }
+
+    /**
+     * Can deliver again bytes left unread by the callback.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void advancesByBytesRead() throws Exception {
+        final StringBuffer received = new StringBuffer();
+        final Tail tail = new Tail(
+            "/log", 0L, 20L,
+            new Callback<InputStream>() {
+                @Override
+                @SneakyThrows
+                public void onReturn(final InputStream type) {
+                    received.append((char) type.read());
+                }
+            }
+        );
+        final ExecutorService thread = Executors.newSingleThreadExecutor();
+        try (final MockServer server = new MockServer(
+            new MockTree().file("/log", TailTest.bytes("abc"))
+        )) {
+            final Future<?> done = thread.submit(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        server.ftp().onConnect(tail);
+                    }
+                }
+            );
+            TailTest.await(received, "abc");
+            tail.stop();
+            done.get(1L, TimeUnit.MINUTES);
+            Assert.assertEquals("Offset", 3L, tail.offset());
+        } finally {
+            thread.shutdownNow();
+        }
+    }
+
+    /**
+     * Can return normally on interrupt, keeping the interrupt flag.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void returnsOnInterrupt() throws Exception {
+        final Tail tail = new Tail(
+            "/log", 0L, 10000L,
+            new Callback<InputStream>() {
+                @Override
+                @SneakyThrows
+                public void onReturn(final InputStream type) {
+                    ByteStreams.toByteArray(type);
+                }
+            }
+        );
+        final ExecutorService thread = Executors.newSingleThreadExecutor();
+        try (final MockServer server = new MockServer(
+            new MockTree().file("/log", TailTest.bytes("a\n"))
+        )) {
+            final Future<Boolean> done = thread.submit(
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        server.ftp().onConnect(tail);
+                        return Thread.interrupted();
+                    }
+                }
+            );
+            final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+            while (tail.offset() == 0L && System.nanoTime() < end) {
+                TimeUnit.MILLISECONDS.sleep(10L);
+            }
+            thread.shutdownNow();
+            Assert.assertTrue(
+                "Interrupt flag", done.get(1L, TimeUnit.MINUTES)
+            );
+            Assert.assertEquals("Offset", 2L, tail.offset());
+        } finally {
+            thread.shutdownNow();
+        }
+    }
+
+    /**
+     * Wait until received content equals expected.
+     *
+     * @param received Received content.
+     * @param expected Expected content.
+     * @throws InterruptedException If interrupted.
+     */
+    private static void await(final StringBuffer received,
+        final String expected) throws InterruptedException {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (!expected.equals(received.toString())
+            && System.nanoTime() < end) {
+            TimeUnit.MILLISECONDS.sleep(10L);
+        }
+        Assert.assertEquals("Content", expected, received.toString());
+    }
+
+    /**
+     * UTF-8 bytes of text.
+     *
+     * @param text Text.
+     * @return Bytes.
+     */
+    private static byte[] bytes(final String text) {
+        return text.getBytes(Charsets.UTF_8);
+    }
+}
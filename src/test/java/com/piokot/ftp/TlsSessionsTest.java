@@ -0,0 +1,355 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.piokot.ftp.api.Callback;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.ssl.SslConfigurationFactory;
+import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TlsSessions} against embedded FTPS server.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @checkstyle ClassDataAbstractionCoupling (3 lines)
+ * @since 1.0
+ */
+public final class TlsSessionsTest {
+    /**
+     * FTP server port.
+     */
+    private static final int PORT = 2223;
+    /**
+     * Key store password.
+     */
+    private static final String SECRET = "secret";
+    /**
+     * FTP server.
+     */
+    private transient FtpServer server;
+    /**
+     * Home directory.
+     */
+    private transient Path home;
+
+    /**
+     * Sets up Apache FTP server with explicit FTPS.
+     *
+     * @throws Exception When it fails.
+     */
+    @Before
+    public void setUp() throws Exception {
+        this.home = Files.createTempDirectory("ftps");
+        final UserManager manager = new PropertiesUserManagerFactory()
+            .createUserManager();
+        final BaseUser user = new BaseUser();
+        user.setName("name");
+        user.setPassword("pass");
+        user.setHomeDirectory(this.home.toString());
+        final List<org.apache.ftpserver.ftplet.Authority> rights =
+            new ArrayList<>(1);
+        rights.add(new WritePermission());
+        user.setAuthorities(rights);
+        manager.save(user);
+        final SslConfigurationFactory ssl = new SslConfigurationFactory();
+        ssl.setKeystoreFile(new File(TlsSessionsTest.keystore()));
+        ssl.setKeystorePassword(TlsSessionsTest.SECRET);
+        final ListenerFactory listener = new ListenerFactory();
+        listener.setPort(TlsSessionsTest.PORT);
+        listener.setSslConfiguration(ssl.createSslConfiguration());
+        listener.setImplicitSsl(false);
+        final FtpServerFactory factory = new FtpServerFactory();
+        factory.setUserManager(manager);
+        factory.addListener("default", listener.createListener());
+        this.server = factory.createServer();
+        this.server.start();
+    }
+
+    /**
+     * Stops FTP server.
+     *
+     * @throws Exception When it fails.
+     */
+    @After
+    public void cleanUp() throws Exception {
+        this.server.stop();
+        for (final File file : this.home.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(this.home);
+    }
+
+    /**
+     * Can transfer files over FTPS, tracing the sessions.
+     *
+     * <p>Apache FTP server builds new TLS context for each connection, so
+     * it never resumes, and the JDK drops a control session from the cache
+     * once its data connection was refused to resume it. Data connections
+     * that follow in the session do full handshakes, while sharing stays
+     * on for other sessions.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void transfersSecurely() throws Exception {
+        final TlsSessions tls = new TlsSessions(TlsSessionsTest.store());
+        final ControlTrace trace = new ControlTrace();
+        final FTP ftp = new FTP(
+            "localhost", TlsSessionsTest.PORT, "name", "pass"
+        ).secured(tls).traced(trace);
+        final int files = 3;
+        for (int idx = 0; idx < files; ++idx) {
+            ftp.onConnect(
+                new FileUpload(
+                    String.format("file-%d", idx),
+                    new ByteArrayInputStream(
+                        String.format("content %d", idx)
+                            .getBytes(Charsets.UTF_8)
+                    ),
+                    new Callback<Boolean>() {
+                        @Override
+                        public void onReturn(final Boolean type) {
+                            Assert.assertTrue("Not uploaded", type);
+                        }
+                    }
+                )
+            );
+        }
+        final List<String> names = new ArrayList<>(files);
+        final List<String> contents = new ArrayList<>(files);
+        ftp.onConnect(
+            new DirList(
+                ".",
+                new Callback<FTPFile[]>() {
+                    @Override
+                    public void onReturn(final FTPFile[] type) {
+                        for (final FTPFile file : type) {
+                            names.add(file.getName());
+                        }
+                    }
+                }
+            ),
+            new RangeDownload(
+                "file-1", 0L, Long.MAX_VALUE,
+                new Callback<InputStream>() {
+                    @Override
+                    @SneakyThrows
+                    public void onReturn(final InputStream type) {
+                        contents.add(
+                            new String(
+                                ByteStreams.toByteArray(type), Charsets.UTF_8
+                            )
+                        );
+                    }
+                }
+            )
+        );
+        Assert.assertEquals(files, names.size());
+        Assert.assertEquals("[content 1]", contents.toString());
+        Assert.assertEquals(
+            "Handshakes", (files + 1) * 2L + 1L, tls.handshakes()
+        );
+        Assert.assertTrue(
+            "Sharing stopped by session the server did not resume",
+            tls.sharing()
+        );
+        Assert.assertEquals(
+            "Sessions traced", files + 1, trace.timelines().size()
+        );
+    }
+
+    /**
+     * Can resume TLS sessions, also on another port.
+     *
+     * <p>Apache FTP server never resumes, so plain TLS servers sharing one
+     * TLS context are used instead.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void resumesSessions() throws Exception {
+        final KeyManagerFactory keys = KeyManagerFactory.getInstance(
+            KeyManagerFactory.getDefaultAlgorithm()
+        );
+        keys.init(
+            TlsSessionsTest.store(), TlsSessionsTest.SECRET.toCharArray()
+        );
+        final SSLContext context = SSLContext.getInstance("TLSv1.2");
+        context.init(keys.getKeyManagers(), null, null);
+        final ExecutorService threads = Executors.newFixedThreadPool(2);
+        try (
+            final ServerSocket control = context.getServerSocketFactory()
+                .createServerSocket(0);
+            final ServerSocket data = context.getServerSocketFactory()
+                .createServerSocket(0)
+        ) {
+            final int times = 3;
+            threads.submit(TlsSessionsTest.handshakes(control, times));
+            threads.submit(TlsSessionsTest.handshakes(data, 1));
+            final TlsSessions tls = new TlsSessions(TlsSessionsTest.store());
+            SSLSession session = null;
+            for (int idx = 0; idx < times; ++idx) {
+                try (final SSLSocket socket = tls.secure(
+                    new Socket("localhost", control.getLocalPort()),
+                    "localhost", control.getLocalPort()
+                )) {
+                    session = socket.getSession();
+                }
+            }
+            Assert.assertEquals("Handshakes", (long) times, tls.handshakes());
+            Assert.assertEquals("Resumed", times - 1L, tls.resumed());
+            final byte[] resumed;
+            try (final SSLSocket socket = tls.secure(
+                new Socket("localhost", data.getLocalPort()), session
+            )) {
+                resumed = socket.getSession().getId();
+            }
+            Assert.assertArrayEquals(
+                "Not resumed on data port", session.getId(), resumed
+            );
+            Assert.assertEquals("Resumed data", (long) times, tls.resumed());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    /**
+     * Can refuse certificate not issued for the host name.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test(expected = SSLHandshakeException.class)
+    public void refusesWrongHost() throws Exception {
+        final KeyManagerFactory keys = KeyManagerFactory.getInstance(
+            KeyManagerFactory.getDefaultAlgorithm()
+        );
+        keys.init(
+            TlsSessionsTest.store(), TlsSessionsTest.SECRET.toCharArray()
+        );
+        final SSLContext context = SSLContext.getInstance("TLSv1.2");
+        context.init(keys.getKeyManagers(), null, null);
+        final ExecutorService threads = Executors.newSingleThreadExecutor();
+        try (final ServerSocket server = context.getServerSocketFactory()
+            .createServerSocket(0)) {
+            threads.submit(TlsSessionsTest.handshakes(server, 1));
+            new TlsSessions(TlsSessionsTest.store()).secure(
+                new Socket("localhost", server.getLocalPort()),
+                "example.org", server.getLocalPort()
+            ).close();
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    /**
+     * Accepting TLS connections, each until closed by the client.
+     *
+     * @param server Server socket.
+     * @param times Number of connections accepted.
+     * @return Accepting task.
+     */
+    private static Callable<Void> handshakes(final ServerSocket server,
+        final int times) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                for (int idx = 0; idx < times; ++idx) {
+                    try (final SSLSocket socket =
+                        (SSLSocket) server.accept()) {
+                        socket.startHandshake();
+                        socket.getInputStream().read();
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Key store with self-signed certificate.
+     *
+     * @return Loaded key store.
+     * @throws Exception If it fails.
+     */
+    private static KeyStore store() throws Exception {
+        final KeyStore store = KeyStore.getInstance("JKS");
+        try (final InputStream stream = Files.newInputStream(
+            new File(TlsSessionsTest.keystore()).toPath()
+        )) {
+            store.load(stream, TlsSessionsTest.SECRET.toCharArray());
+        }
+        return store;
+    }
+
+    /**
+     * Path of self-signed key store.
+     *
+     * @return Path.
+     */
+    @SneakyThrows
+    private static String keystore() {
+        return new File(
+            TlsSessionsTest.class.getResource("/ftps.jks").toURI()
+        ).getPath();
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp;
+
+import com.piokot.ftp.api.FTPCommand;
+import com.piokot.ftp.mock.MockServer;
+import com.piokot.ftp.mock.MockTree;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TransferQueue}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class TransferQueueTest {
+    /**
+     * Seconds to wait for sessions.
+     */
+    private static final long WAIT = 10L;
+
+    /**
+     * Can start urgent session in reserved slot while bulk ones wait.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void reservesSessionsForHighPriority() throws Exception {
+        final List<String> started = TransferQueueTest.log();
+        final CountDownLatch release = new CountDownLatch(1);
+        try (final MockServer server = new MockServer(new MockTree());
+            final TransferQueue queue = new TransferQueue(2, 2, 1)) {
+            final CountDownLatch bulk = new CountDownLatch(1);
+            final Future<Void> first = queue.submit(
+                server.ftp(), TransferQueue.Priority.BULK, "batch",
+                TransferQueueTest.hold("bulk", started, bulk, release)
+            );
+            final Future<Void> second = queue.submit(
+                server.ftp(), TransferQueue.Priority.BULK, "batch",
+                TransferQueueTest.hold("bulk", started, bulk, release)
+            );
+            Assert.assertTrue(
+                bulk.await(TransferQueueTest.WAIT, TimeUnit.SECONDS)
+            );
+            Assert.assertEquals("Bulk queued", 1, queue.queued());
+            final CountDownLatch urgent = new CountDownLatch(1);
+            final Future<Void> high = queue.submit(
+                server.ftp(), TransferQueue.Priority.HIGH, "user",
+                TransferQueueTest.hold(
+                    "high", started, urgent, new CountDownLatch(0)
+                )
+            );
+            high.get(TransferQueueTest.WAIT, TimeUnit.SECONDS);
+            Assert.assertEquals("Still queued", 1, queue.queued());
+            release.countDown();
+            first.get(TransferQueueTest.WAIT, TimeUnit.SECONDS);
+            second.get(TransferQueueTest.WAIT, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals("[bulk, high, bulk]", started.toString());
+    }
+
+    /**
+     * Can serve tenants round-robin and priorities strictly.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void servesTenantsFairly() throws Exception {
+        final List<String> started = TransferQueueTest.log();
+        final CountDownLatch release = new CountDownLatch(1);
+        try (final MockServer server = new MockServer(new MockTree());
+            final TransferQueue queue = new TransferQueue(1, 1, 0)) {
+            final CountDownLatch busy = new CountDownLatch(1);
+            queue.submit(
+                server.ftp(), TransferQueue.Priority.NORMAL, "first",
+                TransferQueueTest.hold("first", started, busy, release)
+            );
+            Assert.assertTrue(
+                busy.await(TransferQueueTest.WAIT, TimeUnit.SECONDS)
+            );
+            final List<Future<Void>> done = new ArrayList<>(5);
+            for (final String name : new String[] {"a1", "a2", "a3", "b1"}) {
+                done.add(
+                    queue.submit(
+                        server.ftp(), TransferQueue.Priority.NORMAL,
+                        name.substring(0, 1),
+                        TransferQueueTest.hold(
+                            name, started, new CountDownLatch(1), release
+                        )
+                    )
+                );
+            }
+            done.add(
+                queue.submit(
+                    server.ftp(), TransferQueue.Priority.BULK, "a",
+                    TransferQueueTest.hold(
+                        "bulk", started, new CountDownLatch(1), release
+                    )
+                )
+            );
+            release.countDown();
+            for (final Future<Void> future : done) {
+                future.get(TransferQueueTest.WAIT, TimeUnit.SECONDS);
+            }
+        }
+        Assert.assertEquals(
+            "[first, a1, b1, a2, a3, bulk]", started.toString()
+        );
+    }
+
+    /**
+     * Can limit sessions per server while others run.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void limitsSessionsPerHost() throws Exception {
+        final List<String> started = TransferQueueTest.log();
+        final CountDownLatch release = new CountDownLatch(1);
+        try (final MockServer one = new MockServer(new MockTree());
+            final MockServer two = new MockServer(new MockTree());
+            final TransferQueue queue = new TransferQueue(3, 1, 0)) {
+            final CountDownLatch both = new CountDownLatch(2);
+            final Future<Void> first = queue.submit(
+                one.ftp(), TransferQueue.Priority.NORMAL, "t",
+                TransferQueueTest.hold("one", started, both, release)
+            );
+            final Future<Void> second = queue.submit(
+                one.ftp(), TransferQueue.Priority.NORMAL, "t",
+                TransferQueueTest.hold("one", started, both, release)
+            );
+            final Future<Void> third = queue.submit(
+                two.ftp(), TransferQueue.Priority.NORMAL, "t",
+                TransferQueueTest.hold("two", started, both, release)
+            );
+            Assert.assertTrue(
+                both.await(TransferQueueTest.WAIT, TimeUnit.SECONDS)
+            );
+            Assert.assertEquals("Running", 2, queue.running());
+            Assert.assertEquals("Queued", 1, queue.queued());
+            release.countDown();
+            first.get(TransferQueueTest.WAIT, TimeUnit.SECONDS);
+            second.get(TransferQueueTest.WAIT, TimeUnit.SECONDS);
+            third.get(TransferQueueTest.WAIT, TimeUnit.SECONDS);
+        }
+        Collections.sort(started);
+        Assert.assertEquals("[one, one, two]", started.toString());
+    }
+
+    /**
+     * Can interrupt running session cancelled with interruption.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void interruptsCancelledSession() throws Exception {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        try (final MockServer server = new MockServer(new MockTree());
+            final TransferQueue queue = new TransferQueue(1, 1, 0)) {
+            final Future<Void> future = queue.submit(
+                server.ftp(), TransferQueue.Priority.NORMAL, "user",
+                new FTPCommand() {
+                    @Override
+                    public void execute(final FTPClient client) {
+                        running.countDown();
+                        try {
+                            new CountDownLatch(1).await();
+                        } catch (final InterruptedException ex) {
+                            interrupted.countDown();
+                        }
+                    }
+                }
+            );
+            Assert.assertTrue(
+                running.await(TransferQueueTest.WAIT, TimeUnit.SECONDS)
+            );
+            Assert.assertTrue("Not cancelled", future.cancel(true));
+            Assert.assertTrue(
+                "Not interrupted",
+                interrupted.await(TransferQueueTest.WAIT, TimeUnit.SECONDS)
+            );
+        }
+    }
+
+    /**
+     * Can fail session on error, not only on exception.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void failsSessionOnError() throws Exception {
+        try (final MockServer server = new MockServer(new MockTree());
+            final TransferQueue queue = new TransferQueue(1, 1, 0)) {
+            final Future<Void> future = queue.submit(
+                server.ftp(), TransferQueue.Priority.NORMAL, "user",
+                new FTPCommand() {
+                    @Override
+                    public void execute(final FTPClient client) {
+                        throw new StackOverflowError();
+                    }
+                }
+            );
+            try {
+                future.get(TransferQueueTest.WAIT, TimeUnit.SECONDS);
+                Assert.fail("Session did not fail");
+            } catch (final ExecutionException ex) {
+                Assert.assertTrue(
+                    ex.getCause() instanceof StackOverflowError
+                );
+            }
+        }
+    }
+
+    /**
+     * Thread-safe log of sessions started.
+     *
+     * @return Empty log.
+     */
+    private static List<String> log() {
+        return Collections.synchronizedList(new ArrayList<String>(0));
+    }
+
+    /**
+     * Command logging its start and holding the session until released.
+     *
+     * @param name Name logged.
+     * @param started Log of sessions started.
+     * @param running Counted down once started.
+     * @param release Released when the session may end.
+     * @return Command.
+     * @checkstyle ParameterNumberCheck (4 lines)
+     */
+    private static FTPCommand hold(final String name,
+        final List<String> started, final CountDownLatch running,
+        final CountDownLatch release) {
+        return new FTPCommand() {
+            @Override
+            @SneakyThrows
+            public void execute(final FTPClient client) {
+                started.add(name);
+                running.countDown();
+                Assert.assertTrue(
+                    release.await(TransferQueueTest.WAIT, TimeUnit.SECONDS)
+                );
+            }
+        };
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2015, piotrkot
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation
+ * are those of the authors and should not be interpreted as representing
+ * official policies, either expressed or implied, of the FreeBSD Project.
+ */
+package com.piokot.ftp.mock;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+import com.piokot.ftp.DirList;
+import com.piokot.ftp.FileDelete;
+import com.piokot.ftp.FileDownload;
+import com.piokot.ftp.FileSearch;
+import com.piokot.ftp.FileUpload;
+import com.piokot.ftp.api.Callback;
+import com.piokot.ftp.api.Filter;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MockServer}.
+ *
+ * @author Piotr Kotlicki (piotr.kotlicki@gmail.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class MockServerTest {
+    /**
+     * Can upload and download file over loopback.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void uploadsAndDownloadsFile() throws Exception {
+        final String content = "mock content\nsecond line";
+        try (final MockServer server = new MockServer(new MockTree())) {
+            server.ftp().onConnect(
+                new FileUpload(
+                    "file.txt",
+                    new ByteArrayInputStream(content.getBytes(Charsets.UTF_8)),
+                    new Callback<Boolean>() {
+                        @Override
+                        public void onReturn(final Boolean type) {
+                            Assert.assertTrue("File not uploaded", type);
+                        }
+                    }
+                )
+            );
+            server.ftp().onConnect(
+                new FileDownload(
+                    "/file.txt",
+                    new Callback<InputStream>() {
+                        @Override
+                        @SneakyThrows
+                        public void onReturn(final InputStream type) {
+                            Assert.assertEquals(
+                                "Content not match", content,
+                                new String(
+                                    ByteStreams.toByteArray(type),
+                                    Charsets.UTF_8
+                                )
+                            );
+                        }
+                    }
+                )
+            );
+        }
+    }
+
+    /**
+     * Can search generated tree.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void searchesGeneratedTree() throws Exception {
+        final int[] found = new int[1];
+        try (final MockServer server = new MockServer(
+            new MockTree().generate("/tree", 2, 2, 3, 10L)
+        )) {
+            server.ftp().onConnect(
+                new FileSearch(
+                    "/tree",
+                    new Filter<FTPFile>() {
+                        @Override
+                        public boolean valid(final FTPFile type) {
+                            return type.getSize() == 10L;
+                        }
+                    },
+                    true,
+                    new Callback<Iterable<String>>() {
+                        @Override
+                        public void onReturn(final Iterable<String> type) {
+                            found[0] = Iterables.size(type);
+                        }
+                    }
+                )
+            );
+        }
+        Assert.assertEquals("Files found", 21, found[0]);
+    }
+
+    /**
+     * Can simulate command failures.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void simulatesFailures() throws Exception {
+        final boolean[] deleted = {true};
+        try (final MockServer server = new MockServer(
+            new MockTree().file("/file", 1L),
+            new Conditions().failure("DELE", 1.0, 450)
+        )) {
+            server.ftp().onConnect(
+                new FileDelete(
+                    "/file",
+                    new Callback<Boolean>() {
+                        @Override
+                        public void onReturn(final Boolean type) {
+                            deleted[0] = type;
+                        }
+                    }
+                )
+            );
+        }
+        Assert.assertFalse("File deleted", deleted[0]);
+    }
+
+    /**
+     * Can simulate command latency.
+     *
+     * @throws Exception If it fails.
+     */
+    @Test
+    public void simulatesLatency() throws Exception {
+        final long latency = 200L;
+        try (final MockServer server = new MockServer(
+            new MockTree().dir("/dir"),
+            new Conditions().latency("LIST", latency)
+        )) {
+            final long start = System.nanoTime();
+            server.ftp().onConnect(
+                new DirList("/dir", new MockCallback<FTPFile[]>())
+            );
+            Assert.assertTrue(
+                "Latency not simulated",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                    >= latency
+            );
+            Assert.assertEquals(
+                "LIST not counted",
+                Long.valueOf(1L), server.commands().get("LIST")
+            );
+        }
+    }
+}